@@ -1,12 +1,12 @@
 package io.github.opencubicchunks.dasm.api.provider;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class CachingClassProvider implements ClassProvider {
     private final ClassProvider classProvider;
-    private final Map<String, byte[]> classProviderCache = new HashMap<>();
+    private final Map<String, byte[]> classProviderCache = new ConcurrentHashMap<>();
 
     public CachingClassProvider(ClassProvider classProvider) {
         this.classProvider = classProvider;
@@ -16,4 +16,26 @@ public class CachingClassProvider implements ClassProvider {
     public byte[] classBytes(String className) {
         return this.classProviderCache.computeIfAbsent(className, this.classProvider::classBytes);
     }
+
+    @Override
+    public void trim() {
+        this.classProviderCache.clear();
+        this.classProvider.trim();
+    }
+
+    @Override
+    public void invalidate(String className) {
+        String nestedPrefix = className + '$';
+        this.classProviderCache.keySet().removeIf(cached -> cached.equals(className) || cached.startsWith(nestedPrefix));
+        this.classProvider.invalidate(className);
+    }
+
+    @Override
+    public long retainedBytes() {
+        long bytes = 0;
+        for (byte[] classBytes : this.classProviderCache.values()) {
+            bytes += classBytes.length;
+        }
+        return bytes + this.classProvider.retainedBytes();
+    }
 }
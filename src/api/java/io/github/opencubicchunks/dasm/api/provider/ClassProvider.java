@@ -1,9 +1,80 @@
 package io.github.opencubicchunks.dasm.api.provider;
 
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 public interface ClassProvider {
     /**
      * @param className The fully qualified name of the class eg: <code>java.lang.String</code>
      * @return The class bytes
      */
     byte[] classBytes(String className);
+
+    /**
+     * Buffer variant of {@link #classBytes(String)}, allowing implementations to hand out views of their backing storage without copying.
+     * <p/>
+     * The returned buffer's content is the class file between its position and limit. Callers must not modify it.
+     *
+     * @param className The fully qualified name of the class eg: <code>java.lang.String</code>
+     * @return The class bytes
+     */
+    default ByteBuffer classBuffer(String className) {
+        return ByteBuffer.wrap(classBytes(className));
+    }
+
+    /**
+     * Releases any cached state. The provider must stay usable afterwards.
+     */
+    default void trim() {
+    }
+
+    /**
+     * Drops anything cached for the class and its nested classes, as it has changed
+     *
+     * @param className The fully qualified name of the class eg: <code>java.lang.String</code>
+     */
+    default void invalidate(String className) {
+    }
+
+    /**
+     * @return The approximate number of bytes of class data this provider keeps on the heap
+     */
+    default long retainedBytes() {
+        return 0;
+    }
+
+    /**
+     * Async variant of {@link #classBytes(String)}. Implementations with their own I/O scheduling may ignore the executor.
+     *
+     * @param className The fully qualified name of the class eg: <code>java.lang.String</code>
+     * @param executor The executor to run blocking work on
+     * @return A future for the class bytes
+     */
+    default CompletableFuture<byte[]> classBytesAsync(String className, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> classBytes(className), executor);
+    }
+
+    /**
+     * Batch variant of {@link #classBytesAsync(String, Executor)}. By default, each class is requested separately.
+     * Implementations that can answer many requests at once (eg: in one round trip to a remote cache) should override this.
+     *
+     * @param classNames The fully qualified names of the classes eg: <code>java.lang.String</code>
+     * @param executor The executor to run blocking work on
+     * @return A future for the class bytes of every requested class, by class name
+     */
+    default CompletableFuture<Map<String, byte[]>> classBytesAsync(Collection<String> classNames, Executor executor) {
+        Map<String, CompletableFuture<byte[]>> futures = new LinkedHashMap<>();
+        for (String className : classNames) {
+            futures.put(className, classBytesAsync(className, executor));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            Map<String, byte[]> classBytes = new LinkedHashMap<>();
+            futures.forEach((className, future) -> classBytes.put(className, future.join()));
+            return classBytes;
+        });
+    }
 }
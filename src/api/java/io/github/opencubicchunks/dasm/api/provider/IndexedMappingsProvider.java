@@ -0,0 +1,549 @@
+package io.github.opencubicchunks.dasm.api.provider;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link MappingsProvider} answering from a compact binary index of Tiny v2 or SRG mappings.
+ * <p/>
+ * The index holds every distinct name once, and an open-addressing hash table each for classes, fields and methods referring to the names by id.
+ * Lookups hash the query strings in place and compare them against the name table directly, so they don't allocate. A mapped name is only turned
+ * into a {@link String} the first time it is returned, unmapped names are returned as they were passed in.
+ * <p/>
+ * {@link #load} builds the index on the first launch and saves it, later launches memory-map the saved index instead of parsing the mappings again.
+ */
+public final class IndexedMappingsProvider implements MappingsProvider {
+    private static final int MAGIC = 0x44414D49; // DAMI
+    private static final int VERSION = 1;
+
+    private static final int CLASS_WIDTH = 2; // src, dst
+    private static final int MEMBER_WIDTH = 4; // owner, name, desc (or -1 if not known), dst
+
+    private final ByteBuffer buffer;
+    private final int stringOffsets;
+    private final int chars;
+    private final int stringCount;
+    private final Table classes;
+    private final Table fields;
+    private final Table methods;
+    // names are only created when they are first returned, racing threads create equal strings
+    private final String[] strings;
+
+    private IndexedMappingsProvider(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < 40 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a dasm mappings index");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported mappings index version %d, expected %d", version, VERSION));
+        }
+        this.stringCount = buffer.getInt(32);
+        this.stringOffsets = buffer.getInt(36);
+        this.chars = this.stringOffsets + (this.stringCount + 1) * 4;
+        int position = this.chars + buffer.getInt(this.stringOffsets + this.stringCount * 4) * 2;
+        this.classes = new Table(buffer, position, CLASS_WIDTH);
+        this.fields = new Table(buffer, this.classes.end, MEMBER_WIDTH);
+        this.methods = new Table(buffer, this.fields.end, MEMBER_WIDTH);
+        if (this.methods.end != buffer.capacity()) {
+            throw new IOException("Truncated or corrupt mappings index");
+        }
+        this.strings = new String[this.stringCount];
+    }
+
+    /**
+     * Returns the mappings from the index file if it was built from the current mappings file with the same namespaces, otherwise parses the mappings
+     * and saves a new index.
+     *
+     * @param fromNamespace The Tiny v2 namespace the names passed in are in, ignored for SRG mappings
+     * @param toNamespace The Tiny v2 namespace to map names into, ignored for SRG mappings
+     */
+    public static IndexedMappingsProvider load(Path mappings, Path index, String fromNamespace, String toNamespace) throws IOException {
+        long sourceSize = Files.size(mappings);
+        long sourceModified = Files.getLastModifiedTime(mappings).toMillis();
+        if (Files.isRegularFile(index)) {
+            try {
+                IndexedMappingsProvider existing = open(index);
+                if (existing.isIndexOf(sourceSize, sourceModified, fromNamespace, toNamespace)) {
+                    return existing;
+                }
+            } catch (IOException e) {
+                // corrupt or from an older version, rebuild it
+            }
+        }
+
+        Builder builder;
+        try (BufferedReader reader = Files.newBufferedReader(mappings, StandardCharsets.UTF_8)) {
+            builder = parse(reader, fromNamespace, toNamespace);
+        }
+        ByteBuffer built = builder.build(sourceSize, sourceModified, fromNamespace, toNamespace);
+
+        Path parent = index.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, index.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, built.array());
+            try {
+                Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return new IndexedMappingsProvider(built);
+    }
+
+    /**
+     * Memory-maps an index saved by {@link #load}
+     */
+    public static IndexedMappingsProvider open(Path index) throws IOException {
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Mappings index %s is too large to be mapped", index));
+            }
+            // the mapping stays valid after the channel is closed
+            return new IndexedMappingsProvider(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Parses Tiny v2 or SRG mappings into an index in memory, without saving it
+     *
+     * @param fromNamespace The Tiny v2 namespace the names passed in are in, ignored for SRG mappings
+     * @param toNamespace The Tiny v2 namespace to map names into, ignored for SRG mappings
+     */
+    public static IndexedMappingsProvider read(Reader mappings, String fromNamespace, String toNamespace) throws IOException {
+        BufferedReader reader = mappings instanceof BufferedReader ? (BufferedReader) mappings : new BufferedReader(mappings);
+        return new IndexedMappingsProvider(parse(reader, fromNamespace, toNamespace).build(0, 0, fromNamespace, toNamespace));
+    }
+
+    @Override
+    public String mapClassName(String className) {
+        Table table = this.classes;
+        for (int slot = hash(hash(0, className)) & table.mask; ; slot = (slot + 1) & table.mask) {
+            int entry = table.slot(slot);
+            if (entry < 0) {
+                return className;
+            }
+            if (stringEquals(table.get(entry, 0), className)) {
+                return string(table.get(entry, 1));
+            }
+        }
+    }
+
+    @Override
+    public String mapFieldName(String owner, String fieldName, String descriptor) {
+        // SRG fields have no descriptor, they match any descriptor
+        Table table = this.fields;
+        int withoutDescriptor = -1;
+        for (int slot = hash(hash(hash(0, owner), fieldName)) & table.mask; ; slot = (slot + 1) & table.mask) {
+            int entry = table.slot(slot);
+            if (entry < 0) {
+                return withoutDescriptor < 0 ? fieldName : string(withoutDescriptor);
+            }
+            if (stringEquals(table.get(entry, 0), owner) && stringEquals(table.get(entry, 1), fieldName)) {
+                int desc = table.get(entry, 2);
+                if (desc < 0) {
+                    withoutDescriptor = table.get(entry, 3);
+                } else if (stringEquals(desc, descriptor)) {
+                    return string(table.get(entry, 3));
+                }
+            }
+        }
+    }
+
+    @Override
+    public String mapMethodName(String owner, String methodName, String descriptor) {
+        Table table = this.methods;
+        for (int slot = hash(hash(hash(hash(0, owner), methodName), descriptor)) & table.mask; ; slot = (slot + 1) & table.mask) {
+            int entry = table.slot(slot);
+            if (entry < 0) {
+                return methodName;
+            }
+            if (stringEquals(table.get(entry, 0), owner) && stringEquals(table.get(entry, 1), methodName) && stringEquals(table.get(entry, 2), descriptor)) {
+                return string(table.get(entry, 3));
+            }
+        }
+    }
+
+    public int classCount() {
+        return this.classes.entryCount;
+    }
+
+    public int fieldCount() {
+        return this.fields.entryCount;
+    }
+
+    public int methodCount() {
+        return this.methods.entryCount;
+    }
+
+    private boolean isIndexOf(long sourceSize, long sourceModified, String fromNamespace, String toNamespace) {
+        return this.buffer.getLong(8) == sourceSize && this.buffer.getLong(16) == sourceModified
+                && stringEquals(this.buffer.getInt(24), fromNamespace) && stringEquals(this.buffer.getInt(28), toNamespace);
+    }
+
+    private boolean stringEquals(int id, String s) {
+        int start = this.buffer.getInt(this.stringOffsets + id * 4);
+        int length = this.buffer.getInt(this.stringOffsets + id * 4 + 4) - start;
+        if (length != s.length()) {
+            return false;
+        }
+        int position = this.chars + start * 2;
+        for (int i = 0; i < length; i++) {
+            if (this.buffer.getChar(position + i * 2) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String string(int id) {
+        String string = this.strings[id];
+        if (string == null) {
+            int start = this.buffer.getInt(this.stringOffsets + id * 4);
+            char[] value = new char[this.buffer.getInt(this.stringOffsets + id * 4 + 4) - start];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = this.buffer.getChar(this.chars + (start + i) * 2);
+            }
+            this.strings[id] = string = new String(value);
+        }
+        return string;
+    }
+
+    /**
+     * Adds one part of a key to the hash. Used the same way when building and querying, so the parts don't need to be concatenated.
+     */
+    private static int hash(int hash, String part) {
+        for (int i = 0, length = part.length(); i < length; i++) {
+            hash = 31 * hash + part.charAt(i);
+        }
+        // separates the parts, so "ab" + "c" and "a" + "bc" hash differently
+        return 31 * hash + 1;
+    }
+
+    private static int hash(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        return hash ^ (hash >>> 13);
+    }
+
+    private static Builder parse(BufferedReader reader, String fromNamespace, String toNamespace) throws IOException {
+        reader.mark(64);
+        String header = reader.readLine();
+        if (header == null) {
+            return new Builder();
+        }
+        if (header.startsWith("tiny\t")) {
+            return parseTinyV2(header, reader, fromNamespace, toNamespace);
+        }
+        reader.reset();
+        return parseSrg(reader);
+    }
+
+    private static Builder parseTinyV2(String header, BufferedReader reader, String fromNamespace, String toNamespace) throws IOException {
+        String[] headerParts = header.split("\t", -1);
+        if (headerParts.length < 5 || !headerParts[1].equals("2")) {
+            throw new IOException(String.format("Unsupported tiny mappings header \"%s\", only Tiny v2 is supported", header));
+        }
+        List<String> namespaces = Arrays.asList(headerParts).subList(3, headerParts.length);
+        int from = namespaces.indexOf(fromNamespace);
+        int to = namespaces.indexOf(toNamespace);
+        if (from < 0 || to < 0) {
+            throw new IllegalArgumentException(String.format("Namespaces %s and %s must both be in the mappings, found %s", fromNamespace, toNamespace,
+                    namespaces));
+        }
+
+        // member descriptors are in the first namespace, collect all classes before translating them
+        List<String[]> classes = new ArrayList<>();
+        List<String[]> members = new ArrayList<>(); // kind, owner index, desc, names...
+        boolean escapedNames = false;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int depth = 0;
+            while (depth < line.length() && line.charAt(depth) == '\t') {
+                depth++;
+            }
+            String[] parts = line.substring(depth).split("\t", -1);
+            if (escapedNames) {
+                for (int i = 1; i < parts.length; i++) {
+                    parts[i] = unescape(parts[i]);
+                }
+            }
+            if (depth == 0 && parts[0].equals("c")) {
+                classes.add(Arrays.copyOfRange(parts, 1, parts.length));
+            } else if (depth == 1 && classes.isEmpty() && parts[0].equals("escaped-names")) {
+                escapedNames = true;
+            } else if (depth == 1 && !classes.isEmpty() && (parts[0].equals("f") || parts[0].equals("m"))) {
+                String[] member = new String[parts.length + 1];
+                member[0] = parts[0];
+                member[1] = Integer.toString(classes.size() - 1);
+                System.arraycopy(parts, 1, member, 2, parts.length - 1);
+                members.add(member);
+            }
+            // params, locals and comments aren't needed
+        }
+
+        Builder builder = new Builder();
+        Map<String, String> descriptorClasses = new HashMap<>();
+        for (String[] names : classes) {
+            String fromName = name(names, from, names[0]);
+            descriptorClasses.put(names[0], fromName);
+            builder.addClass(fromName.replace('/', '.'), name(names, to, fromName).replace('/', '.'));
+        }
+        for (String[] member : members) {
+            String[] owner = classes.get(Integer.parseInt(member[1]));
+            String ownerName = name(owner, from, owner[0]).replace('/', '.');
+            String desc = from == 0 ? member[2] : mapDescriptor(member[2], descriptorClasses);
+            String[] names = Arrays.copyOfRange(member, 3, member.length);
+            String fromName = name(names, from, names[0]);
+            String toName = name(names, to, fromName);
+            if (member[0].equals("f")) {
+                builder.addField(ownerName, fromName, desc, toName);
+            } else {
+                builder.addMethod(ownerName, fromName, desc, toName);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * @return The name in the namespace, or the fallback if the mappings leave it empty
+     */
+    private static String name(String[] names, int namespace, String fallback) {
+        return namespace < names.length && !names[namespace].isEmpty() ? names[namespace] : fallback;
+    }
+
+    private static String unescape(String name) {
+        if (name.indexOf('\\') < 0) {
+            return name;
+        }
+        StringBuilder unescaped = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\\' && i + 1 < name.length()) {
+                switch (name.charAt(++i)) {
+                    case 'n': c = '\n'; break;
+                    case 'r': c = '\r'; break;
+                    case 't': c = '\t'; break;
+                    case '0': c = '\0'; break;
+                    default: c = name.charAt(i);
+                }
+            }
+            unescaped.append(c);
+        }
+        return unescaped.toString();
+    }
+
+    private static String mapDescriptor(String desc, Map<String, String> classes) {
+        StringBuilder mapped = new StringBuilder(desc.length());
+        for (int i = 0; i < desc.length(); i++) {
+            char c = desc.charAt(i);
+            mapped.append(c);
+            if (c == 'L') {
+                int end = desc.indexOf(';', i);
+                String className = desc.substring(i + 1, end);
+                mapped.append(classes.getOrDefault(className, className)).append(';');
+                i = end;
+            }
+        }
+        return mapped.toString();
+    }
+
+    private static Builder parseSrg(BufferedReader reader) throws IOException {
+        Builder builder = new Builder();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("PK:")) {
+                continue;
+            }
+            String[] parts = line.split(" ");
+            switch (parts[0]) {
+                case "CL:":
+                    checkSrgLine(line, parts, 3);
+                    builder.addClass(parts[1].replace('/', '.'), parts[2].replace('/', '.'));
+                    break;
+                case "FD:": {
+                    checkSrgLine(line, parts, 3);
+                    int separator = parts[1].lastIndexOf('/');
+                    builder.addField(parts[1].substring(0, separator).replace('/', '.'), parts[1].substring(separator + 1), null,
+                            parts[2].substring(parts[2].lastIndexOf('/') + 1));
+                    break;
+                }
+                case "MD:": {
+                    checkSrgLine(line, parts, 5);
+                    int separator = parts[1].lastIndexOf('/');
+                    builder.addMethod(parts[1].substring(0, separator).replace('/', '.'), parts[1].substring(separator + 1), parts[2],
+                            parts[3].substring(parts[3].lastIndexOf('/') + 1));
+                    break;
+                }
+                default:
+                    throw new IOException(String.format("Unknown SRG line \"%s\"", line));
+            }
+        }
+        return builder;
+    }
+
+    private static void checkSrgLine(String line, String[] parts, int expectedParts) throws IOException {
+        if (parts.length != expectedParts) {
+            throw new IOException(String.format("Invalid SRG line \"%s\"", line));
+        }
+    }
+
+    /**
+     * One hash table in the index: the capacity and entry count, the slots holding entry ids (or -1 if empty), then the entries
+     */
+    private static final class Table {
+        private final ByteBuffer buffer;
+        private final int width;
+        private final int mask;
+        private final int entryCount;
+        private final int slots;
+        private final int entries;
+        private final int end;
+
+        Table(ByteBuffer buffer, int position, int width) throws IOException {
+            this.buffer = buffer;
+            this.width = width;
+            int capacity = buffer.getInt(position);
+            if (Integer.bitCount(capacity) != 1) {
+                throw new IOException("Corrupt mappings index");
+            }
+            this.mask = capacity - 1;
+            this.entryCount = buffer.getInt(position + 4);
+            this.slots = position + 8;
+            this.entries = this.slots + capacity * 4;
+            this.end = this.entries + this.entryCount * width * 4;
+        }
+
+        int slot(int slot) {
+            return this.buffer.getInt(this.slots + slot * 4);
+        }
+
+        int get(int entry, int column) {
+            return this.buffer.getInt(this.entries + (entry * this.width + column) * 4);
+        }
+    }
+
+    private static final class Builder {
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Set<String> keys = new HashSet<>();
+        private final List<int[]> classes = new ArrayList<>();
+        private final List<int[]> fields = new ArrayList<>();
+        private final List<int[]> methods = new ArrayList<>();
+        private final List<Integer> classHashes = new ArrayList<>();
+        private final List<Integer> fieldHashes = new ArrayList<>();
+        private final List<Integer> methodHashes = new ArrayList<>();
+
+        void addClass(String src, String dst) {
+            // unchanged names don't need an entry, and the first mapping for a name wins
+            if (!src.equals(dst) && this.keys.add("c " + src)) {
+                this.classes.add(new int[] { id(src), id(dst) });
+                this.classHashes.add(hash(hash(0, src)));
+            }
+        }
+
+        void addField(String owner, String name, String desc, String dst) {
+            if (!name.equals(dst) && this.keys.add("f " + owner + ' ' + name + ' ' + desc)) {
+                this.fields.add(new int[] { id(owner), id(name), desc == null ? -1 : id(desc), id(dst) });
+                this.fieldHashes.add(hash(hash(hash(0, owner), name)));
+            }
+        }
+
+        void addMethod(String owner, String name, String desc, String dst) {
+            if (!name.equals(dst) && this.keys.add("m " + owner + ' ' + name + ' ' + desc)) {
+                this.methods.add(new int[] { id(owner), id(name), id(desc), id(dst) });
+                this.methodHashes.add(hash(hash(hash(hash(0, owner), name), desc)));
+            }
+        }
+
+        private int id(String string) {
+            return this.stringIds.computeIfAbsent(string, s -> {
+                this.strings.add(s);
+                return this.strings.size() - 1;
+            });
+        }
+
+        ByteBuffer build(long sourceSize, long sourceModified, String fromNamespace, String toNamespace) {
+            int fromId = id(fromNamespace);
+            int toId = id(toNamespace);
+            int charCount = 0;
+            for (String string : this.strings) {
+                charCount += string.length();
+            }
+            int size = 40 + (this.strings.size() + 1) * 4 + charCount * 2
+                    + tableSize(this.classes.size(), CLASS_WIDTH) + tableSize(this.fields.size(), MEMBER_WIDTH) + tableSize(this.methods.size(), MEMBER_WIDTH);
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceSize).putLong(sourceModified).putInt(fromId).putInt(toId);
+            buffer.putInt(this.strings.size()).putInt(40);
+            int offset = 0;
+            for (String string : this.strings) {
+                buffer.putInt(offset);
+                offset += string.length();
+            }
+            buffer.putInt(offset);
+            for (String string : this.strings) {
+                for (int i = 0; i < string.length(); i++) {
+                    buffer.putChar(string.charAt(i));
+                }
+            }
+            putTable(buffer, this.classes, this.classHashes);
+            putTable(buffer, this.fields, this.fieldHashes);
+            putTable(buffer, this.methods, this.methodHashes);
+            buffer.flip();
+            return buffer;
+        }
+
+        private static int capacity(int entryCount) {
+            // at most half full, so probe sequences stay short
+            return Math.max(2, Integer.highestOneBit(Math.max(1, entryCount * 2 - 1)) << 1);
+        }
+
+        private static int tableSize(int entryCount, int width) {
+            return 8 + capacity(entryCount) * 4 + entryCount * width * 4;
+        }
+
+        private static void putTable(ByteBuffer buffer, List<int[]> entries, List<Integer> hashes) {
+            int capacity = capacity(entries.size());
+            int[] slots = new int[capacity];
+            Arrays.fill(slots, -1);
+            for (int i = 0; i < entries.size(); i++) {
+                int slot = hashes.get(i) & (capacity - 1);
+                while (slots[slot] >= 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                slots[slot] = i;
+            }
+            buffer.putInt(capacity).putInt(entries.size());
+            for (int slot : slots) {
+                buffer.putInt(slot);
+            }
+            for (int[] entry : entries) {
+                for (int value : entry) {
+                    buffer.putInt(value);
+                }
+            }
+        }
+    }
+}
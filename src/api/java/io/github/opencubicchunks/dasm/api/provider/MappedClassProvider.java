@@ -0,0 +1,246 @@
+package io.github.opencubicchunks.dasm.api.provider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/** <pre>{@code}</pre>
+ * A {@link ClassProvider} reading from a classpath of jar files and directories, searched in order.
+ * <p/>
+ * Jar files are memory-mapped once and their central directory is indexed up front, so looking up a class is a single hash lookup.
+ * Stored (uncompressed) entries are returned by {@link #classBuffer(String)} as read-only views into the mapping, without copying.
+ * Deflated entries are inflated on each request.
+ * <p/>
+ * Classes in directories are read from disk on each request.
+ */
+public class MappedClassProvider implements ClassProvider {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_HEADER_SIGNATURE = 0x06054b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final List<Root> roots = new ArrayList<>();
+
+    /**
+     * @param classpath The jar files and directories to read classes from, in lookup order
+     */
+    public MappedClassProvider(Collection<Path> classpath) throws IOException {
+        for (Path path : classpath) {
+            if (Files.isDirectory(path)) {
+                this.roots.add(new DirectoryRoot(path));
+            } else {
+                this.roots.add(new JarRoot(path));
+            }
+        }
+    }
+
+    @Override
+    public byte[] classBytes(String className) {
+        ByteBuffer buffer = classBuffer(className);
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public ByteBuffer classBuffer(String className) {
+        String entryName = className.replace('.', '/') + ".class";
+        try {
+            for (Root root : this.roots) {
+                ByteBuffer buffer = root.read(entryName);
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Couldn't read class %s", className), e);
+        }
+        throw new IllegalArgumentException(String.format("Class %s not found", className));
+    }
+
+    private interface Root {
+        /**
+         * @return The entry's content, or null if it isn't present in this root
+         */
+        ByteBuffer read(String entryName) throws IOException;
+    }
+
+    private static final class DirectoryRoot implements Root {
+        private final Path directory;
+
+        DirectoryRoot(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public ByteBuffer read(String entryName) throws IOException {
+            Path file = this.directory.resolve(entryName);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            return ByteBuffer.wrap(Files.readAllBytes(file));
+        }
+    }
+
+    private static final class JarRoot implements Root {
+        private final Path path;
+        private final ByteBuffer mapped;
+        // entry name -> index into the parallel arrays below
+        private final Map<String, Integer> entryIndex = new HashMap<>();
+        private final int[] localHeaderOffsets;
+        private final int[] compressedSizes;
+        private final int[] uncompressedSizes;
+        private final byte[] methods;
+
+        JarRoot(Path path) throws IOException {
+            this.path = path;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException(String.format("Jar %s is too large to be mapped", path));
+                }
+                // the mapping stays valid after the channel is closed
+                this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            int endHeader = findEndHeader();
+            int entryCount = this.mapped.getShort(endHeader + 10) & 0xFFFF;
+            long centralDirectoryOffset = this.mapped.getInt(endHeader + 16) & 0xFFFFFFFFL;
+            if (entryCount == 0xFFFF || centralDirectoryOffset == 0xFFFFFFFFL) {
+                throw new IOException(String.format("Zip64 jar %s is not supported", path));
+            }
+
+            this.localHeaderOffsets = new int[entryCount];
+            this.compressedSizes = new int[entryCount];
+            this.uncompressedSizes = new int[entryCount];
+            this.methods = new byte[entryCount];
+
+            int position = (int) centralDirectoryOffset;
+            int classCount = 0;
+            for (int i = 0; i < entryCount; i++) {
+                if (this.mapped.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                    throw new IOException(String.format("Invalid central directory entry at offset %d in %s", position, path));
+                }
+                int method = this.mapped.getShort(position + 10) & 0xFFFF;
+                int compressedSize = this.mapped.getInt(position + 20);
+                int uncompressedSize = this.mapped.getInt(position + 24);
+                int nameLength = this.mapped.getShort(position + 28) & 0xFFFF;
+                int extraLength = this.mapped.getShort(position + 30) & 0xFFFF;
+                int commentLength = this.mapped.getShort(position + 32) & 0xFFFF;
+                int localHeaderOffset = this.mapped.getInt(position + 42);
+
+                String name = readName(position + 46, nameLength);
+                if (name.endsWith(".class") && (method == METHOD_STORED || method == METHOD_DEFLATED)) {
+                    // keep the first entry if a name is duplicated
+                    if (this.entryIndex.putIfAbsent(name, classCount) == null) {
+                        this.localHeaderOffsets[classCount] = localHeaderOffset;
+                        this.compressedSizes[classCount] = compressedSize;
+                        this.uncompressedSizes[classCount] = uncompressedSize;
+                        this.methods[classCount] = (byte) method;
+                        classCount++;
+                    }
+                }
+                position += 46 + nameLength + extraLength + commentLength;
+            }
+        }
+
+        private int findEndHeader() throws IOException {
+            int limit = Math.max(0, this.mapped.capacity() - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+            for (int position = this.mapped.capacity() - END_HEADER_SIZE; position >= limit; position--) {
+                if (this.mapped.getInt(position) == END_HEADER_SIGNATURE) {
+                    return position;
+                }
+            }
+            throw new IOException(String.format("No end of central directory record found in %s", this.path));
+        }
+
+        private String readName(int position, int length) {
+            // class entry names are ASCII in practice, avoid a decoder for the common case
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                byte b = this.mapped.get(position + i);
+                if (b < 0) {
+                    byte[] bytes = new byte[length];
+                    ByteBuffer duplicate = this.mapped.duplicate();
+                    duplicate.position(position);
+                    duplicate.get(bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+                chars[i] = (char) b;
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public ByteBuffer read(String entryName) throws IOException {
+            Integer index = this.entryIndex.get(entryName);
+            if (index == null) {
+                return null;
+            }
+            int localHeaderOffset = this.localHeaderOffsets[index];
+            if (this.mapped.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException(String.format("Invalid local header for %s in %s", entryName, this.path));
+            }
+            int nameLength = this.mapped.getShort(localHeaderOffset + 26) & 0xFFFF;
+            int extraLength = this.mapped.getShort(localHeaderOffset + 28) & 0xFFFF;
+            int dataStart = localHeaderOffset + 30 + nameLength + extraLength;
+
+            ByteBuffer data = this.mapped.duplicate();
+            data.position(dataStart);
+            data.limit(dataStart + this.compressedSizes[index]);
+            data = data.slice();
+
+            if (this.methods[index] == METHOD_STORED) {
+                return data.asReadOnlyBuffer();
+            }
+            return inflate(entryName, data, this.uncompressedSizes[index]);
+        }
+
+        private ByteBuffer inflate(String entryName, ByteBuffer compressed, int uncompressedSize) throws IOException {
+            // nowrap inflaters may need an extra dummy byte past the end of the input
+            byte[] input = new byte[compressed.remaining() + 1];
+            compressed.get(input, 0, input.length - 1);
+            byte[] output = new byte[uncompressedSize];
+
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(input);
+                int inflated = 0;
+                while (inflated < uncompressedSize && !inflater.finished()) {
+                    int count = inflater.inflate(output, inflated, uncompressedSize - inflated);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += count;
+                }
+                if (inflated != uncompressedSize) {
+                    throw new IOException(String.format("Truncated entry %s in %s", entryName, this.path));
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(String.format("Corrupt entry %s in %s", entryName, this.path), e);
+            } finally {
+                inflater.end();
+            }
+            return ByteBuffer.wrap(output);
+        }
+    }
+}
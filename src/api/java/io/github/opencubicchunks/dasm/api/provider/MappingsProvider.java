@@ -23,4 +23,57 @@ public interface MappingsProvider {
     String mapMethodName(String owner, String methodName, String descriptor);
 
     String mapClassName(String className);
+
+    /**
+     * Maps many field names in one call. Providers that can answer a batch faster than one name at a time should override this.
+     *
+     * @param owners The owner of each field
+     * @param fieldNames The name of each field
+     * @param descriptors The descriptor of each field
+     * @return The mapped name of each field, in the same order
+     */
+    default String[] mapFieldNames(String[] owners, String[] fieldNames, String[] descriptors) {
+        if (owners.length != fieldNames.length || descriptors.length != fieldNames.length) {
+            throw new IllegalArgumentException(String.format("Got %d owners, %d names and %d descriptors", owners.length, fieldNames.length,
+                    descriptors.length));
+        }
+        String[] mapped = new String[fieldNames.length];
+        for (int i = 0; i < mapped.length; i++) {
+            mapped[i] = mapFieldName(owners[i], fieldNames[i], descriptors[i]);
+        }
+        return mapped;
+    }
+
+    /**
+     * Maps many method names in one call. Providers that can answer a batch faster than one name at a time should override this.
+     *
+     * @param owners The owner of each method
+     * @param methodNames The name of each method
+     * @param descriptors The descriptor of each method
+     * @return The mapped name of each method, in the same order
+     */
+    default String[] mapMethodNames(String[] owners, String[] methodNames, String[] descriptors) {
+        if (owners.length != methodNames.length || descriptors.length != methodNames.length) {
+            throw new IllegalArgumentException(String.format("Got %d owners, %d names and %d descriptors", owners.length, methodNames.length,
+                    descriptors.length));
+        }
+        String[] mapped = new String[methodNames.length];
+        for (int i = 0; i < mapped.length; i++) {
+            mapped[i] = mapMethodName(owners[i], methodNames[i], descriptors[i]);
+        }
+        return mapped;
+    }
+
+    /**
+     * Maps many class names in one call. Providers that can answer a batch faster than one name at a time should override this.
+     *
+     * @return The mapped name of each class, in the same order
+     */
+    default String[] mapClassNames(String[] classNames) {
+        String[] mapped = new String[classNames.length];
+        for (int i = 0; i < mapped.length; i++) {
+            mapped[i] = mapClassName(classNames[i]);
+        }
+        return mapped;
+    }
 }
@@ -8,7 +8,7 @@ import java.lang.annotation.Target;
 /** <pre>{@code}</pre>
  * Marks that an {@code interface} should be used as a redirect set.
  * <p/>
- * The marked type must be an {@code interface} and must contain only {@code abstract class} definitions marked with {@link TypeRedirect}<br/>
+ * The marked type must be an {@code interface} and must contain only {@code abstract class} definitions marked with {@link TypeRedirect} or {@link PackageRedirect}<br/>
  * By convention the marked type's name should end with `Set`
  * <p/>
  * <h2>Example</h2>
@@ -0,0 +1,38 @@
+package io.github.opencubicchunks.dasm.api.redirect;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** <pre>{@code}</pre>
+ * Can be marked on any class within a redirect set {@code interface}, in place of {@link TypeRedirect}.<br/>
+ * Specifies that every class in the package {@link PackageRedirect#from()} and its subpackages should be redirected to the class with the same name
+ * in {@link PackageRedirect#to()}, eg: for a repackaged or vendored library.
+ * <p/>
+ * A {@link TypeRedirect} of a class takes priority over a package redirect of its package, and a package redirect of a subpackage takes priority over one
+ * of its parent. Package names are not mapped by the {@code MappingsProvider}.
+ * <p/>
+ * The marked class can't contain field or method redirects, use a {@link TypeRedirect} or {@link PartialRedirect} for the classes that need them.
+ * <p/>
+ * <h2>Example:</h2>
+ * Specifies that everything in {@code com.example.lib} should be redirected to the copy in {@code shadow.com.example.lib}
+ * <pre>{@code
+ *     @PackageRedirect(from = "com.example.lib", to = "shadow.com.example.lib")
+ *     abstract class ExampleLibToShadowRedirects {
+ *     }
+ * }</pre>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface PackageRedirect {
+    /**
+     * The fully qualified name of the package, eg: <code>com.example.lib</code>
+     */
+    String from();
+
+    /**
+     * The fully qualified name of the package, eg: <code>shadow.com.example.lib</code>
+     */
+    String to();
+}
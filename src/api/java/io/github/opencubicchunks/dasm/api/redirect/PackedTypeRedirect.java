@@ -0,0 +1,55 @@
+package io.github.opencubicchunks.dasm.api.redirect;
+
+import io.github.opencubicchunks.dasm.api.Ref;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** <pre>{@code}</pre>
+ * Can be marked on any class within a redirect set {@code interface}, in place of {@link TypeRedirect}.<br/>
+ * Specifies that a small immutable class {@link PackedTypeRedirect#from()} should be replaced by the primitive {@link PackedTypeRedirect#to()} it's packed
+ * into, so that transformed methods don't allocate it. Every use of the class is redirected to a static method of {@link PackedTypeRedirect#packer()}:
+ * <ul>
+ *     <li>{@code new From(args)} calls {@code pack(args)}</li>
+ *     <li>{@code from.method(args)} calls {@code method(from, args)}, and {@code From.staticMethod(args)} calls {@code staticMethod(args)}</li>
+ *     <li>{@code from.field} calls {@code field(from)}, and {@code From.STATIC_FIELD} reads the static field {@code STATIC_FIELD}</li>
+ * </ul>
+ * The class is replaced by the primitive in all descriptors of transformed methods, including those of the methods and fields they use, so any of those
+ * taking or returning the class need to be redirected as well.
+ * <p/>
+ * Packed values can't be null, compared by identity (which compares the packed values instead), synchronized on or used as an {@code Object}.
+ * Transforming a method that does any of these fails. Only target methods are packed, not whole class transforms.
+ * <p/>
+ * The marked class can't contain field or method redirects.
+ * <p/>
+ * <h2>Example:</h2>
+ * Specifies that {@code BlockPos} should be packed into a {@code long}, using the static methods of {@code PackedBlockPos}
+ * <pre>{@code
+ *     @PackedTypeRedirect(from = @Ref(BlockPos.class), to = long.class, packer = @Ref(PackedBlockPos.class))
+ *     abstract class BlockPosToLongRedirects {
+ *     }
+ *
+ *     public final class PackedBlockPos {
+ *         public static long pack(int x, int y, int z) { ... }
+ *         public static int getX(long pos) { ... }
+ *         public static long offset(long pos, int x, int y, int z) { ... }
+ *     }
+ * }</pre>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.CLASS)
+public @interface PackedTypeRedirect {
+    Ref from();
+
+    /**
+     * The primitive the class is packed into, {@code long.class} or {@code int.class}
+     */
+    Class<?> to();
+
+    /**
+     * The class declaring the static methods every use of the packed class is redirected to
+     */
+    Ref packer();
+}
@@ -8,14 +8,21 @@ import io.github.opencubicchunks.dasm.api.redirect.PartialRedirect;
 import io.github.opencubicchunks.dasm.api.transform.DasmRedirect;
 import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
 import io.github.opencubicchunks.dasm.api.transform.TransformFromClass;
+import io.github.opencubicchunks.dasm.profile.StartupProfile;
 import io.github.opencubicchunks.dasm.transformer.ClassField;
 import io.github.opencubicchunks.dasm.transformer.ClassMethod;
 import io.github.opencubicchunks.dasm.transformer.redirect.FieldRedirect;
 import io.github.opencubicchunks.dasm.transformer.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.PackageRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.PackedTypeRedirect;
 import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
 import io.github.opencubicchunks.dasm.transformer.redirect.TypeRedirect;
+import io.github.opencubicchunks.dasm.transformer.target.DependencyGraph;
+import io.github.opencubicchunks.dasm.transformer.target.TargetAnnotations;
 import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetIndex;
 import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import io.github.opencubicchunks.dasm.util.ClassReaders;
 import io.github.opencubicchunks.dasm.util.Pair;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Type;
@@ -25,26 +32,244 @@ import org.objectweb.asm.tree.*;
 import javax.annotation.Nullable;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
 import static org.objectweb.asm.Opcodes.ASM9;
 
-public class AnnotationParser {
+public class AnnotationParser implements AutoCloseable {
     private final ClassProvider classProvider;
     private final Map<Type, List<RedirectSet>> redirectSetsByType = new ConcurrentHashMap<>();
+    // Class nodes being fetched and parsed ahead of use, removed once used
+    private final Map<Type, CompletableFuture<ClassNode>> prefetchedClassNodes = new ConcurrentHashMap<>();
+    // Classes that have been read for resolving a set, prefetching them again would never be used
+    private final Set<Type> fetchedTypes = ConcurrentHashMap.newKeySet();
+    // Redirects target classes added to redirect sets, by target class name. Kept when the sets are dropped, and added back when they're parsed again
+    private final Map<String, Contributions> contributions = new ConcurrentHashMap<>();
 
     private final Type defaultSet;
+    @Nullable private final Executor prefetchExecutor;
+    private volatile boolean closed;
+    @Nullable private volatile StartupProfile startupProfile;
 
     public AnnotationParser(ClassProvider classProvider, Class<?> defaultRedirectSet) {
+        this(classProvider, defaultRedirectSet, null);
+    }
+
+    /**
+     * @param prefetchExecutor If not null, all classes a redirect set consists of (its inner classes and inherited sets) are fetched and parsed in parallel
+     *                         on this executor as soon as the set is requested. Otherwise, they are fetched one at a time on the calling thread.
+     */
+    public AnnotationParser(ClassProvider classProvider, Class<?> defaultRedirectSet, @Nullable Executor prefetchExecutor) {
+        this(classProvider, Type.getType(defaultRedirectSet), prefetchExecutor);
+    }
+
+    /**
+     * For when the default redirect set class isn't loaded, see {@link #AnnotationParser(ClassProvider, Class, Executor)}
+     */
+    public AnnotationParser(ClassProvider classProvider, Type defaultRedirectSet, @Nullable Executor prefetchExecutor) {
         this.classProvider = classProvider;
-        this.defaultSet = Type.getType(defaultRedirectSet);
+        this.defaultSet = defaultRedirectSet;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * @param startupProfile The profile to record resolved redirect sets in, or null to stop recording
+     */
+    public void setStartupProfile(@Nullable StartupProfile startupProfile) {
+        this.startupProfile = startupProfile;
+    }
+
+    public Type defaultRedirectSet() {
+        return this.defaultSet;
+    }
+
+    /**
+     * @return The redirect set declared by the given class, without the sets it inherits
+     */
+    public RedirectSet getRedirectSet(Type setType) {
+        ensureOpen();
+        List<RedirectSet> redirectSets = getRedirectSetsForType(setType);
+        return redirectSets.get(redirectSets.size() - 1);
+    }
+
+    /**
+     * Drops all parsed redirect sets and prefetched classes, and trims the class provider. The parser stays usable, anything needed later is parsed again.
+     * Redirects added to the sets by {@link #buildClassTarget} are kept, and added back to the sets when they're parsed again.
+     */
+    public void trim() {
+        this.redirectSetsByType.clear();
+        this.prefetchedClassNodes.values().forEach(future -> future.cancel(false));
+        this.prefetchedClassNodes.clear();
+        this.fetchedTypes.clear();
+        this.classProvider.trim();
+    }
+
+    /**
+     * Drops the redirect set and every set inheriting from it, so they are parsed again from the class provider the next time they're used.
+     * Redirects added to these sets by {@link #buildClassTarget} are kept, and added back to the sets when they're parsed again, so the classes
+     * contributing them (see {@link DependencyGraph#recordContributions}) don't have to be built again first. Use {@link #removeContributions} before
+     * building such a class again, so that redirects it no longer adds are dropped.
+     *
+     * @param setClassName The fully qualified name of the redirect set eg: <code>java.lang.String</code>
+     */
+    public void invalidateRedirectSet(String setClassName) {
+        Type setType = Type.getType(classNameToDescriptor(setClassName));
+        dropRedirectSet(setClassName);
+        evictPrefetched(setType);
+        // the set and its nested classes are read again, so they may be prefetched again
+        String nestedPrefix = setType.getInternalName() + '$';
+        this.fetchedTypes.removeIf(type -> type.equals(setType) || type.getInternalName().startsWith(nestedPrefix));
+        this.classProvider.invalidate(setClassName);
+    }
+
+    /**
+     * Forgets the redirects the target class added to redirect sets in {@link #buildClassTarget}. The sets they were added to are dropped, and
+     * parsed again without them the next time they're used.
+     *
+     * @param targetClassName The fully qualified name of the target class eg: <code>java.lang.String</code>
+     */
+    public void removeContributions(String targetClassName) {
+        Contributions removed = this.contributions.remove(targetClassName);
+        if (removed == null) {
+            return;
+        }
+        removed.fieldRedirects.keySet().forEach(this::dropRedirectSet);
+        removed.methodRedirects.keySet().forEach(this::dropRedirectSet);
+    }
+
+    /**
+     * Drops all retained state, including redirects added to the sets by target classes, see {@link #trim()}. Call once the last
+     * {@link TransformFrom.ApplicationStage} of the last target class has been applied, any further use of the parser throws.
+     */
+    @Override public void close() {
+        this.closed = true;
+        trim();
+        this.contributions.clear();
+    }
+
+    /**
+     * Drops the parsed redirect set and every set inheriting from it
+     */
+    private void dropRedirectSet(String setClassName) {
+        Type setType = Type.getType(classNameToDescriptor(setClassName));
+        this.redirectSetsByType.entrySet().removeIf(entry -> entry.getKey().equals(setType)
+                || entry.getValue().stream().anyMatch(set -> set.getName().equals(setClassName)));
+    }
+
+    /**
+     * @return The number of redirect sets, redirects and prefetched classes currently retained, by component. See {@link #retainedBytes()} for their size
+     */
+    public Map<String, Long> retainedCounts() {
+        long typeRedirects = 0, packageRedirects = 0, packedTypeRedirects = 0, fieldRedirects = 0, methodRedirects = 0;
+        Set<RedirectSet> sets = parsedRedirectSets();
+        for (RedirectSet set : sets) {
+            typeRedirects += set.typeRedirectCount();
+            packageRedirects += set.packageRedirectCount();
+            packedTypeRedirects += set.packedTypeRedirectCount();
+            fieldRedirects += set.fieldRedirectCount();
+            methodRedirects += set.methodRedirectCount();
+        }
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("redirectSets", (long) sets.size());
+        counts.put("typeRedirects", typeRedirects);
+        counts.put("packageRedirects", packageRedirects);
+        counts.put("packedTypeRedirects", packedTypeRedirects);
+        counts.put("fieldRedirects", fieldRedirects);
+        counts.put("methodRedirects", methodRedirects);
+        long contributedRedirects = 0;
+        for (Contributions contributions : this.contributions.values()) {
+            contributedRedirects += contributedCount(contributions.fieldRedirects) + contributedCount(contributions.methodRedirects);
+        }
+        counts.put("contributedRedirects", contributedRedirects);
+        counts.put("prefetchedClasses", (long) this.prefetchedClassNodes.size());
+        return counts;
+    }
+
+    /**
+     * @return The estimated size of the state currently retained in bytes, by component
+     */
+    public Map<String, Long> retainedBytes() {
+        long redirectSetBytes = 0;
+        for (RedirectSet set : parsedRedirectSets()) {
+            redirectSetBytes += set.retainedBytes();
+        }
+
+        Map<String, Long> bytes = new LinkedHashMap<>();
+        bytes.put("redirectSets", redirectSetBytes);
+        bytes.put("classProvider", this.classProvider.retainedBytes());
+        return bytes;
+    }
+
+    private Set<RedirectSet> parsedRedirectSets() {
+        // the same set is stored under every type that inherits it, count it once
+        Set<RedirectSet> sets = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.redirectSetsByType.values().forEach(sets::addAll);
+        return sets;
+    }
+
+    private static int contributedCount(Map<String, ? extends Set<?>> contributed) {
+        int count = 0;
+        for (Set<?> redirects : contributed.values()) {
+            count += redirects.size();
+        }
+        return count;
+    }
+
+    private void ensureOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("AnnotationParser is closed");
+        }
     }
 
     public void findRedirectSets(String targetClassName, ClassNode targetClass, Set<RedirectSet> redirectSets) {
+        ensureOpen();
+        List<Type> sets = dasmRedirectSetTypes(targetClass);
+        if (sets != null) {
+            addRedirectSets(targetClassName, sets, redirectSets);
+        }
+    }
+
+    /**
+     * Same as {@link #findRedirectSets(String, ClassNode, Set)}, using the {@code @DasmRedirect} data from a {@link TargetIndex} instead of the class itself
+     */
+    public void findRedirectSets(String targetClassName, TargetIndex.Entry indexEntry, Set<RedirectSet> redirectSets) {
+        ensureOpen();
+        if (indexEntry.redirectSets() != null) {
+            addRedirectSets(targetClassName, indexEntry.redirectSets(), redirectSets);
+        }
+    }
+
+    private void addRedirectSets(String targetClassName, List<Type> sets, Set<RedirectSet> redirectSets) {
+        for (Type set : sets) {
+            prefetchRedirectSet(set == null ? this.defaultSet : set);
+        }
+        for (Type set : sets) {
+            if (set == null) {
+                redirectSets.addAll(getRedirectSetsForType(this.defaultSet));
+                continue;
+            }
+            List<RedirectSet> redirectSet = getRedirectSetsForType(set);
+            if (redirectSet == null) {
+                throw new IllegalArgumentException("No redirect set " + set + ", targetClass=" + targetClassName);
+            }
+            redirectSets.addAll(redirectSet);
+        }
+    }
+
+    /**
+     * @return The redirect sets listed in the class' {@code @DasmRedirect}, where null stands for the default set,
+     * or null if the class isn't marked with {@code @DasmRedirect}
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable static List<Type> dasmRedirectSetTypes(ClassNode targetClass) {
         if (targetClass.invisibleAnnotations == null) {
-            return;
+            return null;
         }
         for (AnnotationNode ann : targetClass.invisibleAnnotations) {
             if (!ann.desc.equals(classToDescriptor(DasmRedirect.class))) {
@@ -57,8 +282,7 @@ public class AnnotationParser {
             // or a List of values of one of the preceding types. The list may be null if there is no name value pair.
             List<Object> values = ann.values;
             if (values == null) {
-                redirectSets.addAll(getRedirectSetsForType(this.defaultSet));
-                continue;
+                return Collections.singletonList(null);
             }
             List<Type> sets = null;
             for (int i = 0, valuesSize = values.size(); i < valuesSize; i += 2) {
@@ -69,17 +293,11 @@ public class AnnotationParser {
                 }
             }
             if (sets == null) {
-                redirectSets.addAll(getRedirectSetsForType(this.defaultSet));
-                continue;
-            }
-            for (Type set : sets) {
-                List<RedirectSet> redirectSet = getRedirectSetsForType(set);
-                if (redirectSet == null) {
-                    throw new IllegalArgumentException("No redirect set " + set + ", targetClass=" + targetClassName);
-                }
-                redirectSets.addAll(redirectSet);
+                return Collections.singletonList(null);
             }
+            return sets;
         }
+        return null;
     }
 
     @Nullable private Type getNewOwner(Type currentClass, Type newOwner) {
@@ -93,22 +311,32 @@ public class AnnotationParser {
         if (targetClass.invisibleAnnotations == null) {
             return;
         }
-        for (AnnotationNode ann : targetClass.invisibleAnnotations) {
-            if (!ann.desc.equals(classToDescriptor(TransformFromClass.class)) || ann.values == null) {
-                continue;
-            }
+        buildClassTarget(targetClass, parseTargetAnnotations(targetClass), classTarget, stage, methodPrefix);
+    }
 
-            Map<String, Object> values = getAnnotationValues(ann, TransformFromClass.class);
+    /**
+     * Decodes all dasm annotations of a class. The result can be passed to
+     * {@link #buildClassTarget(ClassNode, TargetAnnotations, TargetClass, TransformFrom.ApplicationStage, String)} for every stage,
+     * so that the annotations are only decoded once.
+     */
+    public static TargetAnnotations parseTargetAnnotations(ClassNode targetClass) {
+        Map<TransformFrom.ApplicationStage, List<Type>> wholeClassSources = new EnumMap<>(TransformFrom.ApplicationStage.class);
+        if (targetClass.invisibleAnnotations != null) {
+            for (AnnotationNode ann : targetClass.invisibleAnnotations) {
+                if (!ann.desc.equals(classToDescriptor(TransformFromClass.class)) || ann.values == null) {
+                    continue;
+                }
 
-            @SuppressWarnings("unchecked") Type srcClass = parseRefAnnotation((Map<String, Object>) values.get("value"));
-            TransformFrom.ApplicationStage requestedStage = (TransformFrom.ApplicationStage) values.get("stage");
+                Map<String, Object> values = getAnnotationValues(ann, TransformFromClass.class);
 
-            if (stage != requestedStage) {
-                continue;
+                @SuppressWarnings("unchecked") Type srcClass = parseRefAnnotation((Map<String, Object>) values.get("value"));
+                TransformFrom.ApplicationStage requestedStage = parseStage(values.get("stage"));
+
+                wholeClassSources.computeIfAbsent(requestedStage, s -> new ArrayList<>()).add(srcClass);
             }
-            classTarget.targetWholeClass(srcClass);
         }
 
+        List<TargetAnnotations.FieldToSets> fieldsToSets = new ArrayList<>();
         targetClass.fields.forEach(fieldNode -> {
             AnnotationNode annotation = getAnnotationIfPresent(fieldNode.invisibleAnnotations, AddFieldToSets.class);
             if (annotation == null) {
@@ -124,19 +352,10 @@ public class AnnotationParser {
 
             @SuppressWarnings("unchecked") List<Type> sets = (List<Type>) values.get("sets");
 
-            sets.forEach(set -> {
-                RedirectSet directRedirectSetForType = getDirectRedirectSetForType(set);
-                if (directRedirectSetForType == null) {
-                    throw new IllegalArgumentException(String.format("Couldn't find redirect set for class %s", set.getClassName()));
-                }
-                directRedirectSetForType.addRedirect(new FieldRedirect(
-                        new ClassField(owner, fieldName, Type.getType(fieldType.getDescriptor())),
-                        getNewOwner(Type.getType(classNameToDescriptor(classTarget.getClassName())), owner),
-                        fieldNode.name
-                ));
-            });
+            fieldsToSets.add(new TargetAnnotations.FieldToSets(fieldNode.name, owner, fieldName, Type.getType(fieldType.getDescriptor()), sets));
         });
 
+        List<TargetAnnotations.MethodToSets> methodsToSets = new ArrayList<>();
         targetClass.methods.forEach(methodNode -> {
             AnnotationNode annotation = getAnnotationIfPresent(methodNode.invisibleAnnotations, AddMethodToSets.class);
             if (annotation == null) {
@@ -150,27 +369,11 @@ public class AnnotationParser {
 
             @SuppressWarnings("unchecked") List<Type> sets = (List<Type>) values.get("sets");
 
-            sets.forEach(set -> {
-                RedirectSet directRedirectSetForType = getDirectRedirectSetForType(set);
-                if (directRedirectSetForType == null) {
-                    throw new IllegalArgumentException(String.format("Couldn't find redirect set for class %s", set.getClassName()));
-                }
-                directRedirectSetForType.addRedirect(new MethodRedirect(
-                        new ClassMethod(
-                                owner,
-                                new Method(methodParts.first, methodParts.second)
-                        ),
-                        getNewOwner(Type.getType(classNameToDescriptor(classTarget.getClassName())), owner),
-                        methodNode.name,
-                        (targetClass.access & ACC_INTERFACE) != 0
-                ));
-            });
+            methodsToSets.add(new TargetAnnotations.MethodToSets(methodNode.name, owner, new Method(methodParts.first, methodParts.second), sets));
         });
 
-
-
-        for (Iterator<MethodNode> iterator = targetClass.methods.iterator(); iterator.hasNext(); ) {
-            MethodNode method = iterator.next();
+        Map<TransformFrom.ApplicationStage, List<TargetAnnotations.MethodTransform>> methodTransforms = new EnumMap<>(TransformFrom.ApplicationStage.class);
+        for (MethodNode method : targetClass.methods) {
             if (method.invisibleAnnotations == null) {
                 continue;
             }
@@ -179,58 +382,177 @@ public class AnnotationParser {
                 if (!ann.desc.equals(classToDescriptor(TransformFrom.class))) {
                     continue;
                 }
-                iterator.remove();
 
                 Map<String, Object> values = getAnnotationValues(ann, TransformFrom.class);
 
-                TransformFrom.ApplicationStage requestedStage = (TransformFrom.ApplicationStage) values.get("stage");
-                if (stage != requestedStage) {
-                    continue;
-                }
+                TransformFrom.ApplicationStage requestedStage = parseStage(values.get("stage"));
 
-                Pair<String, String> methodSig = parseMethodSigAnnotation((Map<String, Object>) values.get("value"));
+                @SuppressWarnings("unchecked") Pair<String, String> methodSig = parseMethodSigAnnotation((Map<String, Object>) values.get("value"));
                 boolean makeSyntheticAccessor = (boolean) values.get("makeSyntheticAccessor");
 
                 @SuppressWarnings("unchecked") Type srcOwner = parseRefAnnotation((Map<String, Object>) values.get("copyFrom"));
 
-                @SuppressWarnings("unchecked") List<RedirectSet> usedRedirectSets = ((List<Type>) values.get("useRedirectSets")).stream()
-                        .flatMap(setType -> getRedirectSetsForType(setType).stream())
-                        .collect(Collectors.toList());
+                @SuppressWarnings("unchecked") List<Type> useRedirectSets = (List<Type>) values.get("useRedirectSets");
+                @SuppressWarnings("unchecked") List<Type> addToRedirectSets = (List<Type>) values.get("addToRedirectSets");
 
-                ClassMethod classMethod = new ClassMethod(
-                        Type.getType(classNameToDescriptor(classTarget.getClassName())),
-                        new Method(methodSig.first, methodSig.second)
-                );
-                Type methodOwner = srcOwner != null ? srcOwner : classMethod.owner;
-                boolean isDstInterface = (targetClass.access & ACC_INTERFACE) != 0;
-
-                Type newOwner = getNewOwner(Type.getType(classNameToDescriptor(classTarget.getClassName())), methodOwner);
-                //noinspection unchecked
-                ((List<Type>) values.get("addToRedirectSets")).stream()
-                        .flatMap(setType -> getRedirectSetsForType(setType).stream())
-                        .forEach(redirectSet -> redirectSet.addRedirect(new MethodRedirect(classMethod, newOwner, method.name, isDstInterface)));
-
-                // Name is modified here to prevent mixin from overwriting it. We remove this prefix in postApply.
-                String prefixedMethodName = methodPrefix + method.name
-                        .replace("<init>", "__init__")
-                        .replace("<clinit>", "__clinit__");
-
-                TargetMethod targetMethod = new TargetMethod(
-                        methodOwner,
-                        classMethod,
-                        prefixedMethodName,
-                        true,
+                methodTransforms.computeIfAbsent(requestedStage, s -> new ArrayList<>()).add(new TargetAnnotations.MethodTransform(
+                        new Method(method.name, method.desc),
+                        new Method(methodSig.first, methodSig.second),
                         makeSyntheticAccessor,
-                        usedRedirectSets
-                );
+                        srcOwner,
+                        useRedirectSets,
+                        addToRedirectSets
+                ));
+            }
+        }
+
+        return new TargetAnnotations((targetClass.access & ACC_INTERFACE) != 0, wholeClassSources, fieldsToSets, methodsToSets, methodTransforms);
+    }
+
+    /**
+     * @param targetClass The class to remove {@code @TransformFrom} methods from. These are removed in every stage, whether they are transformed in it or not.
+     * @param annotations The class' annotations, from {@link #parseTargetAnnotations(ClassNode)}
+     */
+    public void buildClassTarget(ClassNode targetClass, TargetAnnotations annotations, TargetClass classTarget, TransformFrom.ApplicationStage stage,
+                                 String methodPrefix) {
+        ensureOpen();
+        for (Type srcClass : annotations.wholeClassSources(stage)) {
+            classTarget.targetWholeClass(srcClass);
+        }
+
+        Type classType = Type.getType(classNameToDescriptor(classTarget.getClassName()));
+
+        annotations.fieldsToSets().forEach(fieldToSets -> fieldToSets.sets().forEach(set -> {
+            RedirectSet directRedirectSetForType = getDirectRedirectSetForType(set);
+            if (directRedirectSetForType == null) {
+                throw new IllegalArgumentException(String.format("Couldn't find redirect set for class %s", set.getClassName()));
+            }
+            contributeRedirect(classTarget.getClassName(), directRedirectSetForType, new FieldRedirect(
+                    new ClassField(fieldToSets.owner(), fieldToSets.name(), fieldToSets.type()),
+                    getNewOwner(classType, fieldToSets.owner()),
+                    fieldToSets.fieldName()
+            ));
+        }));
+
+        annotations.methodsToSets().forEach(methodToSets -> methodToSets.sets().forEach(set -> {
+            RedirectSet directRedirectSetForType = getDirectRedirectSetForType(set);
+            if (directRedirectSetForType == null) {
+                throw new IllegalArgumentException(String.format("Couldn't find redirect set for class %s", set.getClassName()));
+            }
+            contributeRedirect(classTarget.getClassName(), directRedirectSetForType, new MethodRedirect(
+                    new ClassMethod(
+                            methodToSets.owner(),
+                            methodToSets.method()
+                    ),
+                    getNewOwner(classType, methodToSets.owner()),
+                    methodToSets.methodName(),
+                    annotations.isInterface()
+            ));
+        }));
+
+        Set<Method> transformFromMethods = new HashSet<>();
+        for (TransformFrom.ApplicationStage anyStage : TransformFrom.ApplicationStage.values()) {
+            for (TargetAnnotations.MethodTransform methodTransform : annotations.methodTransforms(anyStage)) {
+                transformFromMethods.add(methodTransform.annotatedMethod());
+            }
+        }
+        if (!transformFromMethods.isEmpty()) {
+            targetClass.methods.removeIf(method -> transformFromMethods.contains(new Method(method.name, method.desc)));
+        }
+
+        List<TargetAnnotations.MethodTransform> methodTransforms = annotations.methodTransforms(stage);
+        for (TargetAnnotations.MethodTransform methodTransform : methodTransforms) {
+            methodTransform.useRedirectSets().forEach(this::prefetchRedirectSet);
+            methodTransform.addToRedirectSets().forEach(this::prefetchRedirectSet);
+        }
+
+        for (TargetAnnotations.MethodTransform methodTransform : methodTransforms) {
+            List<RedirectSet> usedRedirectSets = methodTransform.useRedirectSets().stream()
+                    .flatMap(setType -> getRedirectSetsForType(setType).stream())
+                    .collect(Collectors.toList());
 
-                if (classTarget.targetMethods().stream().anyMatch(t -> t.method().method.equals(targetMethod.method().method))) {
-                    throw new RuntimeException(String.format("Trying to add duplicate TargetMethod to %s:\n\t\t\t\t%s | %s", classTarget.getClassName(), targetMethod.method().owner,
-                            targetMethod.method().method));
+            ClassMethod classMethod = new ClassMethod(classType, methodTransform.srcMethod());
+            Type srcOwner = methodTransform.copyFrom();
+            Type methodOwner = srcOwner != null ? srcOwner : classMethod.owner;
+            String methodName = methodTransform.annotatedMethod().getName();
+
+            Type newOwner = getNewOwner(classType, methodOwner);
+            methodTransform.addToRedirectSets().stream()
+                    .flatMap(setType -> getRedirectSetsForType(setType).stream())
+                    .forEach(redirectSet -> contributeRedirect(classTarget.getClassName(), redirectSet,
+                            new MethodRedirect(classMethod, newOwner, methodName, annotations.isInterface())));
+
+            // Name is modified here to prevent mixin from overwriting it. We remove this prefix in postApply.
+            String prefixedMethodName = methodPrefix + methodName
+                    .replace("<init>", "__init__")
+                    .replace("<clinit>", "__clinit__");
+
+            TargetMethod targetMethod = new TargetMethod(
+                    methodOwner,
+                    classMethod,
+                    prefixedMethodName,
+                    true,
+                    methodTransform.makeSyntheticAccessor(),
+                    usedRedirectSets
+            );
+
+            if (classTarget.targetMethods().stream().anyMatch(t -> t.method().method.equals(targetMethod.method().method))) {
+                throw new RuntimeException(String.format("Trying to add duplicate TargetMethod to %s:\n\t\t\t\t%s | %s", classTarget.getClassName(), targetMethod.method().owner,
+                        targetMethod.method().method));
+            }
+            classTarget.addTarget(targetMethod);
+        }
+    }
+
+    /**
+     * Adds a redirect on behalf of a target class, unless it already added it in an earlier stage or before the set was dropped
+     */
+    private void contributeRedirect(String targetClassName, RedirectSet redirectSet, FieldRedirect redirect) {
+        if (contributionsOf(targetClassName).fieldRedirects.computeIfAbsent(redirectSet.getName(), name -> Collections.synchronizedSet(new LinkedHashSet<>()))
+                .add(redirect)) {
+            redirectSet.addRedirect(redirect);
+        }
+    }
+
+    private void contributeRedirect(String targetClassName, RedirectSet redirectSet, MethodRedirect redirect) {
+        if (contributionsOf(targetClassName).methodRedirects.computeIfAbsent(redirectSet.getName(), name -> Collections.synchronizedSet(new LinkedHashSet<>()))
+                .add(redirect)) {
+            redirectSet.addRedirect(redirect);
+        }
+    }
+
+    private Contributions contributionsOf(String targetClassName) {
+        return this.contributions.computeIfAbsent(targetClassName, name -> new Contributions());
+    }
+
+    /**
+     * Adds the redirects target classes contributed to a set before it was dropped
+     */
+    private void replayContributions(RedirectSet redirectSet) {
+        for (Contributions contributions : this.contributions.values()) {
+            Set<FieldRedirect> fieldRedirects = contributions.fieldRedirects.get(redirectSet.getName());
+            if (fieldRedirects != null) {
+                synchronized (fieldRedirects) {
+                    fieldRedirects.forEach(redirectSet::addRedirect);
                 }
-                classTarget.addTarget(targetMethod);
             }
+            Set<MethodRedirect> methodRedirects = contributions.methodRedirects.get(redirectSet.getName());
+            if (methodRedirects != null) {
+                synchronized (methodRedirects) {
+                    methodRedirects.forEach(redirectSet::addRedirect);
+                }
+            }
+        }
+    }
+
+    /**
+     * Enum values read from class files are {descriptor, name} pairs, defaults filled in from the annotation class are the enum itself
+     */
+    private static TransformFrom.ApplicationStage parseStage(Object value) {
+        if (value instanceof String[]) {
+            return TransformFrom.ApplicationStage.valueOf(((String[]) value)[1]);
         }
+        return (TransformFrom.ApplicationStage) value;
     }
 
     @Nullable
@@ -245,76 +567,181 @@ public class AnnotationParser {
     }
 
     private List<RedirectSet> getRedirectSetsForType(Type setType) {
-        return this.redirectSetsByType.computeIfAbsent(setType, t -> {
-            List<RedirectSet> redirectSets = new ArrayList<>();
+        List<RedirectSet> resolved = this.redirectSetsByType.get(setType);
+        if (resolved != null) {
+            return resolved;
+        }
+        prefetchRedirectSet(setType);
+        // not computed in the map, as resolving the sets this one extends updates it as well
+        List<RedirectSet> redirectSets = resolveRedirectSets(setType);
+        List<RedirectSet> raced = this.redirectSetsByType.putIfAbsent(setType, redirectSets);
+        return raced != null ? raced : redirectSets;
+    }
 
-            ClassNode classNode = classNodeForType(setType);
-            if ((classNode.access & ACC_INTERFACE) == 0) {
-                throw new IllegalStateException("Non-interface type is a redirect set");
-            }
+    private List<RedirectSet> resolveRedirectSets(Type setType) {
+        StartupProfile startupProfile = this.startupProfile;
+        if (startupProfile != null) {
+            startupProfile.redirectSetResolved(setType);
+        }
+        List<RedirectSet> redirectSets = new ArrayList<>();
 
-            AnnotationNode annotationNode = getAnnotationIfPresent(classNode.invisibleAnnotations, DasmRedirectSet.class);
-            if (annotationNode == null) {
-                throw new IllegalStateException(String.format("Class %s is used as a redirect set but not marked with %s", setType.getClassName(), DasmRedirectSet.class.getSimpleName()));
-            }
+        ClassNode classNode = classNodeForType(setType);
+        if ((classNode.access & ACC_INTERFACE) == 0) {
+            throw new IllegalStateException("Non-interface type is a redirect set");
+        }
 
-            // First add inherited redirect sets
-            for (String interface_ : classNode.interfaces) {
-                redirectSets.addAll(getRedirectSetsForType(Type.getObjectType(interface_)));
-            }
+        AnnotationNode annotationNode = getAnnotationIfPresent(classNode.invisibleAnnotations, DasmRedirectSet.class);
+        if (annotationNode == null) {
+            throw new IllegalStateException(String.format("Class %s is used as a redirect set but not marked with %s", setType.getClassName(), DasmRedirectSet.class.getSimpleName()));
+        }
 
-            // Then add this set
-            RedirectSet thisRedirectSet = new RedirectSet(setType.getClassName());
-            redirectSets.add(thisRedirectSet);
+        // First add inherited redirect sets
+        for (String interface_ : classNode.interfaces) {
+            redirectSets.addAll(getRedirectSetsForType(Type.getObjectType(interface_)));
+        }
 
-            // Discover type/field/method redirects in innerclass
-            for (InnerClassNode innerClass : classNode.innerClasses) {
-                ClassNode innerClassNode = classNodeForType(Type.getObjectType(innerClass.name));
+        // Then add this set
+        RedirectSet thisRedirectSet = new RedirectSet(setType.getClassName());
+        redirectSets.add(thisRedirectSet);
 
-                String srcClassName;
-                String dstClassName;
+        // Discover type/field/method redirects in innerclass
+        for (InnerClassNode innerClass : classNode.innerClasses) {
+            ClassNode innerClassNode = classNodeForType(Type.getObjectType(innerClass.name));
 
-                if (isAnnotationIfPresent(innerClassNode.invisibleAnnotations, io.github.opencubicchunks.dasm.api.redirect.TypeRedirect.class)) {
-                    TypeRedirect typeRedirect = parseTypeRedirect(innerClassNode);
-                    thisRedirectSet.addRedirect(typeRedirect);
+            String srcClassName;
+            String dstClassName;
 
-                    srcClassName = typeRedirect.srcClassName();
-                    dstClassName = typeRedirect.dstClassName();
-                } else if (isAnnotationIfPresent(innerClassNode.invisibleAnnotations, PartialRedirect.class)) {
-                    Pair<String, String> partialRedirect = parsePartialRedirect(innerClassNode);
-                    srcClassName = partialRedirect.first;
-                    dstClassName = partialRedirect.second;
-                } else {
-                    throw new IllegalStateException(String.format("Inner class %s must be either a TypeRedirect or a PartialRedirect", innerClass.name));
-                }
+            if (isAnnotationIfPresent(innerClassNode.invisibleAnnotations, io.github.opencubicchunks.dasm.api.redirect.TypeRedirect.class)) {
+                TypeRedirect typeRedirect = parseTypeRedirect(innerClassNode);
+                thisRedirectSet.addRedirect(typeRedirect);
 
-                Type srcType = Type.getType(classNameToDescriptor(srcClassName));
-                Type newOwner = getNewOwner(srcType, Type.getType(classNameToDescriptor(dstClassName)));
-                for (FieldNode field : innerClassNode.fields) {
-                    thisRedirectSet.addRedirect(parseFieldRedirect(
-                            field,
-                            srcType,
-                            newOwner
-                    ));
+                srcClassName = typeRedirect.srcClassName();
+                dstClassName = typeRedirect.dstClassName();
+            } else if (isAnnotationIfPresent(innerClassNode.invisibleAnnotations, io.github.opencubicchunks.dasm.api.redirect.PackageRedirect.class)) {
+                thisRedirectSet.addRedirect(parsePackageRedirect(innerClassNode));
+                continue;
+            } else if (isAnnotationIfPresent(innerClassNode.invisibleAnnotations, io.github.opencubicchunks.dasm.api.redirect.PackedTypeRedirect.class)) {
+                thisRedirectSet.addRedirect(parsePackedTypeRedirect(innerClassNode));
+                continue;
+            } else if (isAnnotationIfPresent(innerClassNode.invisibleAnnotations, PartialRedirect.class)) {
+                Pair<String, String> partialRedirect = parsePartialRedirect(innerClassNode);
+                srcClassName = partialRedirect.first;
+                dstClassName = partialRedirect.second;
+            } else {
+                throw new IllegalStateException(String.format("Inner class %s must be either a TypeRedirect, a PackageRedirect, a PackedTypeRedirect or a PartialRedirect",
+                        innerClass.name));
+            }
+
+            Type srcType = Type.getType(classNameToDescriptor(srcClassName));
+            Type newOwner = getNewOwner(srcType, Type.getType(classNameToDescriptor(dstClassName)));
+            for (FieldNode field : innerClassNode.fields) {
+                thisRedirectSet.addRedirect(parseFieldRedirect(
+                        field,
+                        srcType,
+                        newOwner
+                ));
+            }
+
+            for (MethodNode method : innerClassNode.methods) {
+                // skip checking the invisible default constructor if it doesn't have annotations
+                if (method.name.equals("<init>") && method.desc.equals("()V") && method.invisibleAnnotations == null) {
+                    continue;
                 }
 
-                for (MethodNode method : innerClassNode.methods) {
-                    // skip checking the invisible default constructor if it doesn't have annotations
-                    if (method.name.equals("<init>") && method.desc.equals("()V") && method.invisibleAnnotations == null) {
-                        continue;
+                thisRedirectSet.addRedirect(parseMethodRedirect(
+                        method,
+                        srcType,
+                        newOwner,
+                        (innerClassNode.access & ACC_INTERFACE) == 0)
+                );
+            }
+        }
+
+        replayContributions(thisRedirectSet);
+        return redirectSets;
+    }
+
+    /**
+     * Starts fetching and parsing every class resolving the given redirect set will need, see {@link #getRedirectSetsForType(Type)}
+     */
+    private void prefetchRedirectSet(Type setType) {
+        if (this.prefetchExecutor != null) {
+            prefetchRedirectSet(setType, this.prefetchExecutor);
+        }
+    }
+
+    /**
+     * Starts fetching and parsing every class resolving the given redirect set will need on the given executor, ahead of the set being used.
+     * Only the classes are prepared, the set itself is still resolved on first use.
+     */
+    public void prefetchRedirectSet(Type setType, Executor executor) {
+        if (this.redirectSetsByType.containsKey(setType) || this.fetchedTypes.contains(setType)) {
+            return;
+        }
+        // claimed before fetching, the continuation can run right away on a direct executor and queue more classes, which mustn't happen while
+        // the map is being updated
+        CompletableFuture<ClassNode> prefetch = new CompletableFuture<>();
+        if (this.prefetchedClassNodes.putIfAbsent(setType, prefetch) != null) {
+            return;
+        }
+        this.classProvider.classBytesAsync(setType.getClassName(), executor)
+                .thenApplyAsync(bytes -> {
+                    ClassNode classNode = classNodeForBytes(bytes);
+                    // Queue everything the set consists of before handing it over, so that none of it is fetched twice
+                    List<Type> innerClasses = new ArrayList<>();
+                    for (InnerClassNode innerClass : classNode.innerClasses) {
+                        innerClasses.add(Type.getObjectType(innerClass.name));
                     }
+                    prefetchClassNodes(innerClasses, executor);
+                    for (String interface_ : classNode.interfaces) {
+                        prefetchRedirectSet(Type.getObjectType(interface_), executor);
+                    }
+                    return classNode;
+                }, executor)
+                .whenComplete((classNode, t) -> {
+                    if (t != null) {
+                        prefetch.completeExceptionally(t);
+                    } else {
+                        prefetch.complete(classNode);
+                    }
+                });
+        evictIfFetched(setType);
+    }
 
-                    thisRedirectSet.addRedirect(parseMethodRedirect(
-                            method,
-                            srcType,
-                            newOwner,
-                            (innerClassNode.access & ACC_INTERFACE) == 0)
-                    );
-                }
+    private void prefetchClassNodes(List<Type> types, Executor executor) {
+        List<Type> missing = new ArrayList<>();
+        List<String> classNames = new ArrayList<>();
+        for (Type type : types) {
+            if (!this.prefetchedClassNodes.containsKey(type) && !this.fetchedTypes.contains(type)) {
+                missing.add(type);
+                classNames.add(type.getClassName());
             }
+        }
+        if (classNames.isEmpty()) {
+            return;
+        }
+        CompletableFuture<Map<String, byte[]>> classBytes = this.classProvider.classBytesAsync(classNames, executor);
+        for (Type type : missing) {
+            this.prefetchedClassNodes.computeIfAbsent(type, t -> classBytes.thenApplyAsync(bytes -> classNodeForBytes(bytes.get(t.getClassName())), executor));
+            evictIfFetched(type);
+        }
+    }
 
-            return redirectSets;
-        });
+    /**
+     * Drops the prefetch of a class that was read on another thread while it was being queued, nothing would ever take it out of the map.
+     * Classes are marked as read before their prefetch is taken, so either this sees the mark or the reader sees the prefetch.
+     */
+    private void evictIfFetched(Type type) {
+        if (this.fetchedTypes.contains(type)) {
+            evictPrefetched(type);
+        }
+    }
+
+    private void evictPrefetched(Type type) {
+        CompletableFuture<ClassNode> prefetched = this.prefetchedClassNodes.remove(type);
+        if (prefetched != null) {
+            prefetched.cancel(false);
+        }
     }
 
     private static Map<String, Object> getAnnotationValues(AnnotationNode annotationNode, Class<?> annotation) {
@@ -384,7 +811,7 @@ public class AnnotationParser {
     }
 
 
-    @Nullable private AnnotationNode getAnnotationIfPresent(List<AnnotationNode> annotations, Class<?> annotation) {
+    @Nullable private static AnnotationNode getAnnotationIfPresent(List<AnnotationNode> annotations, Class<?> annotation) {
         if (annotations == null) {
             return null;
         }
@@ -472,6 +899,58 @@ public class AnnotationParser {
         throw new IllegalStateException(String.format("No type redirect on inner class %s", innerClass.name));
     }
 
+    private static boolean hasRedirectMembers(ClassNode innerClass) {
+        return !innerClass.fields.isEmpty() || innerClass.methods.stream()
+                .anyMatch(method -> !(method.name.equals("<init>") && method.desc.equals("()V") && method.invisibleAnnotations == null));
+    }
+
+    private PackageRedirect parsePackageRedirect(ClassNode innerClass) {
+        if (hasRedirectMembers(innerClass)) {
+            throw new IllegalStateException(String.format("Package redirect %s can't contain field or method redirects", innerClass.name));
+        }
+        for (AnnotationNode annotation : innerClass.invisibleAnnotations) {
+            if (!annotation.desc.equals(classToDescriptor(io.github.opencubicchunks.dasm.api.redirect.PackageRedirect.class))) {
+                continue;
+            }
+
+            Map<String, Object> values = getAnnotationValues(annotation, io.github.opencubicchunks.dasm.api.redirect.PackageRedirect.class);
+
+            String from = (String) values.get("from");
+            String to = (String) values.get("to");
+
+            if (from.isEmpty() || from.endsWith(".") || to.endsWith(".")) {
+                throw new IllegalStateException(String.format("Invalid package redirect: %s -> %s", from, to));
+            }
+            return new PackageRedirect(from, to);
+        }
+
+        throw new IllegalStateException(String.format("No package redirect on inner class %s", innerClass.name));
+    }
+
+    private PackedTypeRedirect parsePackedTypeRedirect(ClassNode innerClass) {
+        if (hasRedirectMembers(innerClass)) {
+            throw new IllegalStateException(String.format("Packed type redirect %s can't contain field or method redirects", innerClass.name));
+        }
+        for (AnnotationNode annotation : innerClass.invisibleAnnotations) {
+            if (!annotation.desc.equals(classToDescriptor(io.github.opencubicchunks.dasm.api.redirect.PackedTypeRedirect.class))) {
+                continue;
+            }
+
+            Map<String, Object> values = getAnnotationValues(annotation, io.github.opencubicchunks.dasm.api.redirect.PackedTypeRedirect.class);
+
+            @SuppressWarnings("unchecked") Type from = parseRefAnnotation((Map<String, Object>) values.get("from"));
+            Type to = (Type) values.get("to");
+            @SuppressWarnings("unchecked") Type packer = parseRefAnnotation((Map<String, Object>) values.get("packer"));
+
+            if (from == null || packer == null || (to.getSort() != Type.LONG && to.getSort() != Type.INT)) {
+                throw new IllegalStateException(String.format("Invalid packed type redirect: %s -> %s using %s", from, to.getClassName(), packer));
+            }
+            return new PackedTypeRedirect(from.getClassName(), to, packer.getClassName());
+        }
+
+        throw new IllegalStateException(String.format("No packed type redirect on inner class %s", innerClass.name));
+    }
+
     private Pair<String, String> parsePartialRedirect(ClassNode innerClass) {
         for (AnnotationNode annotation : innerClass.invisibleAnnotations) {
             if (!annotation.desc.equals(classToDescriptor(PartialRedirect.class))) {
@@ -535,12 +1014,31 @@ public class AnnotationParser {
     }
 
     private ClassNode classNodeForType(Type type) {
+        this.fetchedTypes.add(type);
+        CompletableFuture<ClassNode> prefetched = this.prefetchedClassNodes.remove(type);
+        if (prefetched != null) {
+            try {
+                return prefetched.join();
+            } catch (CompletionException e) {
+                // rethrow what fetching it on this thread would have thrown
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
         ClassNode dst = new ClassNode(ASM9);
-        final ClassReader classReader = new ClassReader(this.classProvider.classBytes(type.getClassName()));
+        final ClassReader classReader = ClassReaders.forClass(this.classProvider, type.getClassName());
         classReader.accept(dst, 0);
         return dst;
     }
 
+    private static ClassNode classNodeForBytes(byte[] bytes) {
+        ClassNode dst = new ClassNode(ASM9);
+        new ClassReader(bytes).accept(dst, 0);
+        return dst;
+    }
+
     private static String classToDescriptor(Class<?> clazz) {
         return classNameToDescriptor(clazz.getName());
     }
@@ -552,4 +1050,12 @@ public class AnnotationParser {
     private static String classDescriptorToClassName(String descriptor) {
         return Type.getType(descriptor).getClassName();
     }
+
+    /**
+     * The redirects a single target class added, by set name
+     */
+    private static final class Contributions {
+        final Map<String, Set<FieldRedirect>> fieldRedirects = new ConcurrentHashMap<>();
+        final Map<String, Set<MethodRedirect>> methodRedirects = new ConcurrentHashMap<>();
+    }
 }
@@ -0,0 +1,98 @@
+package io.github.opencubicchunks.dasm;
+
+import io.github.opencubicchunks.dasm.api.provider.CachingClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import org.objectweb.asm.ClassReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transforms classes for several mapping namespaces at once, eg: to produce both dev and production mapped variants of the same classes.
+ * <p/>
+ * The target class is read and the redirects of its sets are resolved once, as the same {@link TargetClass} is used for every namespace. Everything
+ * that depends on mapped names is done per namespace, by a {@link Transformer} for each of them. Source classes are mapped as well, so each namespace
+ * reads them from a class provider of its own, cached separately.
+ */
+public class FanOutTransformer {
+    private final List<ClassProvider> classProviders = new ArrayList<>();
+    private final Map<String, Transformer> transformers = new LinkedHashMap<>();
+
+    /**
+     * @param mappingsProviders The mappings of each namespace, outputs are in the same order
+     * @param classProviders The provider source classes of each namespace are read from, mapped into that namespace. Each of them is cached.
+     * @param globalLogSelfRedirects A global toggle for self redirects logging
+     */
+    public FanOutTransformer(Map<String, MappingsProvider> mappingsProviders, Map<String, ClassProvider> classProviders, boolean globalLogSelfRedirects) {
+        if (mappingsProviders.isEmpty()) {
+            throw new IllegalArgumentException("At least one namespace is needed");
+        }
+        if (!classProviders.keySet().equals(mappingsProviders.keySet())) {
+            throw new IllegalArgumentException(String.format("Got class providers for namespaces %s, expected %s", classProviders.keySet(),
+                    mappingsProviders.keySet()));
+        }
+        mappingsProviders.forEach((namespace, mappingsProvider) -> {
+            ClassProvider classProvider = new CachingClassProvider(classProviders.get(namespace));
+            this.classProviders.add(classProvider);
+            this.transformers.put(namespace, new Transformer(mappingsProvider, classProvider, globalLogSelfRedirects));
+        });
+    }
+
+    public Set<String> namespaces() {
+        return Collections.unmodifiableSet(this.transformers.keySet());
+    }
+
+    /**
+     * @return The transformer of the namespace, to change its settings
+     */
+    public Transformer transformer(String namespace) {
+        Transformer transformer = this.transformers.get(namespace);
+        if (transformer == null) {
+            throw new IllegalArgumentException(String.format("Unknown namespace %s, expected one of %s", namespace, this.transformers.keySet()));
+        }
+        return transformer;
+    }
+
+    /**
+     * Transforms the same class bytes for every namespace, see {@link Transformer#transformClass(byte[], TargetClass)}
+     *
+     * @return The transformed class of each namespace
+     */
+    public Map<String, byte[]> transformClass(byte[] classBytes, TargetClass target) {
+        ClassReader classReader = new ClassReader(classBytes);
+        Transformer.TargetRedirects redirects = Transformer.resolveRedirects(target);
+        Map<String, byte[]> outputs = new LinkedHashMap<>();
+        this.transformers.forEach((namespace, transformer) -> outputs.put(namespace, transformer.transformClass(classReader, target, redirects)));
+        return outputs;
+    }
+
+    /**
+     * Transforms the variant of a class in each namespace, for target classes that are themselves mapped
+     *
+     * @param classBytes The class in each namespace
+     * @return The transformed class of each namespace
+     */
+    public Map<String, byte[]> transformClass(Map<String, byte[]> classBytes, TargetClass target) {
+        if (!classBytes.keySet().equals(this.transformers.keySet())) {
+            throw new IllegalArgumentException(String.format("Got class bytes for namespaces %s, expected %s", classBytes.keySet(), this.transformers.keySet()));
+        }
+        Transformer.TargetRedirects redirects = Transformer.resolveRedirects(target);
+        Map<String, byte[]> outputs = new LinkedHashMap<>();
+        this.transformers.forEach((namespace, transformer) -> outputs.put(namespace,
+                transformer.transformClass(new ClassReader(classBytes.get(namespace)), target, redirects)));
+        return outputs;
+    }
+
+    /**
+     * Clears the cached source classes, eg: once a build is done
+     */
+    public void trim() {
+        this.classProviders.forEach(ClassProvider::trim);
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.opencubicchunks.dasm;
+
+import io.github.opencubicchunks.dasm.transformer.target.TargetAnnotations;
+import io.github.opencubicchunks.dasm.transformer.target.TargetIndex;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Builds a {@link TargetIndex} from compiled classes, to be run as part of the build after compilation. eg: in Gradle
+ * <pre>{@code
+ * task dasmTargetIndex(type: JavaExec) {
+ *     classpath = configurations.dasm
+ *     mainClass = 'io.github.opencubicchunks.dasm.TargetIndexGenerator'
+ *     args "$buildDir/resources/main/META-INF/dasm/targets.json", sourceSets.main.output.classesDirs.asPath
+ * }
+ * }</pre>
+ */
+public class TargetIndexGenerator {
+    private final TargetIndex index = new TargetIndex();
+
+    /**
+     * @param args The output file, followed by the jar files and class directories to index
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: TargetIndexGenerator <output> [classes dir or jar]...");
+        }
+        TargetIndexGenerator generator = new TargetIndexGenerator();
+        for (int i = 1; i < args.length; i++) {
+            for (String path : args[i].split(File.pathSeparator)) {
+                generator.addPath(Paths.get(path));
+            }
+        }
+        Path output = Paths.get(args[0]);
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            generator.index().write(writer);
+        }
+    }
+
+    public TargetIndex index() {
+        return this.index;
+    }
+
+    public void addPath(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            addDirectory(path);
+        } else if (Files.isRegularFile(path)) {
+            addJar(path);
+        }
+    }
+
+    private void addDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.toString().endsWith(".class")) {
+                    addClass(Files.readAllBytes(file));
+                }
+            }
+        }
+    }
+
+    private void addJar(Path jar) throws IOException {
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    addClass(readAll(in));
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the class to the index if it has any dasm annotations
+     */
+    public void addClass(byte[] classBytes) {
+        ClassNode classNode = new ClassNode();
+        // annotations are all that's needed
+        new ClassReader(classBytes).accept(classNode, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        List<Type> redirectSets = AnnotationParser.dasmRedirectSetTypes(classNode);
+        TargetAnnotations annotations = AnnotationParser.parseTargetAnnotations(classNode);
+        if (redirectSets == null && annotations.isEmpty()) {
+            return;
+        }
+        this.index.put(classNode.name.replace('/', '.'), new TargetIndex.Entry(redirectSets, annotations));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read; (read = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -3,12 +3,17 @@ package io.github.opencubicchunks.dasm;
 import com.google.common.collect.Sets;
 import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
 import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.profile.InvocationCounters;
+import io.github.opencubicchunks.dasm.profile.RedirectCoverage;
+import io.github.opencubicchunks.dasm.profile.StartupProfile;
 import io.github.opencubicchunks.dasm.transformer.*;
 import io.github.opencubicchunks.dasm.transformer.redirect.FieldRedirect;
 import io.github.opencubicchunks.dasm.transformer.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.PackedTypeRedirect;
 import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
-import io.github.opencubicchunks.dasm.transformer.redirect.TypeRedirect;
 import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import io.github.opencubicchunks.dasm.util.ClassReaders;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -20,16 +25,30 @@ import org.objectweb.asm.commons.Remapper;
 import org.objectweb.asm.tree. *;
 
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.Nullable;
 
 import static org.objectweb.asm.Opcodes.*;
 import static org.objectweb.asm.Type.*;
 
 public class Transformer {
     private static final Logger LOGGER = LogManager.getLogger();
+    private static final String LAMBDA_CLONE_PREFIX = "dasm$redirect$";
+    /**
+     * Set to {@code true} to count invocations of produced methods, see {@link #setCountInvocations}
+     */
+    public static final String COUNT_INVOCATIONS_PROPERTY = "dasm.countInvocations";
 
     private final MappingsProvider mappingsProvider;
     private final ClassProvider classProvider;
     private final boolean globalLogSelfRedirects;
+    @Nullable private volatile StartupProfile startupProfile;
+    @Nullable private volatile RedirectCoverage redirectCoverage;
+    @Nullable private volatile RedirectInliner redirectInliner;
+    private volatile boolean optimizeRedirectedMethods;
+    private volatile boolean countInvocations;
 
     /**
      * @param mappingsProvider The mappings provider to use
@@ -41,23 +60,169 @@ public class Transformer {
         this.globalLogSelfRedirects = globalLogSelfRedirects;
     }
 
+    /**
+     * @param startupProfile The profile to record transformed classes and their sources in, or null to stop recording
+     */
+    public void setStartupProfile(@Nullable StartupProfile startupProfile) {
+        this.startupProfile = startupProfile;
+    }
+
+    /**
+     * @param redirectCoverage Where to count which redirects matched, or null to stop counting. Counting slows down transforming.
+     */
+    public void setRedirectCoverage(@Nullable RedirectCoverage redirectCoverage) {
+        this.redirectCoverage = redirectCoverage;
+    }
+
+    /**
+     * Inlines trivial destination methods of redirects into another class at the call site, instead of calling them. See {@link RedirectInliner} for
+     * which methods are trivial. The destination classes are read through the {@link ClassProvider}.
+     *
+     * @param maxInstructions The maximum number of instructions of an inlined method, or 0 to not inline anything, which is the default
+     */
+    public void setInlineLimit(int maxInstructions) {
+        this.redirectInliner = maxInstructions > 0 ? new RedirectInliner(this.classProvider, maxInstructions) : null;
+    }
+
+    /**
+     * Runs the {@link PeepholeOptimizer} over every method a transform produces, off by default
+     */
+    public void setOptimizeRedirectedMethods(boolean optimizeRedirectedMethods) {
+        this.optimizeRedirectedMethods = optimizeRedirectedMethods;
+    }
+
+    /**
+     * Makes every method a transform produces count its calls in {@link InvocationCounters}, including cloned lambdas and synthetic accessors.
+     * Off by default, unless the {@value #COUNT_INVOCATIONS_PROPERTY} system property is set, which is checked on every transform.
+     * Classes transformed while it's off don't count anything, so it costs nothing at runtime.
+     */
+    public void setCountInvocations(boolean countInvocations) {
+        this.countInvocations = countInvocations;
+    }
+
     public void transformClass(ClassNode targetClass, TargetClass target) {
+        transformClass(targetClass, target, resolveRedirects(target), true);
+    }
+
+    /**
+     * Transforms a class given as bytes, the same way as {@link #transformClass(ClassNode, TargetClass)}.
+     * <p/>
+     * Only the methods the target reads from or replaces in the class are parsed, all others are copied over as they are, without parsing them.
+     * With few target methods in a large class this is much cheaper than a round trip through a full {@link ClassNode}.
+     * As with the tree variant, frames and maximums of the transformed methods are taken over from their sources, they aren't computed.
+     * <p/>
+     * The original lambdas of replaced methods are kept, as the methods that are only copied can't be checked for references to them.
+     *
+     * @return The bytes of the transformed class
+     */
+    public byte[] transformClass(byte[] classBytes, TargetClass target) {
+        return transformClass(new ClassReader(classBytes), target, resolveRedirects(target));
+    }
+
+    /**
+     * Same as {@link #transformClass(byte[], TargetClass)}, for a class that was already read and a target whose redirects were already resolved.
+     * The reader isn't modified, so it can be transformed again by other transformers.
+     */
+    byte[] transformClass(ClassReader classReader, TargetClass target, TargetRedirects redirects) {
+        if (target.wholeClass() != null) {
+            // every method is replaced, there is nothing to copy
+            ClassNode targetClass = classNodeForClass(classReader);
+            transformClass(targetClass, target, redirects, true);
+            ClassWriter classWriter = new ClassWriter(0);
+            targetClass.accept(classWriter);
+            return classWriter.toByteArray();
+        }
+
+        // the sources of target methods in this class, and the methods they replace. Earlier lambda clones may be replaced as well.
+        Set<String> sourceMethods = new HashSet<>();
+        Set<String> replacedNames = new HashSet<>();
+        for (TargetMethod targetMethod : target.targetMethods()) {
+            if (targetMethod.srcOwner() == targetMethod.method().owner) {
+                Method method = remapMethod(targetMethod.method()).method;
+                sourceMethods.add(method.getName() + method.getDescriptor());
+            }
+            replacedNames.add(targetMethod.dstMethodName());
+        }
+        ClassNode targetClass = classNodeForMethods(classReader, sourceMethods,
+                name -> replacedNames.contains(name) || name.startsWith(LAMBDA_CLONE_PREFIX));
+        Set<String> parsedMethods = new HashSet<>();
+        for (MethodNode method : targetClass.methods) {
+            parsedMethods.add(method.name + method.desc);
+        }
+        transformClass(targetClass, target, redirects, false);
+
+        // sharing the constant pool lets the writer copy the methods that weren't parsed as raw bytes
+        ClassWriter classWriter = new ClassWriter(classReader, 0);
+        classReader.accept(new ClassVisitor(ASM9, classWriter) {
+            @Override public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                if (parsedMethods.contains(name + descriptor)) {
+                    return null;
+                }
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
+            }
+
+            @Override public void visitEnd() {
+                for (MethodNode method : targetClass.methods) {
+                    method.accept(this.cv);
+                }
+                super.visitEnd();
+            }
+        }, 0);
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * @param allMethodsPresent Whether the node holds every method of the class. If not, only lambdas cloned by this transform may be removed.
+     */
+    private void transformClass(ClassNode targetClass, TargetClass target, TargetRedirects redirects, boolean allMethodsPresent) {
+        StartupProfile startupProfile = this.startupProfile;
+        if (startupProfile != null) {
+            startupProfile.classTransformed(target.getClassName());
+        }
+        RedirectCoverage redirectCoverage = this.redirectCoverage;
+        if (redirectCoverage != null) {
+            target.redirectSets().forEach(redirectSet -> redirectCoverage.register(targetClass.name, redirectSet, mappingsProvider::mapClassName));
+            target.targetMethods().forEach(targetMethod -> targetMethod.redirectSets().forEach(
+                    redirectSet -> redirectCoverage.register(targetClass.name, redirectSet, mappingsProvider::mapClassName)));
+        }
         Map<Type, Type> classTypeRedirects = new HashMap<>();
         Map<ClassField, FieldRedirect> classFieldRedirects = new HashMap<>();
         Map<ClassMethod, MethodRedirect> classMethodRedirects = new HashMap<>();
-        buildRedirects(target.redirectSets(), classTypeRedirects, classFieldRedirects, classMethodRedirects);
+        Map<String, String> classPackageRedirects = new HashMap<>();
+        Map<String, PackedTypeRedirect> classPackedTypeRedirects = new HashMap<>();
+        buildRedirects(redirects.classRedirects, classTypeRedirects, classFieldRedirects, classMethodRedirects, classPackageRedirects,
+                classPackedTypeRedirects);
+
+        // the methods a transform produces are the ones it adds, plus the ones it renames in place
+        boolean optimize = this.optimizeRedirectedMethods;
+        boolean countInvocations = this.countInvocations || Boolean.getBoolean(COUNT_INVOCATIONS_PROPERTY);
+        Set<MethodNode> originalMethods = Collections.newSetFromMap(new IdentityHashMap<>());
+        originalMethods.addAll(targetClass.methods);
+        Set<MethodNode> producedMethods = Collections.newSetFromMap(new IdentityHashMap<>());
 
         if (target.wholeClass() != null) {
             String srcName = target.wholeClass().getClassName();
-            applyWholeClassRedirects(classNodeForClass(srcName), targetClass, classMethodRedirects, classFieldRedirects, classTypeRedirects, target.debugSelfRedirects());
+            if (startupProfile != null) {
+                startupProfile.sourceLoaded(srcName);
+            }
+            ClassReader srcReader = ClassReaders.forClass(this.classProvider, srcName);
+            PackageRedirectTrie packageRedirects = new PackageRedirectTrie(classPackageRedirects);
+            boolean srcMayBeRedirected = buildPrefilter(classTypeRedirects, classFieldRedirects, classMethodRedirects, packageRedirects)
+                    .forCopy(srcReader.getClassName(), targetClass.name).mayAffect(srcReader);
+            applyWholeClassRedirects(classNodeForClass(srcReader), targetClass, classMethodRedirects, classFieldRedirects, classTypeRedirects, packageRedirects,
+                    srcMayBeRedirected, target.debugSelfRedirects());
         } else {
             target.targetMethods().forEach(targetMethod -> {
                 // Copy class redirects
                 Map<Type, Type> typeRedirects = new HashMap<>(classTypeRedirects);
                 Map<ClassField, FieldRedirect> fieldRedirects = new HashMap<>(classFieldRedirects);
                 Map<ClassMethod, MethodRedirect> methodRedirects = new HashMap<>(classMethodRedirects);
+                Map<String, String> packageRedirectMap = new HashMap<>(classPackageRedirects);
+                Map<String, PackedTypeRedirect> packedTypeRedirects = new HashMap<>(classPackedTypeRedirects);
                 // Overwrite inherited with redirect-specific ones (if any)
-                buildRedirects(targetMethod.redirectSets(), typeRedirects, fieldRedirects, methodRedirects);
+                buildRedirects(redirects.forMethod(targetMethod), typeRedirects, fieldRedirects, methodRedirects, packageRedirectMap, packedTypeRedirects);
+                PackageRedirectTrie packageRedirects = new PackageRedirectTrie(packageRedirectMap);
+                RedirectPrefilter prefilter = buildPrefilter(typeRedirects, fieldRedirects, methodRedirects, packageRedirects);
 
                 String newName = targetMethod.dstMethodName();
                 Type srcOwner = targetMethod.srcOwner();
@@ -66,7 +231,18 @@ public class Transformer {
                 if (srcOwner == targetMethod.method().owner) {
                     srcClass = targetClass;
                 } else {
-                    srcClass = classNodeForClass(srcOwner.getClassName());
+                    if (startupProfile != null) {
+                        startupProfile.sourceLoaded(srcOwner.getClassName());
+                    }
+                    ClassReader srcReader = ClassReaders.forClass(this.classProvider, srcOwner.getClassName());
+                    // the source is looked up by its mapped name when cloning
+                    Method srcMethod = remapMethod(targetMethod.method()).method;
+                    srcClass = classNodeForMethods(srcReader, Collections.singleton(srcMethod.getName() + srcMethod.getDescriptor()), name -> false);
+                    prefilter = prefilter.forCopy(srcClass.name, targetClass.name);
+                    if (!prefilter.mayAffect(srcReader)) {
+                        // nothing in the source class can be redirected, skip checking each method
+                        prefilter = RedirectPrefilter.NONE;
+                    }
                 }
 
                 MethodNode method;
@@ -75,6 +251,9 @@ public class Transformer {
                             methodRedirects,
                             fieldRedirects,
                             typeRedirects,
+                            packageRedirects,
+                            prefilter,
+                            true,
                             target.debugSelfRedirects()
                     );
                 } else {
@@ -82,33 +261,229 @@ public class Transformer {
                             methodRedirects,
                             fieldRedirects,
                             typeRedirects,
+                            packageRedirects,
+                            prefilter,
+                            true,
                             target.debugSelfRedirects()
                     );
                 }
+                if (!packedTypeRedirects.isEmpty()) {
+                    method = packTypes(targetClass, method, packedTypeRedirects);
+                }
+                producedMethods.add(method);
                 if (targetMethod.makeSyntheticAccessor()) {
                     makeStaticSyntheticAccessor(targetClass, method);
                 }
             });
         }
+        // lambdas only become unreferenced if methods were replaced, or lambdas cloned for a method that was replaced later
+        int keptMethods = 0;
+        boolean clonedLambdas = false;
+        for (MethodNode method : targetClass.methods) {
+            keptMethods += originalMethods.contains(method) ? 1 : 0;
+            clonedLambdas |= method.name.startsWith(LAMBDA_CLONE_PREFIX);
+        }
+        if (clonedLambdas || keptMethods < originalMethods.size()) {
+            removeUnreferencedLambdas(targetClass, method -> allMethodsPresent || !originalMethods.contains(method));
+        }
+        if (optimize || countInvocations) {
+            for (MethodNode method : targetClass.methods) {
+                if (!originalMethods.contains(method) || producedMethods.contains(method)) {
+                    if (optimize) {
+                        PeepholeOptimizer.optimize(method);
+                    }
+                    if (countInvocations) {
+                        countInvocations(targetClass, method);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void countInvocations(ClassNode targetClass, MethodNode method) {
+        if (method.instructions.size() == 0) {
+            return;
+        }
+        int id = InvocationCounters.register(targetClass.name.replace('/', '.') + '.' + method.name + method.desc);
+        // nothing branches to before the first instruction, so the frames stay valid
+        InsnList count = new InsnList();
+        count.add(new LdcInsnNode(id));
+        count.add(new MethodInsnNode(INVOKESTATIC, Type.getInternalName(InvocationCounters.class), "count", "(I)V", false));
+        method.instructions.insert(count);
+        method.maxStack = Math.max(method.maxStack, 1);
+    }
+
+    /**
+     * Reads the redirects of the target's sets. Nothing in them is mapped yet, so they can be shared by transformers of different namespaces.
+     */
+    static TargetRedirects resolveRedirects(TargetClass target) {
+        Map<TargetMethod, SetRedirects> methodRedirects = new IdentityHashMap<>();
+        for (TargetMethod targetMethod : target.targetMethods()) {
+            methodRedirects.put(targetMethod, new SetRedirects(targetMethod.redirectSets()));
+        }
+        return new TargetRedirects(new SetRedirects(target.redirectSets()), methodRedirects);
+    }
+
+    /**
+     * Adds the redirects to the given maps, overriding those already in them, and maps the types of type redirects
+     *
+     * @param packageRedirects Filled with the package redirects as internal names. Package names aren't mapped, see
+     *                         {@link io.github.opencubicchunks.dasm.api.redirect.PackageRedirect}
+     * @param packedTypeRedirects Filled with the packed type redirects by source class name. Only target methods are packed, not whole classes
+     */
+    private void buildRedirects(SetRedirects redirects, Map<Type, Type> typeRedirects, Map<ClassField, FieldRedirect> fieldRedirects,
+                                Map<ClassMethod, MethodRedirect> methodRedirects, Map<String, String> packageRedirects,
+                                Map<String, PackedTypeRedirect> packedTypeRedirects) {
+        packageRedirects.putAll(redirects.packageRedirects);
+        packedTypeRedirects.putAll(redirects.packedTypeRedirects);
+        fieldRedirects.putAll(redirects.fieldRedirects);
+        methodRedirects.putAll(redirects.methodRedirects);
+        // type names are mapped in one batch, in the order of the redirects so later sets still override earlier ones
+        String[] mappedTypeNames = this.mappingsProvider.mapClassNames(redirects.typeNames.toArray(new String[0]));
+        for (int i = 0; i < mappedTypeNames.length; i += 2) {
+            typeRedirects.put(getObjectType(mappedTypeNames[i]), getObjectType(mappedTypeNames[i + 1]));
+        }
+    }
+
+    @Nullable private static Type typeOrNull(@Nullable String descriptor) {
+        return descriptor == null ? null : getType(descriptor);
+    }
+
+    /**
+     * Collects the mapped names every given redirect matches on, see {@link RedirectPrefilter}
+     */
+    private RedirectPrefilter buildPrefilter(Map<Type, Type> typeRedirects, Map<ClassField, FieldRedirect> fieldRedirects,
+                                             Map<ClassMethod, MethodRedirect> methodRedirects, PackageRedirectTrie packageRedirects) {
+        // many redirects share an owner, only map each owner once
+        Set<Type> owners = new HashSet<>(typeRedirects.keySet());
+        for (ClassField field : fieldRedirects.keySet()) {
+            owners.add(field.owner);
+        }
+        for (ClassMethod method : methodRedirects.keySet()) {
+            owners.add(method.owner);
+        }
+        Set<String> names = new HashSet<>();
+        for (Type mappedOwner : remapTypes(owners).values()) {
+            names.add(mappedOwner.getInternalName());
+        }
+        return new RedirectPrefilter(names, packageRedirects);
     }
 
-    private void buildRedirects(List<RedirectSet> redirectSets, Map<Type, Type> typeRedirects, Map<ClassField, FieldRedirect> fieldRedirects, Map<ClassMethod, MethodRedirect> methodRedirects) {
-        for (RedirectSet redirectSet : redirectSets) {
-            for (TypeRedirect typeRedirect : redirectSet.getTypeRedirects()) {
-                typeRedirects.put(
-                        getObjectType(mappingsProvider.mapClassName(typeRedirect.srcClassName())),
-                        getObjectType(mappingsProvider.mapClassName(typeRedirect.dstClassName()))
-                );
+    /**
+     * Removes lambda bodies nothing in the class references anymore. These are clones made by {@link #cloneAndApplyLambdaRedirects} for a method
+     * that was replaced later on, and the original lambdas of methods {@link #applyRedirects} replaced.
+     * <p/>
+     * Only dasm's lambda clones and private synthetic lambdas are considered, anything else may be used from outside the class.
+     *
+     * @param mayRemove Which of those may be removed, the others are kept even if unreferenced
+     */
+    private static void removeUnreferencedLambdas(ClassNode node, Predicate<MethodNode> mayRemove) {
+        Map<String, MethodNode> unreferenced = new HashMap<>();
+        List<MethodNode> pending = new ArrayList<>();
+        for (MethodNode method : node.methods) {
+            boolean isLambda = (method.access & (ACC_PRIVATE | ACC_SYNTHETIC)) == (ACC_PRIVATE | ACC_SYNTHETIC) && (method.access & ACC_BRIDGE) == 0
+                    && method.name.startsWith("lambda$");
+            if ((isLambda || method.name.startsWith(LAMBDA_CLONE_PREFIX)) && mayRemove.test(method)) {
+                unreferenced.put(method.name + method.desc, method);
+            } else {
+                pending.add(method);
+            }
+        }
+        if (unreferenced.isEmpty()) {
+            return;
+        }
+        // everything else is referenced, and so is anything they reference in turn
+        while (!pending.isEmpty() && !unreferenced.isEmpty()) {
+            MethodNode method = pending.remove(pending.size() - 1);
+            for (AbstractInsnNode instruction : method.instructions) {
+                if (instruction instanceof MethodInsnNode) {
+                    MethodInsnNode methodInsn = (MethodInsnNode) instruction;
+                    markReferenced(node.name, methodInsn.owner, methodInsn.name, methodInsn.desc, unreferenced, pending);
+                } else if (instruction instanceof InvokeDynamicInsnNode) {
+                    InvokeDynamicInsnNode invokeDynamic = (InvokeDynamicInsnNode) instruction;
+                    markReferenced(node.name, invokeDynamic.bsm, unreferenced, pending);
+                    markReferenced(node.name, invokeDynamic.bsmArgs, unreferenced, pending);
+                } else if (instruction instanceof LdcInsnNode) {
+                    markReferenced(node.name, new Object[] { ((LdcInsnNode) instruction).cst }, unreferenced, pending);
+                }
             }
+        }
+        if (!unreferenced.isEmpty()) {
+            LOGGER.info("Transforming " + node.name + ": Removing unreferenced lambdas " + unreferenced.keySet());
+            node.methods.removeAll(unreferenced.values());
+        }
+    }
 
-            for (FieldRedirect fieldRedirect : redirectSet.getFieldRedirects()) {
-                fieldRedirects.put(fieldRedirect.field(), fieldRedirect);
+    private static void markReferenced(String className, Object[] constants, Map<String, MethodNode> unreferenced, List<MethodNode> pending) {
+        for (Object constant : constants) {
+            if (constant instanceof Handle) {
+                markReferenced(className, (Handle) constant, unreferenced, pending);
+            } else if (constant instanceof ConstantDynamic) {
+                ConstantDynamic constantDynamic = (ConstantDynamic) constant;
+                markReferenced(className, constantDynamic.getBootstrapMethod(), unreferenced, pending);
+                Object[] arguments = new Object[constantDynamic.getBootstrapMethodArgumentCount()];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = constantDynamic.getBootstrapMethodArgument(i);
+                }
+                markReferenced(className, arguments, unreferenced, pending);
             }
+        }
+    }
+
+    private static void markReferenced(String className, Handle handle, Map<String, MethodNode> unreferenced, List<MethodNode> pending) {
+        markReferenced(className, handle.getOwner(), handle.getName(), handle.getDesc(), unreferenced, pending);
+    }
+
+    private static void markReferenced(String className, String owner, String name, String desc, Map<String, MethodNode> unreferenced,
+                                       List<MethodNode> pending) {
+        if (!owner.equals(className)) {
+            return;
+        }
+        MethodNode method = unreferenced.remove(name + desc);
+        if (method != null) {
+            pending.add(method);
+        }
+    }
+
+    /**
+     * Replaces the method by one with the packed types replaced by their primitives, see {@link PackedTypeRewriter}.
+     * Lambdas of the method aren't packed.
+     *
+     * @return The method now in the class
+     */
+    private MethodNode packTypes(ClassNode targetClass, MethodNode method, Map<String, PackedTypeRedirect> packedTypeRedirects) {
+        // source and packer names mapped in one batch, in pairs
+        List<String> classNames = new ArrayList<>();
+        for (PackedTypeRedirect packedTypeRedirect : packedTypeRedirects.values()) {
+            classNames.add(packedTypeRedirect.srcClassName());
+            classNames.add(packedTypeRedirect.packerClassName());
+        }
+        String[] mappedClassNames = this.mappingsProvider.mapClassNames(classNames.toArray(new String[0]));
+        Map<String, PackedTypeRewriter.PackedType> packedTypes = new HashMap<>();
+        // internal name -> the mapped name coverage is counted for
+        Map<String, String> coverageNames = new HashMap<>();
+        int i = 0;
+        for (PackedTypeRedirect packedTypeRedirect : packedTypeRedirects.values()) {
+            packedTypes.put(mappedClassNames[i].replace('.', '/'),
+                    new PackedTypeRewriter.PackedType(packedTypeRedirect.packedType(), mappedClassNames[i + 1].replace('.', '/')));
+            coverageNames.put(mappedClassNames[i].replace('.', '/'), mappedClassNames[i]);
+            i += 2;
+        }
 
-            for (MethodRedirect methodRedirect : redirectSet.getMethodRedirects()) {
-                methodRedirects.put(methodRedirect.method(), methodRedirect);
+        RedirectCoverage redirectCoverage = this.redirectCoverage;
+        MethodNode packed = PackedTypeRewriter.rewrite(targetClass.name, method, packedTypes);
+        if (packed != method) {
+            LOGGER.info("Transforming " + targetClass.name + ": Packing " + packedTypes.keySet() + " in " + method.name + " " + method.desc);
+            if (redirectCoverage != null) {
+                for (String packedType : PackedTypeRewriter.usedPackedTypes(method, packedTypes)) {
+                    redirectCoverage.hit(targetClass.name, RedirectCoverage.packedTypeKey(coverageNames.get(packedType)));
+                }
             }
+            // a stub may already be declared with the packed descriptor
+            targetClass.methods.removeIf(m -> m != method && m.name.equals(packed.name) && m.desc.equals(packed.desc));
+            targetClass.methods.set(targetClass.methods.indexOf(method), packed);
         }
+        return packed;
     }
 
     private static void makeStaticSyntheticAccessor(ClassNode node, MethodNode newMethod) {
@@ -128,12 +503,16 @@ public class Transformer {
         }
         newNode.instructions.add(new MethodInsnNode(INVOKEVIRTUAL, node.name, newMethod.name, newMethod.desc, false));
         newNode.instructions.add(new InsnNode(returnType.getOpcode(IRETURN)));
+        newNode.maxLocals = j;
+        newNode.maxStack = Math.max(j, returnType.getSize());
         node.methods.add(newNode);
     }
 
     private MethodNode cloneAndApplyRedirects(ClassNode srcOwner, ClassNode targetClass, ClassMethod existingMethodIn, String newName,
                                               Map<ClassMethod, MethodRedirect> methodRedirectsIn, Map<ClassField, FieldRedirect> fieldRedirectsIn,
-                                              Map<Type, Type> typeRedirectsIn, boolean debugLogging) {
+                                              Map<Type, Type> typeRedirectsIn, PackageRedirectTrie packageRedirects, RedirectPrefilter prefilter,
+                                              boolean warnIfNotRedirected,
+                                              boolean debugLogging) {
         LOGGER.info("Transforming (" + srcOwner.name + "->" + targetClass.name + "): Cloning method " + existingMethodIn.method.getName() + " " + existingMethodIn.method.getDescriptor() + " "
                 + "into " + newName + " and applying remapping");
         Method existingMethod = remapMethod(existingMethodIn).method;
@@ -142,14 +521,39 @@ public class Transformer {
                 .filter(x -> existingMethod.getName().equals(x.name) && existingMethod.getDescriptor().equals(x.desc))
                 .findAny().orElseThrow(() -> new IllegalStateException("Target method " + existingMethod + " not found"));
 
-        Map<Handle, String> redirectedLambdas = cloneAndApplyLambdaRedirects(srcOwner, targetClass, originalMethod, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, debugLogging);
+        Map<Handle, String> redirectedLambdas = cloneAndApplyLambdaRedirects(srcOwner, targetClass, originalMethod, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn,
+                packageRedirects, prefilter, debugLogging);
         Map<ClassMethod, MethodRedirect> methodRedirects = addLambdaMethodRedirects(methodRedirectsIn, redirectedLambdas);
 
-        Remapper remapper = new RedirectingRemapper(srcOwner, methodRedirects, fieldRedirectsIn, typeRedirectsIn, debugLogging);
-
-        String mappedDesc = mapMethodDesc(originalMethod, remapper);
+        boolean mayBeRedirected = !redirectedLambdas.isEmpty() || prefilter.mayAffect(originalMethod);
+        RedirectingRemapper remapper = null;
+        String mappedDesc = originalMethod.desc;
+        if (mayBeRedirected) {
+            remapper = new RedirectingRemapper(srcOwner, targetClass.name, methodRedirects, fieldRedirectsIn, typeRedirectsIn, packageRedirects, debugLogging);
+            mappedDesc = mapMethodDesc(originalMethod, remapper);
+        }
 
         MethodNode existingOutput = removeExistingMethod(targetClass, newName, mappedDesc);
+        if (existingOutput == originalMethod) {
+            // an earlier clone of this same method already moved it into the target class, see below
+            targetClass.methods.add(existingOutput);
+            return existingOutput;
+        }
+        if (!mayBeRedirected && existingOutput == null && srcOwner != targetClass) {
+            // The source class was parsed only for this transform, so the original method can be moved over instead of copied.
+            // Nothing else can change it, so the result is the same as visiting it with just the DefaultRedirectVisitor.
+            if (warnIfNotRedirected) {
+                warnNotRedirected(srcOwner, existingMethodIn, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, packageRedirects);
+            }
+            redirectOwnerInPlace(originalMethod, srcOwner.name, targetClass.name, (targetClass.access & ACC_INTERFACE) != 0);
+            originalMethod.name = newName;
+            originalMethod.signature = null;
+            originalMethod.access &= ~(ACC_PROTECTED | ACC_PRIVATE);
+            originalMethod.access |= ACC_PUBLIC;
+            targetClass.methods.add(originalMethod);
+            return originalMethod;
+        }
+
         MethodNode output;
         if (existingOutput != null && existingOutput.visibleAnnotations != null) {
             // Remove stub annotations, they may be added by stirrin if this is a stub
@@ -166,17 +570,19 @@ public class Transformer {
             output = new MethodNode(originalMethod.access, newName, mappedDesc, null, originalMethod.exceptions.toArray(new String[0]));
         }
 
-        MethodVisitor mv = new MethodVisitor(ASM7, output) {
-            @Override public void visitLineNumber(int line, Label start) {
-                super.visitLineNumber(line, start);
-            }
-        };
-        mv = new MethodRemapper(mv, remapper);
-        mv = new RedirectVisitor(mv, methodRedirects, fieldRedirectsIn);
         // If the src and target differ, the caller will expect `this` to be the target class, not the source class, etc.
         // If they don't differ, this is a complicated no-op:
-        mv = new DefaultRedirectVisitor(mv, srcOwner.name, targetClass.name, (targetClass.access & ACC_INTERFACE) != 0);
-        originalMethod.accept(mv);
+        RedirectingMethodVisitor redirectVisitor = null;
+        if (mayBeRedirected) {
+            redirectVisitor = new RedirectingMethodVisitor(output, remapper, new CrossClassRedirects(methodRedirects, fieldRedirectsIn), targetClass.name,
+                    srcOwner.name, targetClass.name, (targetClass.access & ACC_INTERFACE) != 0);
+            originalMethod.accept(redirectVisitor);
+        } else {
+            originalMethod.accept(new DefaultRedirectVisitor(output, srcOwner.name, targetClass.name, (targetClass.access & ACC_INTERFACE) != 0));
+        }
+        if (warnIfNotRedirected && !(mayBeRedirected && (remapper.redirected() || redirectVisitor.redirected()))) {
+            warnNotRedirected(srcOwner, existingMethodIn, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, packageRedirects);
+        }
         output.name = newName;
         // remove protected and private, add public
         output.access &= ~(ACC_PROTECTED | ACC_PRIVATE);
@@ -188,7 +594,9 @@ public class Transformer {
 
     private MethodNode applyRedirects(ClassNode node, ClassMethod existingMethodIn, String newName,
                                       Map<ClassMethod, MethodRedirect> methodRedirectsIn, Map<ClassField, FieldRedirect> fieldRedirectsIn,
-                                      Map<Type, Type> typeRedirectsIn, boolean debugLogging) {
+                                      Map<Type, Type> typeRedirectsIn, PackageRedirectTrie packageRedirects, RedirectPrefilter prefilter,
+                                      boolean warnIfNotRedirected,
+                                      boolean debugLogging) {
         LOGGER.info("Transforming " + node.name + ": Cloning method " + existingMethodIn.method.getName() + " " + existingMethodIn.method.getDescriptor() + " "
                 + "into " + newName + " and applying remapping");
         Method existingMethod = remapMethod(existingMethodIn).method;
@@ -197,31 +605,81 @@ public class Transformer {
                 .filter(x -> existingMethod.getName().equals(x.name) && existingMethod.getDescriptor().equals(x.desc))
                 .findAny().orElseThrow(() -> new IllegalStateException("Target method " + existingMethod + " not found"));
 
-        Map<Handle, String> redirectedLambdas = cloneAndApplyLambdaRedirects(node, node, originalMethod, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, debugLogging);
+        Map<Handle, String> redirectedLambdas = cloneAndApplyLambdaRedirects(node, node, originalMethod, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn,
+                packageRedirects, prefilter, debugLogging);
         Map<ClassMethod, MethodRedirect> methodRedirects = addLambdaMethodRedirects(methodRedirectsIn, redirectedLambdas);
 
-        Remapper remapper = new RedirectingRemapper(node, methodRedirects, fieldRedirectsIn, typeRedirectsIn, debugLogging);
-        String mappedDesc = mapMethodDesc(originalMethod, remapper);
-
-        MethodNode output = new MethodNode(originalMethod.access, newName, mappedDesc, null, originalMethod.exceptions.toArray(new String[0]));
-
-        MethodVisitor mv = new MethodVisitor(ASM7, output) {
-            @Override public void visitLineNumber(int line, Label start) {
-                super.visitLineNumber(line, start);
+        boolean redirected = false;
+        if (!redirectedLambdas.isEmpty() || prefilter.mayAffect(originalMethod)) {
+            RedirectingRemapper remapper = new RedirectingRemapper(node, node.name, methodRedirects, fieldRedirectsIn, typeRedirectsIn, packageRedirects,
+                    debugLogging);
+            String mappedDesc = mapMethodDesc(originalMethod, remapper);
+
+            MethodNode output = new MethodNode(originalMethod.access, newName, mappedDesc, null, originalMethod.exceptions.toArray(new String[0]));
+
+            // the method stays in its class, so there is no owner to replace
+            RedirectingMethodVisitor redirectVisitor = new RedirectingMethodVisitor(output, remapper, new CrossClassRedirects(methodRedirects, fieldRedirectsIn),
+                    node.name, null, node.name, false);
+            originalMethod.accept(redirectVisitor);
+
+            redirected = remapper.redirected() || redirectVisitor.redirected();
+            if (redirected) {
+                output.name = newName;
+                // remove protected, private, and native; add public
+                output.access &= ~(ACC_PROTECTED | ACC_PRIVATE | ACC_NATIVE);
+                output.access |= ACC_PUBLIC;
+
+                node.methods.remove(originalMethod);
+                node.methods.add(output);
+                return output;
             }
-        };
-        mv = new MethodRemapper(mv, remapper);
-        mv = new RedirectVisitor(mv, methodRedirects, fieldRedirectsIn);
-        originalMethod.accept(mv);
-        output.name = newName;
+            // nothing was redirected, the output is an exact copy; keep the original instead
+        }
+        if (warnIfNotRedirected) {
+            warnNotRedirected(node, existingMethodIn, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, packageRedirects);
+        }
+        originalMethod.name = newName;
+        originalMethod.signature = null;
         // remove protected, private, and native; add public
-        output.access &= ~(ACC_PROTECTED | ACC_PRIVATE | ACC_NATIVE);
-        output.access |= ACC_PUBLIC;
-
+        originalMethod.access &= ~(ACC_PROTECTED | ACC_PRIVATE | ACC_NATIVE);
+        originalMethod.access |= ACC_PUBLIC;
+        // move to the end, where the output would have been added
         node.methods.remove(originalMethod);
-        node.methods.add(output);
+        node.methods.add(originalMethod);
+        return originalMethod;
+    }
 
-        return output;
+    /**
+     * Reports a target method that no redirect applied to. If it has any redirects available, this usually means the target is stale.
+     */
+    private static void warnNotRedirected(ClassNode srcOwner, ClassMethod method, Map<ClassMethod, MethodRedirect> methodRedirects,
+                                          Map<ClassField, FieldRedirect> fieldRedirects, Map<Type, Type> typeRedirects,
+                                          PackageRedirectTrie packageRedirects) {
+        if (methodRedirects.isEmpty() && fieldRedirects.isEmpty() && typeRedirects.isEmpty() && packageRedirects.isEmpty()) {
+            return;
+        }
+        LOGGER.warn("Transforming " + srcOwner.name + ": No redirects applied to method " + method.method.getName() + " " + method.method.getDescriptor()
+                + ", the target may be stale");
+    }
+
+    /**
+     * The tree equivalent of {@link DefaultRedirectVisitor}, for methods that don't need to be copied
+     */
+    private static void redirectOwnerInPlace(MethodNode method, String oldOwner, String newOwner, boolean newOwnerIsInterface) {
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (instruction instanceof FieldInsnNode) {
+                FieldInsnNode fieldInsn = (FieldInsnNode) instruction;
+                if (!newOwnerIsInterface && fieldInsn.owner.equals(oldOwner)) {
+                    fieldInsn.owner = newOwner;
+                }
+            } else if (instruction instanceof MethodInsnNode) {
+                MethodInsnNode methodInsn = (MethodInsnNode) instruction;
+                if (methodInsn.owner.equals(oldOwner)) {
+                    methodInsn.owner = newOwner;
+                    methodInsn.itf = newOwnerIsInterface;
+                }
+            }
+        }
     }
 
     @NotNull private static Map<ClassMethod, MethodRedirect> addLambdaMethodRedirects(Map<ClassMethod, MethodRedirect> methodRedirectsIn,
@@ -257,11 +715,16 @@ public class Transformer {
     private void applyWholeClassRedirects(ClassNode srcNode, ClassNode targetNode,
                                           Map<ClassMethod, MethodRedirect> methodRedirectsIn,
                                           Map<ClassField, FieldRedirect> fieldRedirectsIn,
-                                          Map<Type, Type> typeRedirectsIn, boolean debugLogging) {
+                                          Map<Type, Type> typeRedirectsIn, PackageRedirectTrie packageRedirects, boolean srcMayBeRedirected,
+                                          boolean debugLogging) {
 
         LOGGER.info("Transforming (" + srcNode.name + "->" + targetNode.name + "): Transforming whole class");
 
-        Remapper remapper = new RedirectingRemapper(srcNode, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, debugLogging);
+        // the target node is cleared and renamed below, coverage is still counted for its original name
+        String targetName = targetNode.name;
+        Remapper remapper = new RedirectingRemapper(srcNode, targetName, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, packageRedirects,
+                debugLogging);
+        CrossClassRedirects crossClassRedirects = new CrossClassRedirects(methodRedirectsIn, fieldRedirectsIn);
 
         ClassNode oldNode = new ClassNode(ASM9);
         targetNode.accept(oldNode);
@@ -293,14 +756,23 @@ public class Transformer {
         targetNode.fields.clear();
         targetNode.methods.clear();
 
-        ClassVisitor cv = new ClassRemapper(targetNode, remapper);
-        cv = new ClassVisitor(ASM9, cv) {
-            @Override public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-                RedirectVisitor redirectVisitor = new RedirectVisitor(super.visitMethod(access, name, descriptor, signature, exceptions), methodRedirectsIn, fieldRedirectsIn);
-                return new DefaultRedirectVisitor(redirectVisitor, srcNode.name, targetNode.name, (targetNode.access & ACC_INTERFACE) != 0);
+        ClassVisitor cv = new ClassRemapper(targetNode, remapper) {
+            @Override protected MethodVisitor createMethodRemapper(MethodVisitor methodVisitor) {
+                return new RedirectingMethodVisitor(methodVisitor, remapper, crossClassRedirects, targetName, srcNode.name, targetNode.name,
+                        (targetNode.access & ACC_INTERFACE) != 0);
             }
         };
-        srcNode.accept(cv);
+        if (srcMayBeRedirected) {
+            srcNode.accept(cv);
+        } else {
+            // No redirect can match anything in the source class, so remapping it would be a no-op
+            srcNode.accept(new ClassVisitor(ASM9, targetNode) {
+                @Override public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    return new DefaultRedirectVisitor(super.visitMethod(access, name, descriptor, signature, exceptions), srcNode.name, targetNode.name,
+                            (targetNode.access & ACC_INTERFACE) != 0);
+                }
+            });
+        }
         oldNode.accept(cv);
     }
 
@@ -333,24 +805,41 @@ public class Transformer {
     }
 
     private Type remapDescType(Type t) {
+        return remapDescType(t, this.mappingsProvider::mapClassName);
+    }
+
+    private static Type remapDescType(Type t, UnaryOperator<String> mapClassName) {
         if (t.getSort() == ARRAY) {
             int dimCount = t.getDimensions();
             StringBuilder prefix = new StringBuilder(dimCount);
             for (int i = 0; i < dimCount; i++) {
                 prefix.append('[');
             }
-            return Type.getType(prefix + remapDescType(t.getElementType()).getDescriptor());
+            return Type.getType(prefix + remapDescType(t.getElementType(), mapClassName).getDescriptor());
         }
         if (t.getSort() != OBJECT) {
             return t;
         }
+        String mapped = mapClassName.apply(descClassName(t));
+        String mappedDesc = 'L' + mapped.replace('.', '/') + ';';
+        return Type.getType(mappedDesc);
+    }
+
+    /**
+     * @return The name {@link #remapDescType} maps for the type, or null if it maps none
+     */
+    @Nullable private static String descClassName(Type t) {
+        if (t.getSort() == ARRAY) {
+            t = t.getElementType();
+        }
+        if (t.getSort() != OBJECT) {
+            return null;
+        }
         String unmapped = t.getClassName();
         if (unmapped.endsWith(";")) {
             unmapped = unmapped.substring(1, unmapped.length() - 1);
         }
-        String mapped = this.mappingsProvider.mapClassName(unmapped);
-        String mappedDesc = 'L' + mapped.replace('.', '/') + ';';
-        return Type.getType(mappedDesc);
+        return unmapped;
     }
 
     private Type remapType(Type t) {
@@ -359,10 +848,111 @@ public class Transformer {
         return Type.getObjectType(mapped.replace('.', '/'));
     }
 
+    /**
+     * The bulk equivalent of {@link #remapType}, mapping all names in one call to the {@link MappingsProvider}
+     *
+     * @return The mapped types, in the order of the given ones
+     */
+    private Map<Type, Type> remapTypes(Collection<Type> types) {
+        Set<String> classNames = new HashSet<>();
+        for (Type type : types) {
+            classNames.add(type.getClassName());
+        }
+        Map<String, String> mappedClassNames = remapClassNames(classNames);
+        Map<Type, Type> mapped = new LinkedHashMap<>();
+        for (Type type : types) {
+            mapped.put(type, Type.getObjectType(mappedClassNames.get(type.getClassName()).replace('.', '/')));
+        }
+        return mapped;
+    }
+
+    /**
+     * The bulk equivalent of {@link #remapField}, mapping all names in one call per kind of name to the {@link MappingsProvider}
+     */
+    private Map<ClassField, ClassField> remapFields(Collection<ClassField> fields) {
+        Set<String> classNames = new HashSet<>();
+        String[] owners = new String[fields.size()];
+        String[] names = new String[fields.size()];
+        String[] descriptors = new String[fields.size()];
+        int i = 0;
+        for (ClassField field : fields) {
+            classNames.add(field.owner.getClassName());
+            addIfNotNull(classNames, descClassName(field.desc));
+            owners[i] = field.owner.getClassName();
+            names[i] = field.name;
+            descriptors[i] = field.desc.getDescriptor();
+            i++;
+        }
+        Map<String, String> mappedClassNames = remapClassNames(classNames);
+        String[] mappedNames = this.mappingsProvider.mapFieldNames(owners, names, descriptors);
+
+        Map<ClassField, ClassField> mapped = new LinkedHashMap<>();
+        i = 0;
+        for (ClassField field : fields) {
+            Type mappedType = Type.getObjectType(mappedClassNames.get(field.owner.getClassName()).replace('.', '/'));
+            mapped.put(field, new ClassField(mappedType, mappedNames[i++], remapDescType(field.desc, mappedClassNames::get)));
+        }
+        return mapped;
+    }
+
+    /**
+     * The bulk equivalent of {@link #remapMethod}, mapping all names in one call per kind of name to the {@link MappingsProvider}
+     */
+    private Map<ClassMethod, ClassMethod> remapMethods(Collection<ClassMethod> methods) {
+        Set<String> classNames = new HashSet<>();
+        String[] owners = new String[methods.size()];
+        String[] names = new String[methods.size()];
+        String[] descriptors = new String[methods.size()];
+        int i = 0;
+        for (ClassMethod method : methods) {
+            classNames.add(method.owner.getClassName());
+            for (Type param : method.method.getArgumentTypes()) {
+                addIfNotNull(classNames, descClassName(param));
+            }
+            addIfNotNull(classNames, descClassName(method.method.getReturnType()));
+            owners[i] = method.mappingOwner.getClassName();
+            names[i] = method.method.getName();
+            descriptors[i] = method.method.getDescriptor();
+            i++;
+        }
+        Map<String, String> mappedClassNames = remapClassNames(classNames);
+        String[] mappedNames = this.mappingsProvider.mapMethodNames(owners, names, descriptors);
+
+        Map<ClassMethod, ClassMethod> mapped = new LinkedHashMap<>();
+        i = 0;
+        for (ClassMethod method : methods) {
+            Type[] params = method.method.getArgumentTypes();
+            Type[] mappedParams = new Type[params.length];
+            for (int j = 0; j < params.length; j++) {
+                mappedParams[j] = remapDescType(params[j], mappedClassNames::get);
+            }
+            Type mappedReturnType = remapDescType(method.method.getReturnType(), mappedClassNames::get);
+            Type mappedType = Type.getObjectType(mappedClassNames.get(method.owner.getClassName()).replace('.', '/'));
+            mapped.put(method, new ClassMethod(mappedType, new Method(mappedNames[i++], mappedReturnType, mappedParams)));
+        }
+        return mapped;
+    }
+
+    private Map<String, String> remapClassNames(Set<String> classNames) {
+        String[] unmapped = classNames.toArray(new String[0]);
+        String[] mapped = this.mappingsProvider.mapClassNames(unmapped);
+        Map<String, String> mappedClassNames = new HashMap<>();
+        for (int i = 0; i < unmapped.length; i++) {
+            mappedClassNames.put(unmapped[i], mapped[i]);
+        }
+        return mappedClassNames;
+    }
+
+    private static void addIfNotNull(Set<String> set, @Nullable String value) {
+        if (value != null) {
+            set.add(value);
+        }
+    }
+
     private Map<Handle, String> cloneAndApplyLambdaRedirects(ClassNode srcOwner, ClassNode targetClass, MethodNode method,
                                                              Map<ClassMethod, MethodRedirect> methodRedirectsIn,
                                                              Map<ClassField, FieldRedirect> fieldRedirectsIn, Map<Type, Type> typeRedirectsIn,
-                                                             boolean debugLogging) {
+                                                             PackageRedirectTrie packageRedirects, RedirectPrefilter prefilter, boolean debugLogging) {
         Map<Handle, String> lambdaRedirects = new HashMap<>();
         for (AbstractInsnNode instruction : method.instructions) {
             if (instruction.getOpcode() == INVOKEDYNAMIC) {
@@ -387,11 +977,11 @@ public class Transformer {
                         if (targetNode == null || (targetNode.access & ACC_SYNTHETIC) == 0) {
                             continue;
                         }
-                        String newName = "dasm$redirect$" + name;
+                        String newName = LAMBDA_CLONE_PREFIX + name;
                         lambdaRedirects.put(handle, newName);
                         cloneAndApplyRedirects(srcOwner, targetClass, new ClassMethod(Type.getObjectType(handle.getOwner()),
                                         new Method(name, desc)),
-                                newName, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, debugLogging);
+                                newName, methodRedirectsIn, fieldRedirectsIn, typeRedirectsIn, packageRedirects, prefilter, false, debugLogging);
                     }
                 }
             }
@@ -399,50 +989,243 @@ public class Transformer {
         return lambdaRedirects;
     }
 
-    private ClassNode classNodeForClass(String className) {
+    private static ClassNode classNodeForClass(ClassReader classReader) {
         ClassNode dst = new ClassNode(ASM9);
-        final ClassReader classReader = new ClassReader(this.classProvider.classBytes(className));
         classReader.accept(dst, 0);
         return dst;
     }
 
-    private class RedirectVisitor extends MethodVisitor {
+    /**
+     * Like {@link #classNodeForClass(ClassReader)}, but only materializes the given methods and the lambdas they (transitively) use,
+     * see {@link #cloneAndApplyLambdaRedirects}. All other methods are left out of the returned node, their code is never parsed.
+     *
+     * @param methods The methods to materialize, as name + descriptor
+     * @param materializeByName Which further methods to materialize by their name alone
+     */
+    private static ClassNode classNodeForMethods(ClassReader classReader, Set<String> methods, Predicate<String> materializeByName) {
+        ClassNode dst = new ClassNode(ASM9);
+        Set<String> syntheticMethods = new HashSet<>();
+        Set<String> materialized = new HashSet<>();
+        Set<String> pending = methods;
+        boolean firstPass = true;
+        while (firstPass || !pending.isEmpty()) {
+            Set<String> toMaterialize = pending;
+            boolean isFirstPass = firstPass;
+            List<MethodNode> added = new ArrayList<>();
+            // only the first pass fills in the rest of the class, later ones just add the newly found lambdas
+            classReader.accept(new ClassVisitor(ASM9, firstPass ? dst : null) {
+                @Override public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    String key = name + descriptor;
+                    if ((access & ACC_SYNTHETIC) != 0) {
+                        syntheticMethods.add(key);
+                    }
+                    if (!toMaterialize.contains(key) && !(isFirstPass && materializeByName.test(name))) {
+                        return null;
+                    }
+                    MethodNode methodNode = new MethodNode(ASM9, access, name, descriptor, signature, exceptions);
+                    dst.methods.add(methodNode);
+                    added.add(methodNode);
+                    return methodNode;
+                }
+            }, 0);
+            for (MethodNode methodNode : added) {
+                materialized.add(methodNode.name + methodNode.desc);
+            }
+            firstPass = false;
 
-        private final HashMap<String, MethodRedirect> methodRedirects;
-        private final HashMap<String, FieldRedirect> fieldRedirects;
+            pending = new HashSet<>();
+            for (MethodNode methodNode : added) {
+                for (AbstractInsnNode instruction : methodNode.instructions) {
+                    if (instruction.getOpcode() != INVOKEDYNAMIC) {
+                        continue;
+                    }
+                    InvokeDynamicInsnNode invoke = (InvokeDynamicInsnNode) instruction;
+                    if (!invoke.bsm.getName().equals("metafactory") || !invoke.bsm.getOwner().equals("java/lang/invoke/LambdaMetafactory")) {
+                        continue;
+                    }
+                    for (Object bsmArg : invoke.bsmArgs) {
+                        if (!(bsmArg instanceof Handle) || !((Handle) bsmArg).getOwner().equals(dst.name)) {
+                            continue;
+                        }
+                        String key = ((Handle) bsmArg).getName() + ((Handle) bsmArg).getDesc();
+                        // method references to non-synthetic methods aren't cloned, so they aren't needed
+                        if (syntheticMethods.contains(key) && !materialized.contains(key)) {
+                            pending.add(key);
+                        }
+                    }
+                }
+            }
+        }
+        return dst;
+    }
 
-        public RedirectVisitor(MethodVisitor mv, Map<ClassMethod, MethodRedirect> methodRedirectsIn, Map<ClassField, FieldRedirect> fieldRedirectsIn) {
-            super(ASM7, mv);
-            this.methodRedirects = new HashMap<>();
-            for (ClassMethod classMethodUnmapped : methodRedirectsIn.keySet()) {
-                MethodRedirect methodRedirect = methodRedirectsIn.get(classMethodUnmapped);
-                if (methodRedirect.newOwner() == null) {
-                    continue; // this is a normal same class redirect, handled separately
+    /**
+     * The redirects of a target class' sets, and of each of its target methods' own sets, see {@link #resolveRedirects}
+     */
+    static final class TargetRedirects {
+        private final SetRedirects classRedirects;
+        private final Map<TargetMethod, SetRedirects> methodRedirects;
+
+        private TargetRedirects(SetRedirects classRedirects, Map<TargetMethod, SetRedirects> methodRedirects) {
+            this.classRedirects = classRedirects;
+            this.methodRedirects = methodRedirects;
+        }
+
+        private SetRedirects forMethod(TargetMethod targetMethod) {
+            SetRedirects redirects = this.methodRedirects.get(targetMethod);
+            if (redirects == null) {
+                throw new IllegalStateException(String.format("Target method %s was added after the redirects were resolved", targetMethod.method()));
+            }
+            return redirects;
+        }
+    }
+
+    /**
+     * The redirects of a list of sets, later sets overriding earlier ones. Type names aren't mapped yet.
+     */
+    private static final class SetRedirects {
+        // source and destination of each type redirect, in the order of the sets
+        private final List<String> typeNames = new ArrayList<>();
+        private final Map<ClassField, FieldRedirect> fieldRedirects = new HashMap<>();
+        private final Map<ClassMethod, MethodRedirect> methodRedirects = new HashMap<>();
+        private final Map<String, String> packageRedirects = new HashMap<>();
+        private final Map<String, PackedTypeRedirect> packedTypeRedirects = new HashMap<>();
+
+        SetRedirects(List<RedirectSet> redirectSets) {
+            for (RedirectSet redirectSet : redirectSets) {
+                redirectSet.forEachTypeRedirect((srcClassName, dstClassName) -> {
+                    this.typeNames.add(srcClassName);
+                    this.typeNames.add(dstClassName);
+                });
+                redirectSet.forEachPackageRedirect((srcPackageName, dstPackageName) -> this.packageRedirects.put(
+                        srcPackageName.replace('.', '/'),
+                        dstPackageName.replace('.', '/')
+                ));
+                redirectSet.forEachPackedTypeRedirect((srcClassName, packedType, packerClassName) -> this.packedTypeRedirects.put(
+                        srcClassName,
+                        new PackedTypeRedirect(srcClassName, packedType, packerClassName)
+                ));
+
+                redirectSet.forEachFieldRedirect((ownerDescriptor, name, descriptor, newOwnerDescriptor, dstFieldName) -> {
+                    ClassField field = new ClassField(getType(ownerDescriptor), name, getType(descriptor));
+                    this.fieldRedirects.put(field, new FieldRedirect(field, typeOrNull(newOwnerDescriptor), dstFieldName));
+                });
+
+                redirectSet.forEachMethodRedirect((ownerDescriptor, name, descriptor, mappingOwnerDescriptor, newOwnerDescriptor, dstMethodName,
+                                                   isDstInterface) -> {
+                    ClassMethod method = new ClassMethod(getType(ownerDescriptor), new Method(name, descriptor), getType(mappingOwnerDescriptor));
+                    this.methodRedirects.put(method, new MethodRedirect(method, typeOrNull(newOwnerDescriptor), dstMethodName, isDstInterface));
+                });
+            }
+        }
+    }
+
+    /**
+     * The redirects into other classes, by mapped owner and name. Built once per set of redirects, and shared by every method they're applied to.
+     */
+    private class CrossClassRedirects {
+        // mapped name -> the redirects of members with that name, so matching an instruction doesn't need to build a key
+        private final Map<String, List<MemberRedirect<MethodRedirect>>> methodRedirects = new HashMap<>();
+        private final Map<String, List<MemberRedirect<FieldRedirect>>> fieldRedirects = new HashMap<>();
+
+        CrossClassRedirects(Map<ClassMethod, MethodRedirect> methodRedirectsIn, Map<ClassField, FieldRedirect> fieldRedirectsIn) {
+            List<ClassMethod> redirectedMethods = new ArrayList<>();
+            methodRedirectsIn.forEach((classMethodUnmapped, methodRedirect) -> {
+                if (methodRedirect.newOwner() != null) { // same class redirects are handled by the RedirectingRemapper
+                    redirectedMethods.add(classMethodUnmapped);
                 }
-                ClassMethod classMethod = remapMethod(classMethodUnmapped);
-                methodRedirects.put(
-                        classMethod.owner.getInternalName() + "." + classMethod.method.getName() + classMethod.method.getDescriptor(),
-                        methodRedirect
-                );
+            });
+            for (Map.Entry<ClassMethod, ClassMethod> mappedMethod : remapMethods(redirectedMethods).entrySet()) {
+                ClassMethod classMethod = mappedMethod.getValue();
+                this.methodRedirects.computeIfAbsent(classMethod.method.getName(), name -> new ArrayList<>(1)).add(new MemberRedirect<>(
+                        classMethod.owner.getInternalName(), classMethod.method.getDescriptor(), methodRedirectsIn.get(mappedMethod.getKey())));
             }
 
-            this.fieldRedirects = new HashMap<>();
-            for (ClassField classFieldUnmapped : fieldRedirectsIn.keySet()) {
-                FieldRedirect fieldRedirect = fieldRedirectsIn.get(classFieldUnmapped);
-                if (fieldRedirect.newOwner() == null) {
-                    continue; // this is a normal same class redirect, handled separately
+            List<ClassField> redirectedFields = new ArrayList<>();
+            fieldRedirectsIn.forEach((classFieldUnmapped, fieldRedirect) -> {
+                if (fieldRedirect.newOwner() != null) { // same class redirects are handled by the RedirectingRemapper
+                    redirectedFields.add(classFieldUnmapped);
                 }
-                ClassField classField = remapField(classFieldUnmapped);
-                fieldRedirects.put(
-                        classField.owner.getInternalName() + "." + classField.name,
-                        fieldRedirect
-                );
+            });
+            for (Map.Entry<ClassField, ClassField> mappedField : remapFields(redirectedFields).entrySet()) {
+                ClassField classField = mappedField.getValue();
+                // fields are matched by owner and name only
+                this.fieldRedirects.computeIfAbsent(classField.name, name -> new ArrayList<>(1)).add(new MemberRedirect<>(
+                        classField.owner.getInternalName(), null, fieldRedirectsIn.get(mappedField.getKey())));
             }
         }
 
+        @Nullable MethodRedirect method(String owner, String name, String descriptor) {
+            return MemberRedirect.find(this.methodRedirects.get(name), owner, descriptor);
+        }
+
+        @Nullable FieldRedirect field(String owner, String name) {
+            return MemberRedirect.find(this.fieldRedirects.get(name), owner, null);
+        }
+    }
+
+    private static final class MemberRedirect<R> {
+        private final String owner;
+        @Nullable private final String descriptor;
+        private final R redirect;
+
+        MemberRedirect(String owner, @Nullable String descriptor, R redirect) {
+            this.owner = owner;
+            this.descriptor = descriptor;
+            this.redirect = redirect;
+        }
+
+        /**
+         * @param descriptor The descriptor to match, or null to match on the owner only
+         */
+        @Nullable static <R> R find(@Nullable List<MemberRedirect<R>> redirects, String owner, @Nullable String descriptor) {
+            if (redirects == null) {
+                return null;
+            }
+            for (MemberRedirect<R> redirect : redirects) {
+                if (redirect.owner.equals(owner) && (descriptor == null || descriptor.equals(redirect.descriptor))) {
+                    return redirect.redirect;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Applies everything a redirected method needs in one pass over its instructions: first the source class is replaced by the target class as owner,
+     * then redirects into other classes are applied, and finally the {@link RedirectingRemapper} maps same-class redirects and types.
+     */
+    private class RedirectingMethodVisitor extends MethodRemapper {
+        private final CrossClassRedirects crossClassRedirects;
+        private final String targetName;
+        @Nullable private final String oldOwner;
+        private final String newOwner;
+        private final boolean newOwnerIsInterface;
+        @Nullable private final RedirectCoverage redirectCoverage;
+        @Nullable private final RedirectInliner redirectInliner;
+        private boolean redirected;
+        private int extraStack;
+
+        /**
+         * @param oldOwner The class the method is copied out of, or null if it stays in its class
+         */
+        RedirectingMethodVisitor(MethodVisitor mv, Remapper remapper, CrossClassRedirects crossClassRedirects, String targetName,
+                                 @Nullable String oldOwner, String newOwner, boolean newOwnerIsInterface) {
+            super(ASM9, mv, remapper);
+            this.crossClassRedirects = crossClassRedirects;
+            this.targetName = targetName;
+            this.oldOwner = oldOwner;
+            this.newOwner = newOwner;
+            this.newOwnerIsInterface = newOwnerIsInterface;
+            this.redirectCoverage = Transformer.this.redirectCoverage;
+            this.redirectInliner = Transformer.this.redirectInliner;
+        }
+
         @Override public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
-            String key = owner + "." + name;
-            FieldRedirect redirectedField = fieldRedirects.get(key);
+            if (!this.newOwnerIsInterface && owner.equals(this.oldOwner)) {
+                owner = this.newOwner;
+            }
+            FieldRedirect redirectedField = this.crossClassRedirects.field(owner, name);
             if (redirectedField == null) {
                 super.visitFieldInsn(opcode, owner, name, descriptor);
                 return;
@@ -450,12 +1233,19 @@ public class Transformer {
             if (opcode != Opcodes.GETSTATIC && opcode != Opcodes.PUTSTATIC) {
                 throw new RuntimeException("Can't redirect field access to different type.");
             }
+            this.redirected = true;
+            if (this.redirectCoverage != null) {
+                this.redirectCoverage.hit(this.targetName, RedirectCoverage.fieldKey(redirectedField.field()));
+            }
             super.visitFieldInsn(opcode, redirectedField.newOwner().getInternalName(), redirectedField.dstFieldName(), descriptor);
         }
 
         @Override public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
-            String key = owner + "." + name + descriptor;
-            MethodRedirect redirectedMethod = methodRedirects.get(key);
+            if (owner.equals(this.oldOwner)) {
+                owner = this.newOwner;
+                isInterface = this.newOwnerIsInterface;
+            }
+            MethodRedirect redirectedMethod = this.crossClassRedirects.method(owner, name, descriptor);
             if (redirectedMethod == null) {
                 super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
                 return;
@@ -470,10 +1260,30 @@ public class Transformer {
                 throw new RuntimeException("Method redirect to different class: Only INVOKEVIRTUAL, INVOKEINTERFACE and INVOKESTATIC supported");
             }
 
+            this.redirected = true;
+            if (this.redirectCoverage != null) {
+                this.redirectCoverage.hit(this.targetName, RedirectCoverage.methodKey(redirectedMethod.method()));
+            }
+            if (this.redirectInliner != null) {
+                // the destination is declared with the remapped descriptor
+                RedirectInliner.Body body = this.redirectInliner.find(redirectedMethod.newOwner().getInternalName(), redirectedMethod.dstMethodName(),
+                        this.remapper.mapMethodDesc(descriptor));
+                if (body != null) {
+                    // the body is code of the destination class, none of the target's redirects or remapping apply to it
+                    body.accept(this.mv);
+                    this.extraStack = Math.max(this.extraStack, body.extraStack());
+                    return;
+                }
+            }
             super.visitMethodInsn(opcode, redirectedMethod.newOwner().getInternalName(), redirectedMethod.dstMethodName(), descriptor,
                     redirectedMethod.isDstInterface());
         }
 
+        @Override public void visitMaxs(int maxStack, int maxLocals) {
+            // inlined bodies may need more stack than the calls they replace
+            super.visitMaxs(maxStack + this.extraStack, maxLocals);
+        }
+
         @Override
         public void visitInvokeDynamicInsn(String name, String descriptor, Handle bsm, Object... bsmArgs) {
             // handles method references
@@ -488,8 +1298,8 @@ public class Transformer {
                         String lambdaOrReferenceMethodName = handle.getName();
                         String lambdaOrReferenceMethodDesc = handle.getDesc();
 
-                        String key = lambdaOrReferenceMethodOwner + "." + lambdaOrReferenceMethodName + lambdaOrReferenceMethodDesc;
-                        MethodRedirect redirectedMethod = methodRedirects.get(key);
+                        MethodRedirect redirectedMethod = this.crossClassRedirects.method(lambdaOrReferenceMethodOwner, lambdaOrReferenceMethodName,
+                                lambdaOrReferenceMethodDesc);
                         if (redirectedMethod == null) {
                             break; // done, no redirect
                         }
@@ -507,6 +1317,10 @@ public class Transformer {
                             lambdaOrReferenceMethodDesc, redirectedMethod.isDstInterface());
                         Object[] newBsmArgs = bsmArgs.clone();
                         newBsmArgs[i] = newHandle;
+                        this.redirected = true;
+                        if (this.redirectCoverage != null) {
+                            this.redirectCoverage.hit(this.targetName, RedirectCoverage.methodKey(redirectedMethod.method()));
+                        }
                         super.visitInvokeDynamicInsn(name, descriptor, bsm, newBsmArgs);
                         return; // done, redirected
                     }
@@ -515,6 +1329,13 @@ public class Transformer {
             super.visitInvokeDynamicInsn(name, descriptor, bsm, bsmArgs);
         }
 
+        /**
+         * @return Whether any cross-class redirect was applied so far
+         */
+        public boolean redirected() {
+            return this.redirected;
+        }
+
         @NotNull private String addOwnerAsFirstArgument(String owner, String descriptor) {
             Type[] argumentTypes = getArgumentTypes(descriptor);
             Type retType = Type.getReturnType(descriptor);
@@ -563,49 +1384,73 @@ public class Transformer {
         private final Map<String, String> methodRedirects;
         private final Map<String, String> fieldRedirects;
         private final Map<String, String> typeRedirects;
+        private final PackageRedirectTrie packageRedirects;
         private final boolean debugLogging;
+        private final String targetName;
+        @Nullable private final RedirectCoverage redirectCoverage;
+        // mapped key -> coverage key of the redirect it came from, only filled in when counting coverage
+        private final Map<String, String> coverageKeys = new HashMap<>();
+        private boolean redirected;
 
-        public RedirectingRemapper(ClassNode node,
+        public RedirectingRemapper(ClassNode node, String targetName,
                                    Map<ClassMethod, MethodRedirect> methodRedirectsIn,
                                    Map<ClassField, FieldRedirect> fieldRedirectsIn,
-                                   Map<Type, Type> typeRedirectsIn, boolean debugLogging) {
+                                   Map<Type, Type> typeRedirectsIn, PackageRedirectTrie packageRedirects, boolean debugLogging) {
 
             this.debugLogging = debugLogging;
+            this.packageRedirects = packageRedirects;
+            this.targetName = targetName;
+            this.redirectCoverage = Transformer.this.redirectCoverage;
             this.defaultKnownClasses = Sets.newHashSet(
                     Type.getType(Object.class).getInternalName(),
                     Type.getType(String.class).getInternalName(),
                     node.name
             );
 
+            List<ClassMethod> redirectedMethods = new ArrayList<>();
+            methodRedirectsIn.forEach((classMethodUnmapped, methodRedirect) -> {
+                if (methodRedirect.newOwner() == null) { // redirects into a different class are handled separately
+                    redirectedMethods.add(classMethodUnmapped);
+                }
+            });
             this.methodRedirects = new HashMap<>();
-            for (ClassMethod classMethodUnmapped : methodRedirectsIn.keySet()) {
-                MethodRedirect methodRedirect = methodRedirectsIn.get(classMethodUnmapped);
-                if (methodRedirect.newOwner() != null) {
-                    continue; // this is a redirect into a different class, handled separately
+            for (Map.Entry<ClassMethod, ClassMethod> mappedMethod : remapMethods(redirectedMethods).entrySet()) {
+                MethodRedirect methodRedirect = methodRedirectsIn.get(mappedMethod.getKey());
+                ClassMethod classMethod = mappedMethod.getValue();
+                String key = classMethod.owner.getInternalName() + "." + classMethod.method.getName() + classMethod.method.getDescriptor();
+                methodRedirects.put(key, methodRedirect.dstMethodName());
+                if (this.redirectCoverage != null) {
+                    coverageKeys.put("M " + key, RedirectCoverage.methodKey(methodRedirect.method()));
                 }
-                ClassMethod classMethod = remapMethod(classMethodUnmapped);
-                methodRedirects.put(
-                        classMethod.owner.getInternalName() + "." + classMethod.method.getName() + classMethod.method.getDescriptor(),
-                        methodRedirect.dstMethodName()
-                );
             }
 
+            List<ClassField> redirectedFields = new ArrayList<>();
+            fieldRedirectsIn.forEach((classFieldUnmapped, fieldRedirect) -> {
+                if (fieldRedirect.newOwner() == null) { // redirects into a different class are handled separately
+                    redirectedFields.add(classFieldUnmapped);
+                }
+            });
             this.fieldRedirects = new HashMap<>();
-            for (ClassField classFieldUnmapped : fieldRedirectsIn.keySet()) {
-                FieldRedirect fieldRedirect = fieldRedirectsIn.get(classFieldUnmapped);
-                if (fieldRedirect.newOwner() != null) {
-                    continue; // this is a redirect into a different class, handled separately
+            for (Map.Entry<ClassField, ClassField> mappedField : remapFields(redirectedFields).entrySet()) {
+                FieldRedirect fieldRedirect = fieldRedirectsIn.get(mappedField.getKey());
+                ClassField classField = mappedField.getValue();
+                String key = classField.owner.getInternalName() + "." + classField.name;
+                fieldRedirects.put(key, fieldRedirect.dstFieldName());
+                if (this.redirectCoverage != null) {
+                    coverageKeys.put("F " + key, RedirectCoverage.fieldKey(fieldRedirect.field()));
                 }
-                ClassField classField = remapField(classFieldUnmapped);
-                fieldRedirects.put(
-                        classField.owner.getInternalName() + "." + classField.name,
-                        fieldRedirect.dstFieldName()
-                );
             }
 
+            Set<Type> types = new HashSet<>(typeRedirectsIn.keySet());
+            types.addAll(typeRedirectsIn.values());
+            Map<Type, Type> mappedTypes = remapTypes(types);
             this.typeRedirects = new HashMap<>();
             for (Type type : typeRedirectsIn.keySet()) {
-                typeRedirects.put(remapType(type).getInternalName(), remapType(typeRedirectsIn.get(type)).getInternalName());
+                String key = mappedTypes.get(type).getInternalName();
+                typeRedirects.put(key, mappedTypes.get(typeRedirectsIn.get(type)).getInternalName());
+                if (this.redirectCoverage != null) {
+                    coverageKeys.put("T " + key, RedirectCoverage.typeKey(type.getInternalName()));
+                }
             }
 
             methodRedirects.forEach((old, n) -> LOGGER.info("Method mapping: " + old + " -> " + n));
@@ -628,6 +1473,8 @@ public class Transformer {
                 methodRedirects.put(key, name);
                 return name;
             }
+            this.redirected |= !mappedName.equals(name);
+            countHit("M " + key);
             return mappedName;
         }
 
@@ -650,6 +1497,8 @@ public class Transformer {
                 fieldRedirects.put(key, name);
                 return name;
             }
+            this.redirected |= !mapped.equals(name);
+            countHit("F " + key);
             return mapped;
         }
 
@@ -659,6 +1508,9 @@ public class Transformer {
             if (mapped == null && defaultKnownClasses.contains(key)) {
                 mapped = key;
             }
+            if (mapped == null && !this.packageRedirects.isEmpty()) {
+                mapped = mapByPackage(key);
+            }
             if (mapped == null) {
                 if (globalLogSelfRedirects || this.debugLogging) {
                     LOGGER.info("NOTE: handling CLASS redirect to self: " + key);
@@ -666,7 +1518,46 @@ public class Transformer {
                 typeRedirects.put(key, key);
                 return key;
             }
+            this.redirected |= !mapped.equals(key);
+            countHit("T " + key);
             return mapped;
         }
+
+        /**
+         * Type redirects take priority over package redirects, so package redirects are only checked once no type redirect matched.
+         * A match is remembered like a type redirect.
+         */
+        @Nullable private String mapByPackage(String key) {
+            String mapped = this.packageRedirects.redirect(key);
+            if (mapped == null) {
+                return null;
+            }
+            typeRedirects.put(key, mapped);
+            if (this.redirectCoverage != null) {
+                coverageKeys.put("T " + key, RedirectCoverage.packageKey(this.packageRedirects.matchingPackage(key)));
+            }
+            if (globalLogSelfRedirects || this.debugLogging) {
+                LOGGER.info("Package mapping: " + key + " -> " + mapped);
+            }
+            return mapped;
+        }
+
+        private void countHit(String key) {
+            if (this.redirectCoverage == null) {
+                return;
+            }
+            // self-mappings remembered above have no coverage key
+            String coverageKey = this.coverageKeys.get(key);
+            if (coverageKey != null) {
+                this.redirectCoverage.hit(this.targetName, coverageKey);
+            }
+        }
+
+        /**
+         * @return Whether any name was mapped to a different one so far
+         */
+        public boolean redirected() {
+            return this.redirected;
+        }
     }
 }
\ No newline at end of file
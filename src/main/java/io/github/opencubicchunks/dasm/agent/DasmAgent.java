@@ -0,0 +1,192 @@
+package io.github.opencubicchunks.dasm.agent;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.CachingClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.IndexedMappingsProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappedClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.transformer.target.TargetIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.objectweb.asm.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.instrument.Instrumentation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@code java.lang.instrument} agent applying dasm without a mod loader, eg: on headless servers and in tests. dasm's dependencies have to be on
+ * the classpath, as agent classes are loaded by the system class loader.
+ * <pre>{@code
+ * java -javaagent:dasm.jar=defaultSet=com.example.DefaultSet -cp app.jar:<dasm dependencies> com.example.Main
+ * }</pre>
+ * The targets are the classes in the {@link TargetIndex TargetIndices} at {@value TargetIndex#DEFAULT_LOCATION} of every classpath entry, see
+ * {@link io.github.opencubicchunks.dasm.TargetIndexGenerator}. Options are separated by {@code ,}:
+ * <ul>
+ *     <li>{@code defaultSet}: The redirect set {@code @DasmRedirect} without any sets stands for, required</li>
+ *     <li>{@code classpath}: The jar files and directories to read indices, redirect sets and source classes from, separated by
+ *     {@link File#pathSeparator}. Defaults to the {@code java.class.path}</li>
+ *     <li>{@code threads}: The number of threads to prefetch and retransform on, defaults to the number of processors</li>
+ *     <li>{@code batchSize}: The maximum number of classes retransformed at once after a redirect set changes, defaults to 64</li>
+ *     <li>{@code mappings}: A Tiny v2 or SRG mappings file to map the names in redirects with, names aren't mapped without it</li>
+ *     <li>{@code mappingsIndex}: Where to save the index of the mappings, so that later launches don't parse them again, see
+ *     {@link IndexedMappingsProvider#load}. The mappings are parsed on every launch without it</li>
+ *     <li>{@code fromNamespace}, {@code toNamespace}: The Tiny v2 namespaces to map from and to, default to {@code named} and
+ *     {@code intermediary}</li>
+ * </ul>
+ * When attached to a running JVM, the targets that are already loaded are transformed right away, except for the ones the transform would add
+ * methods to, eg: cloned lambdas and synthetic accessors. The JVM doesn't allow retransforming to add methods, so those are skipped with a warning
+ * and only transformed once they're loaded again, see {@link DasmClassFileTransformer}.
+ * <p/>
+ * To use any other {@link MappingsProvider}, create a {@link DasmClassFileTransformer} with a {@link Transformer} using it and add it to the
+ * {@link Instrumentation} directly.
+ */
+public final class DasmAgent {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    @Nullable private static volatile DasmClassFileTransformer classFileTransformer;
+
+    private DasmAgent() {
+    }
+
+    public static void premain(@Nullable String args, Instrumentation instrumentation) throws IOException {
+        install(args, instrumentation);
+    }
+
+    public static void agentmain(@Nullable String args, Instrumentation instrumentation) throws IOException {
+        TargetIndex index = install(args, instrumentation);
+        if (instrumentation.isRetransformClassesSupported()) {
+            classFileTransformer.retransform(index.classNames());
+        } else {
+            LOGGER.warn("Retransforming classes isn't supported, targets loaded before the agent was attached aren't transformed");
+        }
+    }
+
+    /**
+     * @return The installed transformer, eg: to call {@link DasmClassFileTransformer#redirectSetsChanged}, or null if the agent isn't installed
+     */
+    @Nullable public static DasmClassFileTransformer classFileTransformer() {
+        return classFileTransformer;
+    }
+
+    private static synchronized TargetIndex install(@Nullable String args, Instrumentation instrumentation) throws IOException {
+        if (classFileTransformer != null) {
+            throw new IllegalStateException("The dasm agent is already installed");
+        }
+        Map<String, String> options = parseOptions(args);
+        String defaultSet = options.get("defaultSet");
+        if (defaultSet == null) {
+            throw new IllegalArgumentException("Usage: -javaagent:dasm.jar=defaultSet=<class>[,classpath=<path>][,threads=<n>][,batchSize=<n>]"
+                    + "[,mappings=<file>[,mappingsIndex=<file>][,fromNamespace=<namespace>][,toNamespace=<namespace>]]");
+        }
+        List<Path> classpath = new ArrayList<>();
+        for (String path : options.getOrDefault("classpath", System.getProperty("java.class.path")).split(File.pathSeparator)) {
+            if (!path.isEmpty() && Files.exists(Paths.get(path))) {
+                classpath.add(Paths.get(path));
+            }
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int batchSize = Integer.parseInt(options.getOrDefault("batchSize", String.valueOf(DEFAULT_BATCH_SIZE)));
+
+        TargetIndex index = new TargetIndex();
+        for (Path path : classpath) {
+            readIndex(path, index);
+        }
+        if (index.classNames().isEmpty()) {
+            LOGGER.warn("No dasm targets found in " + classpath);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "dasm-agent-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ClassProvider classProvider = new CachingClassProvider(new MappedClassProvider(classpath));
+        AnnotationParser annotationParser = new AnnotationParser(classProvider, Type.getObjectType(defaultSet.replace('.', '/')), executor);
+        Transformer transformer = new Transformer(readMappings(options), classProvider, false);
+
+        DasmClassFileTransformer newTransformer = new DasmClassFileTransformer(instrumentation, annotationParser, transformer, classProvider, index,
+                executor, batchSize);
+        newTransformer.prefetch();
+        instrumentation.addTransformer(newTransformer, instrumentation.isRetransformClassesSupported());
+        classFileTransformer = newTransformer;
+        LOGGER.info("Installed the dasm agent for " + index.classNames().size() + " targets");
+        return index;
+    }
+
+    private static Map<String, String> parseOptions(@Nullable String args) {
+        Map<String, String> options = new HashMap<>();
+        if (args == null || args.isEmpty()) {
+            return options;
+        }
+        for (String option : args.split(",")) {
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Invalid dasm agent option \"%s\", expected <name>=<value>", option));
+            }
+            options.put(option.substring(0, separator).trim(), option.substring(separator + 1).trim());
+        }
+        return options;
+    }
+
+    private static MappingsProvider readMappings(Map<String, String> options) throws IOException {
+        String mappings = options.get("mappings");
+        if (mappings == null) {
+            return MappingsProvider.IDENTITY;
+        }
+        String fromNamespace = options.getOrDefault("fromNamespace", "named");
+        String toNamespace = options.getOrDefault("toNamespace", "intermediary");
+        String index = options.get("mappingsIndex");
+        if (index != null) {
+            return IndexedMappingsProvider.load(Paths.get(mappings), Paths.get(index), fromNamespace, toNamespace);
+        }
+        try (Reader reader = Files.newBufferedReader(Paths.get(mappings), StandardCharsets.UTF_8)) {
+            return IndexedMappingsProvider.read(reader, fromNamespace, toNamespace);
+        }
+    }
+
+    /**
+     * Adds the index of the jar file or directory, if it has one
+     */
+    private static void readIndex(Path path, TargetIndex index) throws IOException {
+        if (Files.isDirectory(path)) {
+            Path indexFile = path.resolve(TargetIndex.DEFAULT_LOCATION);
+            if (Files.isRegularFile(indexFile)) {
+                try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                    index.merge(TargetIndex.read(reader));
+                }
+            }
+            return;
+        }
+        try (ZipFile zipFile = new ZipFile(path.toFile())) {
+            ZipEntry entry = zipFile.getEntry(TargetIndex.DEFAULT_LOCATION);
+            if (entry != null) {
+                try (Reader reader = new InputStreamReader(zipFile.getInputStream(entry), StandardCharsets.UTF_8)) {
+                    index.merge(TargetIndex.read(reader));
+                }
+            }
+        }
+    }
+}
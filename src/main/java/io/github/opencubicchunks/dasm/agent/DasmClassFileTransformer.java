@@ -0,0 +1,313 @@
+package io.github.opencubicchunks.dasm.agent;
+
+import static org.objectweb.asm.Opcodes.ASM9;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.target.DependencyGraph;
+import io.github.opencubicchunks.dasm.transformer.target.TargetAnnotations;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+/**
+ * Applies dasm to the classes of a {@link TargetIndex} as they're loaded, independently of any class loader.
+ * <p/>
+ * Every stage is applied at once, as there is nothing to apply in between. The {@code @TransformFrom} stubs are replaced by the transformed methods,
+ * no method prefix is needed without mixin.
+ * <p/>
+ * The inputs of each transformed class are recorded in a {@link DependencyGraph}. When a redirect set changes, {@link #redirectSetsChanged} drops it
+ * and transforms the loaded classes depending on it again through {@link Instrumentation#retransformClasses}. Redefining a redirect set class, eg:
+ * by hotswapping it, does this automatically. The set is read again through the class provider, so the provider has to see the new version.
+ * <p/>
+ * The JVM doesn't allow retransforming to add or remove methods. When transforming a loaded class again would change its methods, eg: by cloning
+ * other lambdas or adding a synthetic accessor, the class is kept as it is and a warning is logged, the change only applies once the class is loaded
+ * again. The same goes for targets loaded before the agent was attached that the transform adds methods to. To keep a class as it is, the bytes
+ * of the last version transformed are kept for each target.
+ */
+public class DasmClassFileTransformer implements ClassFileTransformer {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Instrumentation instrumentation;
+    private final AnnotationParser annotationParser;
+    private final Transformer transformer;
+    private final ClassProvider classProvider;
+    private final TargetIndex index;
+    private final Executor executor;
+    private final int batchSize;
+    private final DependencyGraph dependencyGraph = new DependencyGraph();
+    // the last version transformed of each target, by name. Classes of the same name loaded by several class loaders share the entry, as they're
+    // transformed the same way
+    private final Map<String, byte[]> transformedClasses = new ConcurrentHashMap<>();
+
+    // redirect set classes seen being redefined, handled together once the redefinition is done
+    private final Set<String> redefinedRedirectSets = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean redefinitionScheduled = new AtomicBoolean();
+
+    /**
+     * @param annotationParser The parser to resolve redirect sets with, reading from the same class provider
+     * @param transformer The transformer to apply, reading from the same class provider
+     * @param classProvider The provider redirect sets and source classes are read from, should be caching for {@link #prefetch()} to be of use
+     * @param index The classes to transform, any other class is left as it is
+     * @param executor The executor to prefetch and to retransform on
+     * @param batchSize The maximum number of classes retransformed in one call
+     */
+    public DasmClassFileTransformer(Instrumentation instrumentation, AnnotationParser annotationParser, Transformer transformer, ClassProvider classProvider,
+                                    TargetIndex index, Executor executor, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(String.format("Batch size must be positive, got %d", batchSize));
+        }
+        this.instrumentation = instrumentation;
+        this.annotationParser = annotationParser;
+        this.transformer = transformer;
+        this.classProvider = classProvider;
+        this.index = index;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts fetching every redirect set and source class any indexed class uses on the executor, so that they're ready before the class is loaded.
+     * Redirect sets are parsed as well, their redirects are still resolved on first use.
+     *
+     * @return A future completing once all source classes have been fetched
+     */
+    public CompletableFuture<Void> prefetch() {
+        Set<Type> redirectSets = new LinkedHashSet<>();
+        Set<String> sources = new LinkedHashSet<>();
+        for (String className : this.index.classNames()) {
+            TargetIndex.Entry entry = this.index.get(className);
+            if (entry.redirectSets() != null) {
+                for (Type set : entry.redirectSets()) {
+                    redirectSets.add(set == null ? this.annotationParser.defaultRedirectSet() : set);
+                }
+            }
+            TargetAnnotations annotations = entry.annotations();
+            annotations.fieldsToSets().forEach(fieldToSets -> redirectSets.addAll(fieldToSets.sets()));
+            annotations.methodsToSets().forEach(methodToSets -> redirectSets.addAll(methodToSets.sets()));
+            for (TransformFrom.ApplicationStage stage : TransformFrom.ApplicationStage.values()) {
+                annotations.wholeClassSources(stage).forEach(source -> sources.add(source.getClassName()));
+                for (TargetAnnotations.MethodTransform methodTransform : annotations.methodTransforms(stage)) {
+                    redirectSets.addAll(methodTransform.useRedirectSets());
+                    redirectSets.addAll(methodTransform.addToRedirectSets());
+                    if (methodTransform.copyFrom() != null) {
+                        sources.add(methodTransform.copyFrom().getClassName());
+                    }
+                }
+            }
+        }
+        redirectSets.forEach(set -> this.annotationParser.prefetchRedirectSet(set, this.executor));
+        if (sources.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return this.classProvider.classBytesAsync(sources, this.executor).thenApply(classBytes -> null);
+    }
+
+    @Override
+    @Nullable public byte[] transform(@Nullable ClassLoader loader, @Nullable String className, @Nullable Class<?> classBeingRedefined,
+                                      @Nullable ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (className == null) {
+            // hidden classes, eg: lambda proxies
+            return null;
+        }
+        String name = className.replace('/', '.');
+        if (classBeingRedefined != null && !this.dependencyGraph.affectedTargets(DependencyGraph.Kind.REDIRECT_SET, name).isEmpty()) {
+            redirectSetRedefined(name);
+        }
+        TargetIndex.Entry entry = this.index.get(name);
+        if (entry == null) {
+            return null;
+        }
+        // anything thrown here is silently dropped by the JVM, leaving the class untransformed
+        byte[] transformed;
+        try {
+            transformed = transformTarget(name, entry, classfileBuffer);
+        } catch (Throwable t) {
+            LOGGER.error(String.format("Couldn't transform %s", name), t);
+            return null;
+        }
+        if (classBeingRedefined != null) {
+            // the loaded version is the original one if the class was loaded before the agent was attached
+            byte[] loaded = this.transformedClasses.get(name);
+            Set<String> loadedMethods = methods(loaded == null ? classfileBuffer : loaded);
+            Set<String> transformedMethods = methods(transformed);
+            if (!loadedMethods.equals(transformedMethods)) {
+                Set<String> added = new TreeSet<>(transformedMethods);
+                added.removeAll(loadedMethods);
+                Set<String> removed = new TreeSet<>(loadedMethods);
+                removed.removeAll(transformedMethods);
+                LOGGER.warn(String.format("Not transforming %s again, as it would add methods %s and remove methods %s, which the JVM doesn't allow "
+                        + "when retransforming. The change applies once the class is loaded again", name, added, removed));
+                return loaded;
+            }
+        }
+        this.transformedClasses.put(name, transformed);
+        return transformed;
+    }
+
+    /**
+     * @return The name and descriptor of every method of the class
+     */
+    private static Set<String> methods(byte[] classBytes) {
+        Set<String> methods = new HashSet<>();
+        new ClassReader(classBytes).accept(new ClassVisitor(ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                methods.add(name + descriptor);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return methods;
+    }
+
+    private byte[] transformTarget(String className, TargetIndex.Entry entry, byte[] classBytes) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, 0);
+
+        this.dependencyGraph.remove(className);
+        this.dependencyGraph.recordContributions(className, entry.annotations());
+        // the parser adds redirects to shared sets while building targets, and the transformer reads them
+        synchronized (this.annotationParser) {
+            // building the class again adds back the redirects it still contributes
+            this.annotationParser.removeContributions(className);
+            Set<RedirectSet> redirectSets = new LinkedHashSet<>();
+            this.annotationParser.findRedirectSets(className, entry, redirectSets);
+            // building a target removes the stubs of every stage, without a prefix that would include methods an earlier stage produced
+            List<TargetClass> targets = new ArrayList<>();
+            for (TransformFrom.ApplicationStage stage : TransformFrom.ApplicationStage.values()) {
+                TargetClass target = new TargetClass(className);
+                redirectSets.forEach(target::addRedirectSet);
+                this.annotationParser.buildClassTarget(classNode, entry.annotations(), target, stage, "");
+                if (target.wholeClass() != null || !target.targetMethods().isEmpty()) {
+                    targets.add(target);
+                }
+            }
+            for (TargetClass target : targets) {
+                this.dependencyGraph.record(target);
+                this.transformer.transformClass(classNode, target);
+            }
+        }
+        ClassWriter classWriter = new ClassWriter(0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    private void redirectSetRedefined(String setClassName) {
+        this.redefinedRedirectSets.add(setClassName);
+        // retransforming isn't allowed while a redefinition is in progress, and every set redefined along with this one is handled at once
+        if (this.redefinitionScheduled.compareAndSet(false, true)) {
+            this.executor.execute(() -> {
+                this.redefinitionScheduled.set(false);
+                List<String> redefined = new ArrayList<>();
+                for (Iterator<String> iterator = this.redefinedRedirectSets.iterator(); iterator.hasNext(); ) {
+                    redefined.add(iterator.next());
+                    iterator.remove();
+                }
+                if (!redefined.isEmpty()) {
+                    redirectSetsChanged(redefined);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the redirect sets, and transforms every loaded class depending on them again. Classes adding redirects to the sets are transformed first,
+     * so that redirects they changed are in place before the classes using the sets are transformed.
+     *
+     * @param setClassNames The fully qualified names of the redirect sets eg: <code>java.lang.String</code>
+     */
+    public void redirectSetsChanged(Collection<String> setClassNames) {
+        Set<String> affected = new LinkedHashSet<>();
+        synchronized (this.annotationParser) {
+            for (String setClassName : setClassNames) {
+                affected.addAll(this.dependencyGraph.affectedTargets(DependencyGraph.Kind.REDIRECT_SET, setClassName).keySet());
+                this.annotationParser.invalidateRedirectSet(setClassName);
+            }
+        }
+        List<String> contributors = new ArrayList<>();
+        List<String> users = new ArrayList<>();
+        for (String className : affected) {
+            TargetIndex.Entry entry = this.index.get(className);
+            (entry != null && contributesTo(entry.annotations(), setClassNames) ? contributors : users).add(className);
+        }
+        LOGGER.info("Redirect sets " + setClassNames + " changed, transforming " + affected.size() + " classes again");
+        retransform(contributors);
+        retransform(users);
+    }
+
+    private static boolean contributesTo(TargetAnnotations annotations, Collection<String> setClassNames) {
+        List<Type> sets = new ArrayList<>();
+        annotations.fieldsToSets().forEach(fieldToSets -> sets.addAll(fieldToSets.sets()));
+        annotations.methodsToSets().forEach(methodToSets -> sets.addAll(methodToSets.sets()));
+        for (TransformFrom.ApplicationStage stage : TransformFrom.ApplicationStage.values()) {
+            annotations.methodTransforms(stage).forEach(methodTransform -> sets.addAll(methodTransform.addToRedirectSets()));
+        }
+        return sets.stream().anyMatch(set -> setClassNames.contains(set.getClassName()));
+    }
+
+    /**
+     * Transforms the loaded classes with the given names again, in batches. Classes loaded by several class loaders are transformed for each of them,
+     * classes that aren't loaded are transformed once they are.
+     * <p/>
+     * A batch is applied all at once or not at all. If it fails, its classes are retransformed one at a time, so that only the classes that can't be
+     * retransformed are left as they were.
+     *
+     * @param classNames The fully qualified names of the classes eg: <code>java.lang.String</code>
+     */
+    public void retransform(Collection<String> classNames) {
+        if (classNames.isEmpty()) {
+            return;
+        }
+        if (!this.instrumentation.isRetransformClassesSupported()) {
+            throw new IllegalStateException("Retransforming classes isn't supported by this JVM or agent");
+        }
+        Set<String> names = new HashSet<>(classNames);
+        List<Class<?>> classes = new ArrayList<>();
+        for (Class<?> loadedClass : this.instrumentation.getAllLoadedClasses()) {
+            if (names.contains(loadedClass.getName()) && this.instrumentation.isModifiableClass(loadedClass)) {
+                classes.add(loadedClass);
+            }
+        }
+        for (int start = 0; start < classes.size(); start += this.batchSize) {
+            List<Class<?>> batch = classes.subList(start, Math.min(start + this.batchSize, classes.size()));
+            try {
+                this.instrumentation.retransformClasses(batch.toArray(new Class<?>[0]));
+            } catch (UnmodifiableClassException | RuntimeException | LinkageError e) {
+                if (batch.size() == 1) {
+                    LOGGER.error(String.format("Couldn't retransform %s", batch.get(0).getName()), e);
+                    continue;
+                }
+                LOGGER.warn("Couldn't retransform a batch of " + batch.size() + " classes, retrying them one at a time", e);
+                for (Class<?> loadedClass : batch) {
+                    try {
+                        this.instrumentation.retransformClasses(loadedClass);
+                    } catch (UnmodifiableClassException | RuntimeException | LinkageError e1) {
+                        LOGGER.error(String.format("Couldn't retransform %s", loadedClass.getName()), e1);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.opencubicchunks.dasm.profile;
+
+import io.github.opencubicchunks.dasm.Transformer;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often each method dasm produced is called at runtime, to find the hot ones worth optimizing by hand and the ones never called at all.
+ * <p/>
+ * Enable it with {@link Transformer#setCountInvocations} or the {@value Transformer#COUNT_INVOCATIONS_PROPERTY} system property, then call
+ * {@link #writeReport(Writer)}, eg: on shutdown. The counters are static, as transformed classes call {@link #count(int)} directly, so this class
+ * has to be visible to them. Counted methods are registered while they're transformed, so counted classes have to be loaded by the JVM that
+ * transformed them, not written out ahead of time.
+ */
+public final class InvocationCounters {
+    private static final Map<String, Integer> IDS = new HashMap<>();
+    private static final List<String> METHODS = new ArrayList<>();
+    // grown by copying, so counting never locks. A method is registered before the class calling count for it can be loaded.
+    private static volatile LongAdder[] counters = new LongAdder[0];
+
+    private InvocationCounters() {
+    }
+
+    /**
+     * @param method The method being counted, as {@code owner.name descriptor}
+     * @return The id to pass to {@link #count(int)}, the same for every registration of the same method
+     */
+    public static synchronized int register(String method) {
+        Integer id = IDS.get(method);
+        if (id != null) {
+            return id;
+        }
+        id = METHODS.size();
+        IDS.put(method, id);
+        METHODS.add(method);
+        LongAdder[] grown = Arrays.copyOf(counters, id + 1);
+        grown[id] = new LongAdder();
+        counters = grown;
+        return id;
+    }
+
+    /**
+     * Called at the start of every counted method
+     */
+    public static void count(int id) {
+        counters[id].increment();
+    }
+
+    /**
+     * @return How often each counted method was called, by method
+     */
+    public static Map<String, Long> counts() {
+        List<String> methods;
+        LongAdder[] counters;
+        synchronized (InvocationCounters.class) {
+            methods = new ArrayList<>(METHODS);
+            counters = InvocationCounters.counters;
+        }
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < methods.size(); i++) {
+            counts.put(methods.get(i), counters[i].sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Resets every counter to 0, eg: to only count calls after a warmup
+     */
+    public static void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Writes every counted method with its calls, the most called first
+     */
+    public static void writeReport(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        List<Map.Entry<String, Long>> counts = new ArrayList<>(counts().entrySet());
+        counts.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        long uncalled = counts.stream().filter(entry -> entry.getValue() == 0).count();
+        out.println("Invocations of " + counts.size() + " produced methods, " + uncalled + " never called");
+        counts.forEach(entry -> out.println(entry.getValue() + "\t" + entry.getKey()));
+        out.flush();
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.opencubicchunks.dasm.profile;
+
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.transformer.ClassField;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.redirect.FieldRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.PackageRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.PackedTypeRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.redirect.TypeRedirect;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Counts how often each redirect matched, per target class, to find redirects that never match anything.
+ * <p/>
+ * Enable it with {@link Transformer#setRedirectCoverage}, then call {@link #writeReport(Writer)} once everything has been transformed.
+ * A redirect is only reported as unused if it didn't match in any target its set was used for.
+ */
+public final class RedirectCoverage {
+    // set name -> its redirects when it was last registered
+    private final Map<String, RegisteredSet> redirectsBySet = new ConcurrentHashMap<>();
+    // set name -> the targets it was used for
+    private final Map<String, Set<String>> targetsBySet = new ConcurrentHashMap<>();
+    // every registered redirect key, matches of anything else (like redirects dasm adds for cloned lambdas) aren't counted
+    private final Set<String> knownKeys = ConcurrentHashMap.newKeySet();
+    // target -> redirect key -> matches
+    private final Map<String, Map<String, LongAdder>> hitsByTarget = new ConcurrentHashMap<>();
+
+    /**
+     * Records that the set is used for the target. The set's redirects are read again if their number changed since it was last registered, eg: after
+     * target classes added redirects to it.
+     *
+     * @param mapClassName The mapping the transformer applies to class names, type and packed type redirects are matched on mapped names
+     */
+    public void register(String targetClassName, RedirectSet redirectSet, UnaryOperator<String> mapClassName) {
+        this.targetsBySet.computeIfAbsent(redirectSet.getName(), n -> ConcurrentHashMap.newKeySet()).add(targetClassName);
+        int redirectCount = redirectSet.typeRedirectCount() + redirectSet.packageRedirectCount() + redirectSet.packedTypeRedirectCount()
+                + redirectSet.fieldRedirectCount() + redirectSet.methodRedirectCount();
+        RegisteredSet registered = this.redirectsBySet.get(redirectSet.getName());
+        if (registered != null && registered.redirectCount == redirectCount) {
+            return;
+        }
+        this.redirectsBySet.compute(redirectSet.getName(), (n, current) -> {
+            if (current != null && current.redirectCount == redirectCount) {
+                return current;
+            }
+            Map<String, Object> redirects = new LinkedHashMap<>();
+            for (TypeRedirect typeRedirect : redirectSet.getTypeRedirects()) {
+                redirects.put(typeKey(mapClassName.apply(typeRedirect.srcClassName())), typeRedirect);
+            }
+            for (PackageRedirect packageRedirect : redirectSet.getPackageRedirects()) {
+                redirects.put(packageKey(packageRedirect.srcPackageName().replace('.', '/') + '/'), packageRedirect);
+            }
+            for (PackedTypeRedirect packedTypeRedirect : redirectSet.getPackedTypeRedirects()) {
+                redirects.put(packedTypeKey(mapClassName.apply(packedTypeRedirect.srcClassName())), packedTypeRedirect);
+            }
+            for (FieldRedirect fieldRedirect : redirectSet.getFieldRedirects()) {
+                redirects.put(fieldKey(fieldRedirect.field()), fieldRedirect);
+            }
+            for (MethodRedirect methodRedirect : redirectSet.getMethodRedirects()) {
+                redirects.put(methodKey(methodRedirect.method()), methodRedirect);
+            }
+            this.knownKeys.addAll(redirects.keySet());
+            return new RegisteredSet(redirectCount, Collections.unmodifiableMap(redirects));
+        });
+    }
+
+    /**
+     * Records a match of the redirect with the given key, see {@link #typeKey}, {@link #packageKey}, {@link #packedTypeKey}, {@link #fieldKey} and
+     * {@link #methodKey}
+     */
+    public void hit(String targetClassName, String key) {
+        if (!this.knownKeys.contains(key)) {
+            return;
+        }
+        this.hitsByTarget.computeIfAbsent(targetClassName, t -> new ConcurrentHashMap<>()).computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return How often each redirect matched in the target, by key
+     */
+    public Map<String, Long> hits(String targetClassName) {
+        Map<String, Long> hits = new TreeMap<>();
+        this.hitsByTarget.getOrDefault(targetClassName, Collections.emptyMap()).forEach((key, count) -> hits.put(key, count.sum()));
+        return hits;
+    }
+
+    /**
+     * @return The redirects of each set that never matched in any target the set was used for
+     */
+    public Map<String, List<Object>> unusedRedirects() {
+        Map<String, List<Object>> unused = new TreeMap<>();
+        this.redirectsBySet.forEach((setName, registered) -> {
+            Map<String, Object> redirects = registered.redirects;
+            Set<String> targets = this.targetsBySet.getOrDefault(setName, Collections.emptySet());
+            List<Object> unusedInSet = new ArrayList<>();
+            redirects.forEach((key, redirect) -> {
+                boolean used = targets.stream().anyMatch(target -> this.hitsByTarget.getOrDefault(target, Collections.emptyMap()).containsKey(key));
+                if (!used) {
+                    unusedInSet.add(redirect);
+                }
+            });
+            if (!unusedInSet.isEmpty()) {
+                unused.put(setName, unusedInSet);
+            }
+        });
+        return unused;
+    }
+
+    public void writeReport(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        Map<String, List<Object>> unused = unusedRedirects();
+        out.println("Unused redirects in " + unused.size() + " of " + this.redirectsBySet.size() + " redirect sets");
+        unused.forEach((setName, redirects) -> {
+            out.println(setName + " (used by " + this.targetsBySet.getOrDefault(setName, Collections.emptySet()).size() + " targets):");
+            redirects.forEach(redirect -> out.println("\t" + redirect));
+        });
+        out.flush();
+    }
+
+    /**
+     * @param mappedClassName The mapped name of the redirected type, as the transformer matches it
+     */
+    public static String typeKey(String mappedClassName) {
+        return "T " + mappedClassName;
+    }
+
+    /**
+     * @param srcPackage The internal name of the redirected package, with a trailing {@code /}
+     */
+    public static String packageKey(String srcPackage) {
+        return "P " + srcPackage;
+    }
+
+    /**
+     * @param mappedClassName The mapped name of the packed class
+     */
+    public static String packedTypeKey(String mappedClassName) {
+        return "K " + mappedClassName;
+    }
+
+    public static String fieldKey(ClassField field) {
+        return "F " + field.owner.getDescriptor() + field.name + ':' + field.desc.getDescriptor();
+    }
+
+    public static String methodKey(ClassMethod method) {
+        return "M " + method.owner.getDescriptor() + method.method.getName() + method.method.getDescriptor();
+    }
+
+    private static final class RegisteredSet {
+        final int redirectCount;
+        // redirect key -> redirect, in the set's order
+        final Map<String, Object> redirects;
+
+        RegisteredSet(int redirectCount, Map<String, Object> redirects) {
+            this.redirectCount = redirectCount;
+            this.redirects = redirects;
+        }
+    }
+}
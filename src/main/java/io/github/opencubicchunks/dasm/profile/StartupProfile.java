@@ -0,0 +1,126 @@
+package io.github.opencubicchunks.dasm.profile;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import org.objectweb.asm.Type;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * What dasm did during a launch, in order: which redirect sets were resolved, which source classes were loaded and which classes were transformed.
+ * <p/>
+ * Record it with {@link AnnotationParser#setStartupProfile} and {@link Transformer#setStartupProfile}, save it with {@link #write(Writer)},
+ * and on the next launch {@link #read(Reader)} it and call {@link #warmup} to prepare everything in the background before it's asked for.
+ */
+public final class StartupProfile {
+    private static final String REDIRECT_SET = "set";
+    private static final String SOURCE = "source";
+    private static final String TRANSFORM = "transform";
+
+    // "<kind> <name>" lines in the order they were first recorded, across kinds
+    private final Set<String> entries = new LinkedHashSet<>();
+
+    public synchronized void redirectSetResolved(Type setType) {
+        this.entries.add(REDIRECT_SET + " " + setType.getClassName());
+    }
+
+    public synchronized void sourceLoaded(String className) {
+        this.entries.add(SOURCE + " " + className);
+    }
+
+    public synchronized void classTransformed(String className) {
+        this.entries.add(TRANSFORM + " " + className);
+    }
+
+    public List<String> redirectSets() {
+        return entries(REDIRECT_SET);
+    }
+
+    public List<String> sources() {
+        return entries(SOURCE);
+    }
+
+    public List<String> transformedClasses() {
+        return entries(TRANSFORM);
+    }
+
+    private synchronized List<String> entries(String kind) {
+        String prefix = kind + " ";
+        List<String> names = new ArrayList<>();
+        for (String entry : this.entries) {
+            if (entry.startsWith(prefix)) {
+                names.add(entry.substring(prefix.length()));
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Starts preparing everything in this profile on the executor, in the recorded order: the classes of every redirect set are fetched and parsed
+     * into the parser, and every source class is fetched through the class provider. For the latter to be of use, the provider should be caching and
+     * shared with the {@link Transformer}.
+     * <p/>
+     * Transformed classes aren't prepared, their bytes come from the class loader. Their entries keep the inputs of each class before those of the
+     * classes transformed after it, so that what is needed first is queued first.
+     *
+     * @return A future completing once all source classes have been fetched. Redirect set classes are handed over to the parser as they complete.
+     */
+    public CompletableFuture<Void> warmup(AnnotationParser annotationParser, ClassProvider classProvider, Executor executor) {
+        List<String> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(this.entries);
+        }
+        List<CompletableFuture<?>> sources = new ArrayList<>();
+        for (String entry : entries) {
+            int separator = entry.indexOf(' ');
+            String kind = entry.substring(0, separator);
+            String name = entry.substring(separator + 1);
+            if (kind.equals(REDIRECT_SET)) {
+                annotationParser.prefetchRedirectSet(Type.getObjectType(name.replace('.', '/')), executor);
+            } else if (kind.equals(SOURCE)) {
+                // the class may be gone since the profile was recorded, it will fail properly when it's actually needed
+                sources.add(classProvider.classBytesAsync(name, executor).exceptionally(e -> null));
+            }
+        }
+        return CompletableFuture.allOf(sources.toArray(new CompletableFuture<?>[0]));
+    }
+
+    public synchronized void write(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        this.entries.forEach(out::println);
+        out.flush();
+    }
+
+    public static StartupProfile read(Reader reader) throws IOException {
+        StartupProfile profile = new StartupProfile();
+        BufferedReader in = new BufferedReader(reader);
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.indexOf(' ');
+            if (separator < 0) {
+                throw new IOException(String.format("Invalid startup profile line \"%s\"", line));
+            }
+            String kind = line.substring(0, separator);
+            if (!kind.equals(REDIRECT_SET) && !kind.equals(SOURCE) && !kind.equals(TRANSFORM)) {
+                throw new IOException(String.format("Unknown startup profile entry \"%s\"", kind));
+            }
+            profile.entries.add(kind + " " + line.substring(separator + 1).trim());
+        }
+        return profile;
+    }
+}
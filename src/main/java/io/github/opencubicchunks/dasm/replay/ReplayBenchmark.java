@@ -0,0 +1,179 @@
+package io.github.opencubicchunks.dasm.replay;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.CachingClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a file recorded by {@link ReplayRecorder}, measuring wall time, allocation and peak heap usage.
+ * <p/>
+ * The recorded classes are parsed before the timer starts, only the calls themselves are measured. Single-threaded, all calls are replayed in the
+ * recorded order. Multi-threaded, the {@link AnnotationParser} calls are replayed in order first,
+ * as they build up shared redirect sets, then the transforms are spread over the threads.
+ * <pre>{@code
+ * java -cp dasm.jar:<dependencies> io.github.opencubicchunks.dasm.replay.ReplayBenchmark replay.bin [threads] [iterations]
+ * }</pre>
+ */
+public class ReplayBenchmark {
+    private final ReplayFile replay;
+
+    public ReplayBenchmark(ReplayFile replay) {
+        this.replay = replay;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: ReplayBenchmark <replay file> [threads] [iterations]");
+        }
+        ReplayFile replay;
+        try (InputStream in = Files.newInputStream(Paths.get(args[0]))) {
+            replay = ReplayFile.read(in);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ReplayBenchmark benchmark = new ReplayBenchmark(replay);
+        for (int i = 0; i < iterations; i++) {
+            Result result = benchmark.run(threads);
+            System.out.printf("Iteration %d: %s%n", i, result);
+        }
+    }
+
+    /**
+     * Replays every recorded call once, with a fresh parser, transformer and class cache
+     */
+    public Result run(int threads) throws InterruptedException, ExecutionException {
+        ClassProvider classProvider = new CachingClassProvider(this.replay.classProvider());
+        AnnotationParser annotationParser = new AnnotationParser(classProvider, this.replay.defaultRedirectSet(), null);
+        Transformer transformer = new Transformer(this.replay.mappingsProvider(), classProvider, false);
+
+        List<ReplayFile.Call> calls = this.replay.calls();
+        List<Runnable> preparedCalls = new ArrayList<>(calls.size());
+        for (ReplayFile.Call call : calls) {
+            preparedCalls.add(call.prepare(annotationParser, transformer));
+        }
+
+        System.gc();
+        resetPeakHeap();
+        AtomicLong allocatedBytes = new AtomicLong();
+        long start = System.nanoTime();
+        if (threads <= 1) {
+            measureAllocation(allocatedBytes, () -> preparedCalls.forEach(Runnable::run));
+        } else {
+            List<Runnable> transforms = new ArrayList<>();
+            measureAllocation(allocatedBytes, () -> {
+                for (int i = 0; i < calls.size(); i++) {
+                    if (calls.get(i).isTransform()) {
+                        transforms.add(preparedCalls.get(i));
+                    } else {
+                        preparedCalls.get(i).run();
+                    }
+                }
+            });
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (Runnable transform : transforms) {
+                    futures.add(executor.submit(() -> measureAllocation(allocatedBytes, transform)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+        return new Result(calls.size(), wallNanos, allocatedBytes.get(), peakHeap());
+    }
+
+    private static void measureAllocation(AtomicLong allocatedBytes, Runnable task) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            task.run();
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        task.run();
+        allocatedBytes.addAndGet(allocationBean.getThreadAllocatedBytes(threadId) - before);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * @return The sum of the peaks of all heap pools. The pools peak at different times, so this is an upper bound
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    public static final class Result {
+        private final int calls;
+        private final long wallNanos;
+        private final long allocatedBytes;
+        private final long peakHeapBytes;
+
+        Result(int calls, long wallNanos, long allocatedBytes, long peakHeapBytes) {
+            this.calls = calls;
+            this.wallNanos = wallNanos;
+            this.allocatedBytes = allocatedBytes;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        public int calls() {
+            return calls;
+        }
+
+        public long wallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return The bytes allocated by the replaying threads, or 0 if the JVM doesn't support measuring it
+         */
+        public long allocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long peakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        @Override public String toString() {
+            return String.format("%d calls in %.2f ms, allocated %.1f MiB, peak heap %.1f MiB", calls, wallNanos / 1e6, allocatedBytes / (1024.0 * 1024.0),
+                    peakHeapBytes / (1024.0 * 1024.0));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package io.github.opencubicchunks.dasm.replay;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.objectweb.asm.Opcodes.ASM9;
+
+/**
+ * The content of a file written by {@link ReplayRecorder}: the classes and mappings that were looked up, and the calls that were made.
+ */
+public final class ReplayFile {
+    static final int MAGIC = 0x44415352; // DASR
+    static final int VERSION = 2;
+
+    static final int TAG_END = 0;
+    static final int TAG_DEFAULT_SET = 1;
+    static final int TAG_CLASS = 2;
+    static final int TAG_MAP_CLASS = 3;
+    static final int TAG_MAP_FIELD = 4;
+    static final int TAG_MAP_METHOD = 5;
+    static final int TAG_FIND_REDIRECT_SETS = 6;
+    static final int TAG_BUILD_CLASS_TARGET = 7;
+    static final int TAG_TRANSFORM = 8;
+    // since version 2
+    static final int TAG_TRANSFORM_BYTES = 9;
+
+    private Type defaultRedirectSet;
+    private final Map<String, byte[]> classes = new HashMap<>();
+    private final Map<String, String> mappings = new HashMap<>();
+    private final List<Call> calls = new ArrayList<>();
+
+    private ReplayFile() {
+    }
+
+    public static ReplayFile read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream)));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a dasm replay file");
+        }
+        int version = in.readInt();
+        // later versions only add records
+        if (version < 1 || version > VERSION) {
+            throw new IOException(String.format("Unsupported replay file version %d, expected at most %d", version, VERSION));
+        }
+
+        ReplayFile file = new ReplayFile();
+        for (int tag = in.readUnsignedByte(); tag != TAG_END; tag = in.readUnsignedByte()) {
+            switch (tag) {
+                case TAG_DEFAULT_SET:
+                    file.defaultRedirectSet = Type.getType(in.readUTF());
+                    break;
+                case TAG_CLASS:
+                    file.classes.put(in.readUTF(), readBytes(in));
+                    break;
+                case TAG_MAP_CLASS:
+                    file.mappings.put(mappingKey(tag, in.readUTF()), in.readUTF());
+                    break;
+                case TAG_MAP_FIELD:
+                case TAG_MAP_METHOD:
+                    file.mappings.put(mappingKey(tag, in.readUTF(), in.readUTF(), in.readUTF()), in.readUTF());
+                    break;
+                case TAG_FIND_REDIRECT_SETS:
+                    file.calls.add(new Call(tag, in.readUTF(), readBytes(in), null, null, null));
+                    break;
+                case TAG_BUILD_CLASS_TARGET:
+                    file.calls.add(new Call(tag, in.readUTF(), readBytes(in), TransformFrom.ApplicationStage.valueOf(in.readUTF()), in.readUTF(), null));
+                    break;
+                case TAG_TRANSFORM:
+                case TAG_TRANSFORM_BYTES:
+                    file.calls.add(new Call(tag, in.readUTF(), readBytes(in), null, null, readTarget(in)));
+                    break;
+                default:
+                    throw new IOException(String.format("Unknown replay record %d", tag));
+            }
+        }
+        if (file.defaultRedirectSet == null) {
+            throw new IOException("Replay file has no default redirect set, no AnnotationParser was recorded");
+        }
+        return file;
+    }
+
+    public Type defaultRedirectSet() {
+        return this.defaultRedirectSet;
+    }
+
+    public List<Call> calls() {
+        return Collections.unmodifiableList(this.calls);
+    }
+
+    /**
+     * @return A new provider serving the recorded classes
+     */
+    public ClassProvider classProvider() {
+        return className -> {
+            byte[] classBytes = this.classes.get(className);
+            if (classBytes == null) {
+                throw new IllegalArgumentException(String.format("Class %s not found in replay", className));
+            }
+            return classBytes;
+        };
+    }
+
+    /**
+     * @return Mappings answering with the recorded results, lookups that weren't recorded are left unmapped
+     */
+    public MappingsProvider mappingsProvider() {
+        return new MappingsProvider() {
+            @Override public String mapFieldName(String owner, String fieldName, String descriptor) {
+                return mappings.getOrDefault(mappingKey(TAG_MAP_FIELD, owner, fieldName, descriptor), fieldName);
+            }
+
+            @Override public String mapMethodName(String owner, String methodName, String descriptor) {
+                return mappings.getOrDefault(mappingKey(TAG_MAP_METHOD, owner, methodName, descriptor), methodName);
+            }
+
+            @Override public String mapClassName(String className) {
+                return mappings.getOrDefault(mappingKey(TAG_MAP_CLASS, className), className);
+            }
+        };
+    }
+
+    private static String mappingKey(int tag, String... key) {
+        return tag + ":" + String.join(":", key);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static TargetConfig readTarget(DataInputStream in) throws IOException {
+        boolean debugSelfRedirects = in.readBoolean();
+        List<String> redirectSets = readSetNames(in);
+        Type wholeClass = in.readBoolean() ? Type.getType(in.readUTF()) : null;
+        int methodCount = in.readInt();
+        List<MethodConfig> methods = new ArrayList<>(methodCount);
+        for (int i = 0; i < methodCount; i++) {
+            Type srcOwner = Type.getType(in.readUTF());
+            Type owner = Type.getType(in.readUTF());
+            if (srcOwner.equals(owner)) {
+                // the transformer tells copyFrom targets apart by identity
+                srcOwner = owner;
+            }
+            Method method = new Method(in.readUTF(), in.readUTF());
+            Type mappingOwner = Type.getType(in.readUTF());
+            methods.add(new MethodConfig(srcOwner, new ClassMethod(owner, method, mappingOwner), in.readUTF(), in.readBoolean(), in.readBoolean(),
+                    readSetNames(in)));
+        }
+        return new TargetConfig(debugSelfRedirects, redirectSets, wholeClass, methods);
+    }
+
+    private static List<String> readSetNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    /**
+     * A recorded call to {@link AnnotationParser} or {@link Transformer}
+     */
+    public static final class Call {
+        private final int tag;
+        private final String className;
+        private final byte[] classBytes;
+        private final TransformFrom.ApplicationStage stage;
+        private final String methodPrefix;
+        private final TargetConfig target;
+
+        Call(int tag, String className, byte[] classBytes, TransformFrom.ApplicationStage stage, String methodPrefix, TargetConfig target) {
+            this.tag = tag;
+            this.className = className;
+            this.classBytes = classBytes;
+            this.stage = stage;
+            this.methodPrefix = methodPrefix;
+            this.target = target;
+        }
+
+        public String className() {
+            return className;
+        }
+
+        public boolean isTransform() {
+            return this.tag == TAG_TRANSFORM || this.tag == TAG_TRANSFORM_BYTES;
+        }
+
+        /**
+         * Makes the call again, on a fresh copy of the recorded class
+         */
+        public void replay(AnnotationParser annotationParser, Transformer transformer) {
+            prepare(annotationParser, transformer).run();
+        }
+
+        /**
+         * Parses a fresh copy of the recorded class, so that replaying the call can be measured without it
+         *
+         * @return The call to make on the copy. Redirect sets are only looked up when it runs, once the calls before it have built them.
+         */
+        public Runnable prepare(AnnotationParser annotationParser, Transformer transformer) {
+            if (this.tag == TAG_TRANSFORM_BYTES) {
+                // the byte[] variant parses the class itself, that's part of the call
+                return () -> transformer.transformClass(this.classBytes, this.target.toTargetClass(this.className, annotationParser));
+            }
+            ClassNode classNode = new ClassNode(ASM9);
+            new ClassReader(this.classBytes).accept(classNode, 0);
+            switch (this.tag) {
+                case TAG_FIND_REDIRECT_SETS:
+                    return () -> annotationParser.findRedirectSets(this.className, classNode, new HashSet<>());
+                case TAG_BUILD_CLASS_TARGET:
+                    return () -> annotationParser.buildClassTarget(classNode, new TargetClass(this.className), this.stage, this.methodPrefix);
+                case TAG_TRANSFORM:
+                    return () -> transformer.transformClass(classNode, this.target.toTargetClass(this.className, annotationParser));
+                default:
+                    throw new IllegalStateException("Unknown call " + this.tag);
+            }
+        }
+    }
+
+    private static final class TargetConfig {
+        final boolean debugSelfRedirects;
+        final List<String> redirectSets;
+        final Type wholeClass;
+        final List<MethodConfig> methods;
+
+        TargetConfig(boolean debugSelfRedirects, List<String> redirectSets, Type wholeClass, List<MethodConfig> methods) {
+            this.debugSelfRedirects = debugSelfRedirects;
+            this.redirectSets = redirectSets;
+            this.wholeClass = wholeClass;
+            this.methods = methods;
+        }
+
+        TargetClass toTargetClass(String className, AnnotationParser annotationParser) {
+            TargetClass target = new TargetClass(className);
+            target.setDebugSelfRedirects(this.debugSelfRedirects);
+            resolveSets(this.redirectSets, annotationParser).forEach(target::addRedirectSet);
+            if (this.wholeClass != null) {
+                target.targetWholeClass(this.wholeClass);
+            }
+            for (MethodConfig method : this.methods) {
+                target.addTarget(new TargetMethod(method.srcOwner, method.method, method.dstMethodName, method.shouldClone, method.makeSyntheticAccessor,
+                        resolveSets(method.redirectSets, annotationParser)));
+            }
+            return target;
+        }
+
+        private static List<RedirectSet> resolveSets(List<String> names, AnnotationParser annotationParser) {
+            List<RedirectSet> redirectSets = new ArrayList<>(names.size());
+            for (String name : names) {
+                redirectSets.add(annotationParser.getRedirectSet(Type.getObjectType(name.replace('.', '/'))));
+            }
+            return redirectSets;
+        }
+    }
+
+    private static final class MethodConfig {
+        final Type srcOwner;
+        final ClassMethod method;
+        final String dstMethodName;
+        final boolean shouldClone;
+        final boolean makeSyntheticAccessor;
+        final List<String> redirectSets;
+
+        MethodConfig(Type srcOwner, ClassMethod method, String dstMethodName, boolean shouldClone, boolean makeSyntheticAccessor, List<String> redirectSets) {
+            this.srcOwner = srcOwner;
+            this.method = method;
+            this.dstMethodName = dstMethodName;
+            this.shouldClone = shouldClone;
+            this.makeSyntheticAccessor = makeSyntheticAccessor;
+            this.redirectSets = redirectSets;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package io.github.opencubicchunks.dasm.replay;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.target.TargetAnnotations;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+
+/**
+ * Records a real run of dasm into a replay file, to be replayed by {@link ReplayBenchmark}.
+ * <p/>
+ * Use the providers, parser and transformer created by this recorder in place of the usual ones. Every class and mapping they look up, every
+ * {@code findRedirectSets} and {@code buildClassTarget} call and every {@code transformClass} call with its inputs, of both the tree and the byte[]
+ * variant, is written to the file in the order they happen.
+ */
+public class ReplayRecorder implements AutoCloseable {
+    private final DataOutputStream out;
+    private final Set<String> recordedClasses = new HashSet<>();
+    private final Set<String> recordedMappings = new HashSet<>();
+    private boolean headerWritten;
+
+    public ReplayRecorder(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)));
+        this.out.writeInt(ReplayFile.MAGIC);
+        this.out.writeInt(ReplayFile.VERSION);
+    }
+
+    public ClassProvider wrap(ClassProvider classProvider) {
+        return new ClassProvider() {
+            @Override public byte[] classBytes(String className) {
+                byte[] classBytes = classProvider.classBytes(className);
+                recordClass(className, classBytes);
+                return classBytes;
+            }
+
+            @Override public ByteBuffer classBuffer(String className) {
+                ByteBuffer classBuffer = classProvider.classBuffer(className);
+                if (!isRecorded(className)) {
+                    // copied from a duplicate, the caller reads from the buffer's position
+                    ByteBuffer duplicate = classBuffer.duplicate();
+                    byte[] classBytes = new byte[duplicate.remaining()];
+                    duplicate.get(classBytes);
+                    recordClass(className, classBytes);
+                }
+                return classBuffer;
+            }
+
+            @Override public CompletableFuture<byte[]> classBytesAsync(String className, Executor executor) {
+                return classProvider.classBytesAsync(className, executor).thenApply(classBytes -> {
+                    recordClass(className, classBytes);
+                    return classBytes;
+                });
+            }
+
+            @Override public CompletableFuture<Map<String, byte[]>> classBytesAsync(Collection<String> classNames, Executor executor) {
+                return classProvider.classBytesAsync(classNames, executor).thenApply(classBytes -> {
+                    classBytes.forEach(ReplayRecorder.this::recordClass);
+                    return classBytes;
+                });
+            }
+
+            @Override public void trim() {
+                classProvider.trim();
+            }
+
+            @Override public void invalidate(String className) {
+                classProvider.invalidate(className);
+            }
+
+            @Override public long retainedBytes() {
+                return classProvider.retainedBytes();
+            }
+        };
+    }
+
+    public MappingsProvider wrap(MappingsProvider mappingsProvider) {
+        return new MappingsProvider() {
+            @Override public String mapFieldName(String owner, String fieldName, String descriptor) {
+                String mapped = mappingsProvider.mapFieldName(owner, fieldName, descriptor);
+                recordMapping(ReplayFile.TAG_MAP_FIELD, mapped, owner, fieldName, descriptor);
+                return mapped;
+            }
+
+            @Override public String mapMethodName(String owner, String methodName, String descriptor) {
+                String mapped = mappingsProvider.mapMethodName(owner, methodName, descriptor);
+                recordMapping(ReplayFile.TAG_MAP_METHOD, mapped, owner, methodName, descriptor);
+                return mapped;
+            }
+
+            @Override public String mapClassName(String className) {
+                String mapped = mappingsProvider.mapClassName(className);
+                recordMapping(ReplayFile.TAG_MAP_CLASS, mapped, className);
+                return mapped;
+            }
+
+            @Override public String[] mapFieldNames(String[] owners, String[] fieldNames, String[] descriptors) {
+                String[] mapped = mappingsProvider.mapFieldNames(owners, fieldNames, descriptors);
+                for (int i = 0; i < mapped.length; i++) {
+                    recordMapping(ReplayFile.TAG_MAP_FIELD, mapped[i], owners[i], fieldNames[i], descriptors[i]);
+                }
+                return mapped;
+            }
+
+            @Override public String[] mapMethodNames(String[] owners, String[] methodNames, String[] descriptors) {
+                String[] mapped = mappingsProvider.mapMethodNames(owners, methodNames, descriptors);
+                for (int i = 0; i < mapped.length; i++) {
+                    recordMapping(ReplayFile.TAG_MAP_METHOD, mapped[i], owners[i], methodNames[i], descriptors[i]);
+                }
+                return mapped;
+            }
+
+            @Override public String[] mapClassNames(String[] classNames) {
+                String[] mapped = mappingsProvider.mapClassNames(classNames);
+                for (int i = 0; i < mapped.length; i++) {
+                    recordMapping(ReplayFile.TAG_MAP_CLASS, mapped[i], classNames[i]);
+                }
+                return mapped;
+            }
+        };
+    }
+
+    /**
+     * @param classProvider The provider to read classes from, it is wrapped by this method
+     */
+    public AnnotationParser annotationParser(ClassProvider classProvider, Class<?> defaultRedirectSet, @Nullable Executor prefetchExecutor) {
+        writeHeader(Type.getType(defaultRedirectSet));
+        return new AnnotationParser(wrap(classProvider), defaultRedirectSet, prefetchExecutor) {
+            @Override public void findRedirectSets(String targetClassName, ClassNode targetClass, Set<RedirectSet> redirectSets) {
+                recordCall(ReplayFile.TAG_FIND_REDIRECT_SETS, targetClassName, targetClass, null);
+                super.findRedirectSets(targetClassName, targetClass, redirectSets);
+            }
+
+            @Override public void buildClassTarget(ClassNode targetClass, TargetAnnotations annotations, TargetClass classTarget,
+                                                   TransformFrom.ApplicationStage stage, String methodPrefix) {
+                recordCall(ReplayFile.TAG_BUILD_CLASS_TARGET, classTarget.getClassName(), targetClass, out -> {
+                    out.writeUTF(stage.name());
+                    out.writeUTF(methodPrefix);
+                });
+                super.buildClassTarget(targetClass, annotations, classTarget, stage, methodPrefix);
+            }
+        };
+    }
+
+    /**
+     * @param mappingsProvider The mappings to use, they are wrapped by this method
+     * @param classProvider The provider to read classes from, it is wrapped by this method
+     */
+    public Transformer transformer(MappingsProvider mappingsProvider, ClassProvider classProvider, boolean globalLogSelfRedirects) {
+        return new Transformer(wrap(mappingsProvider), wrap(classProvider), globalLogSelfRedirects) {
+            @Override public void transformClass(ClassNode targetClass, TargetClass target) {
+                recordCall(ReplayFile.TAG_TRANSFORM, target.getClassName(), targetClass, out -> writeTarget(out, target));
+                super.transformClass(targetClass, target);
+            }
+
+            @Override public byte[] transformClass(byte[] classBytes, TargetClass target) {
+                recordCall(ReplayFile.TAG_TRANSFORM_BYTES, target.getClassName(), classBytes, out -> writeTarget(out, target));
+                return super.transformClass(classBytes, target);
+            }
+        };
+    }
+
+    private synchronized void writeHeader(Type defaultRedirectSet) {
+        if (this.headerWritten) {
+            return;
+        }
+        this.headerWritten = true;
+        write(out -> {
+            out.writeByte(ReplayFile.TAG_DEFAULT_SET);
+            out.writeUTF(defaultRedirectSet.getDescriptor());
+        });
+    }
+
+    private synchronized void recordClass(String className, byte[] classBytes) {
+        if (!this.recordedClasses.add(className)) {
+            return;
+        }
+        write(out -> {
+            out.writeByte(ReplayFile.TAG_CLASS);
+            out.writeUTF(className);
+            out.writeInt(classBytes.length);
+            out.write(classBytes);
+        });
+    }
+
+    private synchronized void recordMapping(int tag, String mapped, String... key) {
+        if (!this.recordedMappings.add(tag + ":" + String.join(":", key))) {
+            return;
+        }
+        write(out -> {
+            out.writeByte(tag);
+            for (String part : key) {
+                out.writeUTF(part);
+            }
+            out.writeUTF(mapped);
+        });
+    }
+
+    private synchronized boolean isRecorded(String className) {
+        return this.recordedClasses.contains(className);
+    }
+
+    private void recordCall(int tag, String className, ClassNode classNode, @Nullable IOConsumer<DataOutputStream> extra) {
+        // snapshot the class as it is before the call, it's modified in place
+        ClassWriter classWriter = new ClassWriter(0);
+        classNode.accept(classWriter);
+        recordCall(tag, className, classWriter.toByteArray(), extra);
+    }
+
+    private synchronized void recordCall(int tag, String className, byte[] classBytes, @Nullable IOConsumer<DataOutputStream> extra) {
+        write(out -> {
+            out.writeByte(tag);
+            out.writeUTF(className);
+            out.writeInt(classBytes.length);
+            out.write(classBytes);
+            if (extra != null) {
+                extra.accept(out);
+            }
+        });
+    }
+
+    private static void writeTarget(DataOutputStream out, TargetClass target) throws IOException {
+        out.writeBoolean(target.debugSelfRedirects());
+        writeSetNames(out, target.redirectSets());
+        out.writeBoolean(target.wholeClass() != null);
+        if (target.wholeClass() != null) {
+            out.writeUTF(target.wholeClass().getDescriptor());
+        }
+        out.writeInt(target.targetMethods().size());
+        for (TargetMethod targetMethod : target.targetMethods()) {
+            out.writeUTF(targetMethod.srcOwner().getDescriptor());
+            out.writeUTF(targetMethod.method().owner.getDescriptor());
+            out.writeUTF(targetMethod.method().method.getName());
+            out.writeUTF(targetMethod.method().method.getDescriptor());
+            out.writeUTF(targetMethod.method().mappingOwner.getDescriptor());
+            out.writeUTF(targetMethod.dstMethodName());
+            out.writeBoolean(targetMethod.shouldClone());
+            out.writeBoolean(targetMethod.makeSyntheticAccessor());
+            writeSetNames(out, targetMethod.redirectSets());
+        }
+    }
+
+    private static void writeSetNames(DataOutputStream out, List<RedirectSet> redirectSets) throws IOException {
+        out.writeInt(redirectSets.size());
+        for (RedirectSet redirectSet : redirectSets) {
+            out.writeUTF(redirectSet.getName());
+        }
+    }
+
+    private void write(IOConsumer<DataOutputStream> writer) {
+        try {
+            writer.accept(this.out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write to replay file", e);
+        }
+    }
+
+    @Override public synchronized void close() throws IOException {
+        this.out.writeByte(ReplayFile.TAG_END);
+        this.out.close();
+    }
+
+    @FunctionalInterface
+    interface IOConsumer<T> {
+        void accept(T t) throws IOException;
+    }
+}
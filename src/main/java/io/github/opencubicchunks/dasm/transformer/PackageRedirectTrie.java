@@ -0,0 +1,88 @@
+package io.github.opencubicchunks.dasm.transformer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Matches internal class names against package redirects, picking the most specific package.
+ * <p/>
+ * The packages are stored in a character trie, so a lookup only walks the name once, no matter how many package redirects there are.
+ */
+public final class PackageRedirectTrie {
+    public static final PackageRedirectTrie EMPTY = new PackageRedirectTrie(Collections.emptyMap());
+
+    private final Node root = new Node();
+    private final boolean empty;
+
+    /**
+     * @param packageRedirects Source package to destination package, both as internal names eg: <code>com/example/lib</code>
+     */
+    public PackageRedirectTrie(Map<String, String> packageRedirects) {
+        this.empty = packageRedirects.isEmpty();
+        packageRedirects.forEach((srcPackage, dstPackage) -> {
+            if (srcPackage.isEmpty()) {
+                throw new IllegalArgumentException("Can't redirect the default package");
+            }
+            Node node = this.root;
+            for (int i = 0; i < srcPackage.length(); i++) {
+                node = node.children.computeIfAbsent(srcPackage.charAt(i), c -> new Node());
+            }
+            // the package separator is part of the key, so com/example doesn't match com/examples
+            node = node.children.computeIfAbsent('/', c -> new Node());
+            node.srcPackage = srcPackage + '/';
+            node.dstPackage = dstPackage.isEmpty() ? "" : dstPackage + '/';
+        });
+    }
+
+    public boolean isEmpty() {
+        return this.empty;
+    }
+
+    /**
+     * @return The name redirected into the destination package, or null if no package redirect matches the name
+     */
+    @Nullable public String redirect(String internalName) {
+        Node node = find(internalName, 0, internalName.length());
+        return node == null ? null : node.dstPackage + internalName.substring(node.srcPackage.length());
+    }
+
+    /**
+     * @return The source package of the package redirect matching the name, as an internal name with a trailing {@code /}, or null if none matches
+     */
+    @Nullable public String matchingPackage(String internalName) {
+        Node node = find(internalName, 0, internalName.length());
+        return node == null ? null : node.srcPackage;
+    }
+
+    /**
+     * @return Whether any package redirect matches the internal name between {@code start} (inclusive) and {@code end} (exclusive)
+     */
+    public boolean matches(String value, int start, int end) {
+        return find(value, start, end) != null;
+    }
+
+    @Nullable private Node find(String value, int start, int end) {
+        Node match = null;
+        Node node = this.root;
+        for (int i = start; i < end; i++) {
+            node = node.children.get(value.charAt(i));
+            if (node == null) {
+                break;
+            }
+            // only match a package if there's a class name after it
+            if (node.srcPackage != null && i + 1 < end) {
+                match = node;
+            }
+        }
+        return match;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        @Nullable private String srcPackage;
+        @Nullable private String dstPackage;
+    }
+}
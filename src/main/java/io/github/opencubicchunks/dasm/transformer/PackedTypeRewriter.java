@@ -0,0 +1,788 @@
+package io.github.opencubicchunks.dasm.transformer;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.commons.AnalyzerAdapter;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Replaces small immutable classes by the primitive they're packed into within a method, see
+ * {@link io.github.opencubicchunks.dasm.api.redirect.PackedTypeRedirect}.
+ * <p/>
+ * Which values are packed is tracked with an {@link AnalyzerAdapter}, so the method needs stack map frames if it has any branches.
+ * Packed values that aren't parameters get local variables of their own after all other locals, as a long needs two slots where a reference needed one.
+ */
+public final class PackedTypeRewriter {
+    private PackedTypeRewriter() {
+    }
+
+    /**
+     * @param owner The internal name of the class declaring the method
+     * @param packedTypes The packed types by internal name
+     * @return The rewritten method, or the given one if it doesn't use any packed type
+     * @throws IllegalStateException If the method uses a packed value in a way that can't be packed, eg: as null or as an {@code Object}
+     */
+    public static MethodNode rewrite(String owner, MethodNode method, Map<String, PackedType> packedTypes) {
+        if (!usesPackedType(method, packedTypes)) {
+            return method;
+        }
+        String packedDesc = packDescriptor(method.desc, packedTypes);
+        MethodNode output = new MethodNode(ASM9, method.access, method.name, packedDesc, packedDesc.equals(method.desc) ? method.signature : null,
+                method.exceptions.toArray(new String[0]));
+        Rewriter rewriter = new Rewriter(owner, method, output, packedTypes);
+        // the method is only read, it stays as it is if it can't be packed
+        method.accept(new FrameExpander(owner, method, rewriter.analyzer));
+        return output;
+    }
+
+    /**
+     * @param packedTypes The packed types by internal name
+     * @return The internal names of the packed types the method uses
+     */
+    public static Set<String> usedPackedTypes(MethodNode method, Map<String, PackedType> packedTypes) {
+        Set<String> used = new HashSet<>();
+        packedTypes.forEach((name, packedType) -> {
+            if (usesPackedType(method, Collections.singletonMap(name, packedType))) {
+                used.add(name);
+            }
+        });
+        return used;
+    }
+
+    private static boolean usesPackedType(MethodNode method, Map<String, PackedType> packedTypes) {
+        if (mentionsPackedType(method.desc, packedTypes)) {
+            return true;
+        }
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (instruction instanceof MethodInsnNode) {
+                MethodInsnNode methodInsn = (MethodInsnNode) instruction;
+                if (packedTypes.containsKey(methodInsn.owner) || mentionsPackedType(methodInsn.desc, packedTypes)) {
+                    return true;
+                }
+            } else if (instruction instanceof FieldInsnNode) {
+                FieldInsnNode fieldInsn = (FieldInsnNode) instruction;
+                if (packedTypes.containsKey(fieldInsn.owner) || mentionsPackedType(fieldInsn.desc, packedTypes)) {
+                    return true;
+                }
+            } else if (instruction instanceof TypeInsnNode) {
+                String type = ((TypeInsnNode) instruction).desc;
+                if (packedTypes.containsKey(type) || mentionsPackedType(type, packedTypes)) {
+                    return true;
+                }
+            } else if (instruction instanceof InvokeDynamicInsnNode) {
+                if (mentionsPackedType((InvokeDynamicInsnNode) instruction, packedTypes)) {
+                    return true;
+                }
+            } else if (instruction instanceof MultiANewArrayInsnNode) {
+                if (mentionsPackedType(((MultiANewArrayInsnNode) instruction).desc, packedTypes)) {
+                    return true;
+                }
+            } else if (instruction instanceof LdcInsnNode) {
+                if (mentionsPackedType(new Object[] { ((LdcInsnNode) instruction).cst }, packedTypes)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean mentionsPackedType(String descriptor, Map<String, PackedType> packedTypes) {
+        for (String className : packedTypes.keySet()) {
+            if (descriptor.contains('L' + className + ';')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean mentionsPackedType(InvokeDynamicInsnNode invokeDynamic, Map<String, PackedType> packedTypes) {
+        return mentionsPackedType(invokeDynamic.desc, packedTypes) || mentionsPackedType(new Object[] { invokeDynamic.bsm }, packedTypes)
+                || mentionsPackedType(invokeDynamic.bsmArgs, packedTypes);
+    }
+
+    private static boolean mentionsPackedType(Object[] constants, Map<String, PackedType> packedTypes) {
+        for (Object constant : constants) {
+            if (constant instanceof Type) {
+                if (mentionsPackedType(((Type) constant).getDescriptor(), packedTypes)) {
+                    return true;
+                }
+            } else if (constant instanceof Handle) {
+                Handle handle = (Handle) constant;
+                if (packedTypes.containsKey(handle.getOwner()) || mentionsPackedType(handle.getDesc(), packedTypes)) {
+                    return true;
+                }
+            } else if (constant instanceof ConstantDynamic) {
+                ConstantDynamic constantDynamic = (ConstantDynamic) constant;
+                Object[] arguments = new Object[constantDynamic.getBootstrapMethodArgumentCount() + 1];
+                arguments[0] = constantDynamic.getBootstrapMethod();
+                for (int i = 1; i < arguments.length; i++) {
+                    arguments[i] = constantDynamic.getBootstrapMethodArgument(i - 1);
+                }
+                if (mentionsPackedType(constantDynamic.getDescriptor(), packedTypes) || mentionsPackedType(arguments, packedTypes)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The descriptor with every packed type replaced by its primitive, for a method, field or array descriptor
+     */
+    private static String packDescriptor(String descriptor, Map<String, PackedType> packedTypes) {
+        if (!mentionsPackedType(descriptor, packedTypes)) {
+            return descriptor;
+        }
+        if (descriptor.charAt(0) == '(') {
+            Type[] arguments = Type.getArgumentTypes(descriptor);
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = packType(arguments[i], packedTypes);
+            }
+            return Type.getMethodDescriptor(packType(Type.getReturnType(descriptor), packedTypes), arguments);
+        }
+        return packType(Type.getType(descriptor), packedTypes).getDescriptor();
+    }
+
+    private static Type packType(Type type, Map<String, PackedType> packedTypes) {
+        if (type.getSort() == Type.ARRAY) {
+            Type elementType = packType(type.getElementType(), packedTypes);
+            if (elementType.equals(type.getElementType())) {
+                return type;
+            }
+            StringBuilder descriptor = new StringBuilder();
+            for (int i = 0; i < type.getDimensions(); i++) {
+                descriptor.append('[');
+            }
+            return Type.getType(descriptor.append(elementType.getDescriptor()).toString());
+        }
+        PackedType packedType = type.getSort() == Type.OBJECT ? packedTypes.get(type.getInternalName()) : null;
+        return packedType == null ? type : packedType.primitive;
+    }
+
+    private static Object frameType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+            case Type.CHAR:
+            case Type.BYTE:
+            case Type.SHORT:
+            case Type.INT:
+                return INTEGER;
+            case Type.FLOAT:
+                return FLOAT;
+            case Type.LONG:
+                return LONG;
+            case Type.DOUBLE:
+                return DOUBLE;
+            case Type.ARRAY:
+                return type.getDescriptor();
+            default:
+                return type.getInternalName();
+        }
+    }
+
+    /**
+     * A class packed into a primitive, and the class declaring the static methods its uses are redirected to
+     */
+    public static final class PackedType {
+        private final Type primitive;
+        private final String packer;
+
+        /**
+         * @param primitive {@link Type#LONG_TYPE} or {@link Type#INT_TYPE}
+         * @param packer The internal name of the class declaring the methods uses of the packed class are redirected to
+         */
+        public PackedType(Type primitive, String packer) {
+            if (primitive.getSort() != Type.LONG && primitive.getSort() != Type.INT) {
+                throw new IllegalArgumentException(String.format("Can only pack into a long or int, not %s", primitive.getClassName()));
+            }
+            this.primitive = primitive;
+            this.packer = packer;
+        }
+
+        public Type primitive() {
+            return primitive;
+        }
+
+        public String packer() {
+            return packer;
+        }
+
+        private Object frameType() {
+            return this.primitive.getSort() == Type.LONG ? LONG : INTEGER;
+        }
+    }
+
+    /**
+     * Passes all frames on as {@link org.objectweb.asm.Opcodes#F_NEW}, as {@link AnalyzerAdapter} only accepts expanded frames
+     */
+    private static final class FrameExpander extends MethodVisitor {
+        private List<Object> locals = new ArrayList<>();
+
+        FrameExpander(String owner, MethodNode method, MethodVisitor mv) {
+            super(ASM9, mv);
+            if ((method.access & ACC_STATIC) == 0) {
+                this.locals.add(method.name.equals("<init>") ? UNINITIALIZED_THIS : owner);
+            }
+            for (Type argument : Type.getArgumentTypes(method.desc)) {
+                this.locals.add(frameType(argument));
+            }
+        }
+
+        @Override public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+            List<Object> frameStack = new ArrayList<>();
+            switch (type) {
+                case F_NEW:
+                case F_FULL:
+                    this.locals = new ArrayList<>(Arrays.asList(local).subList(0, numLocal));
+                    frameStack.addAll(Arrays.asList(stack).subList(0, numStack));
+                    break;
+                case F_SAME1:
+                    frameStack.add(stack[0]);
+                    break;
+                case F_APPEND:
+                    this.locals.addAll(Arrays.asList(local).subList(0, numLocal));
+                    break;
+                case F_CHOP:
+                    this.locals.subList(Math.max(0, this.locals.size() - numLocal), this.locals.size()).clear();
+                    break;
+                default:
+                    break;
+            }
+            super.visitFrame(F_NEW, this.locals.size(), this.locals.toArray(), frameStack.size(), frameStack.toArray());
+        }
+    }
+
+    private static final class Rewriter extends MethodVisitor {
+        private final AnalyzerAdapter analyzer;
+        private final String owner;
+        private final MethodNode method;
+        private final Map<String, PackedType> packedTypes;
+        @Nullable private final PackedType packedReturnType;
+
+        // new slots of the parameters by old slot, parameters are packed in place
+        private final int[] parameterSlots;
+        private final int[] packedParameterSizes;
+        private final int slotShift;
+        // old slot -> the slots packed values stored in it are moved to
+        private final Map<Integer, Integer> packedSlots = new HashMap<>();
+        private int nextPackedSlot;
+        // of the rewritten method, where packed values take the size of their primitive
+        private int maxStack;
+
+        Rewriter(String owner, MethodNode method, MethodNode output, Map<String, PackedType> packedTypes) {
+            super(ASM9, output);
+            this.analyzer = new AnalyzerAdapter(owner, method.access, method.name, method.desc, this);
+            this.owner = owner;
+            this.method = method;
+            this.packedTypes = packedTypes;
+            this.packedReturnType = packedTypeOf(Type.getReturnType(method.desc));
+
+            int oldSlot = (method.access & ACC_STATIC) == 0 ? 1 : 0;
+            int newSlot = oldSlot;
+            Type[] arguments = Type.getArgumentTypes(method.desc);
+            int parameterSize = oldSlot;
+            for (Type argument : arguments) {
+                parameterSize += argument.getSize();
+            }
+            this.parameterSlots = new int[parameterSize];
+            this.packedParameterSizes = new int[parameterSize];
+            for (int i = 0; i < oldSlot; i++) {
+                this.parameterSlots[i] = i;
+            }
+            for (Type argument : arguments) {
+                PackedType packedType = packedTypeOf(argument);
+                for (int i = 0; i < argument.getSize(); i++) {
+                    this.parameterSlots[oldSlot + i] = newSlot + i;
+                }
+                if (packedType != null) {
+                    this.packedParameterSizes[oldSlot] = packedType.primitive.getSize();
+                }
+                oldSlot += argument.getSize();
+                newSlot += packedType == null ? argument.getSize() : packedType.primitive.getSize();
+            }
+            this.slotShift = newSlot - oldSlot;
+            this.nextPackedSlot = method.maxLocals + this.slotShift;
+        }
+
+        @Nullable private PackedType packedTypeOf(Type type) {
+            return type.getSort() == Type.OBJECT ? this.packedTypes.get(type.getInternalName()) : null;
+        }
+
+        @Nullable private PackedType packedValue(@Nullable Object value) {
+            return value instanceof String ? this.packedTypes.get(value) : null;
+        }
+
+        private boolean isPackedUninitialized(@Nullable Object value) {
+            return value instanceof Label && this.packedTypes.containsKey(this.analyzer.uninitializedTypes.get(value));
+        }
+
+        @Nullable private Object stackValue(int depth) {
+            List<Object> stack = this.analyzer.stack;
+            return stack == null || depth >= stack.size() ? null : stack.get(stack.size() - 1 - depth);
+        }
+
+        /**
+         * @param depth The number of stack entries above the value, longs and doubles count as two
+         */
+        @Nullable private PackedType packedAt(int depth) {
+            return packedValue(stackValue(depth));
+        }
+
+        @Nullable private PackedType packedLocal(int slot) {
+            List<Object> locals = this.analyzer.locals;
+            return locals == null || slot >= locals.size() ? null : packedValue(locals.get(slot));
+        }
+
+        /**
+         * @param depth The number of stack entries on top not to count
+         * @return The size the rest of the stack has once rewritten
+         */
+        private int rewrittenStackSize(int depth) {
+            List<Object> stack = this.analyzer.stack;
+            if (stack == null) {
+                return 0;
+            }
+            int size = 0;
+            for (int i = 0; i < stack.size() - depth; i++) {
+                Object value = stack.get(i);
+                PackedType packedType = packedValue(value);
+                // uninitialized packed values aren't on the rewritten stack, the constructor arguments are packed instead
+                size += packedType != null ? packedType.primitive.getSize() : isPackedUninitialized(value) ? 0 : 1;
+            }
+            return size;
+        }
+
+        /**
+         * Called before each instruction and at the end, so every stack an instruction leaves is counted by the next one
+         */
+        private void countStack() {
+            this.maxStack = Math.max(this.maxStack, rewrittenStackSize(0));
+        }
+
+        private int slot(int oldSlot) {
+            return oldSlot < this.parameterSlots.length ? this.parameterSlots[oldSlot] : oldSlot + this.slotShift;
+        }
+
+        private int packedSlot(int oldSlot, PackedType packedType) {
+            if (oldSlot < this.parameterSlots.length && this.packedParameterSizes[oldSlot] >= packedType.primitive.getSize()) {
+                return this.parameterSlots[oldSlot];
+            }
+            return this.packedSlots.computeIfAbsent(oldSlot, s -> {
+                // always two slots, in case the old slot holds values of both an int and a long packed type
+                int slot = this.nextPackedSlot;
+                this.nextPackedSlot += 2;
+                return slot;
+            });
+        }
+
+        private IllegalStateException fail(String reason) {
+            return new IllegalStateException(String.format("Can't pack %s in %s.%s%s: %s", this.packedTypes.keySet(), this.owner, this.method.name,
+                    this.method.desc, reason));
+        }
+
+        @Override public void visitVarInsn(int opcode, int var) {
+            countStack();
+            if (opcode == ALOAD) {
+                PackedType packedType = packedLocal(var);
+                if (packedType != null) {
+                    super.visitVarInsn(packedType.primitive.getOpcode(ILOAD), packedSlot(var, packedType));
+                    return;
+                }
+            } else if (opcode == ASTORE) {
+                if (isPackedUninitialized(stackValue(0))) {
+                    throw fail("an uninitialized packed value is stored in a local variable");
+                }
+                PackedType packedType = packedAt(0);
+                if (packedType != null) {
+                    super.visitVarInsn(packedType.primitive.getOpcode(ISTORE), packedSlot(var, packedType));
+                    return;
+                }
+            }
+            super.visitVarInsn(opcode, slot(var));
+        }
+
+        @Override public void visitIincInsn(int var, int increment) {
+            countStack();
+            super.visitIincInsn(slot(var), increment);
+        }
+
+        @Override public void visitInsn(int opcode) {
+            countStack();
+            switch (opcode) {
+                case ARETURN: {
+                    PackedType packedType = packedAt(0);
+                    if (packedType != this.packedReturnType) {
+                        throw fail(this.packedReturnType == null ? "a packed value is returned as an object" : "null or another type is returned as a packed value");
+                    }
+                    super.visitInsn(packedType == null ? opcode : packedType.primitive.getOpcode(IRETURN));
+                    return;
+                }
+                case DUP: {
+                    if (isPackedUninitialized(stackValue(0))) {
+                        // the copy for the constructor isn't needed, pack returns the value directly
+                        return;
+                    }
+                    PackedType packedType = packedAt(0);
+                    super.visitInsn(packedType != null && packedType.primitive.getSize() == 2 ? DUP2 : DUP);
+                    return;
+                }
+                case POP: {
+                    PackedType packedType = packedAt(0);
+                    super.visitInsn(packedType != null && packedType.primitive.getSize() == 2 ? POP2 : POP);
+                    return;
+                }
+                case DUP_X1: {
+                    checkNotUninitialized(2);
+                    boolean wideValue1 = packedSize(0) == 2;
+                    boolean wideValue2 = packedSize(1) == 2;
+                    super.visitInsn(wideValue1 ? (wideValue2 ? DUP2_X2 : DUP2_X1) : (wideValue2 ? DUP_X2 : DUP_X1));
+                    return;
+                }
+                case DUP_X2:
+                case DUP2:
+                case DUP2_X1:
+                case DUP2_X2:
+                case SWAP:
+                case POP2: {
+                    int depth = opcode == DUP2_X2 ? 4 : opcode == DUP_X2 || opcode == DUP2_X1 ? 3 : 2;
+                    checkNotUninitialized(depth);
+                    for (int i = 0; i < depth; i++) {
+                        if (packedSize(i) == 2) {
+                            throw fail(String.format("stack instruction %d on a value packed into a long", opcode));
+                        }
+                    }
+                    super.visitInsn(opcode);
+                    return;
+                }
+                case AALOAD: {
+                    PackedType packedType = packedArrayElement(stackValue(1));
+                    super.visitInsn(packedType == null ? opcode : packedType.primitive.getOpcode(IALOAD));
+                    return;
+                }
+                case AASTORE: {
+                    PackedType packedType = packedArrayElement(stackValue(2));
+                    if (packedType != packedAt(0)) {
+                        throw fail("a value is stored in an array of another packed type, or packed values in an object array");
+                    }
+                    super.visitInsn(packedType == null ? opcode : packedType.primitive.getOpcode(IASTORE));
+                    return;
+                }
+                case MONITORENTER:
+                case MONITOREXIT:
+                    if (packedAt(0) != null) {
+                        throw fail("a packed value is synchronized on");
+                    }
+                    super.visitInsn(opcode);
+                    return;
+                default:
+                    super.visitInsn(opcode);
+            }
+        }
+
+        private int packedSize(int depth) {
+            PackedType packedType = packedAt(depth);
+            return packedType == null ? 1 : packedType.primitive.getSize();
+        }
+
+        private void checkNotUninitialized(int depth) {
+            for (int i = 0; i < depth; i++) {
+                if (isPackedUninitialized(stackValue(i))) {
+                    throw fail("an uninitialized packed value is moved on the stack");
+                }
+            }
+        }
+
+        @Nullable private PackedType packedArrayElement(@Nullable Object arrayType) {
+            if (!(arrayType instanceof String) || !((String) arrayType).startsWith("[")) {
+                return null;
+            }
+            Type type = Type.getType((String) arrayType);
+            return type.getDimensions() == 1 ? packedTypeOf(type.getElementType()) : null;
+        }
+
+        @Override public void visitTypeInsn(int opcode, String type) {
+            countStack();
+            PackedType packedType = this.packedTypes.get(type);
+            switch (opcode) {
+                case NEW:
+                    if (packedType == null) {
+                        super.visitTypeInsn(opcode, type);
+                    }
+                    return;
+                case ANEWARRAY:
+                    if (packedType != null) {
+                        super.visitIntInsn(NEWARRAY, packedType.primitive.getSort() == Type.LONG ? T_LONG : T_INT);
+                    } else {
+                        super.visitTypeInsn(opcode, packInternalName(type));
+                    }
+                    return;
+                case CHECKCAST:
+                    if (packedType != null) {
+                        if (packedAt(0) != packedType) {
+                            throw fail("an object is cast to a packed type");
+                        }
+                        return;
+                    }
+                    if (packedAt(0) != null) {
+                        throw fail("a packed value is cast to an object type");
+                    }
+                    super.visitTypeInsn(opcode, packInternalName(type));
+                    return;
+                default:
+                    // INSTANCEOF
+                    if (packedType != null || packedAt(0) != null || mentionsPackedType(type, this.packedTypes)) {
+                        throw fail("instanceof is used on a packed type");
+                    }
+                    super.visitTypeInsn(opcode, type);
+            }
+        }
+
+        private String packInternalName(String type) {
+            return type.startsWith("[") ? packDescriptor(type, this.packedTypes) : type;
+        }
+
+        @Override public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            countStack();
+            PackedType ownerType = this.packedTypes.get(owner);
+            String packedDescriptor = packDescriptor(descriptor, this.packedTypes);
+            if (ownerType != null) {
+                if (opcode == GETFIELD) {
+                    if (packedAt(0) != ownerType) {
+                        throw fail(String.format("field %s is read from a value that isn't packed", name));
+                    }
+                    super.visitMethodInsn(INVOKESTATIC, ownerType.packer, name, Type.getMethodDescriptor(Type.getType(packedDescriptor), ownerType.primitive),
+                            false);
+                } else if (opcode == GETSTATIC) {
+                    super.visitFieldInsn(opcode, ownerType.packer, name, packedDescriptor);
+                } else {
+                    throw fail(String.format("field %s of a packed type is written", name));
+                }
+                return;
+            }
+            if (opcode == GETFIELD || opcode == PUTFIELD) {
+                if (packedAt(opcode == PUTFIELD ? Type.getType(descriptor).getSize() : 0) != null) {
+                    throw fail(String.format("field %s.%s is accessed on a packed value", owner, name));
+                }
+            }
+            if (opcode == PUTFIELD || opcode == PUTSTATIC) {
+                if (packedAt(0) != packedTypeOf(Type.getType(descriptor))) {
+                    throw fail(String.format("field %s.%s is set to a value that isn't packed the same way", owner, name));
+                }
+            }
+            super.visitFieldInsn(opcode, owner, name, packedDescriptor);
+        }
+
+        @Override public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            countStack();
+            Type[] arguments = Type.getArgumentTypes(descriptor);
+            int depth = 0;
+            for (int i = arguments.length - 1; i >= 0; i--) {
+                if (packedAt(depth) != packedTypeOf(arguments[i])) {
+                    throw fail(String.format("argument %d of %s.%s%s isn't packed the same way as the value passed", i, owner, name, descriptor));
+                }
+                depth += arguments[i].getSize();
+            }
+            String packedDescriptor = packDescriptor(descriptor, this.packedTypes);
+
+            PackedType ownerType = this.packedTypes.get(owner);
+            if (ownerType == null) {
+                if (opcode != INVOKESTATIC && packedAt(depth) != null) {
+                    throw fail(String.format("%s.%s is called on a packed value", owner, name));
+                }
+                super.visitMethodInsn(opcode, owner, name, packedDescriptor, isInterface);
+                return;
+            }
+            switch (opcode) {
+                case INVOKESPECIAL: {
+                    if (!name.equals("<init>")) {
+                        throw fail(String.format("%s is called with invokespecial", name));
+                    }
+                    Object receiver = stackValue(depth);
+                    boolean isUsed = receiver != null && receiver == stackValue(depth + 1);
+                    super.visitMethodInsn(INVOKESTATIC, ownerType.packer, "pack", Type.getMethodDescriptor(ownerType.primitive,
+                            Type.getArgumentTypes(packedDescriptor)), false);
+                    if (!isUsed) {
+                        // the packed value is only on the rewritten stack until it's popped again, the next instruction doesn't see it
+                        this.maxStack = Math.max(this.maxStack, rewrittenStackSize(depth + 1) + ownerType.primitive.getSize());
+                        super.visitInsn(ownerType.primitive.getSize() == 2 ? POP2 : POP);
+                    }
+                    return;
+                }
+                case INVOKESTATIC:
+                    super.visitMethodInsn(INVOKESTATIC, ownerType.packer, name, packedDescriptor, false);
+                    return;
+                default: {
+                    if (packedAt(depth) != ownerType) {
+                        throw fail(String.format("%s.%s is called on a value that isn't packed", owner, name));
+                    }
+                    Type[] packedArguments = Type.getArgumentTypes(packedDescriptor);
+                    Type[] staticArguments = new Type[packedArguments.length + 1];
+                    staticArguments[0] = ownerType.primitive;
+                    System.arraycopy(packedArguments, 0, staticArguments, 1, packedArguments.length);
+                    super.visitMethodInsn(INVOKESTATIC, ownerType.packer, name,
+                            Type.getMethodDescriptor(Type.getReturnType(packedDescriptor), staticArguments), false);
+                }
+            }
+        }
+
+        @Override public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+            countStack();
+            if (mentionsPackedType(descriptor, this.packedTypes) || mentionsPackedType(new Object[] { bootstrapMethodHandle }, this.packedTypes)
+                    || mentionsPackedType(bootstrapMethodArguments, this.packedTypes)) {
+                throw fail(String.format("packed types are used by invokedynamic %s", name));
+            }
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        }
+
+        @Override public void visitLdcInsn(Object value) {
+            countStack();
+            if (mentionsPackedType(new Object[] { value }, this.packedTypes)) {
+                throw fail("a packed type is loaded as a constant");
+            }
+            super.visitLdcInsn(value);
+        }
+
+        @Override public void visitJumpInsn(int opcode, Label label) {
+            countStack();
+            if (opcode == IF_ACMPEQ || opcode == IF_ACMPNE) {
+                PackedType packedType = packedAt(0);
+                if (packedType != packedAt(1)) {
+                    throw fail("a packed value is compared to null or an object");
+                }
+                if (packedType != null) {
+                    // packed values are compared by value, they have no identity
+                    if (packedType.primitive.getSize() == 2) {
+                        super.visitInsn(LCMP);
+                        super.visitJumpInsn(opcode == IF_ACMPEQ ? IFEQ : IFNE, label);
+                    } else {
+                        super.visitJumpInsn(opcode == IF_ACMPEQ ? IF_ICMPEQ : IF_ICMPNE, label);
+                    }
+                    return;
+                }
+            } else if ((opcode == IFNULL || opcode == IFNONNULL) && packedAt(0) != null) {
+                throw fail("a packed value is compared to null");
+            }
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override public void visitIntInsn(int opcode, int operand) {
+            countStack();
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            countStack();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            countStack();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            countStack();
+            super.visitMultiANewArrayInsn(packDescriptor(descriptor, this.packedTypes), numDimensions);
+        }
+
+        @Override public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+            // slot -> type, with null for the second half of longs and doubles and for unused slots
+            List<Object> slots = new ArrayList<>();
+            int oldSlot = 0;
+            for (int i = 0; i < numLocal; i++) {
+                Object value = local[i];
+                PackedType packedType = packedValue(value);
+                if (packedType != null) {
+                    setSlot(slots, packedSlot(oldSlot, packedType), packedType.frameType());
+                } else if (!isPackedUninitialized(value)) {
+                    setSlot(slots, slot(oldSlot), packFrameValue(value));
+                }
+                oldSlot += value == LONG || value == DOUBLE ? 2 : 1;
+            }
+            List<Object> newLocal = new ArrayList<>();
+            for (int slot = 0; slot < slots.size(); slot++) {
+                Object value = slots.get(slot);
+                newLocal.add(value == null ? TOP : value);
+                if (value == LONG || value == DOUBLE) {
+                    slot++;
+                }
+            }
+            while (!newLocal.isEmpty() && newLocal.get(newLocal.size() - 1) == TOP) {
+                newLocal.remove(newLocal.size() - 1);
+            }
+
+            List<Object> newStack = new ArrayList<>();
+            for (int i = 0; i < numStack; i++) {
+                PackedType packedType = packedValue(stack[i]);
+                if (packedType != null) {
+                    newStack.add(packedType.frameType());
+                } else if (!isPackedUninitialized(stack[i])) {
+                    newStack.add(packFrameValue(stack[i]));
+                }
+            }
+            super.visitFrame(F_NEW, newLocal.size(), newLocal.toArray(), newStack.size(), newStack.toArray());
+        }
+
+        private Object packFrameValue(Object value) {
+            // arrays of packed types are arrays of the primitive
+            return value instanceof String && ((String) value).startsWith("[") ? packDescriptor((String) value, this.packedTypes) : value;
+        }
+
+        private static void setSlot(List<Object> slots, int slot, Object value) {
+            while (slots.size() <= slot) {
+                slots.add(null);
+            }
+            slots.set(slot, value);
+        }
+
+        @Override public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+            PackedType packedType = packedTypeOf(Type.getType(descriptor));
+            if (packedType != null) {
+                super.visitLocalVariable(name, packedType.primitive.getDescriptor(), null, start, end, packedSlot(index, packedType));
+                return;
+            }
+            String packedDescriptor = packDescriptor(descriptor, this.packedTypes);
+            super.visitLocalVariable(name, packedDescriptor, packedDescriptor.equals(descriptor) ? signature : null, start, end, slot(index));
+        }
+
+        @Override public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index,
+                                                                        String descriptor, boolean visible) {
+            int[] newIndex = Arrays.copyOf(index, index.length);
+            for (int i = 0; i < newIndex.length; i++) {
+                if (packedLocalAnywhere(index[i])) {
+                    // the annotated variable moved to a packed slot, its annotations are dropped
+                    return null;
+                }
+                newIndex[i] = slot(index[i]);
+            }
+            return super.visitLocalVariableAnnotation(typeRef, typePath, start, end, newIndex, descriptor, visible);
+        }
+
+        private boolean packedLocalAnywhere(int oldSlot) {
+            return this.packedSlots.containsKey(oldSlot) || (oldSlot < this.packedParameterSizes.length && this.packedParameterSizes[oldSlot] != 0);
+        }
+
+        @Override public void visitMaxs(int maxStack, int maxLocals) {
+            countStack();
+            super.visitMaxs(this.maxStack, Math.max(maxLocals + this.slotShift, this.nextPackedSlot));
+        }
+    }
+}
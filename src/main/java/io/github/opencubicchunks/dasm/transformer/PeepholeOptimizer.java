@@ -0,0 +1,499 @@
+package io.github.opencubicchunks.dasm.transformer;
+
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Local cleanups of the redundant code redirects leave behind in the methods they produce:
+ * <ul>
+ *     <li>casts to a type the value already statically has, like the return type of a redirected method</li>
+ *     <li>stores to a local that is loaded exactly once, right after the store, and never used otherwise</li>
+ *     <li>values pushed only to be popped again, and loads of a local stored straight back into it</li>
+ *     <li>jumps to jumps, and jumps to the next instruction</li>
+ *     <li>code that can't be reached</li>
+ * </ul>
+ * Only rewrites that keep existing stack map frames valid are done, so the methods don't need their frames computed again.
+ * Anything that would need a frame to change is left as it is.
+ */
+public final class PeepholeOptimizer {
+    // rewrites can expose new opportunities, like a cast that is only redundant once the store before it is gone, but rarely more than a few deep
+    private static final int MAX_ROUNDS = 8;
+
+    private PeepholeOptimizer() {
+    }
+
+    /**
+     * @return Whether the method was changed
+     */
+    public static boolean optimize(MethodNode method) {
+        if (method.instructions.size() == 0) {
+            return false;
+        }
+        boolean changed = false;
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean changedInRound = collapseJumpChains(method);
+            Set<LabelNode> boundaries = boundaries(method);
+            changedInRound |= removeRedundantInstructions(method, boundaries);
+            changedInRound |= removeStoreLoadPairs(method, boundaries);
+            changedInRound |= removeDeadCode(method);
+            if (!changedInRound) {
+                break;
+            }
+            changed = true;
+        }
+        if (changed) {
+            // line numbers must point at code, removing the last instructions can leave some pointing past the end
+            for (AbstractInsnNode instruction : method.instructions.toArray()) {
+                if (instruction instanceof LineNumberNode && nextInstruction(((LineNumberNode) instruction).start) == null) {
+                    method.instructions.remove(instruction);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Points jumps to a {@code GOTO} directly at where that jumps to
+     */
+    private static boolean collapseJumpChains(MethodNode method) {
+        boolean changed = false;
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (instruction instanceof JumpInsnNode && instruction.getOpcode() != JSR) {
+                JumpInsnNode jump = (JumpInsnNode) instruction;
+                LabelNode target = finalTarget(jump.label);
+                changed |= target != jump.label;
+                jump.label = target;
+            } else if (instruction instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) instruction;
+                changed |= collapseSwitchTargets(tableSwitch.labels);
+                LabelNode target = finalTarget(tableSwitch.dflt);
+                changed |= target != tableSwitch.dflt;
+                tableSwitch.dflt = target;
+            } else if (instruction instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) instruction;
+                changed |= collapseSwitchTargets(lookupSwitch.labels);
+                LabelNode target = finalTarget(lookupSwitch.dflt);
+                changed |= target != lookupSwitch.dflt;
+                lookupSwitch.dflt = target;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean collapseSwitchTargets(List<LabelNode> labels) {
+        boolean changed = false;
+        for (int i = 0; i < labels.size(); i++) {
+            LabelNode target = finalTarget(labels.get(i));
+            changed |= target != labels.get(i);
+            labels.set(i, target);
+        }
+        return changed;
+    }
+
+    private static LabelNode finalTarget(LabelNode label) {
+        // an infinite loop of jumps ends up back at a label already seen
+        Set<LabelNode> seen = new HashSet<>();
+        while (seen.add(label)) {
+            AbstractInsnNode next = nextInstruction(label);
+            if (next == null || next.getOpcode() != GOTO) {
+                break;
+            }
+            label = ((JumpInsnNode) next).label;
+        }
+        return label;
+    }
+
+    /**
+     * @return The labels control flow can enter or leave at other than by falling through, values on the stack can come from elsewhere there
+     */
+    private static Set<LabelNode> boundaries(MethodNode method) {
+        Set<LabelNode> boundaries = new HashSet<>();
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (instruction instanceof JumpInsnNode) {
+                boundaries.add(((JumpInsnNode) instruction).label);
+            } else if (instruction instanceof TableSwitchInsnNode) {
+                boundaries.add(((TableSwitchInsnNode) instruction).dflt);
+                boundaries.addAll(((TableSwitchInsnNode) instruction).labels);
+            } else if (instruction instanceof LookupSwitchInsnNode) {
+                boundaries.add(((LookupSwitchInsnNode) instruction).dflt);
+                boundaries.addAll(((LookupSwitchInsnNode) instruction).labels);
+            }
+        }
+        for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+            boundaries.add(tryCatchBlock.start);
+            boundaries.add(tryCatchBlock.end);
+            boundaries.add(tryCatchBlock.handler);
+        }
+        return boundaries;
+    }
+
+    private static boolean removeRedundantInstructions(MethodNode method, Set<LabelNode> boundaries) {
+        InsnList instructions = method.instructions;
+        boolean changed = false;
+        for (AbstractInsnNode instruction : instructions.toArray()) {
+            int opcode = instruction.getOpcode();
+            if (opcode == CHECKCAST) {
+                if (isRedundantCast(previousInBlock(instruction, boundaries), ((TypeInsnNode) instruction).desc)) {
+                    changed |= remove(instructions, instruction, instruction);
+                }
+            } else if (opcode == POP || opcode == POP2) {
+                AbstractInsnNode previous = previousInBlock(instruction, boundaries);
+                if (previous != null && pushedSize(previous) == (opcode == POP ? 1 : 2)) {
+                    changed |= remove(instructions, previous, instruction);
+                }
+            } else if (opcode >= ISTORE && opcode <= ASTORE) {
+                AbstractInsnNode previous = previousInBlock(instruction, boundaries);
+                if (previous != null && previous.getOpcode() == opcode - ISTORE + ILOAD && ((VarInsnNode) previous).var == ((VarInsnNode) instruction).var) {
+                    changed |= remove(instructions, previous, instruction);
+                }
+            } else if (opcode == GOTO && nextInstruction(instruction) == nextInstruction(((JumpInsnNode) instruction).label)) {
+                changed |= remove(instructions, instruction, instruction);
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isRedundantCast(@Nullable AbstractInsnNode previous, String type) {
+        if (type.equals("java/lang/Object")) {
+            return true;
+        }
+        if (previous == null) {
+            return false;
+        }
+        switch (previous.getOpcode()) {
+            case ACONST_NULL:
+                return true;
+            case CHECKCAST:
+                return ((TypeInsnNode) previous).desc.equals(type);
+            case ANEWARRAY:
+                return ('[' + Type.getObjectType(((TypeInsnNode) previous).desc).getDescriptor()).equals(type);
+            case GETFIELD:
+            case GETSTATIC:
+                return hasType(Type.getType(((FieldInsnNode) previous).desc), type);
+            case INVOKEVIRTUAL:
+            case INVOKESPECIAL:
+            case INVOKESTATIC:
+            case INVOKEINTERFACE:
+                return hasType(Type.getReturnType(((MethodInsnNode) previous).desc), type);
+            case INVOKEDYNAMIC:
+                return hasType(Type.getReturnType(((InvokeDynamicInsnNode) previous).desc), type);
+            case LDC:
+                return ((LdcInsnNode) previous).cst instanceof String && type.equals("java/lang/String");
+            default:
+                return false;
+        }
+    }
+
+    private static boolean hasType(Type type, String internalName) {
+        return (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY) && type.getInternalName().equals(internalName);
+    }
+
+    /**
+     * @return The size of the value the instruction pushes, if it does nothing else, otherwise 0
+     */
+    private static int pushedSize(AbstractInsnNode instruction) {
+        switch (instruction.getOpcode()) {
+            case ACONST_NULL:
+            case ICONST_M1:
+            case ICONST_0:
+            case ICONST_1:
+            case ICONST_2:
+            case ICONST_3:
+            case ICONST_4:
+            case ICONST_5:
+            case FCONST_0:
+            case FCONST_1:
+            case FCONST_2:
+            case BIPUSH:
+            case SIPUSH:
+            case ILOAD:
+            case FLOAD:
+            case ALOAD:
+            case DUP:
+                return 1;
+            case LCONST_0:
+            case LCONST_1:
+            case DCONST_0:
+            case DCONST_1:
+            case LLOAD:
+            case DLOAD:
+                return 2;
+            case LDC: {
+                // class, method handle and dynamic constants are resolved, which can fail
+                Object constant = ((LdcInsnNode) instruction).cst;
+                if (constant instanceof Long || constant instanceof Double) {
+                    return 2;
+                }
+                return constant instanceof Integer || constant instanceof Float || constant instanceof String ? 1 : 0;
+            }
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Removes {@code xSTORE n; xLOAD n} if that's the only use of local {@code n}, leaving the value on the stack.
+     * <p/>
+     * Frames may record the local, so this is only done when no frame follows the store. Parameters are left alone, to keep their debug info.
+     */
+    private static boolean removeStoreLoadPairs(MethodNode method, Set<LabelNode> boundaries) {
+        InsnList instructions = method.instructions;
+        AbstractInsnNode[] nodes = instructions.toArray();
+        int lastFrame = -1;
+        int maxVar = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] instanceof FrameNode) {
+                lastFrame = i;
+            } else if (nodes[i] instanceof VarInsnNode) {
+                maxVar = Math.max(maxVar, ((VarInsnNode) nodes[i]).var + 1);
+            } else if (nodes[i] instanceof IincInsnNode) {
+                maxVar = Math.max(maxVar, ((IincInsnNode) nodes[i]).var + 1);
+            }
+        }
+        // local -> number of instructions using it
+        int[] uses = new int[maxVar];
+        for (AbstractInsnNode node : nodes) {
+            if (node instanceof VarInsnNode) {
+                uses[((VarInsnNode) node).var]++;
+            } else if (node instanceof IincInsnNode) {
+                // counted twice, it both loads and stores
+                uses[((IincInsnNode) node).var] += 2;
+            }
+        }
+
+        int firstLocal = (Type.getArgumentsAndReturnSizes(method.desc) >> 2) - ((method.access & ACC_STATIC) != 0 ? 1 : 0);
+
+        boolean changed = false;
+        for (int i = lastFrame + 1; i < nodes.length; i++) {
+            int opcode = nodes[i].getOpcode();
+            if (opcode < ISTORE || opcode > ASTORE || ((VarInsnNode) nodes[i]).var < firstLocal) {
+                continue;
+            }
+            int var = ((VarInsnNode) nodes[i]).var;
+            AbstractInsnNode next = nextInBlock(nodes[i], boundaries);
+            if (uses[var] != 2 || next == null || next.getOpcode() != opcode - ISTORE + ILOAD || ((VarInsnNode) next).var != var
+                    || hasLocalVariableAnnotation(method, var)) {
+                continue;
+            }
+            if (!remove(instructions, nodes[i], next)) {
+                continue;
+            }
+            if (method.localVariables != null) {
+                method.localVariables.removeIf(localVariable -> localVariable.index == var);
+            }
+            uses[var] = 0;
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean hasLocalVariableAnnotation(MethodNode method, int var) {
+        List<LocalVariableAnnotationNode> annotations = new ArrayList<>();
+        if (method.visibleLocalVariableAnnotations != null) {
+            annotations.addAll(method.visibleLocalVariableAnnotations);
+        }
+        if (method.invisibleLocalVariableAnnotations != null) {
+            annotations.addAll(method.invisibleLocalVariableAnnotations);
+        }
+        return annotations.stream().anyMatch(annotation -> annotation.index.contains(var));
+    }
+
+    /**
+     * Removes unreachable instructions, along with the frames and exception handlers left without any code.
+     * <p/>
+     * Dead code is handled per gap between reachable instructions. A gap is left as it is if removing it would leave a frame that can't be removed.
+     */
+    private static boolean removeDeadCode(MethodNode method) {
+        InsnList instructions = method.instructions;
+        AbstractInsnNode[] nodes = instructions.toArray();
+        boolean[] reachable = reachable(method, nodes);
+        List<AbstractInsnNode> removed = new ArrayList<>();
+        List<AbstractInsnNode> gapDead = new ArrayList<>();
+        List<FrameNode> gapFrames = new ArrayList<>();
+        for (int i = 0; i < nodes.length; i++) {
+            AbstractInsnNode node = nodes[i];
+            if (node instanceof FrameNode) {
+                gapFrames.add((FrameNode) node);
+            } else if (node.getOpcode() >= 0) {
+                if (reachable[i]) {
+                    removeGap(gapDead, gapFrames, true, removed);
+                } else {
+                    gapDead.add(node);
+                }
+            }
+        }
+        removeGap(gapDead, gapFrames, false, removed);
+        if (removed.isEmpty()) {
+            return false;
+        }
+
+        removed.forEach(instructions::remove);
+        method.tryCatchBlocks.removeIf(tryCatchBlock -> nextInstruction(tryCatchBlock.start) == nextInstruction(tryCatchBlock.end));
+        return true;
+    }
+
+    /**
+     * @param followedByCode Whether a reachable instruction follows the gap, which keeps the gap's last frame
+     */
+    private static void removeGap(List<AbstractInsnNode> gapDead, List<FrameNode> gapFrames, boolean followedByCode, List<AbstractInsnNode> removed) {
+        if (!gapDead.isEmpty()) {
+            int emptyFrames = followedByCode ? gapFrames.size() - 1 : gapFrames.size();
+            boolean canRemove = true;
+            for (int i = 0; i < emptyFrames && canRemove; i++) {
+                canRemove = canRemoveFrame(gapFrames.get(i), i + 1 < gapFrames.size() ? gapFrames.get(i + 1) : null);
+            }
+            if (canRemove) {
+                removed.addAll(gapDead);
+                removed.addAll(gapFrames.subList(0, Math.max(emptyFrames, 0)));
+            }
+        }
+        gapDead.clear();
+        gapFrames.clear();
+    }
+
+    /**
+     * Removes the first and last instruction, which must be next to each other or the same, unless that leaves behind a frame without code that
+     * can't be removed. Such a frame is removed along with them.
+     *
+     * @return Whether the instructions were removed
+     */
+    private static boolean remove(InsnList instructions, AbstractInsnNode first, AbstractInsnNode last) {
+        FrameNode frame = null;
+        for (AbstractInsnNode previous = first.getPrevious(); previous != null && previous.getOpcode() < 0; previous = previous.getPrevious()) {
+            if (previous instanceof FrameNode) {
+                frame = (FrameNode) previous;
+                break;
+            }
+        }
+        if (frame != null) {
+            AbstractInsnNode next = last.getNext();
+            while (next != null && next.getOpcode() < 0 && !(next instanceof FrameNode)) {
+                next = next.getNext();
+            }
+            if (next == null || next instanceof FrameNode) {
+                if (!canRemoveFrame(frame, (FrameNode) next)) {
+                    return false;
+                }
+                instructions.remove(frame);
+            }
+        }
+        instructions.remove(first);
+        if (last != first) {
+            instructions.remove(last);
+        }
+        return true;
+    }
+
+    /**
+     * Compressed frames only store the difference to the previous frame, removing one must not change what the next one is relative to
+     */
+    private static boolean canRemoveFrame(FrameNode frame, @Nullable FrameNode nextFrame) {
+        if (frame.type == F_SAME || frame.type == F_SAME1 || frame.type == F_NEW) {
+            return true;
+        }
+        return nextFrame == null || nextFrame.type == F_FULL || nextFrame.type == F_NEW;
+    }
+
+    private static boolean[] reachable(MethodNode method, AbstractInsnNode[] nodes) {
+        InsnList instructions = method.instructions;
+        boolean[] reachable = new boolean[nodes.length];
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(0);
+        boolean foundHandler = true;
+        while (foundHandler) {
+            while (!pending.isEmpty()) {
+                for (int i = pending.pop(); i < nodes.length && !reachable[i]; i++) {
+                    reachable[i] = true;
+                    AbstractInsnNode node = nodes[i];
+                    if (node instanceof JumpInsnNode) {
+                        pending.push(instructions.indexOf(((JumpInsnNode) node).label));
+                        if (node.getOpcode() == GOTO) {
+                            break;
+                        }
+                    } else if (node instanceof TableSwitchInsnNode) {
+                        pending.push(instructions.indexOf(((TableSwitchInsnNode) node).dflt));
+                        ((TableSwitchInsnNode) node).labels.forEach(label -> pending.push(instructions.indexOf(label)));
+                        break;
+                    } else if (node instanceof LookupSwitchInsnNode) {
+                        pending.push(instructions.indexOf(((LookupSwitchInsnNode) node).dflt));
+                        ((LookupSwitchInsnNode) node).labels.forEach(label -> pending.push(instructions.indexOf(label)));
+                        break;
+                    } else if ((node.getOpcode() >= IRETURN && node.getOpcode() <= RETURN) || node.getOpcode() == ATHROW || node.getOpcode() == RET) {
+                        break;
+                    }
+                }
+            }
+            // a handler is reachable once any code it covers is
+            foundHandler = false;
+            for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+                int handler = instructions.indexOf(tryCatchBlock.handler);
+                if (!reachable[handler] && anyReachable(nodes, reachable, instructions.indexOf(tryCatchBlock.start), instructions.indexOf(tryCatchBlock.end))) {
+                    pending.push(handler);
+                    foundHandler = true;
+                }
+            }
+        }
+        return reachable;
+    }
+
+    private static boolean anyReachable(AbstractInsnNode[] nodes, boolean[] reachable, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (reachable[i] && nodes[i].getOpcode() >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The next actual instruction after the node, skipping labels, line numbers and frames
+     */
+    @Nullable private static AbstractInsnNode nextInstruction(AbstractInsnNode node) {
+        AbstractInsnNode next = node.getNext();
+        while (next != null && next.getOpcode() < 0) {
+            next = next.getNext();
+        }
+        return next;
+    }
+
+    /**
+     * @return The instruction right before this one, or null if control flow can also enter in between
+     */
+    @Nullable private static AbstractInsnNode previousInBlock(AbstractInsnNode node, Set<LabelNode> boundaries) {
+        for (AbstractInsnNode previous = node.getPrevious(); previous != null; previous = previous.getPrevious()) {
+            if (previous.getOpcode() >= 0) {
+                return previous;
+            }
+            if (previous instanceof FrameNode || boundaries.contains(previous)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The instruction right after this one, or null if control flow can also enter in between
+     */
+    @Nullable private static AbstractInsnNode nextInBlock(AbstractInsnNode node, Set<LabelNode> boundaries) {
+        for (AbstractInsnNode next = node.getNext(); next != null; next = next.getNext()) {
+            if (next.getOpcode() >= 0) {
+                return next;
+            }
+            if (next instanceof FrameNode || boundaries.contains(next)) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,232 @@
+package io.github.opencubicchunks.dasm.transformer;
+
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.util.ClassReaders;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Finds destination methods of redirects that are trivial enough to be copied into the call site instead of being called.
+ * <p/>
+ * A method is trivial if it's static, has no branches, exception handlers or local variables other than its parameters, and either loads all of its
+ * parameters once, in order, before anything else, or doesn't use them at all. This covers getters, setters, constant returns and forwarders.
+ * As the arguments are already on the stack at the call site, such a body can be copied without the loads and its return, without needing new locals.
+ * <p/>
+ * Everything the body refers to must be public, so it stays accessible from the class it is copied into. Classes with a static initializer are
+ * never inlined from, as the call is what would run it.
+ */
+public final class RedirectInliner {
+    private final ClassProvider classProvider;
+    private final int maxInstructions;
+    // owner.name + descriptor -> the body, or empty if the method can't be inlined
+    private final Map<String, Optional<Body>> bodies = new ConcurrentHashMap<>();
+    // internal name -> the class without code, or empty if it can't be loaded
+    private final Map<String, Optional<ClassNode>> classes = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxInstructions The maximum number of instructions of an inlined method, including its parameter loads and return
+     */
+    public RedirectInliner(ClassProvider classProvider, int maxInstructions) {
+        if (maxInstructions < 1) {
+            throw new IllegalArgumentException(String.format("Inlining needs a limit of at least 1 instruction, got %d", maxInstructions));
+        }
+        this.classProvider = classProvider;
+        this.maxInstructions = maxInstructions;
+    }
+
+    /**
+     * @param owner The internal name of the class declaring the method
+     * @return The body to inline in place of an {@code INVOKESTATIC} of the method, or null if it isn't trivial
+     */
+    @Nullable public Body find(String owner, String name, String descriptor) {
+        return this.bodies.computeIfAbsent(owner + '.' + name + descriptor, key -> Optional.ofNullable(analyze(owner, name, descriptor))).orElse(null);
+    }
+
+    @Nullable private Body analyze(String owner, String name, String descriptor) {
+        ClassNode ownerNode = new ClassNode(ASM9);
+        try {
+            ClassReaders.forClass(this.classProvider, owner.replace('/', '.')).accept(ownerNode, ClassReader.SKIP_FRAMES);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (ownerNode.methods.stream().anyMatch(m -> m.name.equals("<clinit>"))) {
+            return null;
+        }
+        MethodNode method = ownerNode.methods.stream().filter(m -> m.name.equals(name) && m.desc.equals(descriptor)).findAny().orElse(null);
+        if (method == null || (method.access & ACC_STATIC) == 0 || (method.access & (ACC_SYNCHRONIZED | ACC_NATIVE | ACC_ABSTRACT)) != 0
+                || (method.tryCatchBlocks != null && !method.tryCatchBlocks.isEmpty())) {
+            return null;
+        }
+
+        // labels, line numbers and frames don't matter for straight-line code
+        List<AbstractInsnNode> code = new ArrayList<>();
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (instruction.getOpcode() >= 0) {
+                code.add(instruction);
+            }
+        }
+        Type returnType = Type.getReturnType(descriptor);
+        if (code.isEmpty() || code.size() > this.maxInstructions || code.get(code.size() - 1).getOpcode() != returnType.getOpcode(IRETURN)) {
+            return null;
+        }
+
+        Type[] arguments = Type.getArgumentTypes(descriptor);
+        boolean loadsArguments = loadsArgumentsFirst(code, arguments);
+        List<AbstractInsnNode> body = code.subList(loadsArguments ? arguments.length : 0, code.size() - 1);
+        for (AbstractInsnNode instruction : body) {
+            if (!canInline(instruction)) {
+                return null;
+            }
+        }
+
+        int argumentSize = 0;
+        for (Type argument : arguments) {
+            argumentSize += argument.getSize();
+        }
+        // the arguments (or the result) already took up stack space at the call site
+        int extraStack = Math.max(0, method.maxStack - Math.max(argumentSize, returnType.getSize()));
+        return new Body(loadsArguments ? Collections.emptyList() : reversed(arguments), new ArrayList<>(body), extraStack);
+    }
+
+    private static boolean loadsArgumentsFirst(List<AbstractInsnNode> code, Type[] arguments) {
+        if (code.size() <= arguments.length) {
+            return false;
+        }
+        int slot = 0;
+        for (int i = 0; i < arguments.length; i++) {
+            AbstractInsnNode instruction = code.get(i);
+            if (instruction.getOpcode() != arguments[i].getOpcode(ILOAD) || ((VarInsnNode) instruction).var != slot) {
+                return false;
+            }
+            slot += arguments[i].getSize();
+        }
+        return true;
+    }
+
+    private boolean canInline(AbstractInsnNode instruction) {
+        switch (instruction.getType()) {
+            case AbstractInsnNode.INSN: {
+                int opcode = instruction.getOpcode();
+                return !(opcode >= IRETURN && opcode <= RETURN) && opcode != ATHROW && opcode != MONITORENTER && opcode != MONITOREXIT;
+            }
+            case AbstractInsnNode.INT_INSN:
+                return true;
+            case AbstractInsnNode.LDC_INSN: {
+                Object constant = ((LdcInsnNode) instruction).cst;
+                return !(constant instanceof Type || constant instanceof Handle || constant instanceof ConstantDynamic);
+            }
+            case AbstractInsnNode.TYPE_INSN:
+                return instruction.getOpcode() != NEW && isPublicClass(Type.getObjectType(((TypeInsnNode) instruction).desc));
+            case AbstractInsnNode.FIELD_INSN: {
+                FieldInsnNode fieldInsn = (FieldInsnNode) instruction;
+                return isPublicMember(fieldInsn.owner, fieldInsn.name, fieldInsn.desc, true);
+            }
+            case AbstractInsnNode.METHOD_INSN: {
+                MethodInsnNode methodInsn = (MethodInsnNode) instruction;
+                return methodInsn.getOpcode() != INVOKESPECIAL && isPublicMember(methodInsn.owner, methodInsn.name, methodInsn.desc, false);
+            }
+            default:
+                // any other local variable use, branches, invokedynamic
+                return false;
+        }
+    }
+
+    private boolean isPublicClass(Type type) {
+        if (type.getSort() == Type.ARRAY) {
+            type = type.getElementType();
+        }
+        if (type.getSort() != Type.OBJECT) {
+            return true;
+        }
+        ClassNode classNode = classWithoutCode(type.getInternalName());
+        return classNode != null && (classNode.access & ACC_PUBLIC) != 0;
+    }
+
+    /**
+     * Only members declared by the owner itself are found, inherited ones are treated as inaccessible
+     */
+    private boolean isPublicMember(String owner, String name, String descriptor, boolean field) {
+        if (owner.startsWith("[")) {
+            return false;
+        }
+        ClassNode classNode = classWithoutCode(owner);
+        if (classNode == null || (classNode.access & ACC_PUBLIC) == 0) {
+            return false;
+        }
+        if (field) {
+            return classNode.fields.stream().anyMatch(f -> f.name.equals(name) && f.desc.equals(descriptor) && (f.access & ACC_PUBLIC) != 0);
+        }
+        return classNode.methods.stream().anyMatch(m -> m.name.equals(name) && m.desc.equals(descriptor) && (m.access & ACC_PUBLIC) != 0);
+    }
+
+    @Nullable private ClassNode classWithoutCode(String internalName) {
+        return this.classes.computeIfAbsent(internalName, name -> {
+            try {
+                ClassNode classNode = new ClassNode(ASM9);
+                ClassReaders.forClass(this.classProvider, name.replace('/', '.')).accept(classNode,
+                        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                return Optional.of(classNode);
+            } catch (RuntimeException e) {
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    private static List<Type> reversed(Type[] types) {
+        List<Type> reversed = new ArrayList<>(types.length);
+        for (int i = types.length - 1; i >= 0; i--) {
+            reversed.add(types[i]);
+        }
+        return reversed;
+    }
+
+    /**
+     * A method body ready to be copied into a call site. Immutable, it can be copied into any number of methods concurrently.
+     */
+    public static final class Body {
+        private final List<Type> unusedArguments;
+        private final List<AbstractInsnNode> instructions;
+        private final int extraStack;
+
+        Body(List<Type> unusedArguments, List<AbstractInsnNode> instructions, int extraStack) {
+            this.unusedArguments = unusedArguments;
+            this.instructions = instructions;
+            this.extraStack = extraStack;
+        }
+
+        /**
+         * @return How much more stack the body needs at the call site than the call it replaces
+         */
+        public int extraStack() {
+            return extraStack;
+        }
+
+        /**
+         * Emits the body in place of the call, with the call's arguments on the stack
+         */
+        public void accept(MethodVisitor mv) {
+            // unused arguments are popped, last one first
+            for (Type argument : this.unusedArguments) {
+                mv.visitInsn(argument.getSize() == 2 ? POP2 : POP);
+            }
+            for (AbstractInsnNode instruction : this.instructions) {
+                instruction.accept(mv);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package io.github.opencubicchunks.dasm.transformer;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A conservative check for whether a set of redirects can affect a class or method at all.
+ * <p/>
+ * Redirects only ever match on class names: the source type of a type redirect, the owner of a field or method redirect, or a class in the package
+ * of a package redirect. If none of those names are mentioned by a class or method, remapping it is guaranteed to be a no-op.
+ * False positives are allowed, false negatives are not.
+ */
+public final class RedirectPrefilter {
+    public static final RedirectPrefilter NONE = new RedirectPrefilter(Collections.emptySet());
+
+    private static final int CONSTANT_UTF8_TAG = 1;
+
+    private final Set<String> names;
+    private final PackageRedirectTrie packages;
+
+    /**
+     * @param names The mapped internal names of all redirected types and redirect owners
+     */
+    public RedirectPrefilter(Set<String> names) {
+        this(names, PackageRedirectTrie.EMPTY);
+    }
+
+    /**
+     * @param names The mapped internal names of all redirected types and redirect owners
+     * @param packages The package redirects, any class in one of their packages may be affected
+     */
+    public RedirectPrefilter(Set<String> names, PackageRedirectTrie packages) {
+        this.names = names;
+        this.packages = packages;
+    }
+
+    /**
+     * Code copied from another class has references to its own class rewritten to the target class before redirects are applied, so redirects
+     * matching the target class match references to the source class as well.
+     *
+     * @param srcName The internal name of the class code is copied from
+     * @param targetName The internal name of the class code is copied into
+     * @return A prefilter for code copied from {@code srcName} into {@code targetName}
+     */
+    public RedirectPrefilter forCopy(String srcName, String targetName) {
+        if (srcName.equals(targetName) || this.names.contains(srcName)) {
+            return this;
+        }
+        if (!this.names.contains(targetName) && !this.packages.matches(targetName, 0, targetName.length())) {
+            return this;
+        }
+        Set<String> names = new HashSet<>(this.names);
+        names.add(srcName);
+        return new RedirectPrefilter(names, this.packages);
+    }
+
+    public boolean isEmpty() {
+        return this.names.isEmpty() && this.packages.isEmpty();
+    }
+
+    /**
+     * Scans every UTF8 entry in the class' constant pool. This covers all class names, descriptors and signatures the class uses.
+     */
+    public boolean mayAffect(ClassReader classReader) {
+        if (isEmpty()) {
+            return false;
+        }
+        char[] charBuffer = new char[classReader.getMaxStringLength()];
+        for (int i = 1, itemCount = classReader.getItemCount(); i < itemCount; i++) {
+            int offset = classReader.getItem(i);
+            // the second slot of long and double entries has no offset
+            if (offset == 0 || classReader.readByte(offset - 1) != CONSTANT_UTF8_TAG) {
+                continue;
+            }
+            if (mentionsName(readUtf8(classReader, offset, charBuffer))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean mayAffect(MethodNode method) {
+        if (isEmpty()) {
+            return false;
+        }
+        if (method.visibleTypeAnnotations != null || method.invisibleTypeAnnotations != null
+                || method.visibleParameterAnnotations != null || method.invisibleParameterAnnotations != null
+                || method.annotationDefault != null) {
+            return true; // rare, not worth scanning
+        }
+        if (mentionsName(method.desc) || mentionsAnyName(method.visibleAnnotations) || mentionsAnyName(method.invisibleAnnotations)) {
+            return true;
+        }
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (mentionsName(instruction)) {
+                return true;
+            }
+        }
+        if (method.tryCatchBlocks != null) {
+            for (TryCatchBlockNode tryCatchBlock : method.tryCatchBlocks) {
+                if (mentionsName(tryCatchBlock.type)) {
+                    return true;
+                }
+            }
+        }
+        if (method.localVariables != null) {
+            for (LocalVariableNode localVariable : method.localVariables) {
+                if (mentionsName(localVariable.desc) || mentionsName(localVariable.signature)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean mentionsName(AbstractInsnNode instruction) {
+        if (instruction.visibleTypeAnnotations != null || instruction.invisibleTypeAnnotations != null) {
+            return true;
+        }
+        switch (instruction.getType()) {
+            case AbstractInsnNode.FIELD_INSN: {
+                FieldInsnNode fieldInsn = (FieldInsnNode) instruction;
+                return mentionsName(fieldInsn.owner) || mentionsName(fieldInsn.desc);
+            }
+            case AbstractInsnNode.METHOD_INSN: {
+                MethodInsnNode methodInsn = (MethodInsnNode) instruction;
+                return mentionsName(methodInsn.owner) || mentionsName(methodInsn.desc);
+            }
+            case AbstractInsnNode.TYPE_INSN:
+                return mentionsName(((TypeInsnNode) instruction).desc);
+            case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                return mentionsName(((MultiANewArrayInsnNode) instruction).desc);
+            case AbstractInsnNode.LDC_INSN:
+                return mentionsConstant(((LdcInsnNode) instruction).cst);
+            case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+                InvokeDynamicInsnNode invokeDynamic = (InvokeDynamicInsnNode) instruction;
+                if (mentionsName(invokeDynamic.desc) || mentionsConstant(invokeDynamic.bsm)) {
+                    return true;
+                }
+                for (Object bsmArg : invokeDynamic.bsmArgs) {
+                    if (mentionsConstant(bsmArg)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            case AbstractInsnNode.FRAME: {
+                FrameNode frame = (FrameNode) instruction;
+                return mentionsAnyFrameType(frame.local) || mentionsAnyFrameType(frame.stack);
+            }
+            default:
+                return false;
+        }
+    }
+
+    private boolean mentionsConstant(Object constant) {
+        if (constant instanceof Type) {
+            return mentionsName(((Type) constant).getDescriptor());
+        }
+        if (constant instanceof Handle) {
+            Handle handle = (Handle) constant;
+            return mentionsName(handle.getOwner()) || mentionsName(handle.getDesc());
+        }
+        // condy can nest arbitrary constants, assume the worst
+        return constant instanceof ConstantDynamic;
+    }
+
+    private boolean mentionsAnyFrameType(List<Object> types) {
+        if (types == null) {
+            return false;
+        }
+        for (Object type : types) {
+            if (type instanceof String && mentionsName((String) type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean mentionsAnyName(List<AnnotationNode> annotations) {
+        if (annotations == null) {
+            return false;
+        }
+        for (AnnotationNode annotation : annotations) {
+            if (mentionsName(annotation.desc) || mentionsAnyAnnotationValue(annotation.values)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean mentionsAnyAnnotationValue(List<?> values) {
+        if (values == null) {
+            return false;
+        }
+        for (Object value : values) {
+            if (value instanceof Type && mentionsName(((Type) value).getDescriptor())) {
+                return true;
+            }
+            // enum values are stored as {descriptor, value}
+            if (value instanceof String[] && mentionsName(((String[]) value)[0])) {
+                return true;
+            }
+            if (value instanceof AnnotationNode && mentionsAnyName(Collections.singletonList((AnnotationNode) value))) {
+                return true;
+            }
+            if (value instanceof List && mentionsAnyAnnotationValue((List<?>) value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param value An internal name, descriptor or signature
+     */
+    private boolean mentionsName(String value) {
+        if (value == null) {
+            return false;
+        }
+        if (this.names.contains(value) || this.packages.matches(value, 0, value.length())) {
+            return true;
+        }
+        // inner classes of generic classes are written as Outer<..>.Inner in signatures, don't try to reconstruct their names
+        if (value.contains(">.")) {
+            return true;
+        }
+        for (int start = value.indexOf('L'); start >= 0; start = value.indexOf('L', start + 1)) {
+            int end = start + 1;
+            while (end < value.length() && value.charAt(end) != ';' && value.charAt(end) != '<') {
+                end++;
+            }
+            if (end < value.length() && (this.names.contains(value.substring(start + 1, end)) || this.packages.matches(value, start + 1, end))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the modified UTF-8 of the CONSTANT_Utf8 entry starting at the given offset.
+     * {@link ClassReader} only exposes this for indices stored in the class file, not for the entries themselves.
+     */
+    private static String readUtf8(ClassReader classReader, int offset, char[] charBuffer) {
+        int length = classReader.readUnsignedShort(offset);
+        int currentOffset = offset + 2;
+        int endOffset = currentOffset + length;
+        int strLength = 0;
+        while (currentOffset < endOffset) {
+            int currentByte = classReader.readByte(currentOffset++);
+            if ((currentByte & 0x80) == 0) {
+                charBuffer[strLength++] = (char) (currentByte & 0x7F);
+            } else if ((currentByte & 0xE0) == 0xC0) {
+                charBuffer[strLength++] = (char) (((currentByte & 0x1F) << 6) + (classReader.readByte(currentOffset++) & 0x3F));
+            } else {
+                charBuffer[strLength++] = (char) (((currentByte & 0xF) << 12)
+                        + ((classReader.readByte(currentOffset++) & 0x3F) << 6)
+                        + (classReader.readByte(currentOffset++) & 0x3F));
+            }
+        }
+        return new String(charBuffer, 0, strLength);
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.opencubicchunks.dasm.transformer.redirect;
+
+import java.util.Objects;
+
+public final class PackageRedirect {
+
+    private final String srcPackageName;
+    private final String dstPackageName;
+
+    public PackageRedirect(String srcPackageName, String dstPackageName) {
+        this.srcPackageName = srcPackageName;
+        this.dstPackageName = dstPackageName;
+    }
+
+    public String srcPackageName() {
+        return srcPackageName;
+    }
+
+    public String dstPackageName() {
+        return dstPackageName;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        PackageRedirect that = (PackageRedirect) obj;
+        return Objects.equals(this.srcPackageName, that.srcPackageName) &&
+                Objects.equals(this.dstPackageName, that.dstPackageName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(srcPackageName, dstPackageName);
+    }
+
+    @Override
+    public String toString() {
+        return "PackageRedirect[" +
+                "srcPackageName=" + srcPackageName + ", " +
+                "dstPackageName=" + dstPackageName + ']';
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.opencubicchunks.dasm.transformer.redirect;
+
+import org.objectweb.asm.Type;
+
+import java.util.Objects;
+
+public final class PackedTypeRedirect {
+
+    private final String srcClassName;
+    private final Type packedType;
+    private final String packerClassName;
+
+    /**
+     * @param packedType {@link Type#LONG_TYPE} or {@link Type#INT_TYPE}
+     */
+    public PackedTypeRedirect(String srcClassName, Type packedType, String packerClassName) {
+        if (packedType.getSort() != Type.LONG && packedType.getSort() != Type.INT) {
+            throw new IllegalArgumentException(String.format("%s can only be packed into a long or int, not %s", srcClassName, packedType.getClassName()));
+        }
+        this.srcClassName = srcClassName;
+        this.packedType = packedType;
+        this.packerClassName = packerClassName;
+    }
+
+    public String srcClassName() {
+        return srcClassName;
+    }
+
+    public Type packedType() {
+        return packedType;
+    }
+
+    public String packerClassName() {
+        return packerClassName;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != this.getClass()) {
+            return false;
+        }
+        PackedTypeRedirect that = (PackedTypeRedirect) obj;
+        return Objects.equals(this.srcClassName, that.srcClassName) &&
+                Objects.equals(this.packedType, that.packedType) &&
+                Objects.equals(this.packerClassName, that.packerClassName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(srcClassName, packedType, packerClassName);
+    }
+
+    @Override
+    public String toString() {
+        return "PackedTypeRedirect[" +
+                "srcClassName=" + srcClassName + ", " +
+                "packedType=" + packedType + ", " +
+                "packerClassName=" + packerClassName + ']';
+    }
+}
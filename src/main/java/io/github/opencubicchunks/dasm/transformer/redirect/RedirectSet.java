@@ -1,29 +1,81 @@
 package io.github.opencubicchunks.dasm.transformer.redirect;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import io.github.opencubicchunks.dasm.transformer.ClassField;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
 import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
 
 import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
 
+import javax.annotation.Nullable;
+
+/**
+ * A named set of redirects.
+ * <p/>
+ * Redirects are stored in columns of ids into a per-set string table, not as objects, as generated sets can contain many thousands of them.
+ * The {@code forEach*} and {@code find*} methods read the columns directly. The {@code get*Redirects} sets are views which create a redirect object
+ * for each entry as it's accessed.
+ */
 public class RedirectSet {
+    private static final int NULL_ID = -1;
+    // the same owners, names and descriptors show up in many sets
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private static final int TYPE_SRC = 0, TYPE_DST = 1;
+
+    private static final int PACKAGE_SRC = 0, PACKAGE_DST = 1;
+
+    private static final int PACKED_SRC = 0, PACKED_TYPE = 1, PACKED_PACKER = 2;
+
+    private static final int FIELD_OWNER = 0, FIELD_NAME = 1, FIELD_DESC = 2, FIELD_NEW_OWNER = 3, FIELD_DST_NAME = 4;
+
+    private static final int METHOD_OWNER = 0, METHOD_NAME = 1, METHOD_DESC = 2, METHOD_MAPPING_OWNER = 3, METHOD_NEW_OWNER = 4, METHOD_DST_NAME = 5,
+            METHOD_DST_INTERFACE = 6;
+
     private final String name;
-    private final Set<TypeRedirect> typeRedirects = new LinkedHashSet<>();
-    private final Set<FieldRedirect> fieldRedirects = new LinkedHashSet<>();
-    private final Set<MethodRedirect> methodRedirects = new LinkedHashSet<>();
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    // keyed on the source class name
+    private final RedirectTable typeRedirects = new RedirectTable(2, 1);
+    // keyed on the source package name
+    private final RedirectTable packageRedirects = new RedirectTable(2, 1);
+    // keyed on the source class name
+    private final RedirectTable packedTypeRedirects = new RedirectTable(3, 1);
+    // keyed on the owner, name and descriptor of the source field
+    private final RedirectTable fieldRedirects = new RedirectTable(5, 3);
+    // keyed on the owner, name and descriptor of the source method
+    private final RedirectTable methodRedirects = new RedirectTable(7, 3);
 
     public RedirectSet(String name) {
         this.name = name;
     }
 
     public void addRedirect(TypeRedirect redirect) {
-        this.typeRedirects.add(redirect);
+        this.typeRedirects.add(typeRow(redirect, this::id));
+    }
+
+    public void addRedirect(PackageRedirect redirect) {
+        this.packageRedirects.add(packageRow(redirect, this::id));
+    }
+
+    public void addRedirect(PackedTypeRedirect redirect) {
+        this.packedTypeRedirects.add(packedTypeRow(redirect, this::id));
     }
 
     public void addRedirect(FieldRedirect redirect) {
-        this.fieldRedirects.add(redirect);
+        this.fieldRedirects.add(fieldRow(redirect, this::id));
     }
 
     public void addRedirect(MethodRedirect redirect) {
-        this.methodRedirects.add(redirect);
+        this.methodRedirects.add(methodRow(redirect, this::id));
     }
 
     public String getName() {
@@ -32,33 +84,260 @@ public class RedirectSet {
 
     @NotNull
     public Set<TypeRedirect> getTypeRedirects() {
-        return Collections.unmodifiableSet(this.typeRedirects);
+        return new TableView<>(this.typeRedirects, this::typeRedirectAt, TypeRedirect.class,
+                redirect -> this.typeRedirects.contains(typeRow(redirect, this::existingId)));
+    }
+
+    @NotNull public Set<PackageRedirect> getPackageRedirects() {
+        return new TableView<>(this.packageRedirects, this::packageRedirectAt, PackageRedirect.class,
+                redirect -> this.packageRedirects.contains(packageRow(redirect, this::existingId)));
+    }
+
+    @NotNull public Set<PackedTypeRedirect> getPackedTypeRedirects() {
+        return new TableView<>(this.packedTypeRedirects, this::packedTypeRedirectAt, PackedTypeRedirect.class,
+                redirect -> this.packedTypeRedirects.contains(packedTypeRow(redirect, this::existingId)));
     }
 
     @NotNull public Set<FieldRedirect> getFieldRedirects() {
-        return Collections.unmodifiableSet(this.fieldRedirects);
+        return new TableView<>(this.fieldRedirects, this::fieldRedirectAt, FieldRedirect.class,
+                redirect -> this.fieldRedirects.contains(fieldRow(redirect, this::existingId)));
     }
 
     @NotNull public Set<MethodRedirect> getMethodRedirects() {
-        return Collections.unmodifiableSet(methodRedirects);
+        return new TableView<>(this.methodRedirects, this::methodRedirectAt, MethodRedirect.class,
+                redirect -> this.methodRedirects.contains(methodRow(redirect, this::existingId)));
+    }
+
+    public int typeRedirectCount() {
+        return this.typeRedirects.size();
+    }
+
+    public int packageRedirectCount() {
+        return this.packageRedirects.size();
+    }
+
+    public int packedTypeRedirectCount() {
+        return this.packedTypeRedirects.size();
+    }
+
+    public int fieldRedirectCount() {
+        return this.fieldRedirects.size();
+    }
+
+    public int methodRedirectCount() {
+        return this.methodRedirects.size();
+    }
+
+    public void forEachTypeRedirect(TypeRedirectConsumer consumer) {
+        for (int row = 0, size = this.typeRedirects.size(); row < size; row++) {
+            consumer.accept(string(this.typeRedirects.get(row, TYPE_SRC)), string(this.typeRedirects.get(row, TYPE_DST)));
+        }
+    }
+
+    public void forEachPackageRedirect(PackageRedirectConsumer consumer) {
+        for (int row = 0, size = this.packageRedirects.size(); row < size; row++) {
+            consumer.accept(string(this.packageRedirects.get(row, PACKAGE_SRC)), string(this.packageRedirects.get(row, PACKAGE_DST)));
+        }
+    }
+
+    public void forEachPackedTypeRedirect(PackedTypeRedirectConsumer consumer) {
+        RedirectTable table = this.packedTypeRedirects;
+        for (int row = 0, size = table.size(); row < size; row++) {
+            consumer.accept(string(table.get(row, PACKED_SRC)), type(table.get(row, PACKED_TYPE)), string(table.get(row, PACKED_PACKER)));
+        }
+    }
+
+    public void forEachFieldRedirect(FieldRedirectConsumer consumer) {
+        RedirectTable table = this.fieldRedirects;
+        for (int row = 0, size = table.size(); row < size; row++) {
+            consumer.accept(string(table.get(row, FIELD_OWNER)), string(table.get(row, FIELD_NAME)), string(table.get(row, FIELD_DESC)),
+                    string(table.get(row, FIELD_NEW_OWNER)), string(table.get(row, FIELD_DST_NAME)));
+        }
+    }
+
+    public void forEachMethodRedirect(MethodRedirectConsumer consumer) {
+        RedirectTable table = this.methodRedirects;
+        for (int row = 0, size = table.size(); row < size; row++) {
+            consumer.accept(string(table.get(row, METHOD_OWNER)), string(table.get(row, METHOD_NAME)), string(table.get(row, METHOD_DESC)),
+                    string(table.get(row, METHOD_MAPPING_OWNER)), string(table.get(row, METHOD_NEW_OWNER)), string(table.get(row, METHOD_DST_NAME)),
+                    table.get(row, METHOD_DST_INTERFACE) != 0);
+        }
+    }
+
+    /**
+     * @param srcClassName The fully qualified name of the redirected class eg: <code>java.lang.String</code>
+     * @return The class name it is redirected to, or null if there is no such type redirect
+     */
+    @Nullable public String findTypeRedirect(String srcClassName) {
+        int row = this.typeRedirects.findLast(existingId(srcClassName));
+        return row < 0 ? null : string(this.typeRedirects.get(row, TYPE_DST));
+    }
+
+    /**
+     * @param srcPackageName The fully qualified name of the redirected package eg: <code>com.example.lib</code>
+     * @return The package it is redirected to, or null if there is no such package redirect. Redirects of parent packages aren't considered
+     */
+    @Nullable public String findPackageRedirect(String srcPackageName) {
+        int row = this.packageRedirects.findLast(existingId(srcPackageName));
+        return row < 0 ? null : string(this.packageRedirects.get(row, PACKAGE_DST));
+    }
+
+    /**
+     * @param ownerDescriptor The descriptor of the field's owner
+     * @return The most recently added redirect of the field, or null if there is none
+     */
+    @Nullable public FieldRedirect findFieldRedirect(String ownerDescriptor, String name, String descriptor) {
+        int row = this.fieldRedirects.findLast(existingId(ownerDescriptor), existingId(name), existingId(descriptor));
+        return row < 0 ? null : fieldRedirectAt(row);
+    }
+
+    /**
+     * @param ownerDescriptor The descriptor of the method's owner
+     * @return The most recently added redirect of the method, with any mapping owner, or null if there is none
+     */
+    @Nullable public MethodRedirect findMethodRedirect(String ownerDescriptor, String name, String descriptor) {
+        int row = this.methodRedirects.findLast(existingId(ownerDescriptor), existingId(name), existingId(descriptor));
+        return row < 0 ? null : methodRedirectAt(row);
+    }
+
+    /**
+     * @return The approximate number of bytes retained by the redirects of this set. Strings are counted fully, even though they may be shared with other sets
+     */
+    public long retainedBytes() {
+        // a list slot and an id map entry per string, plus the string itself
+        long stringTableBytes = 0;
+        for (String string : this.strings) {
+            stringTableBytes += 4 + 48 + 40 + 2L * string.length();
+        }
+        return stringTableBytes + this.typeRedirects.retainedBytes() + this.packageRedirects.retainedBytes() + this.packedTypeRedirects.retainedBytes()
+                + this.fieldRedirects.retainedBytes() + this.methodRedirects.retainedBytes();
     }
 
     public void mergeIfNotPresent(RedirectSet other) {
-        other.typeRedirects.forEach(typeRedirect -> {
-            if (!this.typeRedirects.contains(typeRedirect)) {
-                this.typeRedirects.add(typeRedirect);
-            }
-        });
-        other.fieldRedirects.forEach(typeRedirect -> {
-            if (!this.fieldRedirects.contains(typeRedirect)) {
-                this.fieldRedirects.add(typeRedirect);
-            }
-        });
-        other.methodRedirects.forEach(typeRedirect -> {
-            if (!this.methodRedirects.contains(typeRedirect)) {
-                this.methodRedirects.add(typeRedirect);
+        // translate the other set's string ids into this set's
+        IntUnaryOperator translate = otherId -> otherId == NULL_ID ? NULL_ID : id(other.strings.get(otherId));
+        mergeTable(other.typeRedirects, this.typeRedirects, translate, -1);
+        mergeTable(other.packageRedirects, this.packageRedirects, translate, -1);
+        mergeTable(other.packedTypeRedirects, this.packedTypeRedirects, translate, -1);
+        mergeTable(other.fieldRedirects, this.fieldRedirects, translate, -1);
+        mergeTable(other.methodRedirects, this.methodRedirects, translate, METHOD_DST_INTERFACE);
+    }
+
+    private static void mergeTable(RedirectTable from, RedirectTable to, IntUnaryOperator translate, int flagColumn) {
+        int columnCount = from.columnCount();
+        for (int row = 0, size = from.size(); row < size; row++) {
+            int[] values = new int[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                int value = from.get(row, column);
+                values[column] = column == flagColumn ? value : translate.applyAsInt(value);
             }
-        });
+            to.add(values);
+        }
+    }
+
+    private TypeRedirect typeRedirectAt(int row) {
+        return new TypeRedirect(string(this.typeRedirects.get(row, TYPE_SRC)), string(this.typeRedirects.get(row, TYPE_DST)));
+    }
+
+    private PackageRedirect packageRedirectAt(int row) {
+        return new PackageRedirect(string(this.packageRedirects.get(row, PACKAGE_SRC)), string(this.packageRedirects.get(row, PACKAGE_DST)));
+    }
+
+    private PackedTypeRedirect packedTypeRedirectAt(int row) {
+        RedirectTable table = this.packedTypeRedirects;
+        return new PackedTypeRedirect(string(table.get(row, PACKED_SRC)), type(table.get(row, PACKED_TYPE)), string(table.get(row, PACKED_PACKER)));
+    }
+
+    private FieldRedirect fieldRedirectAt(int row) {
+        RedirectTable table = this.fieldRedirects;
+        return new FieldRedirect(
+                new ClassField(type(table.get(row, FIELD_OWNER)), string(table.get(row, FIELD_NAME)), type(table.get(row, FIELD_DESC))),
+                type(table.get(row, FIELD_NEW_OWNER)),
+                string(table.get(row, FIELD_DST_NAME))
+        );
+    }
+
+    private MethodRedirect methodRedirectAt(int row) {
+        RedirectTable table = this.methodRedirects;
+        return new MethodRedirect(
+                new ClassMethod(
+                        type(table.get(row, METHOD_OWNER)),
+                        new Method(string(table.get(row, METHOD_NAME)), string(table.get(row, METHOD_DESC))),
+                        type(table.get(row, METHOD_MAPPING_OWNER))
+                ),
+                type(table.get(row, METHOD_NEW_OWNER)),
+                string(table.get(row, METHOD_DST_NAME)),
+                table.get(row, METHOD_DST_INTERFACE) != 0
+        );
+    }
+
+    private static int[] typeRow(TypeRedirect redirect, StringIds ids) {
+        return new int[] { ids.of(redirect.srcClassName()), ids.of(redirect.dstClassName()) };
+    }
+
+    private static int[] packageRow(PackageRedirect redirect, StringIds ids) {
+        return new int[] { ids.of(redirect.srcPackageName()), ids.of(redirect.dstPackageName()) };
+    }
+
+    private static int[] packedTypeRow(PackedTypeRedirect redirect, StringIds ids) {
+        return new int[] { ids.of(redirect.srcClassName()), ids.of(redirect.packedType().getDescriptor()), ids.of(redirect.packerClassName()) };
+    }
+
+    private static int[] fieldRow(FieldRedirect redirect, StringIds ids) {
+        ClassField field = redirect.field();
+        return new int[] {
+                ids.of(field.owner.getDescriptor()), ids.of(field.name), ids.of(field.desc.getDescriptor()),
+                ids.of(descriptorOrNull(redirect.newOwner())), ids.of(redirect.dstFieldName())
+        };
+    }
+
+    private static int[] methodRow(MethodRedirect redirect, StringIds ids) {
+        ClassMethod method = redirect.method();
+        return new int[] {
+                ids.of(method.owner.getDescriptor()), ids.of(method.method.getName()), ids.of(method.method.getDescriptor()),
+                ids.of(method.mappingOwner.getDescriptor()), ids.of(descriptorOrNull(redirect.newOwner())), ids.of(redirect.dstMethodName()),
+                redirect.isDstInterface() ? 1 : 0
+        };
+    }
+
+    @Nullable private static String descriptorOrNull(@Nullable Type type) {
+        return type == null ? null : type.getDescriptor();
+    }
+
+    /**
+     * @return The id of the string, adding it to the string table if it isn't present yet
+     */
+    private int id(@Nullable String string) {
+        if (string == null) {
+            return NULL_ID;
+        }
+        Integer id = this.stringIds.get(string);
+        if (id == null) {
+            id = this.strings.size();
+            string = STRINGS.intern(string);
+            this.strings.add(string);
+            this.stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return The id of the string, or {@link Integer#MIN_VALUE} (which no row contains) if it isn't in the string table
+     */
+    private int existingId(@Nullable String string) {
+        if (string == null) {
+            return NULL_ID;
+        }
+        Integer id = this.stringIds.get(string);
+        return id == null ? Integer.MIN_VALUE : id;
+    }
+
+    @Nullable private String string(int id) {
+        return id == NULL_ID ? null : this.strings.get(id);
+    }
+
+    @Nullable private Type type(int id) {
+        return id == NULL_ID ? null : Type.getType(this.strings.get(id));
     }
 
     @Override
@@ -73,4 +352,77 @@ public class RedirectSet {
     public int hashCode() {
         return name.hashCode();
     }
+
+    @FunctionalInterface
+    private interface StringIds {
+        int of(@Nullable String string);
+    }
+
+    @FunctionalInterface
+    public interface TypeRedirectConsumer {
+        void accept(String srcClassName, String dstClassName);
+    }
+
+    @FunctionalInterface
+    public interface PackageRedirectConsumer {
+        void accept(String srcPackageName, String dstPackageName);
+    }
+
+    @FunctionalInterface
+    public interface PackedTypeRedirectConsumer {
+        void accept(String srcClassName, Type packedType, String packerClassName);
+    }
+
+    @FunctionalInterface
+    public interface FieldRedirectConsumer {
+        void accept(String ownerDescriptor, String name, String descriptor, @Nullable String newOwnerDescriptor, String dstFieldName);
+    }
+
+    @FunctionalInterface
+    public interface MethodRedirectConsumer {
+        void accept(String ownerDescriptor, String name, String descriptor, String mappingOwnerDescriptor, @Nullable String newOwnerDescriptor,
+                    String dstMethodName, boolean isDstInterface);
+    }
+
+    /**
+     * An unmodifiable set view of a table, creating an object per row as it's iterated
+     */
+    private static final class TableView<T> extends AbstractSet<T> {
+        private final RedirectTable table;
+        private final IntFunction<T> rowToObject;
+        private final Class<T> type;
+        private final Predicate<T> contains;
+
+        TableView(RedirectTable table, IntFunction<T> rowToObject, Class<T> type, Predicate<T> contains) {
+            this.table = table;
+            this.rowToObject = rowToObject;
+            this.type = type;
+            this.contains = contains;
+        }
+
+        @Override public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int row = 0;
+
+                @Override public boolean hasNext() {
+                    return this.row < table.size();
+                }
+
+                @Override public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return rowToObject.apply(this.row++);
+                }
+            };
+        }
+
+        @Override public int size() {
+            return this.table.size();
+        }
+
+        @Override public boolean contains(Object o) {
+            return this.type.isInstance(o) && this.contains.test(this.type.cast(o));
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package io.github.opencubicchunks.dasm.transformer.redirect;
+
+import java.util.Arrays;
+
+/**
+ * Rows of int columns in insertion order, without duplicate rows. Rows are hashed on their first {@code keyColumns} columns,
+ * so rows can be looked up by key without allocating.
+ */
+final class RedirectTable {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final int columnCount;
+    private final int keyColumns;
+    // row-major: the columns of row i are at [i * columnCount, (i + 1) * columnCount)
+    private int[] values;
+    private int size;
+
+    // hash index over the key columns. buckets hold the newest row with that hash + 1, chained to older ones through next
+    private int[] buckets = new int[INITIAL_CAPACITY * 2];
+    private int[] next = new int[INITIAL_CAPACITY];
+
+    RedirectTable(int columnCount, int keyColumns) {
+        this.columnCount = columnCount;
+        this.keyColumns = keyColumns;
+        this.values = new int[INITIAL_CAPACITY * columnCount];
+    }
+
+    int columnCount() {
+        return this.columnCount;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int get(int row, int column) {
+        return this.values[row * this.columnCount + column];
+    }
+
+    boolean contains(int... row) {
+        int hash = hashKey(row, 0);
+        for (int existing = this.buckets[hash & (this.buckets.length - 1)] - 1; existing >= 0; existing = this.next[existing]) {
+            if (rowEquals(existing, row, this.columnCount)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false if an equal row is already present
+     */
+    boolean add(int... row) {
+        if (contains(row)) {
+            return false;
+        }
+        int hash = hashKey(row, 0);
+        if (this.size == this.next.length) {
+            grow();
+        }
+        System.arraycopy(row, 0, this.values, this.size * this.columnCount, this.columnCount);
+        link(this.size, hash);
+        this.size++;
+        return true;
+    }
+
+    /**
+     * @return The most recently added row with the given key columns, or -1
+     */
+    int findLast(int... key) {
+        int hash = hashKey(key, 0);
+        for (int existing = this.buckets[hash & (this.buckets.length - 1)] - 1; existing >= 0; existing = this.next[existing]) {
+            if (rowEquals(existing, key, this.keyColumns)) {
+                return existing;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of bytes held by the arrays of this table
+     */
+    long retainedBytes() {
+        return 4L * (this.values.length + this.buckets.length + this.next.length);
+    }
+
+    private boolean rowEquals(int row, int[] other, int columns) {
+        int offset = row * this.columnCount;
+        for (int column = 0; column < columns; column++) {
+            if (this.values[offset + column] != other[column]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hashKey(int[] source, int offset) {
+        int hash = 1;
+        for (int column = 0; column < this.keyColumns; column++) {
+            hash = 31 * hash + source[offset + column];
+        }
+        // spread the bits, ids are small consecutive ints
+        return hash ^ (hash >>> 16) ^ (hash * 0x9E3779B9 >>> 16);
+    }
+
+    private void link(int row, int hash) {
+        int bucket = hash & (this.buckets.length - 1);
+        this.next[row] = this.buckets[bucket] - 1;
+        this.buckets[bucket] = row + 1;
+    }
+
+    private void grow() {
+        int capacity = this.next.length * 2;
+        this.values = Arrays.copyOf(this.values, capacity * this.columnCount);
+        this.next = new int[capacity];
+        this.buckets = new int[capacity * 2];
+        // relink in insertion order, so that each chain stays ordered newest first
+        for (int row = 0; row < this.size; row++) {
+            link(row, hashKey(this.values, row * this.columnCount));
+        }
+    }
+}
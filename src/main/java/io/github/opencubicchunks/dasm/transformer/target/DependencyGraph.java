@@ -0,0 +1,184 @@
+package io.github.opencubicchunks.dasm.transformer.target;
+
+import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+
+import java.util.*;
+
+import javax.annotation.Nullable;
+
+/**
+ * Records which inputs each {@link TargetClass} and {@link TargetMethod} was built from, so that after an input changes only the affected targets
+ * have to be transformed again. eg: after editing a redirect set
+ * <pre>{@code
+ * Map<String, Set<Method>> affected = graph.affectedTargets(DependencyGraph.Kind.REDIRECT_SET, setClassName);
+ * annotationParser.invalidateRedirectSet(setClassName);
+ * for (String targetClassName : affected.keySet()) {
+ *     graph.remove(targetClassName);
+ *     annotationParser.removeContributions(targetClassName);
+ *     // rebuild and transform the target class again, then record it
+ * }
+ * }</pre>
+ */
+public final class DependencyGraph {
+    private final Map<Kind, Map<String, Dependents>> dependents = new EnumMap<>(Kind.class);
+
+    public DependencyGraph() {
+        for (Kind kind : Kind.values()) {
+            this.dependents.put(kind, new HashMap<>());
+        }
+    }
+
+    /**
+     * Records the inputs of a target class. Records of the same class for different stages are combined.
+     */
+    public synchronized void record(TargetClass target) {
+        String targetClassName = target.getClassName();
+        recordRedirectSets(targetClassName, null, target.redirectSets());
+        if (target.wholeClass() != null) {
+            add(Kind.SOURCE_CLASS, target.wholeClass().getClassName(), targetClassName, null);
+        }
+        for (TargetMethod targetMethod : target.targetMethods()) {
+            Method method = targetMethod.method().method;
+            recordRedirectSets(targetClassName, method, targetMethod.redirectSets());
+            // the method to transform is looked up by its mapped name and descriptor
+            Set<String> mappedClasses = new HashSet<>();
+            mappedClasses.add(targetMethod.method().owner.getClassName());
+            mappedClasses.add(targetMethod.method().mappingOwner.getClassName());
+            addDescriptorClasses(method.getDescriptor(), mappedClasses);
+            for (String mappedClass : mappedClasses) {
+                add(Kind.MAPPINGS, mappedClass, targetClassName, method);
+            }
+            if (!targetMethod.srcOwner().equals(targetMethod.method().owner)) {
+                add(Kind.SOURCE_CLASS, targetMethod.srcOwner().getClassName(), targetClassName, method);
+            }
+        }
+    }
+
+    /**
+     * Records the redirect sets a target class adds redirects to. The class has to be built again whenever such a set changes, as the redirects it adds
+     * may change with it, see {@link io.github.opencubicchunks.dasm.AnnotationParser#removeContributions}.
+     */
+    public synchronized void recordContributions(String targetClassName, TargetAnnotations annotations) {
+        for (TargetAnnotations.FieldToSets fieldToSets : annotations.fieldsToSets()) {
+            fieldToSets.sets().forEach(set -> add(Kind.REDIRECT_SET, set.getClassName(), targetClassName, null));
+        }
+        for (TargetAnnotations.MethodToSets methodToSets : annotations.methodsToSets()) {
+            methodToSets.sets().forEach(set -> add(Kind.REDIRECT_SET, set.getClassName(), targetClassName, null));
+        }
+        for (TransformFrom.ApplicationStage stage : TransformFrom.ApplicationStage.values()) {
+            for (TargetAnnotations.MethodTransform methodTransform : annotations.methodTransforms(stage)) {
+                methodTransform.addToRedirectSets().forEach(set -> add(Kind.REDIRECT_SET, set.getClassName(), targetClassName, null));
+            }
+        }
+    }
+
+    /**
+     * Forgets everything recorded for the target class
+     */
+    public synchronized void remove(String targetClassName) {
+        for (Map<String, Dependents> byInput : this.dependents.values()) {
+            byInput.values().removeIf(dependents -> dependents.remove(targetClassName));
+        }
+    }
+
+    /**
+     * @param kind The kind of input that changed
+     * @param name The fully qualified name of the redirect set or class that changed eg: <code>java.lang.String</code>
+     * @return The affected target classes, each with its affected target methods. An empty set of methods means the whole class is affected.
+     */
+    public synchronized Map<String, Set<Method>> affectedTargets(Kind kind, String name) {
+        Dependents dependents = this.dependents.get(kind).get(name);
+        if (dependents == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Set<Method>> affected = new HashMap<>();
+        for (String targetClassName : dependents.wholeClasses) {
+            affected.put(targetClassName, Collections.emptySet());
+        }
+        dependents.methods.forEach((targetClassName, methods) -> {
+            if (!dependents.wholeClasses.contains(targetClassName)) {
+                affected.put(targetClassName, Collections.unmodifiableSet(new HashSet<>(methods)));
+            }
+        });
+        return affected;
+    }
+
+    private void recordRedirectSets(String targetClassName, @Nullable Method method, List<RedirectSet> redirectSets) {
+        for (RedirectSet redirectSet : redirectSets) {
+            add(Kind.REDIRECT_SET, redirectSet.getName(), targetClassName, method);
+            for (String mappedClass : mappedClasses(redirectSet)) {
+                add(Kind.MAPPINGS, mappedClass, targetClassName, method);
+            }
+        }
+    }
+
+    /**
+     * @return Every class the transformer looks up in the mappings when applying the set: those named by its redirects, and those in their descriptors
+     */
+    private static Set<String> mappedClasses(RedirectSet redirectSet) {
+        Set<String> classes = new HashSet<>();
+        redirectSet.forEachTypeRedirect((srcClassName, dstClassName) -> {
+            classes.add(srcClassName);
+            classes.add(dstClassName);
+        });
+        redirectSet.forEachFieldRedirect((ownerDescriptor, name, descriptor, newOwnerDescriptor, dstFieldName) -> {
+            addDescriptorClasses(ownerDescriptor, classes);
+            addDescriptorClasses(descriptor, classes);
+        });
+        redirectSet.forEachMethodRedirect((ownerDescriptor, name, descriptor, mappingOwnerDescriptor, newOwnerDescriptor, dstMethodName, isDstInterface) -> {
+            addDescriptorClasses(ownerDescriptor, classes);
+            addDescriptorClasses(descriptor, classes);
+            addDescriptorClasses(mappingOwnerDescriptor, classes);
+        });
+        return classes;
+    }
+
+    private static void addDescriptorClasses(String descriptor, Set<String> classes) {
+        for (int start = descriptor.indexOf('L'); start >= 0; start = descriptor.indexOf('L', start)) {
+            int end = descriptor.indexOf(';', start);
+            classes.add(Type.getObjectType(descriptor.substring(start + 1, end)).getClassName());
+            start = end;
+        }
+    }
+
+    private void add(Kind kind, String name, String targetClassName, @Nullable Method method) {
+        Dependents dependents = this.dependents.get(kind).computeIfAbsent(name, n -> new Dependents());
+        if (method == null) {
+            dependents.wholeClasses.add(targetClassName);
+        } else {
+            dependents.methods.computeIfAbsent(targetClassName, c -> new HashSet<>()).add(method);
+        }
+    }
+
+    public enum Kind {
+        /**
+         * A redirect set, by the name of its class. Inherited sets are recorded as well
+         */
+        REDIRECT_SET,
+        /**
+         * A class methods are copied from, or a whole class is transformed from
+         */
+        SOURCE_CLASS,
+        /**
+         * The mappings of a class: its name, or the names of its members
+         */
+        MAPPINGS
+    }
+
+    private static final class Dependents {
+        final Set<String> wholeClasses = new HashSet<>();
+        final Map<String, Set<Method>> methods = new HashMap<>();
+
+        /**
+         * @return Whether nothing depends on the input anymore
+         */
+        boolean remove(String targetClassName) {
+            this.wholeClasses.remove(targetClassName);
+            this.methods.remove(targetClassName);
+            return this.wholeClasses.isEmpty() && this.methods.isEmpty();
+        }
+    }
+}
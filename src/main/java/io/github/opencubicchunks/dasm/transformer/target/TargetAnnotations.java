@@ -0,0 +1,201 @@
+package io.github.opencubicchunks.dasm.transformer.target;
+
+import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+
+import java.util.*;
+
+import javax.annotation.Nullable;
+
+/**
+ * The decoded dasm annotations of one class, independent of {@link TransformFrom.ApplicationStage}.
+ * Built once per class, and then used to build a {@link TargetClass} for each stage.
+ */
+public final class TargetAnnotations {
+    private final boolean isInterface;
+    private final Map<TransformFrom.ApplicationStage, List<Type>> wholeClassSources;
+    private final List<FieldToSets> fieldsToSets;
+    private final List<MethodToSets> methodsToSets;
+    private final Map<TransformFrom.ApplicationStage, List<MethodTransform>> methodTransforms;
+
+    public TargetAnnotations(boolean isInterface, Map<TransformFrom.ApplicationStage, List<Type>> wholeClassSources, List<FieldToSets> fieldsToSets,
+                             List<MethodToSets> methodsToSets, Map<TransformFrom.ApplicationStage, List<MethodTransform>> methodTransforms) {
+        this.isInterface = isInterface;
+        this.wholeClassSources = copyByStage(wholeClassSources);
+        this.fieldsToSets = Collections.unmodifiableList(new ArrayList<>(fieldsToSets));
+        this.methodsToSets = Collections.unmodifiableList(new ArrayList<>(methodsToSets));
+        this.methodTransforms = copyByStage(methodTransforms);
+    }
+
+    private static <T> Map<TransformFrom.ApplicationStage, List<T>> copyByStage(Map<TransformFrom.ApplicationStage, List<T>> byStage) {
+        Map<TransformFrom.ApplicationStage, List<T>> copy = new EnumMap<>(TransformFrom.ApplicationStage.class);
+        for (TransformFrom.ApplicationStage stage : TransformFrom.ApplicationStage.values()) {
+            copy.put(stage, Collections.unmodifiableList(new ArrayList<>(byStage.getOrDefault(stage, Collections.emptyList()))));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public boolean isInterface() {
+        return isInterface;
+    }
+
+    /**
+     * @return The {@code @TransformFromClass} sources for the stage
+     */
+    public List<Type> wholeClassSources(TransformFrom.ApplicationStage stage) {
+        return wholeClassSources.get(stage);
+    }
+
+    public List<FieldToSets> fieldsToSets() {
+        return fieldsToSets;
+    }
+
+    public List<MethodToSets> methodsToSets() {
+        return methodsToSets;
+    }
+
+    /**
+     * @return The {@code @TransformFrom} methods for the stage
+     */
+    public List<MethodTransform> methodTransforms(TransformFrom.ApplicationStage stage) {
+        return methodTransforms.get(stage);
+    }
+
+    /**
+     * @return Whether the class has no dasm annotations at all
+     */
+    public boolean isEmpty() {
+        return fieldsToSets.isEmpty() && methodsToSets.isEmpty()
+                && wholeClassSources.values().stream().allMatch(List::isEmpty)
+                && methodTransforms.values().stream().allMatch(List::isEmpty);
+    }
+
+    /**
+     * A field marked with {@code @AddFieldToSets}
+     */
+    public static final class FieldToSets {
+        private final String fieldName;
+        private final Type owner;
+        private final String name;
+        private final Type type;
+        private final List<Type> sets;
+
+        /**
+         * @param fieldName The name of the marked field
+         */
+        public FieldToSets(String fieldName, Type owner, String name, Type type, List<Type> sets) {
+            this.fieldName = fieldName;
+            this.owner = owner;
+            this.name = name;
+            this.type = type;
+            this.sets = Collections.unmodifiableList(new ArrayList<>(sets));
+        }
+
+        public String fieldName() {
+            return fieldName;
+        }
+
+        public Type owner() {
+            return owner;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Type type() {
+            return type;
+        }
+
+        public List<Type> sets() {
+            return sets;
+        }
+    }
+
+    /**
+     * A method marked with {@code @AddMethodToSets}
+     */
+    public static final class MethodToSets {
+        private final String methodName;
+        private final Type owner;
+        private final Method method;
+        private final List<Type> sets;
+
+        /**
+         * @param methodName The name of the marked method
+         */
+        public MethodToSets(String methodName, Type owner, Method method, List<Type> sets) {
+            this.methodName = methodName;
+            this.owner = owner;
+            this.method = method;
+            this.sets = Collections.unmodifiableList(new ArrayList<>(sets));
+        }
+
+        public String methodName() {
+            return methodName;
+        }
+
+        public Type owner() {
+            return owner;
+        }
+
+        public Method method() {
+            return method;
+        }
+
+        public List<Type> sets() {
+            return sets;
+        }
+    }
+
+    /**
+     * A method marked with {@code @TransformFrom}
+     */
+    public static final class MethodTransform {
+        private final Method annotatedMethod;
+        private final Method srcMethod;
+        private final boolean makeSyntheticAccessor;
+        @Nullable private final Type copyFrom;
+        private final List<Type> useRedirectSets;
+        private final List<Type> addToRedirectSets;
+
+        /**
+         * @param annotatedMethod The name and descriptor of the marked method
+         * @param srcMethod The method to transform from, see {@link TransformFrom#value()}
+         */
+        public MethodTransform(Method annotatedMethod, Method srcMethod, boolean makeSyntheticAccessor, @Nullable Type copyFrom, List<Type> useRedirectSets,
+                               List<Type> addToRedirectSets) {
+            this.annotatedMethod = annotatedMethod;
+            this.srcMethod = srcMethod;
+            this.makeSyntheticAccessor = makeSyntheticAccessor;
+            this.copyFrom = copyFrom;
+            this.useRedirectSets = Collections.unmodifiableList(new ArrayList<>(useRedirectSets));
+            this.addToRedirectSets = Collections.unmodifiableList(new ArrayList<>(addToRedirectSets));
+        }
+
+        public Method annotatedMethod() {
+            return annotatedMethod;
+        }
+
+        public Method srcMethod() {
+            return srcMethod;
+        }
+
+        public boolean makeSyntheticAccessor() {
+            return makeSyntheticAccessor;
+        }
+
+        @Nullable public Type copyFrom() {
+            return copyFrom;
+        }
+
+        public List<Type> useRedirectSets() {
+            return useRedirectSets;
+        }
+
+        public List<Type> addToRedirectSets() {
+            return addToRedirectSets;
+        }
+    }
+}
@@ -59,6 +59,15 @@ public class TargetClass {
         return debugSelfRedirects;
     }
 
+    /**
+     * Drops the redirect sets and targets, so they can be collected once this class has been transformed
+     */
+    public void clear() {
+        this.redirectSets.clear();
+        this.targetMethods.clear();
+        this.wholeClass = null;
+    }
+
     public String getClassName() {
         return className;
     }
@@ -0,0 +1,243 @@
+package io.github.opencubicchunks.dasm.transformer.target;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.*;
+
+import javax.annotation.Nullable;
+
+/**
+ * An index of every class carrying dasm annotations, with their decoded annotation data.
+ * <p/>
+ * Generated at build time (see {@link io.github.opencubicchunks.dasm.TargetIndexGenerator}), so that at runtime only the classes in the index
+ * have to be considered, and none of them have to be parsed for their annotations.
+ */
+public final class TargetIndex {
+    public static final String DEFAULT_LOCATION = "META-INF/dasm/targets.json";
+
+    private static final int VERSION = 1;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public boolean isTarget(String className) {
+        return this.entries.containsKey(className);
+    }
+
+    /**
+     * @param className The fully qualified name of the class eg: <code>java.lang.String</code>
+     * @return The class' entry, or null if the class has no dasm annotations
+     */
+    @Nullable public Entry get(String className) {
+        return this.entries.get(className);
+    }
+
+    public Set<String> classNames() {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
+    public void put(String className, Entry entry) {
+        this.entries.put(className, entry);
+    }
+
+    /**
+     * Adds all entries of another index, eg: one per jar. Entries in {@code other} replace existing ones.
+     */
+    public void merge(TargetIndex other) {
+        this.entries.putAll(other.entries);
+    }
+
+    public static TargetIndex read(Reader reader) {
+        JsonObject root = JsonParser.parseReader(reader).getAsJsonObject();
+        int version = root.get("version").getAsInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException(String.format("Unsupported target index version %d, expected %d", version, VERSION));
+        }
+        TargetIndex index = new TargetIndex();
+        for (Map.Entry<String, JsonElement> classEntry : root.getAsJsonObject("classes").entrySet()) {
+            index.put(classEntry.getKey(), readEntry(classEntry.getValue().getAsJsonObject()));
+        }
+        return index;
+    }
+
+    public void write(Writer writer) {
+        JsonObject classes = new JsonObject();
+        this.entries.forEach((className, entry) -> classes.add(className, writeEntry(entry)));
+
+        JsonObject root = new JsonObject();
+        root.addProperty("version", VERSION);
+        root.add("classes", classes);
+        new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+    }
+
+    private static Entry readEntry(JsonObject json) {
+        List<Type> redirectSets = null;
+        if (json.has("redirectSets")) {
+            redirectSets = new ArrayList<>();
+            for (JsonElement set : json.getAsJsonArray("redirectSets")) {
+                redirectSets.add(set.isJsonNull() ? null : Type.getType(set.getAsString()));
+            }
+        }
+
+        Map<TransformFrom.ApplicationStage, List<Type>> wholeClassSources = new EnumMap<>(TransformFrom.ApplicationStage.class);
+        Map<TransformFrom.ApplicationStage, List<TargetAnnotations.MethodTransform>> methodTransforms = new EnumMap<>(TransformFrom.ApplicationStage.class);
+        for (TransformFrom.ApplicationStage stage : TransformFrom.ApplicationStage.values()) {
+            wholeClassSources.put(stage, readTypes(json.getAsJsonObject("wholeClassSources").getAsJsonArray(stage.name())));
+
+            List<TargetAnnotations.MethodTransform> transforms = new ArrayList<>();
+            for (JsonElement element : json.getAsJsonObject("methodTransforms").getAsJsonArray(stage.name())) {
+                JsonObject transform = element.getAsJsonObject();
+                JsonElement copyFrom = transform.get("copyFrom");
+                transforms.add(new TargetAnnotations.MethodTransform(
+                        new Method(transform.get("name").getAsString(), transform.get("desc").getAsString()),
+                        new Method(transform.get("srcName").getAsString(), transform.get("srcDesc").getAsString()),
+                        transform.get("makeSyntheticAccessor").getAsBoolean(),
+                        copyFrom == null || copyFrom.isJsonNull() ? null : Type.getType(copyFrom.getAsString()),
+                        readTypes(transform.getAsJsonArray("useRedirectSets")),
+                        readTypes(transform.getAsJsonArray("addToRedirectSets"))
+                ));
+            }
+            methodTransforms.put(stage, transforms);
+        }
+
+        List<TargetAnnotations.FieldToSets> fieldsToSets = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray("fieldsToSets")) {
+            JsonObject field = element.getAsJsonObject();
+            fieldsToSets.add(new TargetAnnotations.FieldToSets(
+                    field.get("fieldName").getAsString(),
+                    Type.getType(field.get("owner").getAsString()),
+                    field.get("name").getAsString(),
+                    Type.getType(field.get("type").getAsString()),
+                    readTypes(field.getAsJsonArray("sets"))
+            ));
+        }
+
+        List<TargetAnnotations.MethodToSets> methodsToSets = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray("methodsToSets")) {
+            JsonObject method = element.getAsJsonObject();
+            methodsToSets.add(new TargetAnnotations.MethodToSets(
+                    method.get("methodName").getAsString(),
+                    Type.getType(method.get("owner").getAsString()),
+                    new Method(method.get("name").getAsString(), method.get("desc").getAsString()),
+                    readTypes(method.getAsJsonArray("sets"))
+            ));
+        }
+
+        TargetAnnotations annotations = new TargetAnnotations(json.get("interface").getAsBoolean(), wholeClassSources, fieldsToSets, methodsToSets,
+                methodTransforms);
+        return new Entry(redirectSets, annotations);
+    }
+
+    private static JsonObject writeEntry(Entry entry) {
+        JsonObject json = new JsonObject();
+        if (entry.redirectSets() != null) {
+            JsonArray redirectSets = new JsonArray();
+            for (Type set : entry.redirectSets()) {
+                redirectSets.add(set == null ? JsonNull.INSTANCE : new JsonPrimitive(set.getDescriptor()));
+            }
+            json.add("redirectSets", redirectSets);
+        }
+
+        TargetAnnotations annotations = entry.annotations();
+        json.addProperty("interface", annotations.isInterface());
+
+        JsonObject wholeClassSources = new JsonObject();
+        JsonObject methodTransforms = new JsonObject();
+        for (TransformFrom.ApplicationStage stage : TransformFrom.ApplicationStage.values()) {
+            wholeClassSources.add(stage.name(), writeTypes(annotations.wholeClassSources(stage)));
+
+            JsonArray transforms = new JsonArray();
+            for (TargetAnnotations.MethodTransform methodTransform : annotations.methodTransforms(stage)) {
+                JsonObject transform = new JsonObject();
+                transform.addProperty("name", methodTransform.annotatedMethod().getName());
+                transform.addProperty("desc", methodTransform.annotatedMethod().getDescriptor());
+                transform.addProperty("srcName", methodTransform.srcMethod().getName());
+                transform.addProperty("srcDesc", methodTransform.srcMethod().getDescriptor());
+                transform.addProperty("makeSyntheticAccessor", methodTransform.makeSyntheticAccessor());
+                transform.addProperty("copyFrom", methodTransform.copyFrom() == null ? null : methodTransform.copyFrom().getDescriptor());
+                transform.add("useRedirectSets", writeTypes(methodTransform.useRedirectSets()));
+                transform.add("addToRedirectSets", writeTypes(methodTransform.addToRedirectSets()));
+                transforms.add(transform);
+            }
+            methodTransforms.add(stage.name(), transforms);
+        }
+        json.add("wholeClassSources", wholeClassSources);
+        json.add("methodTransforms", methodTransforms);
+
+        JsonArray fieldsToSets = new JsonArray();
+        for (TargetAnnotations.FieldToSets fieldToSets : annotations.fieldsToSets()) {
+            JsonObject field = new JsonObject();
+            field.addProperty("fieldName", fieldToSets.fieldName());
+            field.addProperty("owner", fieldToSets.owner().getDescriptor());
+            field.addProperty("name", fieldToSets.name());
+            field.addProperty("type", fieldToSets.type().getDescriptor());
+            field.add("sets", writeTypes(fieldToSets.sets()));
+            fieldsToSets.add(field);
+        }
+        json.add("fieldsToSets", fieldsToSets);
+
+        JsonArray methodsToSets = new JsonArray();
+        for (TargetAnnotations.MethodToSets methodToSets : annotations.methodsToSets()) {
+            JsonObject method = new JsonObject();
+            method.addProperty("methodName", methodToSets.methodName());
+            method.addProperty("owner", methodToSets.owner().getDescriptor());
+            method.addProperty("name", methodToSets.method().getName());
+            method.addProperty("desc", methodToSets.method().getDescriptor());
+            method.add("sets", writeTypes(methodToSets.sets()));
+            methodsToSets.add(method);
+        }
+        json.add("methodsToSets", methodsToSets);
+        return json;
+    }
+
+    private static List<Type> readTypes(JsonArray array) {
+        List<Type> types = new ArrayList<>();
+        for (JsonElement element : array) {
+            types.add(Type.getType(element.getAsString()));
+        }
+        return types;
+    }
+
+    private static JsonArray writeTypes(List<Type> types) {
+        JsonArray array = new JsonArray();
+        for (Type type : types) {
+            array.add(type.getDescriptor());
+        }
+        return array;
+    }
+
+    /**
+     * The indexed data of one class
+     */
+    public static final class Entry {
+        @Nullable private final List<Type> redirectSets;
+        private final TargetAnnotations annotations;
+
+        /**
+         * @param redirectSets The sets listed in the class' {@code @DasmRedirect}, where null stands for the default set,
+         *                     or null if the class isn't marked with {@code @DasmRedirect}
+         */
+        public Entry(@Nullable List<Type> redirectSets, TargetAnnotations annotations) {
+            this.redirectSets = redirectSets == null ? null : Collections.unmodifiableList(new ArrayList<>(redirectSets));
+            this.annotations = annotations;
+        }
+
+        @Nullable public List<Type> redirectSets() {
+            return redirectSets;
+        }
+
+        public TargetAnnotations annotations() {
+            return annotations;
+        }
+    }
+}
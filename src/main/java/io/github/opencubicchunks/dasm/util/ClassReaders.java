@@ -0,0 +1,25 @@
+package io.github.opencubicchunks.dasm.util;
+
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import org.objectweb.asm.ClassReader;
+
+import java.nio.ByteBuffer;
+
+public final class ClassReaders {
+    private ClassReaders() {
+    }
+
+    /**
+     * Creates a {@link ClassReader} for a class from {@link ClassProvider#classBuffer(String)}.
+     * Heap buffers are read in place, other buffers are copied once, as {@link ClassReader} only accepts arrays.
+     */
+    public static ClassReader forClass(ClassProvider classProvider, String className) {
+        ByteBuffer buffer = classProvider.classBuffer(className);
+        if (buffer.hasArray()) {
+            return new ClassReader(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new ClassReader(bytes);
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classNode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.api.MethodSig;
+import io.github.opencubicchunks.dasm.api.provider.CachingClassProvider;
+import io.github.opencubicchunks.dasm.api.redirect.AddMethodToSets;
+import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
+import io.github.opencubicchunks.dasm.test.sets.ContributedSet;
+import io.github.opencubicchunks.dasm.test.sets.EmptySet;
+import io.github.opencubicchunks.dasm.test.sets.StackedSet;
+import io.github.opencubicchunks.dasm.test.sets.NegatingSet;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.target.TargetAnnotations;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+public class AnnotationParserTest {
+    private static final Type CONTRIBUTED_SET = Type.getType(ContributedSet.class);
+
+    @Test
+    public void contributedRedirectsAreAddedOnce() {
+        AnnotationParser parser = new AnnotationParser(Utils::classBytes, EmptySet.class);
+        parser.getRedirectSet(CONTRIBUTED_SET);
+        contribute(parser);
+
+        assertEquals(1, parser.getRedirectSet(CONTRIBUTED_SET).methodRedirectCount());
+        assertEquals(1, parser.retainedCounts().get("contributedRedirects").longValue());
+    }
+
+    @Test
+    public void contributedRedirectsSurviveTrim() {
+        AnnotationParser parser = new AnnotationParser(Utils::classBytes, EmptySet.class);
+        parser.getRedirectSet(CONTRIBUTED_SET);
+        contribute(parser);
+
+        parser.trim();
+
+        assertEquals(0, parser.retainedCounts().get("redirectSets").longValue());
+        assertContributed(parser.getRedirectSet(CONTRIBUTED_SET));
+    }
+
+    @Test
+    public void contributedRedirectsSurviveInvalidation() {
+        AnnotationParser parser = new AnnotationParser(Utils::classBytes, EmptySet.class);
+        parser.getRedirectSet(CONTRIBUTED_SET);
+        contribute(parser);
+
+        parser.invalidateRedirectSet(ContributedSet.class.getName());
+
+        assertContributed(parser.getRedirectSet(CONTRIBUTED_SET));
+    }
+
+    @Test
+    public void removedContributionsAreDropped() {
+        AnnotationParser parser = new AnnotationParser(Utils::classBytes, EmptySet.class);
+        parser.getRedirectSet(CONTRIBUTED_SET);
+        contribute(parser);
+
+        parser.removeContributions(Contributor.class.getName());
+
+        assertEquals(0, parser.getRedirectSet(CONTRIBUTED_SET).methodRedirectCount());
+        assertEquals(0, parser.retainedCounts().get("contributedRedirects").longValue());
+        // building the class again adds them back
+        contribute(parser);
+        assertContributed(parser.getRedirectSet(CONTRIBUTED_SET));
+    }
+
+    @Test
+    public void closeDropsContributions() {
+        AnnotationParser parser = new AnnotationParser(Utils::classBytes, EmptySet.class);
+        parser.getRedirectSet(CONTRIBUTED_SET);
+        contribute(parser);
+
+        parser.close();
+
+        assertEquals(0, parser.retainedCounts().get("contributedRedirects").longValue());
+    }
+
+    @Test
+    public void prefetchesOnDirectExecutor() {
+        // the caching provider answers with completed futures, so everything runs on this thread while prefetching
+        AnnotationParser parser = new AnnotationParser(new CachingClassProvider(Utils::classBytes), EmptySet.class);
+        parser.prefetchRedirectSet(Type.getType(StackedSet.class), Runnable::run);
+
+        // the set, the set it inherits from and that set's inner class
+        assertEquals(3, parser.retainedCounts().get("prefetchedClasses").longValue());
+        parser.getRedirectSet(Type.getType(StackedSet.class));
+        assertEquals(0, parser.retainedCounts().get("prefetchedClasses").longValue(), "every prefetched class was used");
+        assertNotNull(parser.getRedirectSet(Type.getType(NegatingSet.class)).findMethodRedirect("Ljava/lang/Math;", "abs", "(I)I"));
+    }
+
+    @Test
+    public void closedParserThrows() {
+        AnnotationParser parser = new AnnotationParser(Utils::classBytes, EmptySet.class);
+        parser.close();
+
+        assertThrows(IllegalStateException.class, () -> parser.getRedirectSet(CONTRIBUTED_SET));
+    }
+
+    private static void contribute(AnnotationParser parser) {
+        ClassNode classNode = classNode(Contributor.class);
+        TargetAnnotations annotations = AnnotationParser.parseTargetAnnotations(classNode);
+        for (TransformFrom.ApplicationStage stage : TransformFrom.ApplicationStage.values()) {
+            parser.buildClassTarget(classNode, annotations, new TargetClass(Contributor.class.getName()), stage, "");
+        }
+    }
+
+    private static void assertContributed(RedirectSet redirectSet) {
+        assertEquals(1, redirectSet.methodRedirectCount());
+        assertNotNull(redirectSet.findMethodRedirect(Type.getDescriptor(Owner.class), "size", "()I"));
+    }
+
+    public static class Owner {
+        public int size() {
+            return 0;
+        }
+    }
+
+    public static class Contributor {
+        @SuppressWarnings("deprecation")
+        @AddMethodToSets(owner = Owner.class, method = @MethodSig("size()I"), sets = ContributedSet.class)
+        public static int ownerSize(Owner owner) {
+            return owner.size();
+        }
+    }
+}
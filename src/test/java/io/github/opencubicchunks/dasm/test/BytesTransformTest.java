@@ -0,0 +1,140 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classBytes;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classNode;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.toBytes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntUnaryOperator;
+
+public class BytesTransformTest {
+    private static final Type TARGET = Type.getType(Target.class);
+
+    private final Transformer transformer = new Transformer(MappingsProvider.IDENTITY, Utils::classBytes, false);
+
+    @Test
+    public void clonesWithRedirects() throws ReflectiveOperationException {
+        Class<?> transformed = transform(classBytes(Target.class), target("source", "(I)I", false));
+
+        assertEquals(-3, transformed.getMethod("redirected", int.class).invoke(null, 3));
+        assertEquals(3, transformed.getMethod("source", int.class).invoke(null, -3));
+    }
+
+    @Test
+    public void copiesOtherMethodsUnchanged() throws ReflectiveOperationException {
+        byte[] original = classBytes(Target.class);
+        byte[] transformedBytes = this.transformer.transformClass(original, target("source", "(I)I", false));
+
+        assertArrayEquals(code(original, "untouched"), code(transformedBytes, "untouched"));
+        assertEquals(42, defineClass(Target.class.getName(), transformedBytes).getMethod("untouched").invoke(null));
+    }
+
+    @Test
+    public void clonesLambdasWithRedirects() throws ReflectiveOperationException {
+        Class<?> transformed = transform(classBytes(Target.class), target("lambdas", "(I)I", false));
+
+        assertEquals(-3, transformed.getMethod("redirected", int.class).invoke(null, 3));
+        // the original keeps its own lambda
+        assertEquals(3, transformed.getMethod("lambdas", int.class).invoke(null, -3));
+    }
+
+    @Test
+    public void addsSyntheticAccessor() throws ReflectiveOperationException {
+        Class<?> transformed = transform(classBytes(Target.class), target("scaled", "(I)I", true));
+
+        Object instance = transformed.getConstructor().newInstance();
+        assertEquals(-6, transformed.getMethod("redirected", int.class).invoke(instance, 3));
+        assertEquals(-6, transformed.getMethod("redirected", transformed, int.class).invoke(null, instance, 3));
+    }
+
+    @Test
+    public void producesSameMethodsAsTreeTransform() {
+        ClassNode tree = classNode(Target.class);
+        this.transformer.transformClass(tree, target("lambdas", "(I)I", true));
+        ClassNode bytes = new ClassNode();
+        new ClassReader(this.transformer.transformClass(classBytes(Target.class), target("lambdas", "(I)I", true))).accept(bytes, 0);
+
+        assertEquals(methodNames(tree), methodNames(bytes));
+        assertTrue(methodNames(bytes).contains("redirected(I)I"));
+    }
+
+    private static TargetClass target(String name, String descriptor, boolean makeSyntheticAccessor) {
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(new MethodRedirect(new ClassMethod(Type.getType(Math.class), new Method("abs", "(I)I")), Type.getType(Replacements.class),
+                "negate", false));
+
+        TargetClass targetClass = new TargetClass(Target.class.getName());
+        targetClass.addTarget(new TargetMethod(TARGET, new ClassMethod(TARGET, new Method(name, descriptor)), "redirected", true, makeSyntheticAccessor,
+                Collections.singletonList(redirectSet)));
+        return targetClass;
+    }
+
+    private Class<?> transform(byte[] classBytes, TargetClass target) {
+        return defineClass(Target.class.getName(), this.transformer.transformClass(classBytes, target));
+    }
+
+    private static byte[] code(byte[] classBytes, String methodName) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, ClassReader.SKIP_DEBUG);
+        ClassNode methodOnly = new ClassNode();
+        methodOnly.visit(classNode.version, classNode.access, classNode.name, null, classNode.superName, null);
+        methodOnly.methods.add(Utils.method(classNode, methodName));
+        return toBytes(methodOnly);
+    }
+
+    private static Set<String> methodNames(ClassNode classNode) {
+        Set<String> names = new TreeSet<>();
+        for (MethodNode method : classNode.methods) {
+            names.add(method.name + method.desc);
+        }
+        return names;
+    }
+
+    public static class Target {
+        public int factor = 2;
+
+        public static int untouched() {
+            return 42;
+        }
+
+        public static int source(int value) {
+            return Math.abs(value);
+        }
+
+        public static int lambdas(int value) {
+            IntUnaryOperator operator = v -> Math.abs(v);
+            return operator.applyAsInt(value);
+        }
+
+        public int scaled(int value) {
+            return Math.abs(value) * this.factor;
+        }
+    }
+
+    public static class Replacements {
+        public static int negate(int value) {
+            return -value;
+        }
+    }
+}
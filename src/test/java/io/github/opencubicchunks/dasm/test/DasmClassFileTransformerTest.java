@@ -0,0 +1,167 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classBytes;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.TargetIndexGenerator;
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.agent.DasmClassFileTransformer;
+import io.github.opencubicchunks.dasm.api.MethodSig;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.api.transform.DasmRedirect;
+import io.github.opencubicchunks.dasm.api.transform.TransformFrom;
+import io.github.opencubicchunks.dasm.test.sets.EmptySet;
+import io.github.opencubicchunks.dasm.test.sets.NegatingSet;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+public class DasmClassFileTransformerTest {
+    private static final String TARGET = Target.class.getName();
+    private static final String LAMBDA_TARGET = LambdaTarget.class.getName();
+
+    private final FakeInstrumentation instrumentation = new FakeInstrumentation();
+    private final DasmClassFileTransformer classFileTransformer = create(this.instrumentation);
+
+    @Test
+    public void transformsIndexedClassesOnLoad() throws ReflectiveOperationException {
+        byte[] transformed = load(TARGET);
+
+        assertNotNull(transformed);
+        assertEquals(-3, defineClass(TARGET, transformed).getMethod("redirected", int.class).invoke(null, 3));
+        assertNull(this.classFileTransformer.transform(null, NotATarget.class.getName().replace('.', '/'), null, null, classBytes(NotATarget.class)),
+                "not indexed");
+    }
+
+    @Test
+    public void retransformsClassesUsingChangedSets() throws ReflectiveOperationException {
+        Class<?> loaded = defineClass(TARGET, load(TARGET));
+        this.instrumentation.loadedClasses.add(loaded);
+
+        this.classFileTransformer.redirectSetsChanged(Collections.singleton(NegatingSet.class.getName()));
+
+        assertEquals(Collections.singletonList(loaded), this.instrumentation.retransformed);
+        byte[] retransformed = this.instrumentation.outputs.get(0);
+        assertNotNull(retransformed);
+        assertEquals(-3, defineClass(TARGET, retransformed).getMethod("redirected", int.class).invoke(null, 3));
+    }
+
+    @Test
+    public void doesNotRetransformUnaffectedClasses() {
+        this.instrumentation.loadedClasses.add(defineClass(TARGET, load(TARGET)));
+
+        this.classFileTransformer.redirectSetsChanged(Collections.singleton(EmptySet.class.getName()));
+
+        assertEquals(Collections.emptyList(), this.instrumentation.retransformed);
+    }
+
+    @Test
+    public void keepsLoadedVersionWhenRetransformAddsMethods() {
+        // loaded before the agent, so transforming it would add the cloned lambda
+        Class<?> loaded = defineClass(LAMBDA_TARGET, classBytes(LAMBDA_TARGET));
+        assertNull(this.classFileTransformer.transform(null, LAMBDA_TARGET.replace('.', '/'), loaded, null, classBytes(LAMBDA_TARGET)));
+
+        // loaded with the agent, transforming it again keeps the same methods
+        byte[] transformed = load(LAMBDA_TARGET);
+        byte[] retransformed = this.classFileTransformer.transform(null, LAMBDA_TARGET.replace('.', '/'), loaded, null, classBytes(LAMBDA_TARGET));
+        assertNotNull(retransformed);
+        assertEquals(methods(transformed), methods(retransformed));
+    }
+
+    private byte[] load(String className) {
+        return this.classFileTransformer.transform(null, className.replace('.', '/'), null, null, classBytes(className));
+    }
+
+    private static List<String> methods(byte[] classBytes) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes).accept(classNode, 0);
+        List<String> methods = new ArrayList<>();
+        classNode.methods.forEach(method -> methods.add(method.name + method.desc));
+        Collections.sort(methods);
+        return methods;
+    }
+
+    private static DasmClassFileTransformer create(FakeInstrumentation instrumentation) {
+        ClassProvider classProvider = Utils::classBytes;
+        TargetIndexGenerator generator = new TargetIndexGenerator();
+        generator.addClass(classBytes(Target.class));
+        generator.addClass(classBytes(LambdaTarget.class));
+        instrumentation.classFileTransformer = new DasmClassFileTransformer(instrumentation.proxy(), new AnnotationParser(classProvider, EmptySet.class),
+                new Transformer(MappingsProvider.IDENTITY, classProvider, false), classProvider, generator.index(), Runnable::run, 64);
+        instrumentation.classFileTransformer.prefetch().join();
+        return instrumentation.classFileTransformer;
+    }
+
+    /**
+     * Only supports what the agent uses, retransforming runs the transformer on the original bytes like the JVM does
+     */
+    private static class FakeInstrumentation {
+        final List<Class<?>> loadedClasses = new ArrayList<>();
+        final List<Class<?>> retransformed = new ArrayList<>();
+        final List<byte[]> outputs = new ArrayList<>();
+        DasmClassFileTransformer classFileTransformer;
+
+        Instrumentation proxy() {
+            return (Instrumentation) Proxy.newProxyInstance(Instrumentation.class.getClassLoader(), new Class<?>[] { Instrumentation.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "isRetransformClassesSupported":
+                            case "isModifiableClass":
+                                return true;
+                            case "getAllLoadedClasses":
+                                return this.loadedClasses.toArray(new Class<?>[0]);
+                            case "retransformClasses":
+                                for (Class<?> loadedClass : (Class<?>[]) args[0]) {
+                                    this.retransformed.add(loadedClass);
+                                    this.outputs.add(this.classFileTransformer.transform(loadedClass.getClassLoader(),
+                                            loadedClass.getName().replace('.', '/'), loadedClass, null, classBytes(loadedClass.getName())));
+                                }
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    @DasmRedirect(NegatingSet.class)
+    public static class Target {
+        public static int source(int value) {
+            return Math.abs(value);
+        }
+
+        @TransformFrom(@MethodSig("source(I)I"))
+        public static int redirected(int value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @DasmRedirect(NegatingSet.class)
+    public static class LambdaTarget {
+        public static int source(int value) {
+            IntUnaryOperator operator = v -> Math.abs(v);
+            return operator.applyAsInt(value);
+        }
+
+        @TransformFrom(@MethodSig("source(I)I"))
+        public static int redirected(int value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public static class NotATarget {
+    }
+}
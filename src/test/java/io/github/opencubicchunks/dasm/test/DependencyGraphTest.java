@@ -0,0 +1,69 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.redirect.TypeRedirect;
+import io.github.opencubicchunks.dasm.transformer.target.DependencyGraph;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+public class DependencyGraphTest {
+    private static final Method SOURCE = new Method("source", "(Ltest/Argument;)I");
+
+    @Test
+    public void recordsInputsOfTargetMethods() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.record(target());
+
+        Map<String, Set<Method>> byMethodSet = Collections.singletonMap("test.Target", Collections.singleton(SOURCE));
+        assertEquals(byMethodSet, graph.affectedTargets(DependencyGraph.Kind.REDIRECT_SET, "test.MethodSet"));
+        assertEquals(byMethodSet, graph.affectedTargets(DependencyGraph.Kind.SOURCE_CLASS, "test.Source"));
+        // the whole class uses the class' sets, and the mappings of the classes they redirect
+        Map<String, Set<Method>> wholeClass = Collections.singletonMap("test.Target", Collections.emptySet());
+        assertEquals(wholeClass, graph.affectedTargets(DependencyGraph.Kind.REDIRECT_SET, "test.ClassSet"));
+        assertEquals(wholeClass, graph.affectedTargets(DependencyGraph.Kind.MAPPINGS, "test.Redirected"));
+    }
+
+    @Test
+    public void recordsMappingsOfTargetMethodLookup() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.record(target());
+
+        Map<String, Set<Method>> affected = Collections.singletonMap("test.Target", Collections.singleton(SOURCE));
+        assertEquals(affected, graph.affectedTargets(DependencyGraph.Kind.MAPPINGS, "test.Target"));
+        assertEquals(affected, graph.affectedTargets(DependencyGraph.Kind.MAPPINGS, "test.Argument"));
+    }
+
+    @Test
+    public void forgetsRemovedTargets() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.record(target());
+
+        graph.remove("test.Target");
+
+        for (DependencyGraph.Kind kind : DependencyGraph.Kind.values()) {
+            assertEquals(Collections.emptyMap(), graph.affectedTargets(kind, "test.Target"));
+        }
+        assertEquals(Collections.emptyMap(), graph.affectedTargets(DependencyGraph.Kind.REDIRECT_SET, "test.ClassSet"));
+        assertEquals(Collections.emptyMap(), graph.affectedTargets(DependencyGraph.Kind.SOURCE_CLASS, "test.Source"));
+    }
+
+    private static TargetClass target() {
+        RedirectSet classSet = new RedirectSet("test.ClassSet");
+        classSet.addRedirect(new TypeRedirect("test.Redirected", "test.Replacement"));
+        TargetClass target = new TargetClass("test.Target");
+        target.addRedirectSet(classSet);
+        target.addTarget(new TargetMethod(Type.getObjectType("test/Source"), new ClassMethod(Type.getObjectType("test/Target"), SOURCE), "copied", true,
+                false, Collections.singletonList(new RedirectSet("test.MethodSet"))));
+        return target;
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classBytes;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.opencubicchunks.dasm.FanOutTransformer;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.test.sets.Negation;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FanOutTransformerTest {
+    // only exists as the dev or the prod variant, depending on the namespace
+    private static final String SOURCE = FanOutTransformerTest.class.getName() + "$Source";
+
+    private static final MappingsProvider PROD_MAPPINGS = new MappingsProvider() {
+        @Override public String mapFieldName(String owner, String fieldName, String descriptor) {
+            return fieldName;
+        }
+
+        @Override public String mapMethodName(String owner, String methodName, String descriptor) {
+            return methodName.equals("named") ? "mapped" : methodName;
+        }
+
+        @Override public String mapClassName(String className) {
+            return className;
+        }
+    };
+
+    @Test
+    public void readsSourcesOfEachNamespace() throws ReflectiveOperationException {
+        Map<String, MappingsProvider> mappings = new LinkedHashMap<>();
+        mappings.put("dev", MappingsProvider.IDENTITY);
+        mappings.put("prod", PROD_MAPPINGS);
+        Map<String, ClassProvider> classProviders = new LinkedHashMap<>();
+        classProviders.put("dev", variant(DevSource.class));
+        classProviders.put("prod", variant(ProdSource.class));
+
+        TargetClass targetClass = new TargetClass(Target.class.getName());
+        targetClass.addTarget(new TargetMethod(Type.getObjectType(SOURCE.replace('.', '/')),
+                new ClassMethod(Type.getType(Target.class), new Method("named", "(I)I")), "copied", true, false, Collections.emptyList()));
+        Map<String, byte[]> outputs = new FanOutTransformer(mappings, classProviders, false).transformClass(classBytes(Target.class), targetClass);
+
+        assertEquals(4, defineClass(Target.class.getName(), outputs.get("dev")).getMethod("copied", int.class).invoke(null, 3));
+        assertEquals(6, defineClass(Target.class.getName(), outputs.get("prod")).getMethod("copied", int.class).invoke(null, 3));
+    }
+
+    @Test
+    public void readsRedirectSetsOnce() throws ReflectiveOperationException {
+        Map<String, MappingsProvider> mappings = new LinkedHashMap<>();
+        mappings.put("dev", MappingsProvider.IDENTITY);
+        mappings.put("prod", MappingsProvider.IDENTITY);
+        Map<String, ClassProvider> classProviders = new LinkedHashMap<>();
+        classProviders.put("dev", Utils::classBytes);
+        classProviders.put("prod", Utils::classBytes);
+        AtomicInteger reads = new AtomicInteger();
+        RedirectSet redirectSet = new RedirectSet("test") {
+            @Override public void forEachMethodRedirect(MethodRedirectConsumer consumer) {
+                reads.incrementAndGet();
+                super.forEachMethodRedirect(consumer);
+            }
+        };
+        redirectSet.addRedirect(new MethodRedirect(new ClassMethod(Type.getType(Math.class), new Method("abs", "(I)I")), Type.getType(Negation.class),
+                "negate", false));
+
+        Type target = Type.getType(Redirected.class);
+        TargetClass targetClass = new TargetClass(Redirected.class.getName());
+        targetClass.addRedirectSet(redirectSet);
+        targetClass.addTarget(new TargetMethod(target, new ClassMethod(target, new Method("source", "(I)I")), "redirected", true, false,
+                Collections.emptyList()));
+        Map<String, byte[]> outputs = new FanOutTransformer(mappings, classProviders, false).transformClass(classBytes(Redirected.class), targetClass);
+
+        assertEquals(1, reads.get());
+        for (byte[] output : outputs.values()) {
+            assertEquals(-3, defineClass(Redirected.class.getName(), output).getMethod("redirected", int.class).invoke(null, 3));
+        }
+    }
+
+    @Test
+    public void rejectsMismatchedNamespaces() {
+        Map<String, MappingsProvider> mappings = Collections.singletonMap("dev", MappingsProvider.IDENTITY);
+        Map<String, ClassProvider> classProviders = Collections.singletonMap("prod", variant(ProdSource.class));
+
+        assertThrows(IllegalArgumentException.class, () -> new FanOutTransformer(mappings, classProviders, false));
+    }
+
+    private static ClassProvider variant(Class<?> source) {
+        return className -> classBytes(className.equals(SOURCE) ? source.getName() : className);
+    }
+
+    public static class Target {
+    }
+
+    public static class Redirected {
+        public static int source(int value) {
+            return Math.abs(value);
+        }
+    }
+
+    public static class DevSource {
+        public static int named(int value) {
+            return value + 1;
+        }
+    }
+
+    public static class ProdSource {
+        public static int mapped(int value) {
+            return value * 2;
+        }
+    }
+}
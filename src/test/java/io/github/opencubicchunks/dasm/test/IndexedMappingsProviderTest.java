@@ -0,0 +1,169 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.opencubicchunks.dasm.api.provider.IndexedMappingsProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class IndexedMappingsProviderTest {
+    private static final String TINY = String.join("\n",
+            "tiny\t2\t0\tintermediary\tnamed",
+            "c\tnet/minecraft/class_1\tcom/example/Chunk",
+            "\tf\tLnet/minecraft/class_2;\tfield_1\tpos",
+            "\tm\t(Lnet/minecraft/class_2;)V\tmethod_1\tsetPos",
+            "\t\tp\t1\t\tpos",
+            "\tm\t()V\tmethod_2\t",
+            "c\tnet/minecraft/class_2\tcom/example/Pos",
+            "c\tnet/minecraft/class_3\t",
+            "");
+
+    private static final String SRG = String.join("\n",
+            "# a comment",
+            "PK: net/minecraft net/minecraft",
+            "CL: a net/minecraft/Chunk",
+            "FD: a/a net/minecraft/Chunk/pos",
+            "MD: a/a (Lb;)V net/minecraft/Chunk/setPos (Lnet/minecraft/Pos;)V",
+            "CL: b net/minecraft/Pos",
+            "");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void mapsTinyV2ToLaterNamespace() throws IOException {
+        IndexedMappingsProvider mappings = IndexedMappingsProvider.read(new StringReader(TINY), "intermediary", "named");
+
+        assertEquals("com.example.Chunk", mappings.mapClassName("net.minecraft.class_1"));
+        assertEquals("pos", mappings.mapFieldName("net.minecraft.class_1", "field_1", "Lnet/minecraft/class_2;"));
+        assertEquals("setPos", mappings.mapMethodName("net.minecraft.class_1", "method_1", "(Lnet/minecraft/class_2;)V"));
+        // empty names aren't mapped
+        assertEquals("method_2", mappings.mapMethodName("net.minecraft.class_1", "method_2", "()V"));
+        assertEquals("net.minecraft.class_3", mappings.mapClassName("net.minecraft.class_3"));
+        assertEquals(2, mappings.classCount());
+        assertEquals(1, mappings.fieldCount());
+        assertEquals(1, mappings.methodCount());
+    }
+
+    @Test
+    public void mapsTinyV2ToEarlierNamespace() throws IOException {
+        IndexedMappingsProvider mappings = IndexedMappingsProvider.read(new StringReader(TINY), "named", "intermediary");
+
+        assertEquals("net.minecraft.class_1", mappings.mapClassName("com.example.Chunk"));
+        // descriptors are translated into the namespace names are looked up in
+        assertEquals("field_1", mappings.mapFieldName("com.example.Chunk", "pos", "Lcom/example/Pos;"));
+        assertEquals("method_1", mappings.mapMethodName("com.example.Chunk", "setPos", "(Lcom/example/Pos;)V"));
+        assertEquals("setPos", mappings.mapMethodName("com.example.Chunk", "setPos", "(Lnet/minecraft/class_2;)V"));
+    }
+
+    @Test
+    public void unmappedNamesAreReturnedAsPassed() throws IOException {
+        IndexedMappingsProvider mappings = IndexedMappingsProvider.read(new StringReader(TINY), "intermediary", "named");
+        String className = new String("net.minecraft.class_9".toCharArray());
+        String fieldName = new String("field_9".toCharArray());
+        String methodName = new String("method_1".toCharArray());
+
+        assertSame(className, mappings.mapClassName(className));
+        assertSame(fieldName, mappings.mapFieldName("net.minecraft.class_1", fieldName, "I"));
+        // same name, other descriptor
+        assertSame(methodName, mappings.mapMethodName("net.minecraft.class_1", methodName, "()V"));
+    }
+
+    @Test
+    public void unescapesTinyV2Names() throws IOException {
+        String tiny = "tiny\t2\t0\tfrom\tto\n\tescaped-names\nc\ta\\tb\tc\\\\d\n";
+        IndexedMappingsProvider mappings = IndexedMappingsProvider.read(new StringReader(tiny), "from", "to");
+
+        assertEquals("c\\d", mappings.mapClassName("a\tb"));
+    }
+
+    @Test
+    public void rejectsUnknownTinyNamespaces() {
+        assertThrows(IllegalArgumentException.class, () -> IndexedMappingsProvider.read(new StringReader(TINY), "official", "named"));
+    }
+
+    @Test
+    public void rejectsTinyV1() {
+        assertThrows(IOException.class, () -> IndexedMappingsProvider.read(new StringReader("tiny\t1\t0\tofficial\tnamed\n"), "official", "named"));
+    }
+
+    @Test
+    public void mapsSrg() throws IOException {
+        IndexedMappingsProvider mappings = IndexedMappingsProvider.read(new StringReader(SRG), "ignored", "ignored");
+
+        assertEquals("net.minecraft.Chunk", mappings.mapClassName("a"));
+        assertEquals("net.minecraft.Pos", mappings.mapClassName("b"));
+        // SRG fields have no descriptor, any descriptor matches
+        assertEquals("pos", mappings.mapFieldName("a", "a", "Lb;"));
+        assertEquals("pos", mappings.mapFieldName("a", "a", "I"));
+        assertEquals("setPos", mappings.mapMethodName("a", "a", "(Lb;)V"));
+        assertEquals("a", mappings.mapMethodName("a", "a", "()V"));
+    }
+
+    @Test
+    public void rejectsInvalidSrgLines() {
+        assertThrows(IOException.class, () -> IndexedMappingsProvider.read(new StringReader("XX: a b\n"), "", ""));
+        assertThrows(IOException.class, () -> IndexedMappingsProvider.read(new StringReader("CL: a\n"), "", ""));
+        assertThrows(IOException.class, () -> IndexedMappingsProvider.read(new StringReader("MD: a/a ()V b/b\n"), "", ""));
+    }
+
+    @Test
+    public void mapsBatches() throws IOException {
+        IndexedMappingsProvider mappings = IndexedMappingsProvider.read(new StringReader(SRG), "", "");
+
+        assertArrayEquals(new String[] { "net.minecraft.Chunk", "c" }, mappings.mapClassNames(new String[] { "a", "c" }));
+        assertArrayEquals(new String[] { "setPos", "b" }, mappings.mapMethodNames(new String[] { "a", "a" }, new String[] { "a", "b" },
+                new String[] { "(Lb;)V", "(Lb;)V" }));
+    }
+
+    @Test
+    public void savedIndexIsReused() throws IOException {
+        Path source = this.tempDir.resolve("mappings.tiny");
+        Path index = this.tempDir.resolve("index/mappings.bin");
+        Files.write(source, TINY.getBytes(StandardCharsets.UTF_8));
+
+        IndexedMappingsProvider.load(source, index, "intermediary", "named");
+        FileTime built = Files.getLastModifiedTime(index);
+        Files.setLastModifiedTime(index, FileTime.fromMillis(built.toMillis() - 10_000));
+        FileTime aged = Files.getLastModifiedTime(index);
+
+        IndexedMappingsProvider reloaded = IndexedMappingsProvider.load(source, index, "intermediary", "named");
+        assertEquals(aged, Files.getLastModifiedTime(index));
+        assertEquals("com.example.Chunk", reloaded.mapClassName("net.minecraft.class_1"));
+        assertEquals("setPos", IndexedMappingsProvider.open(index).mapMethodName("net.minecraft.class_1", "method_1", "(Lnet/minecraft/class_2;)V"));
+    }
+
+    @Test
+    public void savedIndexIsRebuiltForOtherNamespaces() throws IOException {
+        Path source = this.tempDir.resolve("mappings.tiny");
+        Path index = this.tempDir.resolve("mappings.bin");
+        Files.write(source, TINY.getBytes(StandardCharsets.UTF_8));
+
+        IndexedMappingsProvider.load(source, index, "intermediary", "named");
+        IndexedMappingsProvider reversed = IndexedMappingsProvider.load(source, index, "named", "intermediary");
+
+        assertEquals("net.minecraft.class_1", reversed.mapClassName("com.example.Chunk"));
+    }
+
+    @Test
+    public void corruptIndexIsRebuilt() throws IOException {
+        Path source = this.tempDir.resolve("mappings.srg");
+        Path index = this.tempDir.resolve("mappings.bin");
+        Files.write(source, SRG.getBytes(StandardCharsets.UTF_8));
+        Files.write(index, new byte[] { 1, 2, 3 });
+
+        assertThrows(IOException.class, () -> IndexedMappingsProvider.open(index));
+        assertEquals("net.minecraft.Chunk", IndexedMappingsProvider.load(source, index, "", "").mapClassName("a"));
+        assertEquals("net.minecraft.Chunk", IndexedMappingsProvider.open(index).mapClassName("a"));
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classNode;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.toBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.profile.InvocationCounters;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// the counters are static, so every test counts methods of its own
+public class InvocationCountersTest {
+    @Test
+    public void registeringTwiceGivesSameId() {
+        int id = InvocationCounters.register("test.Registered.twice()V");
+
+        assertEquals(id, InvocationCounters.register("test.Registered.twice()V"));
+        assertNotEquals(id, InvocationCounters.register("test.Registered.other()V"));
+    }
+
+    @Test
+    public void countsCalls() {
+        int id = InvocationCounters.register("test.Counted.calls()V");
+        InvocationCounters.count(id);
+        InvocationCounters.count(id);
+
+        assertEquals(2, InvocationCounters.counts().get("test.Counted.calls()V").longValue());
+    }
+
+    @Test
+    public void resetsCounters() {
+        int id = InvocationCounters.register("test.Counted.reset()V");
+        InvocationCounters.count(id);
+        InvocationCounters.reset();
+
+        assertEquals(0, InvocationCounters.counts().get("test.Counted.reset()V").longValue());
+        // still registered, and counting again
+        InvocationCounters.count(id);
+        assertEquals(1, InvocationCounters.counts().get("test.Counted.reset()V").longValue());
+    }
+
+    @Test
+    public void writesMostCalledFirst() {
+        InvocationCounters.reset();
+        int rare = InvocationCounters.register("test.Report.rare()V");
+        int often = InvocationCounters.register("test.Report.often()V");
+        InvocationCounters.register("test.Report.never()V");
+        InvocationCounters.count(rare);
+        for (int i = 0; i < 3; i++) {
+            InvocationCounters.count(often);
+        }
+
+        StringWriter writer = new StringWriter();
+        InvocationCounters.writeReport(writer);
+        List<String> lines = Arrays.asList(writer.toString().split(System.lineSeparator()));
+
+        int methods = InvocationCounters.counts().size();
+        long uncalled = InvocationCounters.counts().values().stream().filter(count -> count == 0).count();
+        assertEquals("Invocations of " + methods + " produced methods, " + uncalled + " never called", lines.get(0));
+        assertEquals(methods + 1, lines.size());
+        assertTrue(lines.indexOf("3\ttest.Report.often()V") < lines.indexOf("1\ttest.Report.rare()V"));
+        assertTrue(lines.indexOf("1\ttest.Report.rare()V") < lines.indexOf("0\ttest.Report.never()V"));
+        assertFalse(lines.contains("3\ttest.Report.rare()V"));
+    }
+
+    @Test
+    public void countsProducedMethods() throws ReflectiveOperationException {
+        Transformer transformer = new Transformer(MappingsProvider.IDENTITY, Utils::classBytes, false);
+        transformer.setCountInvocations(true);
+        Type target = Type.getType(Target.class);
+        TargetClass targetClass = new TargetClass(Target.class.getName());
+        targetClass.addTarget(new TargetMethod(target, new ClassMethod(target, new Method("source", "(I)I")), "counted", true, false,
+                Collections.singletonList(new RedirectSet("test"))));
+
+        ClassNode classNode = classNode(Target.class);
+        transformer.transformClass(classNode, targetClass);
+        Class<?> transformed = defineClass(Target.class.getName(), toBytes(classNode));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 1, transformed.getMethod("counted", int.class).invoke(null, i));
+        }
+        transformed.getMethod("source", int.class).invoke(null, 0);
+
+        assertEquals(4, InvocationCounters.counts().get(Target.class.getName() + ".counted(I)I").longValue());
+        // only produced methods are counted
+        assertFalse(InvocationCounters.counts().containsKey(Target.class.getName() + ".source(I)I"));
+    }
+
+    public static class Target {
+        public static int source(int value) {
+            return value + 1;
+        }
+    }
+}
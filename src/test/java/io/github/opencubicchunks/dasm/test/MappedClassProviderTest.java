@@ -0,0 +1,127 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.opencubicchunks.dasm.api.provider.MappedClassProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class MappedClassProviderTest {
+    @TempDir Path tempDir;
+
+    @Test
+    public void readsStoredAndDeflatedJarEntries() throws IOException {
+        byte[] stored = content("stored");
+        byte[] deflated = content("deflated");
+        Path jar = this.tempDir.resolve("classes.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            putStored(out, "a/Stored.class", stored);
+            putDeflated(out, "a/Deflated.class", deflated);
+            putDeflated(out, "a/resource.txt", content("resource"));
+        }
+
+        MappedClassProvider provider = new MappedClassProvider(Collections.singletonList(jar));
+        assertArrayEquals(stored, provider.classBytes("a.Stored"));
+        assertArrayEquals(deflated, provider.classBytes("a.Deflated"));
+        assertThrows(IllegalArgumentException.class, () -> provider.classBytes("a.resource"));
+    }
+
+    @Test
+    public void storedEntriesAreReadOnlyViews() throws IOException {
+        byte[] stored = content("stored");
+        Path jar = this.tempDir.resolve("classes.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            putStored(out, "a/Stored.class", stored);
+        }
+
+        ByteBuffer buffer = new MappedClassProvider(Collections.singletonList(jar)).classBuffer("a.Stored");
+        assertTrue(buffer.isReadOnly());
+        byte[] read = new byte[buffer.remaining()];
+        buffer.get(read);
+        assertArrayEquals(stored, read);
+    }
+
+    @Test
+    public void readsDirectoriesAndSearchesRootsInOrder() throws IOException {
+        Path directory = this.tempDir.resolve("classes");
+        Files.createDirectories(directory.resolve("a"));
+        Files.write(directory.resolve("a/Both.class"), content("directory"));
+        Files.write(directory.resolve("a/DirectoryOnly.class"), content("directory only"));
+
+        Path jar = this.tempDir.resolve("classes.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            putDeflated(out, "a/Both.class", content("jar"));
+            putDeflated(out, "a/JarOnly.class", content("jar only"));
+        }
+
+        MappedClassProvider provider = new MappedClassProvider(Arrays.asList(directory, jar));
+        assertArrayEquals(content("directory"), provider.classBytes("a.Both"));
+        assertArrayEquals(content("directory only"), provider.classBytes("a.DirectoryOnly"));
+        assertArrayEquals(content("jar only"), provider.classBytes("a.JarOnly"));
+
+        MappedClassProvider reversed = new MappedClassProvider(Arrays.asList(jar, directory));
+        assertArrayEquals(content("jar"), reversed.classBytes("a.Both"));
+    }
+
+    @Test
+    public void missingClassThrows() throws IOException {
+        Path jar = this.tempDir.resolve("classes.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            putDeflated(out, "a/Present.class", content("present"));
+        }
+        MappedClassProvider provider = new MappedClassProvider(Collections.singletonList(jar));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> provider.classBytes("a.Missing"));
+        assertEquals("Class a.Missing not found", e.getMessage());
+    }
+
+    @Test
+    public void rejectsFilesThatAreNotJars() throws IOException {
+        Path file = this.tempDir.resolve("not-a.jar");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(content("not a zip file"));
+        }
+        assertThrows(IOException.class, () -> new MappedClassProvider(Collections.singletonList(file)));
+    }
+
+    private static byte[] content(String text) {
+        // long enough for deflating to actually compress
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            builder.append(text).append(i);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static void putDeflated(ZipOutputStream out, String name, byte[] content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+}
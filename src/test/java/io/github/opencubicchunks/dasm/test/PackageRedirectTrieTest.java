@@ -0,0 +1,78 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.opencubicchunks.dasm.transformer.PackageRedirectTrie;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PackageRedirectTrieTest {
+    private static PackageRedirectTrie trie() {
+        Map<String, String> packageRedirects = new HashMap<>();
+        packageRedirects.put("com/example", "org/example");
+        packageRedirects.put("com/example/lib", "org/shaded/lib");
+        packageRedirects.put("com/flat", "");
+        return new PackageRedirectTrie(packageRedirects);
+    }
+
+    @Test
+    public void redirectsClassesInPackage() {
+        PackageRedirectTrie trie = trie();
+
+        assertEquals("org/example/Foo", trie.redirect("com/example/Foo"));
+        // subpackages are redirected along with their package
+        assertEquals("org/example/sub/Foo", trie.redirect("com/example/sub/Foo"));
+        assertEquals("Foo", trie.redirect("com/flat/Foo"));
+    }
+
+    @Test
+    public void picksMostSpecificPackage() {
+        PackageRedirectTrie trie = trie();
+
+        assertEquals("org/shaded/lib/Foo", trie.redirect("com/example/lib/Foo"));
+        assertEquals("com/example/lib/", trie.matchingPackage("com/example/lib/Foo"));
+        assertEquals("com/example/", trie.matchingPackage("com/example/libs/Foo"));
+    }
+
+    @Test
+    public void onlyMatchesWholePackages() {
+        PackageRedirectTrie trie = trie();
+
+        assertNull(trie.redirect("com/examples/Foo"));
+        assertNull(trie.matchingPackage("com/examples/Foo"));
+        assertNull(trie.redirect("com/Foo"));
+        // a package alone isn't a class in it
+        assertNull(trie.redirect("com/example/"));
+        assertNull(trie.redirect("com/example"));
+    }
+
+    @Test
+    public void matchesRanges() {
+        PackageRedirectTrie trie = trie();
+        String descriptor = "(Lcom/example/Foo;Lcom/examples/Bar;)V";
+
+        assertTrue(trie.matches(descriptor, 2, 17));
+        assertFalse(trie.matches(descriptor, 19, 35));
+        // the end is exclusive, nothing is left after the package
+        assertFalse(trie.matches(descriptor, 2, 14));
+    }
+
+    @Test
+    public void rejectsDefaultPackage() {
+        assertThrows(IllegalArgumentException.class, () -> new PackageRedirectTrie(Collections.singletonMap("", "org/example")));
+    }
+
+    @Test
+    public void emptyTrieMatchesNothing() {
+        assertTrue(PackageRedirectTrie.EMPTY.isEmpty());
+        assertFalse(trie().isEmpty());
+        assertNull(PackageRedirectTrie.EMPTY.redirect("com/example/Foo"));
+    }
+}
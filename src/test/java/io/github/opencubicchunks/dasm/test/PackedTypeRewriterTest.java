@@ -0,0 +1,264 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classNode;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.method;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.toBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.objectweb.asm.Opcodes.*;
+
+import io.github.opencubicchunks.dasm.transformer.PackedTypeRewriter;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FrameNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class PackedTypeRewriterTest {
+    private static final String USES = Type.getInternalName(Uses.class);
+    private static final Map<String, PackedTypeRewriter.PackedType> PACKED_TYPES = Collections.singletonMap(Type.getInternalName(Pos.class),
+            new PackedTypeRewriter.PackedType(Type.LONG_TYPE, Type.getInternalName(PackedPos.class)));
+
+    @Test
+    public void packsConstructorsAndMethodCalls() throws ReflectiveOperationException {
+        MethodNode method = rewrite("sumOfNew");
+
+        assertEquals("(II)I", method.desc);
+        assertFalse(opcodes(method).contains(NEW));
+        assertEquals(7, run(method, 3, 4));
+    }
+
+    @Test
+    public void packsFieldReads() throws ReflectiveOperationException {
+        MethodNode method = rewrite("product");
+
+        assertEquals("(J)I", method.desc);
+        assertEquals(12, run(method, PackedPos.pack(3, 4)));
+    }
+
+    @Test
+    public void packsArgumentsAndReturnValues() throws ReflectiveOperationException {
+        MethodNode method = rewrite("shifted");
+
+        assertEquals("(JI)J", method.desc);
+        assertEquals(PackedPos.pack(5, 6), run(method, PackedPos.pack(3, 4), 2));
+    }
+
+    @Test
+    public void packsLocalsAcrossBranches() throws ReflectiveOperationException {
+        MethodNode method = rewrite("furthest");
+
+        assertEquals("(JJ)J", method.desc);
+        assertEquals(PackedPos.pack(5, 1), run(method, PackedPos.pack(1, 1), PackedPos.pack(5, 1)));
+        assertEquals(PackedPos.pack(7, 0), run(method, PackedPos.pack(7, 0), PackedPos.pack(5, 1)));
+    }
+
+    @Test
+    public void packsArrays() throws ReflectiveOperationException {
+        MethodNode method = rewrite("diagonalSum");
+
+        List<Integer> opcodes = opcodes(method);
+        assertTrue(opcodes.contains(NEWARRAY));
+        assertTrue(opcodes.contains(LASTORE));
+        assertTrue(opcodes.contains(LALOAD));
+        assertFalse(opcodes.contains(ANEWARRAY));
+        assertEquals(0 + 1 + 2 + 3, run(method, 4));
+    }
+
+    @Test
+    public void comparesPackedValues() throws ReflectiveOperationException {
+        MethodNode method = rewrite("same");
+
+        assertTrue(opcodes(method).contains(LCMP));
+        assertFalse(opcodes(method).contains(IF_ACMPNE));
+        // identity turns into equality of the packed values
+        assertEquals(true, run(method, PackedPos.pack(1, 2), PackedPos.pack(1, 2)));
+        assertEquals(false, run(method, PackedPos.pack(1, 2), PackedPos.pack(2, 1)));
+    }
+
+    @Test
+    public void growsStackByPackedValues() {
+        MethodNode method = method(classNode(Uses.class), "product");
+        assertEquals(2, method.maxStack);
+
+        // two references become a long and an int, not two longs
+        assertEquals(3, PackedTypeRewriter.rewrite(USES, method, PACKED_TYPES).maxStack);
+    }
+
+    @Test
+    public void leavesMethodUnchangedWhenRewriteFails() {
+        MethodNode method = method(classNode(Uses.class), "isNull");
+        List<Integer> frameTypes = frameTypes(method);
+        assertFalse(frameTypes.isEmpty());
+
+        assertThrows(IllegalStateException.class, () -> PackedTypeRewriter.rewrite(USES, method, PACKED_TYPES));
+        assertEquals(frameTypes, frameTypes(method));
+    }
+
+    @Test
+    public void leavesOtherMethodsAlone() {
+        MethodNode method = method(classNode(Uses.class), "unrelated");
+
+        assertSame(method, PackedTypeRewriter.rewrite(USES, method, PACKED_TYPES));
+    }
+
+    @Test
+    public void rejectsUnpackableUses() {
+        assertThrows(IllegalStateException.class, () -> rewrite("asObject"));
+        assertThrows(IllegalStateException.class, () -> rewrite("isNull"));
+    }
+
+    @Test
+    public void rejectsUnsupportedPrimitives() {
+        assertThrows(IllegalArgumentException.class, () -> new PackedTypeRewriter.PackedType(Type.DOUBLE_TYPE, Type.getInternalName(PackedPos.class)));
+    }
+
+    private static MethodNode rewrite(String name) {
+        return PackedTypeRewriter.rewrite(USES, method(classNode(Uses.class), name), PACKED_TYPES);
+    }
+
+    private static List<Integer> opcodes(MethodNode method) {
+        List<Integer> opcodes = new ArrayList<>();
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (instruction.getOpcode() >= 0) {
+                opcodes.add(instruction.getOpcode());
+            }
+        }
+        return opcodes;
+    }
+
+    private static List<Integer> frameTypes(MethodNode method) {
+        List<Integer> types = new ArrayList<>();
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (instruction instanceof FrameNode) {
+                types.add(((FrameNode) instruction).type);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Runs the method in a class of its own, so that it's checked by the verifier
+     */
+    private static Object run(MethodNode method, Object... arguments) throws ReflectiveOperationException {
+        ClassNode classNode = new ClassNode();
+        classNode.visit(V1_8, ACC_PUBLIC | ACC_SUPER, "io/github/opencubicchunks/dasm/test/Packed", null, "java/lang/Object", null);
+        classNode.methods.add(method);
+        Class<?> packed = defineClass("io.github.opencubicchunks.dasm.test.Packed", toBytes(classNode));
+        for (java.lang.reflect.Method candidate : packed.getMethods()) {
+            if (candidate.getName().equals(method.name)) {
+                return candidate.invoke(null, arguments);
+            }
+        }
+        throw new NoSuchMethodException(method.name);
+    }
+
+    public static final class Pos {
+        public final int x;
+        public final int y;
+
+        public Pos(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public int getX() {
+            return this.x;
+        }
+
+        public int getY() {
+            return this.y;
+        }
+
+        public Pos offset(int distance) {
+            return new Pos(this.x + distance, this.y + distance);
+        }
+    }
+
+    public static final class PackedPos {
+        public static long pack(int x, int y) {
+            return ((long) x << 32) | (y & 0xFFFFFFFFL);
+        }
+
+        public static int x(long pos) {
+            return (int) (pos >> 32);
+        }
+
+        public static int y(long pos) {
+            return (int) pos;
+        }
+
+        public static int getX(long pos) {
+            return x(pos);
+        }
+
+        public static int getY(long pos) {
+            return y(pos);
+        }
+
+        public static long offset(long pos, int distance) {
+            return pack(x(pos) + distance, y(pos) + distance);
+        }
+    }
+
+    public static class Uses {
+        public static int sumOfNew(int x, int y) {
+            Pos pos = new Pos(x, y);
+            return pos.getX() + pos.getY();
+        }
+
+        public static int product(Pos pos) {
+            return pos.x * pos.y;
+        }
+
+        public static Pos shifted(Pos pos, int distance) {
+            return pos.offset(distance);
+        }
+
+        public static Pos furthest(Pos a, Pos b) {
+            Pos furthest = a;
+            if (b.getX() > a.getX()) {
+                furthest = b;
+            }
+            return furthest;
+        }
+
+        public static int diagonalSum(int count) {
+            Pos[] positions = new Pos[count];
+            for (int i = 0; i < count; i++) {
+                positions[i] = new Pos(i, i);
+            }
+            int sum = 0;
+            for (Pos pos : positions) {
+                sum += pos.x;
+            }
+            return sum;
+        }
+
+        public static boolean same(Pos a, Pos b) {
+            return a == b;
+        }
+
+        public static Object asObject(Pos pos) {
+            return pos;
+        }
+
+        public static boolean isNull(Pos pos) {
+            return pos == null;
+        }
+
+        public static int unrelated(int value) {
+            return value + 1;
+        }
+    }
+}
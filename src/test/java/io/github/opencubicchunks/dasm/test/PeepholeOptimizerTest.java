@@ -0,0 +1,209 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.toBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.objectweb.asm.Opcodes.*;
+
+import io.github.opencubicchunks.dasm.transformer.PeepholeOptimizer;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PeepholeOptimizerTest {
+    private static final String HELPER = Type.getInternalName(Helper.class);
+
+    @Test
+    public void removesRedundantCasts() throws ReflectiveOperationException {
+        MethodNode method = method("()Ljava/lang/String;", 1, 0);
+        method.visitMethodInsn(INVOKESTATIC, HELPER, "name", "()Ljava/lang/String;", false);
+        method.visitTypeInsn(CHECKCAST, "java/lang/String");
+        method.visitInsn(ARETURN);
+
+        assertTrue(PeepholeOptimizer.optimize(method));
+
+        assertEquals(Arrays.asList(INVOKESTATIC, ARETURN), opcodes(method));
+        assertEquals("name", run(method));
+    }
+
+    @Test
+    public void keepsNeededCasts() throws ReflectiveOperationException {
+        MethodNode method = method("()Ljava/lang/String;", 1, 0);
+        method.visitMethodInsn(INVOKESTATIC, HELPER, "object", "()Ljava/lang/Object;", false);
+        method.visitTypeInsn(CHECKCAST, "java/lang/String");
+        method.visitInsn(ARETURN);
+
+        assertFalse(PeepholeOptimizer.optimize(method));
+
+        assertEquals(Arrays.asList(INVOKESTATIC, CHECKCAST, ARETURN), opcodes(method));
+        assertEquals("object", run(method));
+    }
+
+    @Test
+    public void removesStoreLoadPairs() throws ReflectiveOperationException {
+        MethodNode method = method("(I)I", 2, 2);
+        method.visitVarInsn(ILOAD, 0);
+        method.visitInsn(ICONST_1);
+        method.visitInsn(IADD);
+        method.visitVarInsn(ISTORE, 1);
+        method.visitVarInsn(ILOAD, 1);
+        method.visitInsn(IRETURN);
+
+        assertTrue(PeepholeOptimizer.optimize(method));
+
+        assertEquals(Arrays.asList(ILOAD, ICONST_1, IADD, IRETURN), opcodes(method));
+        assertEquals(5, run(method, 4));
+    }
+
+    @Test
+    public void keepsLocalsUsedMoreThanOnce() throws ReflectiveOperationException {
+        MethodNode method = method("(I)I", 2, 2);
+        method.visitVarInsn(ILOAD, 0);
+        method.visitVarInsn(ISTORE, 1);
+        method.visitVarInsn(ILOAD, 1);
+        method.visitVarInsn(ILOAD, 1);
+        method.visitInsn(IMUL);
+        method.visitInsn(IRETURN);
+
+        assertFalse(PeepholeOptimizer.optimize(method));
+
+        assertEquals(9, run(method, 3));
+    }
+
+    @Test
+    public void removesPushPopPairs() throws ReflectiveOperationException {
+        MethodNode method = method("(J)I", 2, 2);
+        method.visitVarInsn(LLOAD, 0);
+        method.visitInsn(POP2);
+        method.visitLdcInsn("unused");
+        method.visitInsn(POP);
+        method.visitInsn(ICONST_3);
+        method.visitInsn(IRETURN);
+
+        assertTrue(PeepholeOptimizer.optimize(method));
+
+        assertEquals(Arrays.asList(ICONST_3, IRETURN), opcodes(method));
+        assertEquals(3, run(method, 1L));
+    }
+
+    @Test
+    public void collapsesJumpChains() throws ReflectiveOperationException {
+        LabelNode chain = new LabelNode();
+        LabelNode end = new LabelNode();
+        LabelNode next = new LabelNode();
+        MethodNode method = method("(I)I", 1, 1);
+        method.visitVarInsn(ILOAD, 0);
+        method.instructions.add(new JumpInsnNode(IFEQ, chain));
+        method.visitInsn(ICONST_1);
+        method.visitInsn(IRETURN);
+        method.instructions.add(chain);
+        method.instructions.add(new FrameNode(F_SAME, 0, null, 0, null));
+        method.instructions.add(new JumpInsnNode(GOTO, end));
+        method.instructions.add(end);
+        method.instructions.add(new FrameNode(F_SAME, 0, null, 0, null));
+        method.instructions.add(new JumpInsnNode(GOTO, next));
+        method.instructions.add(next);
+        method.visitInsn(ICONST_2);
+        method.visitInsn(IRETURN);
+
+        assertTrue(PeepholeOptimizer.optimize(method));
+
+        // the branch skips both GOTOs, leaving them unreachable
+        assertEquals(Arrays.asList(ILOAD, IFEQ, ICONST_1, IRETURN, ICONST_2, IRETURN), opcodes(method));
+        assertSame(next, ((JumpInsnNode) method.instructions.get(1)).label);
+        assertEquals(2, run(method, 0));
+        assertEquals(1, run(method, 1));
+    }
+
+    @Test
+    public void removesDeadCodeBeforeFullFrame() throws ReflectiveOperationException {
+        MethodNode method = deadCodeBetweenFrames(new FrameNode(F_FULL, 2, new Object[] { INTEGER, INTEGER }, 0, new Object[0]));
+
+        assertTrue(PeepholeOptimizer.optimize(method));
+
+        assertFalse(opcodes(method).contains(ICONST_5));
+        assertEquals(2, run(method, 0));
+        assertEquals(1, run(method, 1));
+    }
+
+    @Test
+    public void keepsDeadCodeWhoseFrameTheNextOneIsRelativeTo() throws ReflectiveOperationException {
+        // the same locals as the dead append frame, removing it would change what this frame means
+        MethodNode method = deadCodeBetweenFrames(new FrameNode(F_SAME, 0, null, 0, null));
+
+        assertFalse(PeepholeOptimizer.optimize(method));
+
+        assertTrue(opcodes(method).contains(ICONST_5));
+        assertEquals(2, run(method, 0));
+        assertEquals(1, run(method, 1));
+    }
+
+    /**
+     * A method with unreachable code after a compressed frame appending a local, followed by the given frame
+     */
+    private static MethodNode deadCodeBetweenFrames(FrameNode nextFrame) {
+        LabelNode dead = new LabelNode();
+        LabelNode target = new LabelNode();
+        MethodNode method = method("(I)I", 1, 2);
+        method.visitInsn(ICONST_0);
+        method.visitVarInsn(ISTORE, 1);
+        method.visitVarInsn(ILOAD, 0);
+        method.instructions.add(new JumpInsnNode(IFEQ, target));
+        method.visitInsn(ICONST_1);
+        method.visitInsn(IRETURN);
+        method.instructions.add(dead);
+        method.instructions.add(new FrameNode(F_APPEND, 1, new Object[] { INTEGER }, 0, null));
+        method.visitInsn(ICONST_5);
+        method.visitInsn(IRETURN);
+        method.instructions.add(target);
+        method.instructions.add(nextFrame);
+        method.visitInsn(ICONST_2);
+        method.visitInsn(IRETURN);
+        return method;
+    }
+
+    private static MethodNode method(String descriptor, int maxStack, int maxLocals) {
+        MethodNode method = new MethodNode(ACC_PUBLIC | ACC_STATIC, "run", descriptor, null, null);
+        method.maxStack = maxStack;
+        method.maxLocals = maxLocals;
+        return method;
+    }
+
+    private static List<Integer> opcodes(MethodNode method) {
+        List<Integer> opcodes = new ArrayList<>();
+        for (AbstractInsnNode instruction : method.instructions) {
+            if (instruction.getOpcode() >= 0) {
+                opcodes.add(instruction.getOpcode());
+            }
+        }
+        return opcodes;
+    }
+
+    /**
+     * Runs the method in a class of its own, so that it's checked by the verifier
+     */
+    private static Object run(MethodNode method, Object... arguments) throws ReflectiveOperationException {
+        ClassNode classNode = new ClassNode();
+        classNode.visit(V1_8, ACC_PUBLIC | ACC_SUPER, "io/github/opencubicchunks/dasm/test/Optimized", null, "java/lang/Object", null);
+        classNode.methods.add(method);
+        Class<?> optimized = defineClass("io.github.opencubicchunks.dasm.test.Optimized", toBytes(classNode));
+        return Arrays.stream(optimized.getMethods()).filter(m -> m.getName().equals("run")).findAny().get().invoke(null, arguments);
+    }
+
+    public static class Helper {
+        public static String name() {
+            return "name";
+        }
+
+        public static Object object() {
+            return "object";
+        }
+    }
+}
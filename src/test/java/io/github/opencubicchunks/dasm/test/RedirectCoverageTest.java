@@ -0,0 +1,63 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classNode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.profile.RedirectCoverage;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.PackedTypeRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+
+import java.util.Collections;
+import java.util.function.UnaryOperator;
+
+public class RedirectCoverageTest {
+    @Test
+    public void registersRedirectsAddedLater() {
+        RedirectCoverage coverage = new RedirectCoverage();
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(redirect("abs"));
+        coverage.register("test/Target", redirectSet, UnaryOperator.identity());
+
+        redirectSet.addRedirect(redirect("max"));
+        coverage.register("test/Other", redirectSet, UnaryOperator.identity());
+
+        assertEquals(2, coverage.unusedRedirects().get("test").size());
+    }
+
+    @Test
+    public void countsPackedTypes() {
+        RedirectCoverage coverage = new RedirectCoverage();
+        Transformer transformer = new Transformer(MappingsProvider.IDENTITY, Utils::classBytes, false);
+        transformer.setRedirectCoverage(coverage);
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(new PackedTypeRedirect(PackedTypeRewriterTest.Pos.class.getName(), Type.LONG_TYPE,
+                PackedTypeRewriterTest.PackedPos.class.getName()));
+        redirectSet.addRedirect(redirect("abs"));
+
+        Type uses = Type.getType(PackedTypeRewriterTest.Uses.class);
+        TargetClass targetClass = new TargetClass(PackedTypeRewriterTest.Uses.class.getName());
+        targetClass.addRedirectSet(redirectSet);
+        targetClass.addTarget(new TargetMethod(uses, new ClassMethod(uses, new Method("product", Type.getMethodDescriptor(Type.INT_TYPE,
+                Type.getType(PackedTypeRewriterTest.Pos.class)))), "packedProduct", true, false, Collections.emptyList()));
+        transformer.transformClass(classNode(PackedTypeRewriterTest.Uses.class), targetClass);
+
+        assertFalse(coverage.hits(uses.getInternalName()).isEmpty());
+        // only the unused method redirect is left
+        assertEquals(Collections.singletonList(redirect("abs")), coverage.unusedRedirects().get("test"));
+    }
+
+    private static MethodRedirect redirect(String name) {
+        return new MethodRedirect(new ClassMethod(Type.getType(Math.class), new Method(name, "(II)I")), Type.getType(Math.class), name + "Exact", false);
+    }
+}
@@ -0,0 +1,237 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.toBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.objectweb.asm.Opcodes.*;
+
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.RedirectInliner;
+import io.github.opencubicchunks.dasm.transformer.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.redirect.TypeRedirect;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RedirectInlinerTest {
+    private static final String REDIRECTS = Type.getInternalName(Redirects.class);
+
+    private final RedirectInliner inliner = new RedirectInliner(Utils::classBytes, 8);
+
+    @Test
+    public void inlinesGetter() throws ReflectiveOperationException {
+        RedirectInliner.Body body = inliner.find(REDIRECTS, "x", "(L" + Type.getInternalName(Point.class) + ";)I");
+
+        assertNotNull(body);
+        assertEquals(listOf(GETFIELD), opcodes(body));
+        assertEquals(0, body.extraStack());
+        Point point = new Point();
+        point.x = 5;
+        assertEquals(5, callInlined(body, "(L" + Type.getInternalName(Point.class) + ";)I", point));
+    }
+
+    @Test
+    public void inlinesForwarder() throws ReflectiveOperationException {
+        RedirectInliner.Body body = inliner.find(REDIRECTS, "abs", "(I)I");
+
+        assertNotNull(body);
+        assertEquals(listOf(INVOKESTATIC), opcodes(body));
+        assertEquals(3, callInlined(body, "(I)I", -3));
+    }
+
+    @Test
+    public void popsUnusedArguments() throws ReflectiveOperationException {
+        RedirectInliner.Body body = inliner.find(REDIRECTS, "seven", "(IJ)I");
+
+        assertNotNull(body);
+        // the last argument is on top of the stack
+        assertEquals(listOf(POP2, POP, BIPUSH), opcodes(body));
+        assertEquals(7, callInlined(body, "(IJ)I", 1, 2L));
+    }
+
+    @Test
+    public void bodiesAreCached() {
+        assertSame(inliner.find(REDIRECTS, "abs", "(I)I"), inliner.find(REDIRECTS, "abs", "(I)I"));
+    }
+
+    @Test
+    public void doesNotInlineNonTrivialMethods() {
+        assertNull(inliner.find(REDIRECTS, "max", "(II)I"), "branches");
+        assertNull(inliner.find(REDIRECTS, "twice", "(I)I"), "loads an argument twice");
+        assertNull(inliner.find(REDIRECTS, "hidden", "(L" + Type.getInternalName(Point.class) + ";)I"), "reads a private field");
+        assertNull(inliner.find(REDIRECTS, "instance", "()I"), "not static");
+        assertNull(inliner.find(REDIRECTS, "missing", "()I"), "doesn't exist");
+        assertNull(inliner.find("a/Missing", "abs", "(I)I"), "class doesn't exist");
+    }
+
+    @Test
+    public void respectsInstructionLimit() {
+        RedirectInliner small = new RedirectInliner(Utils::classBytes, 2);
+
+        assertNotNull(small.find(REDIRECTS, "seven", "(IJ)I"));
+        assertNull(small.find(REDIRECTS, "abs", "(I)I"));
+        assertThrows(IllegalArgumentException.class, () -> new RedirectInliner(Utils::classBytes, 0));
+    }
+
+    @Test
+    public void doesNotInlineFromClassesWithStaticInitializer() {
+        assertNull(inliner.find(Type.getInternalName(Initialized.class), "seven", "()I"));
+    }
+
+    @Test
+    public void targetRedirectsDontApplyToInlinedBodies() throws ReflectiveOperationException {
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(new MethodRedirect(new ClassMethod(Type.getType(Math.class), new Method("abs", "(I)I")), Type.getType(Redirects.class),
+                "helperAbs", false));
+        // would change what the inlined body calls if it were applied to it
+        redirectSet.addRedirect(new TypeRedirect(Helper.class.getName(), OtherHelper.class.getName()));
+        Type target = Type.getType(Target.class);
+        TargetClass targetClass = new TargetClass(Target.class.getName());
+        targetClass.addTarget(new TargetMethod(target, new ClassMethod(target, new Method("source", "(I)I")), "redirected", true, false,
+                Collections.singletonList(redirectSet)));
+        Transformer transformer = new Transformer(MappingsProvider.IDENTITY, Utils::classBytes, false);
+        transformer.setInlineLimit(8);
+
+        ClassNode classNode = Utils.classNode(Target.class);
+        transformer.transformClass(classNode, targetClass);
+
+        MethodNode redirected = Utils.method(classNode, "redirected");
+        for (AbstractInsnNode instruction : redirected.instructions) {
+            if (instruction instanceof MethodInsnNode) {
+                assertEquals(Type.getInternalName(Helper.class), ((MethodInsnNode) instruction).owner);
+            }
+        }
+        assertEquals(103, defineClass(Target.class.getName(), toBytes(classNode)).getMethod("redirected", int.class).invoke(null, 3));
+    }
+
+    private static List<Integer> listOf(int... opcodes) {
+        List<Integer> list = new ArrayList<>();
+        for (int opcode : opcodes) {
+            list.add(opcode);
+        }
+        return list;
+    }
+
+    private static List<Integer> opcodes(RedirectInliner.Body body) {
+        MethodNode method = new MethodNode();
+        body.accept(method);
+        List<Integer> opcodes = new ArrayList<>();
+        method.instructions.forEach(instruction -> opcodes.add(instruction.getOpcode()));
+        return opcodes;
+    }
+
+    /**
+     * Builds a static method loading its arguments and running the body in place of a call, and runs it
+     */
+    private static Object callInlined(RedirectInliner.Body body, String descriptor, Object... arguments) throws ReflectiveOperationException {
+        ClassNode classNode = new ClassNode();
+        classNode.visit(V1_8, ACC_PUBLIC | ACC_SUPER, "io/github/opencubicchunks/dasm/test/Inlined", null, "java/lang/Object", null);
+        MethodNode method = new MethodNode(ACC_PUBLIC | ACC_STATIC, "call", descriptor, null, null);
+        InsnList instructions = method.instructions;
+        int slot = 0;
+        for (Type argument : Type.getArgumentTypes(descriptor)) {
+            instructions.add(new VarInsnNode(argument.getOpcode(ILOAD), slot));
+            slot += argument.getSize();
+        }
+        body.accept(method);
+        method.visitInsn(Type.getReturnType(descriptor).getOpcode(IRETURN));
+        method.maxLocals = slot;
+        method.maxStack = slot + body.extraStack();
+        classNode.methods.add(method);
+
+        Class<?> inlined = defineClass("io.github.opencubicchunks.dasm.test.Inlined", toBytes(classNode));
+        Class<?>[] parameterTypes = new Class<?>[arguments.length];
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+        for (int i = 0; i < argumentTypes.length; i++) {
+            parameterTypes[i] = argumentTypes[i].getSort() == Type.INT ? int.class
+                    : argumentTypes[i].getSort() == Type.LONG ? long.class
+                    : arguments[i].getClass();
+        }
+        return inlined.getMethod("call", parameterTypes).invoke(null, arguments);
+    }
+
+    public static class Point {
+        public int x;
+        private int y;
+    }
+
+    public static class Redirects {
+        public static int x(Point point) {
+            return point.x;
+        }
+
+        public static int abs(int value) {
+            return Math.abs(value);
+        }
+
+        public static int seven(int ignored, long alsoIgnored) {
+            return 7;
+        }
+
+        public static int max(int a, int b) {
+            return a > b ? a : b;
+        }
+
+        public static int twice(int value) {
+            return value + value;
+        }
+
+        public static int hidden(Point point) {
+            return point.y;
+        }
+
+        public int instance() {
+            return 1;
+        }
+
+        public static int helperAbs(int value) {
+            return Helper.abs(value);
+        }
+    }
+
+    public static class Helper {
+        public static int abs(int value) {
+            return value + 100;
+        }
+    }
+
+    public static class OtherHelper {
+        public static int abs(int value) {
+            return value + 200;
+        }
+    }
+
+    public static class Initialized {
+        public static final List<Integer> INITIALIZED = new ArrayList<>();
+
+        public static int seven() {
+            return 7;
+        }
+    }
+
+    public static class Target {
+        public static int source(int value) {
+            return Math.abs(value);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classBytes;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classNode;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.method;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.opencubicchunks.dasm.transformer.PackageRedirectTrie;
+import io.github.opencubicchunks.dasm.transformer.RedirectPrefilter;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RedirectPrefilterTest {
+    private static final RedirectPrefilter LIST = new RedirectPrefilter(Collections.singleton("java/util/List"));
+
+    @Test
+    public void classMentioningNameMayBeAffected() {
+        assertTrue(LIST.mayAffect(new ClassReader(classBytes(UsesList.class))));
+        assertFalse(LIST.mayAffect(new ClassReader(classBytes(UsesNothing.class))));
+    }
+
+    @Test
+    public void emptyPrefilterAffectsNothing() {
+        assertTrue(RedirectPrefilter.NONE.isEmpty());
+        assertFalse(RedirectPrefilter.NONE.mayAffect(new ClassReader(classBytes(UsesList.class))));
+        assertFalse(RedirectPrefilter.NONE.mayAffect(method(classNode(UsesList.class), "size")));
+    }
+
+    @Test
+    public void methodMentioningNameMayBeAffected() {
+        ClassNode usesList = classNode(UsesList.class);
+        assertTrue(LIST.mayAffect(method(usesList, "size")), "descriptor");
+        assertTrue(LIST.mayAffect(method(usesList, "listClass")), "class constant");
+        assertTrue(LIST.mayAffect(method(usesList, "localList")), "method call owner");
+        assertFalse(LIST.mayAffect(method(usesList, "add")));
+    }
+
+    @Test
+    public void packagesMatchClassesInThem() {
+        RedirectPrefilter concurrent = new RedirectPrefilter(Collections.emptySet(),
+                new PackageRedirectTrie(Collections.singletonMap("java/util/concurrent/atomic", "other/atomic")));
+        assertTrue(concurrent.mayAffect(new ClassReader(classBytes(UsesAtomic.class))));
+        assertTrue(concurrent.mayAffect(method(classNode(UsesAtomic.class), "increment")));
+        assertFalse(concurrent.mayAffect(new ClassReader(classBytes(UsesNothing.class))));
+
+        RedirectPrefilter prefix = new RedirectPrefilter(Collections.emptySet(),
+                new PackageRedirectTrie(Collections.singletonMap("java/util/concurrent/atom", "other/atomic")));
+        assertFalse(prefix.mayAffect(method(classNode(UsesAtomic.class), "increment")), "a package isn't a prefix of other package names");
+    }
+
+    @Test
+    public void copiesMatchRedirectsOnTheTarget() {
+        RedirectPrefilter target = new RedirectPrefilter(Collections.singleton("a/Target"));
+        ClassNode callsItself = classNode(CallsItself.class);
+
+        assertFalse(target.mayAffect(method(callsItself, "callsItself")));
+        // calls to the source class are calls to the target class once copied
+        assertTrue(target.forCopy(callsItself.name, "a/Target").mayAffect(method(callsItself, "callsItself")));
+        assertTrue(target.forCopy(callsItself.name, "a/Target").mayAffect(new ClassReader(classBytes(CallsItself.class))));
+        assertSame(LIST, LIST.forCopy(callsItself.name, "a/Target"), "redirects don't match the target");
+    }
+
+    static class CallsItself {
+        static int callsItself(int value) {
+            return other(value);
+        }
+
+        static int other(int value) {
+            return value;
+        }
+    }
+
+    static class UsesNothing {
+        int add(int a, int b) {
+            return a + b;
+        }
+    }
+
+    static class UsesList {
+        int size(List<String> list) {
+            return list.size();
+        }
+
+        Class<?> listClass() {
+            return List.class;
+        }
+
+        int localList(Object object) {
+            return ((List<?>) object).size();
+        }
+
+        int add(int a, int b) {
+            return a + b;
+        }
+    }
+
+    static class UsesAtomic {
+        int increment(AtomicInteger counter) {
+            return counter.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classBytes;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.replay.ReplayFile;
+import io.github.opencubicchunks.dasm.replay.ReplayRecorder;
+import io.github.opencubicchunks.dasm.test.sets.EmptySet;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+public class ReplayTest {
+    @Test
+    public void recordsByteTransforms() throws IOException, ReflectiveOperationException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ReplayRecorder recorder = new ReplayRecorder(out)) {
+            recorder.annotationParser(Utils::classBytes, EmptySet.class, null);
+            byte[] transformed = recorder.transformer(MappingsProvider.IDENTITY, Utils::classBytes, false).transformClass(classBytes(Target.class), target());
+            assertEquals(4, defineClass(Target.class.getName(), transformed).getMethod("copied", int.class).invoke(null, 3));
+        }
+
+        ReplayFile replay = ReplayFile.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(1, replay.calls().size());
+        assertTrue(replay.calls().get(0).isTransform());
+        // the source was read while transforming, replaying reads it from the file
+        ClassProvider classProvider = replay.classProvider();
+        replay.calls().get(0).replay(new AnnotationParser(classProvider, replay.defaultRedirectSet(), null),
+                new Transformer(replay.mappingsProvider(), classProvider, false));
+    }
+
+    @Test
+    public void recordsAsyncLookups() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ReplayRecorder recorder = new ReplayRecorder(out)) {
+            recorder.annotationParser(Utils::classBytes, EmptySet.class, null);
+            ClassProvider classProvider = recorder.wrap((ClassProvider) Utils::classBytes);
+            classProvider.classBytesAsync(Source.class.getName(), Runnable::run).join();
+            classProvider.classBytesAsync(Collections.singleton(Target.class.getName()), Runnable::run).join();
+        }
+
+        ClassProvider replayed = ReplayFile.read(new ByteArrayInputStream(out.toByteArray())).classProvider();
+        assertArrayEquals(classBytes(Source.class), replayed.classBytes(Source.class.getName()));
+        assertArrayEquals(classBytes(Target.class), replayed.classBytes(Target.class.getName()));
+    }
+
+    private static TargetClass target() {
+        TargetClass target = new TargetClass(Target.class.getName());
+        target.addTarget(new TargetMethod(Type.getType(Source.class), new ClassMethod(Type.getType(Target.class), new Method("increment", "(I)I")),
+                "copied", true, false, Collections.emptyList()));
+        return target;
+    }
+
+    public static class Target {
+    }
+
+    public static class Source {
+        public static int increment(int value) {
+            return value + 1;
+        }
+    }
+}
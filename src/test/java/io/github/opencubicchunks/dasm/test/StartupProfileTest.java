@@ -0,0 +1,73 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.github.opencubicchunks.dasm.AnnotationParser;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.profile.StartupProfile;
+import io.github.opencubicchunks.dasm.test.sets.EmptySet;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class StartupProfileTest {
+    @Test
+    public void writesEntriesInRecordedOrder() throws IOException {
+        StartupProfile profile = new StartupProfile();
+        profile.redirectSetResolved(Type.getObjectType("a/Set"));
+        profile.sourceLoaded("a.Source");
+        profile.classTransformed("a.Target");
+        profile.redirectSetResolved(Type.getObjectType("b/Set"));
+        profile.sourceLoaded("a.Source");
+        profile.classTransformed("b.Target");
+
+        StringWriter writer = new StringWriter();
+        profile.write(writer);
+        List<String> lines = Arrays.asList(writer.toString().split("\\R"));
+        assertEquals(Arrays.asList("set a.Set", "source a.Source", "transform a.Target", "set b.Set", "transform b.Target"), lines);
+
+        StringWriter rewritten = new StringWriter();
+        StartupProfile.read(new StringReader(writer.toString())).write(rewritten);
+        assertEquals(writer.toString(), rewritten.toString());
+    }
+
+    @Test
+    public void readKeepsEntriesByKind() throws IOException {
+        StartupProfile profile = StartupProfile.read(new StringReader("source b.Source\nset a.Set\n\ntransform a.Target\nsource a.Source\n"));
+
+        assertEquals(Collections.singletonList("a.Set"), profile.redirectSets());
+        assertEquals(Arrays.asList("b.Source", "a.Source"), profile.sources());
+        assertEquals(Collections.singletonList("a.Target"), profile.transformedClasses());
+    }
+
+    @Test
+    public void readRejectsUnknownEntries() {
+        assertThrows(IOException.class, () -> StartupProfile.read(new StringReader("class a.Target\n")));
+        assertThrows(IOException.class, () -> StartupProfile.read(new StringReader("a.Target\n")));
+    }
+
+    @Test
+    public void warmupFetchesEverySourceDespiteMissingOnes() throws Exception {
+        StartupProfile profile = StartupProfile.read(new StringReader("source a.Missing\nset " + EmptySet.class.getName() + "\nsource "
+                + StartupProfileTest.class.getName() + "\n"));
+        List<String> fetched = new CopyOnWriteArrayList<>();
+        ClassProvider classProvider = className -> {
+            fetched.add(className);
+            return Utils.classBytes(className);
+        };
+
+        profile.warmup(new AnnotationParser(classProvider, EmptySet.class), classProvider, Runnable::run).get(10, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("a.Missing", EmptySet.class.getName(), StartupProfileTest.class.getName()), fetched);
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.opencubicchunks.dasm.test;
+
+import static io.github.opencubicchunks.dasm.test.utils.Utils.classNode;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.defineClass;
+import static io.github.opencubicchunks.dasm.test.utils.Utils.toBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.opencubicchunks.dasm.Transformer;
+import io.github.opencubicchunks.dasm.api.provider.ClassProvider;
+import io.github.opencubicchunks.dasm.api.provider.MappingsProvider;
+import io.github.opencubicchunks.dasm.test.utils.Utils;
+import io.github.opencubicchunks.dasm.transformer.ClassMethod;
+import io.github.opencubicchunks.dasm.transformer.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.transformer.redirect.RedirectSet;
+import io.github.opencubicchunks.dasm.transformer.redirect.TypeRedirect;
+import io.github.opencubicchunks.dasm.transformer.target.TargetClass;
+import io.github.opencubicchunks.dasm.transformer.target.TargetMethod;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Collections;
+import java.util.function.IntUnaryOperator;
+
+public class TransformerTest {
+    private static final ClassProvider CLASS_PROVIDER = Utils::classBytes;
+
+    /**
+     * Maps the names target methods are declared with to the names the compiled classes use
+     */
+    private static final MappingsProvider MAPPINGS = new MappingsProvider() {
+        @Override public String mapFieldName(String owner, String fieldName, String descriptor) {
+            return fieldName;
+        }
+
+        @Override public String mapMethodName(String owner, String methodName, String descriptor) {
+            return methodName.equals("named") ? "mapped" : methodName;
+        }
+
+        @Override public String mapClassName(String className) {
+            return className;
+        }
+    };
+
+    @Test
+    public void copiesFromOtherClassWithMappings() throws ReflectiveOperationException {
+        ClassNode target = classNode(Target.class);
+        TargetClass targetClass = new TargetClass(Target.class.getName());
+        targetClass.addTarget(new TargetMethod(Type.getType(Source.class), new ClassMethod(Type.getType(Target.class), new Method("named", "(I)I")),
+                "copied", true, false, Collections.emptyList()));
+
+        new Transformer(MAPPINGS, CLASS_PROVIDER, false).transformClass(target, targetClass);
+
+        Class<?> transformed = defineClass(Target.class.getName(), toBytes(target));
+        assertEquals(7, transformed.getDeclaredMethod("copied", int.class).invoke(null, 3));
+    }
+
+    @Test
+    public void redirectsOnTargetApplyToCopiedSelfCalls() throws ReflectiveOperationException {
+        ClassNode target = classNode(Target.class);
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(new MethodRedirect(new ClassMethod(Type.getType(Target.class), new Method("helper", "(I)I")), Type.getType(Replacements.class),
+                "negate", false));
+        TargetClass targetClass = new TargetClass(Target.class.getName());
+        targetClass.addTarget(new TargetMethod(Type.getType(Source.class), new ClassMethod(Type.getType(Target.class), new Method("callsHelper", "(I)I")),
+                "copied", true, false, Collections.singletonList(redirectSet)));
+
+        new Transformer(MappingsProvider.IDENTITY, CLASS_PROVIDER, false).transformClass(target, targetClass);
+
+        // the source calls its own helper, which is the target's helper once copied, and that one is redirected
+        Class<?> transformed = defineClass(Target.class.getName(), toBytes(target));
+        assertEquals(-3, transformed.getDeclaredMethod("copied", int.class).invoke(null, 3));
+    }
+
+    @Test
+    public void redirectsWithinTargetAfterOwnerRewrite() throws ReflectiveOperationException {
+        ClassNode target = classNode(Target.class);
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(new MethodRedirect(new ClassMethod(Type.getType(Target.class), new Method("helper", "(I)I")), null, "doubled", false));
+
+        transform(target, Source.class, "callsHelper", "copied", redirectSet);
+
+        // the source's call to itself now calls the target, and the redirect on the target renames it
+        Class<?> transformed = defineClass(Target.class.getName(), toBytes(target));
+        assertEquals(6, transformed.getDeclaredMethod("copied", int.class).invoke(null, 3));
+    }
+
+    @Test
+    public void redirectsCallsToOtherClasses() throws ReflectiveOperationException {
+        ClassNode target = classNode(Target.class);
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(new MethodRedirect(new ClassMethod(Type.getType(Math.class), new Method("abs", "(I)I")), Type.getType(Replacements.class),
+                "negate", false));
+
+        transform(target, Target.class, "absolute", "redirected", redirectSet);
+
+        Class<?> transformed = defineClass(Target.class.getName(), toBytes(target));
+        assertEquals(-3, transformed.getDeclaredMethod("redirected", int.class).invoke(null, 3));
+        assertEquals(3, transformed.getDeclaredMethod("absolute", int.class).invoke(null, 3));
+    }
+
+    @Test
+    public void redirectsTypesInDescriptors() throws ReflectiveOperationException {
+        ClassNode target = classNode(Target.class);
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(new TypeRedirect(Value.class.getName(), OtherValue.class.getName()));
+
+        TargetClass targetClass = new TargetClass(Target.class.getName());
+        targetClass.addTarget(new TargetMethod(Type.getType(Target.class), new ClassMethod(Type.getType(Target.class),
+                new Method("read", Type.getMethodDescriptor(Type.INT_TYPE, Type.getType(Value.class)))), "readOther", true, false,
+                Collections.singletonList(redirectSet)));
+        new Transformer(MappingsProvider.IDENTITY, CLASS_PROVIDER, false).transformClass(target, targetClass);
+
+        Class<?> transformed = defineClass(Target.class.getName(), toBytes(target));
+        assertEquals(-4, transformed.getDeclaredMethod("readOther", OtherValue.class).invoke(null, new OtherValue(4)));
+    }
+
+    @Test
+    public void clonesRedirectedLambdas() throws ReflectiveOperationException {
+        ClassNode target = classNode(Target.class);
+        RedirectSet redirectSet = new RedirectSet("test");
+        redirectSet.addRedirect(new MethodRedirect(new ClassMethod(Type.getType(Math.class), new Method("abs", "(I)I")), Type.getType(Replacements.class),
+                "negate", false));
+
+        transform(target, Target.class, "absoluteInLambda", "redirected", redirectSet);
+
+        assertTrue(target.methods.stream().anyMatch(method -> method.name.startsWith("dasm$redirect$")));
+        Class<?> transformed = defineClass(Target.class.getName(), toBytes(target));
+        assertEquals(-3, transformed.getDeclaredMethod("redirected", int.class).invoke(null, 3));
+        // the original lambda is left as it is
+        assertEquals(3, transformed.getDeclaredMethod("absoluteInLambda", int.class).invoke(null, 3));
+    }
+
+    private static void transform(ClassNode target, Class<?> source, String methodName, String newName, RedirectSet redirectSet) {
+        TargetClass targetClass = new TargetClass(Target.class.getName());
+        targetClass.addTarget(new TargetMethod(Type.getType(source), new ClassMethod(Type.getType(Target.class), new Method(methodName, "(I)I")),
+                newName, true, false, Collections.singletonList(redirectSet)));
+        new Transformer(MappingsProvider.IDENTITY, CLASS_PROVIDER, false).transformClass(target, targetClass);
+    }
+
+    public static class Target {
+        public static int helper(int value) {
+            return value;
+        }
+
+        public static int doubled(int value) {
+            return value * 2;
+        }
+
+        public static int absolute(int value) {
+            return Math.abs(value);
+        }
+
+        public static int read(Value value) {
+            return value.get();
+        }
+
+        public static int absoluteInLambda(int value) {
+            IntUnaryOperator operator = v -> Math.abs(v);
+            return operator.applyAsInt(value);
+        }
+    }
+
+    public static class Source {
+        public static int mapped(int value) {
+            return value * 2 + 1;
+        }
+
+        public static int callsHelper(int value) {
+            return helper(value);
+        }
+
+        public static int helper(int value) {
+            return value;
+        }
+    }
+
+    public static class Value {
+        private final int value;
+
+        public Value(int value) {
+            this.value = value;
+        }
+
+        public int get() {
+            return this.value;
+        }
+    }
+
+    public static class OtherValue {
+        private final int value;
+
+        public OtherValue(int value) {
+            this.value = value;
+        }
+
+        public int get() {
+            return -this.value;
+        }
+    }
+
+    public static class Replacements {
+        public static int negate(int value) {
+            return -value;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package io.github.opencubicchunks.dasm.test.sets;
+
+import io.github.opencubicchunks.dasm.api.redirect.DasmRedirectSet;
+
+@DasmRedirectSet
+public interface ContributedSet {
+}
@@ -0,0 +1,18 @@
+package io.github.opencubicchunks.dasm.test.sets;
+
+import io.github.opencubicchunks.dasm.api.Ref;
+import io.github.opencubicchunks.dasm.api.redirect.DasmRedirectSet;
+import io.github.opencubicchunks.dasm.api.redirect.MethodRedirect;
+import io.github.opencubicchunks.dasm.api.redirect.PartialRedirect;
+
+/**
+ * Redirects {@link Math#abs(int)} to {@link Negation#negate(int)}
+ */
+@DasmRedirectSet
+public interface NegatingSet {
+    @PartialRedirect(from = @Ref(Math.class), to = @Ref(Negation.class))
+    interface MathToNegation {
+        @MethodRedirect("negate")
+        int abs(int value);
+    }
+}
@@ -0,0 +1,7 @@
+package io.github.opencubicchunks.dasm.test.sets;
+
+public class Negation {
+    public static int negate(int value) {
+        return -value;
+    }
+}
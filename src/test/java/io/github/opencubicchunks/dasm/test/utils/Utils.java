@@ -2,7 +2,12 @@ package io.github.opencubicchunks.dasm.test.utils;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -17,4 +22,57 @@ public class Utils {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * @param className The fully qualified name of a class on the test classpath eg: <code>java.lang.String</code>
+     */
+    public static byte[] classBytes(String className) {
+        ClassLoader classloader = Thread.currentThread().getContextClassLoader();
+        try (InputStream is = classloader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+            if (is == null) {
+                throw new IllegalArgumentException(String.format("Class %s not found", className));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = is.read(buffer); read >= 0; read = is.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static byte[] classBytes(Class<?> clazz) {
+        return classBytes(clazz.getName());
+    }
+
+    public static ClassNode classNode(Class<?> clazz) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classBytes(clazz)).accept(classNode, 0);
+        return classNode;
+    }
+
+    public static byte[] toBytes(ClassNode classNode) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classNode.accept(classWriter);
+        return classWriter.toByteArray();
+    }
+
+    /**
+     * Defines the class in a new class loader, so that it's checked by the JVM's verifier when it's used. Other classes are loaded from the test classpath,
+     * so the class can only access their public members.
+     */
+    public static Class<?> defineClass(String className, byte[] classBytes) {
+        return new ClassLoader(Utils.class.getClassLoader()) {
+            Class<?> define() {
+                return defineClass(className, classBytes, 0, classBytes.length);
+            }
+        }.define();
+    }
+
+    public static MethodNode method(ClassNode classNode, String name) {
+        return classNode.methods.stream().filter(method -> method.name.equals(name)).findAny()
+                .orElseThrow(() -> new IllegalArgumentException(String.format("No method %s in %s", name, classNode.name)));
+    }
 }